@@ -0,0 +1,66 @@
+package theknife.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import theknife.models.Ristorante;
+import theknife.utils.FileManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tempo di caricamento dell'intero catalogo da CSV con
+ * {@link FileManager#caricaRistorantiDaCSV(String)}, su 10K, 100K e 1M
+ * ristoranti sintetici.
+ * <p>
+ * Con il profiler GC ({@code -prof gc}) la metrica {@code gc.alloc.rate.norm}
+ * è l'allocazione per caricamento: divisa per {@code righe} dà i byte
+ * allocati per ristorante.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class CaricamentoCatalogoBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int righe;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void prepara() throws IOException {
+        file = Files.createTempFile("catalogo-" + righe + "-", ".csv");
+        CatalogoSintetico.scrivi(file, righe, 42L);
+    }
+
+    @TearDown(Level.Trial)
+    public void pulisci() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public List<Ristorante> caricaRistorantiDaCSV() {
+        return FileManager.caricaRistorantiDaCSV(file.toString());
+    }
+}
@@ -0,0 +1,88 @@
+package theknife.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Righe sintetiche del catalogo, nello stesso formato di
+ * {@code michelin_my_maps.csv}, generate con un seme fisso così che ogni
+ * esecuzione dei benchmark misuri gli stessi dati.
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+final class CatalogoSintetico {
+
+    static final String INTESTAZIONE = "Name,Address,Location,Price,Cuisine,Longitude,Latitude,PhoneNumber,"
+            + "Url,WebsiteUrl,Award,GreenStar,FacilitiesAndServices,Description,DeliveryAvailable,"
+            + "OnlineBookingAvailable";
+
+    private static final String[] CITTA = {
+            "Milano, Italy", "Roma, Italy", "Paris, France", "Lyon, France", "Tokyo, Japan",
+            "New York, USA", "London, United Kingdom", "Barcelona, Spain", "Wien, Austria", "København, Denmark"};
+    private static final String[] CUCINE = {
+            "Italian", "Modern Cuisine", "French", "Japanese", "Creative", "Seafood",
+            "Traditional Cuisine", "Italian, Contemporary", "Farm to table", "Vegetarian"};
+    private static final String[] PREZZI = {"€", "€€", "€€€", "€€€€"};
+    private static final String[] PREMI = {"1 Star", "2 Stars", "3 Stars", "Bib Gourmand", "Selected Restaurants"};
+    private static final String[] SERVIZI = {
+            "Air conditioning,Terrace", "Car park,Wheelchair access", "Counter dining", "Garden or park,Great view"};
+
+    private CatalogoSintetico() {
+    }
+
+    /**
+     * Genera una riga CSV del catalogo.
+     *
+     * @param casuale Generatore da cui estrarre i valori.
+     * @param indice Progressivo usato per rendere unico il nome.
+     * @return Riga CSV senza terminatore.
+     */
+    static String riga(Random casuale, int indice) {
+        StringBuilder sb = new StringBuilder(320);
+        sb.append("Ristorante ").append(indice).append(',');
+        sb.append('"').append("Via Roma ").append(1 + casuale.nextInt(200)).append(", ")
+                .append(10000 + casuale.nextInt(90000)).append('"').append(',');
+        sb.append('"').append(CITTA[casuale.nextInt(CITTA.length)]).append('"').append(',');
+        sb.append(PREZZI[casuale.nextInt(PREZZI.length)]).append(',');
+        sb.append('"').append(CUCINE[casuale.nextInt(CUCINE.length)]).append('"').append(',');
+        sb.append(String.format(Locale.ROOT, "%.7f,%.7f,",
+                -180 + casuale.nextDouble() * 360, -60 + casuale.nextDouble() * 130));
+        sb.append("+39 02 ").append(1000000 + casuale.nextInt(9000000)).append(',');
+        sb.append("https://guide.michelin.com/r/").append(indice).append(',');
+        sb.append(casuale.nextInt(4) == 0 ? "" : "https://www.ristorante" + indice + ".it").append(',');
+        sb.append(PREMI[casuale.nextInt(PREMI.length)]).append(',');
+        sb.append(casuale.nextInt(10)).append(',');
+        sb.append('"').append(SERVIZI[casuale.nextInt(SERVIZI.length)]).append('"').append(',');
+        sb.append('"').append("Cucina di stagione, servizio \"\"attento\"\" e una carta dei vini di ")
+                .append(50 + casuale.nextInt(2000)).append(" etichette.").append('"').append(',');
+        sb.append(casuale.nextBoolean() ? "Sì" : "No").append(',');
+        sb.append(casuale.nextBoolean() ? "Sì" : "No");
+        return sb.toString();
+    }
+
+    /**
+     * Scrive un file di catalogo con intestazione e il numero di righe indicato.
+     *
+     * @param file File di destinazione.
+     * @param righe Numero di ristoranti.
+     * @param seme Seme del generatore.
+     * @throws IOException in caso di errore di scrittura.
+     */
+    static void scrivi(Path file, int righe, long seme) throws IOException {
+        Random casuale = new Random(seme);
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write(INTESTAZIONE);
+            w.newLine();
+            for (int i = 0; i < righe; i++) {
+                w.write(riga(casuale, i));
+                w.newLine();
+            }
+        }
+    }
+}
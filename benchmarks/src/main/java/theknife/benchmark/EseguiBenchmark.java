@@ -0,0 +1,29 @@
+package theknife.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Esegue i benchmark con il profiler GC già attivo, così ogni risultato
+ * riporta anche i byte allocati per operazione.
+ * <p>
+ * Uso: {@code java -cp benchmarks/target/benchmarks.jar theknife.benchmark.EseguiBenchmark [regex]}.
+ * Per le opzioni complete di JMH usare invece {@code java -jar benchmarks/target/benchmarks.jar}.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public class EseguiBenchmark {
+
+    public static void main(String[] args) throws RunnerException {
+        Options opzioni = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : "theknife\\.benchmark\\..*")
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opzioni).run();
+    }
+}
@@ -0,0 +1,76 @@
+package theknife.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import theknife.models.Ristorante;
+import theknife.storage.CatalogoCsv;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo per singola riga del catalogo: suddivisione in campi
+ * ({@link CatalogoCsv#parseCSVLine(String)}), pulizia di un campo
+ * ({@link CatalogoCsv#cleanValue(String)}) e creazione completa del
+ * {@link Ristorante}.
+ * <p>
+ * Ogni invocazione elabora una riga, quindi con {@code -prof gc} la metrica
+ * {@code gc.alloc.rate.norm} è direttamente l'allocazione per riga.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParsingRigaBenchmark {
+
+    private static final int RIGHE = 4096; // potenza di due per l'indice circolare
+
+    private String[] righe;
+    private String[] campi;
+    private int indice;
+
+    @Setup
+    public void prepara() {
+        Random casuale = new Random(7L);
+        righe = new String[RIGHE];
+        campi = new String[RIGHE];
+        for (int i = 0; i < RIGHE; i++) {
+            righe[i] = CatalogoSintetico.riga(casuale, i);
+            String[] valori = CatalogoCsv.parseCSVLine(righe[i]);
+            campi[i] = valori[i % valori.length];
+        }
+    }
+
+    private int prossimo() {
+        return indice++ & (RIGHE - 1);
+    }
+
+    @Benchmark
+    public String[] parseCSVLine() {
+        return CatalogoCsv.parseCSVLine(righe[prossimo()]);
+    }
+
+    @Benchmark
+    public String cleanValue() {
+        return CatalogoCsv.cleanValue(campi[prossimo()]);
+    }
+
+    @Benchmark
+    public Ristorante creaRistorante() {
+        return CatalogoCsv.creaRistorante(CatalogoCsv.parseCSVLine(righe[prossimo()]));
+    }
+}
@@ -0,0 +1,88 @@
+package theknife.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import theknife.models.Ristorante;
+import theknife.services.RicercaRistoranti;
+import theknife.storage.CatalogoCsv;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Percorsi di ricerca delle viste di esplorazione su cataloghi di 10K,
+ * 100K e 1M ristoranti sintetici: ricerca testuale, filtro su una sola
+ * faccetta, filtro su più faccette insieme, statistiche dell'elenco e
+ * valori distinti per le opzioni dei filtri.
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class RicercaRistorantiBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int righe;
+
+    private List<Ristorante> catalogo;
+    private RicercaRistoranti.Criteri testo;
+    private RicercaRistoranti.Criteri singolaFaccetta;
+    private RicercaRistoranti.Criteri piuFaccette;
+
+    @Setup(Level.Trial)
+    public void prepara() {
+        Random casuale = new Random(42L);
+        catalogo = new ArrayList<>(righe);
+        for (int i = 0; i < righe; i++) {
+            catalogo.add(CatalogoCsv.creaRistorante(CatalogoCsv.parseCSVLine(CatalogoSintetico.riga(casuale, i))));
+        }
+        testo = new RicercaRistoranti.Criteri("ital", null, null, null, null, false, false);
+        singolaFaccetta = new RicercaRistoranti.Criteri("", "Japanese", null, null, null, false, false);
+        piuFaccette = new RicercaRistoranti.Criteri("", "French", "Paris, France", "€€€", "1 Stella", true, false);
+    }
+
+    @Benchmark
+    public List<Ristorante> ricercaTestuale() {
+        return RicercaRistoranti.cerca(catalogo, testo);
+    }
+
+    @Benchmark
+    public List<Ristorante> filtroSingolaFaccetta() {
+        return RicercaRistoranti.cerca(catalogo, singolaFaccetta);
+    }
+
+    @Benchmark
+    public List<Ristorante> filtroPiuFaccette() {
+        return RicercaRistoranti.cerca(catalogo, piuFaccette);
+    }
+
+    @Benchmark
+    public RicercaRistoranti.Statistiche statistiche() {
+        return RicercaRistoranti.calcolaStatistiche(catalogo, null);
+    }
+
+    @Benchmark
+    public void valoriDistinti(Blackhole bh) {
+        bh.consume(RicercaRistoranti.valoriDistinti(catalogo, Ristorante::getCuisine));
+        bh.consume(RicercaRistoranti.valoriDistinti(catalogo, Ristorante::getLocation));
+        bh.consume(RicercaRistoranti.valoriDistinti(catalogo, Ristorante::getPrice));
+    }
+}
@@ -4,11 +4,17 @@ module theknife {
     requires java.desktop;
     requires transitive javafx.graphics;
     requires jbcrypt;
+    requires jdk.jfr;
+    requires jdk.management;
+    requires jdk.httpserver;
 
     exports theknife;
     exports theknife.controllers;
     exports theknife.models;
+    exports theknife.server;
     exports theknife.services;
+    exports theknife.storage;
+    exports theknife.tools;
     exports theknife.utils;
 
     opens theknife.controllers to javafx.fxml;
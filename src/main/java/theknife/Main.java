@@ -13,10 +13,16 @@ import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
 import javafx.stage.Stage;
-import theknife.models.Ristorante;
+import theknife.services.CatalogoRistoranti;
 import theknife.utils.FileManager;
-import java.util.List;
+import theknife.utils.Metriche;
+import theknife.utils.RegistrazioneJfr;
+import theknife.utils.SorveglianzaFx;
+import theknife.utils.ViewFactory;
 
 /**
  * Classe principale dell'applicazione JavaFX "The Knife".
@@ -29,15 +35,6 @@ import java.util.List;
  * @version 1.0
  */
 public class Main extends Application {
-    /**
-     * Lista pubblica di ristoranti caricata all'avvio dell'applicazione.
-     * <p>
-     * Può essere utilizzata dai controller e dai servizi per ottenere i dati dei ristoranti.
-     * </p>
-     * @since 1.0
-     */
-    public static List<Ristorante> ristoranti;
-
     /**
      * Imposta l'icona dell'applicazione sullo stage fornito.
      *
@@ -63,15 +60,28 @@ public class Main extends Application {
     @Override
     public void start(Stage primaryStage) throws Exception {
         // Carica dati iniziali
-        ristoranti = FileManager.caricaRistorantiDaCSV("src/main/resources/data/michelin_my_maps.csv");
+        CatalogoRistoranti.imposta(FileManager.caricaRistoranti());
+        CatalogoRistoranti.preparaIndici();
+
+        // Precarica in background le viste aperte più spesso
+        ViewFactory.precarica();
 
         // Carica la schermata principale
-        Parent root = FXMLLoader.load(getClass().getResource("/views/home.fxml"));
+        Parent root = ViewFactory.caricaFxml(new FXMLLoader(getClass().getResource("/views/home.fxml")));
 
         // Crea la scena e applica il CSS
         Scene scene = new Scene(root, 1400, 900);
         scene.getStylesheets().add(getClass().getResource("/styles/main.css").toExternalForm());
 
+        // Ctrl+Maiusc+J salva la registrazione JFR (se attiva), fuori dal thread dell'interfaccia
+        scene.getAccelerators().put(
+                new KeyCodeCombination(KeyCode.J, KeyCombination.SHORTCUT_DOWN, KeyCombination.SHIFT_DOWN),
+                () -> {
+                    Thread salvataggio = new Thread(RegistrazioneJfr::salva, "theknife-jfr-salvataggio");
+                    salvataggio.setDaemon(true);
+                    salvataggio.start();
+                });
+
         primaryStage.setTitle("The Knife - Ristoranti Michelin");
 
         // Imposta l'icona della finestra
@@ -81,6 +91,9 @@ public class Main extends Application {
         primaryStage.setMinWidth(1000);
         primaryStage.setMinHeight(700);
         primaryStage.show();
+
+        // Rilevamento dei blocchi del thread FX, se richiesto con -Dtheknife.fx.sorveglianza=<ms>
+        SorveglianzaFx.avviaDaConfigurazione();
     }
 
     /**
@@ -90,6 +103,10 @@ public class Main extends Application {
      * @since 1.0
      */
     public static void main(String[] args) {
+        // Riepilogo periodico delle metriche, se richiesto con -Dtheknife.metriche=<secondi>
+        Metriche.avviaDaConfigurazione();
+        // Registrazione JFR a buffer circolare, se richiesta con -Dtheknife.jfr=true
+        RegistrazioneJfr.avviaDaConfigurazione();
         launch(args);
     }
 }
\ No newline at end of file
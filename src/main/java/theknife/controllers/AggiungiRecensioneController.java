@@ -8,6 +8,8 @@ import javafx.stage.Stage;
 import theknife.models.Recensione;
 import theknife.models.Ristorante;
 import theknife.services.RecensioniManager;
+import theknife.utils.EventBus;
+import theknife.utils.ViewFactory;
 
 import java.net.URL;
 import java.util.List;
@@ -22,7 +24,7 @@ import java.util.ResourceBundle;
  * @author Philip Jon Ji Ciuca
  * @version 1.0
  * */
-public class AggiungiRecensioneController implements Initializable {
+public class AggiungiRecensioneController implements Initializable, ViewFactory.Riutilizzabile {
 
     @FXML
     private Text ristoranteLabel;
@@ -37,9 +39,6 @@ public class AggiungiRecensioneController implements Initializable {
     private List<ToggleButton> stars;
     private Ristorante ristorante;
     private String currentUser;
-    private DettaglioRistoranteController dettaglioParentController;
-    private EsploraRistorantiController esploraParentController;
-    private DashboardClienteController dashboardClienteParentController;
     private int selectedRating = 0;
 
     /**
@@ -102,6 +101,23 @@ public class AggiungiRecensioneController implements Initializable {
         }
     }
 
+    /**
+     * Svuota il form e dimentica ristorante e utente, per il riutilizzo
+     * tramite ViewFactory.
+     * @since 1.0
+     */
+    @Override
+    public void reset() {
+        ristorante = null;
+        currentUser = null;
+        selectedRating = 0;
+        stars.forEach(star -> star.setSelected(false));
+        updateStarDisplay();
+        titoloField.clear();
+        commentoArea.clear();
+        errorLabel.setText("");
+    }
+
     /**
      * Imposta il ristorante per il quale si sta creando la recensione.
      * @param ristorante Oggetto Ristorante, must be non-null.
@@ -121,36 +137,9 @@ public class AggiungiRecensioneController implements Initializable {
         this.currentUser = username;
     }
 
-    /**
-     * Imposta il controller genitore di tipo DettaglioRistoranteController.
-     * @param parentController Controller genitore.
-     * @since 1.0
-     */
-    public void setParentController(DettaglioRistoranteController parentController) {
-        this.dettaglioParentController = parentController;
-    }
-
-    /**
-     * Imposta il controller genitore di tipo EsploraRistorantiController.
-     * @param parentController Controller genitore.
-     * @since 1.0
-     */
-    public void setParentController(EsploraRistorantiController parentController) {
-        this.esploraParentController = parentController;
-    }
-
-    /**
-     * Imposta il controller genitore di tipo DashboardClienteController.
-     * @param parentController Controller genitore.
-     * @since 1.0
-     */
-    public void setParentController(DashboardClienteController parentController) {
-        this.dashboardClienteParentController = parentController;
-    }
-
     /**
      * Gestisce la pubblicazione della recensione: valida i campi, crea
-     * l'oggetto Recensione, lo salva e aggiorna i parent controller.
+     * l'oggetto Recensione, lo salva e notifica le viste aperte tramite EventBus.
      * Mostra messaggi di errore in caso di problemi.
      *
      * @since 1.0
@@ -183,16 +172,8 @@ public class AggiungiRecensioneController implements Initializable {
                     commentoArea.getText().trim());
 
             // Salva la recensione
-            RecensioniManager.aggiungiRecensione(nuovaRecensione); // Aggiorna il parent controller appropriato
-            if (dettaglioParentController != null) {
-                dettaglioParentController.refreshRecensioni();
-            }
-            if (esploraParentController != null) {
-                esploraParentController.refreshView();
-            }
-            if (dashboardClienteParentController != null) {
-                dashboardClienteParentController.refreshData();
-            }
+            RecensioniManager.aggiungiRecensione(nuovaRecensione);
+            EventBus.pubblica(new EventBus.RecensioneAggiunta(nuovaRecensione));
 
             // Chiudi la finestra
             Stage stage = (Stage) titoloField.getScene().getWindow();
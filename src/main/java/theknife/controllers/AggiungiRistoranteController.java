@@ -6,9 +6,13 @@ import javafx.fxml.Initializable;
 import javafx.scene.control.*;
 import javafx.stage.Stage;
 import theknife.models.Ristorante;
+import theknife.services.CatalogoRistoranti;
+import theknife.services.IndiceDuplicati;
+import theknife.utils.EventBus;
 import theknife.utils.FileManager;
 
 import java.net.URL;
+import java.util.List;
 import java.util.ResourceBundle;
 
 /**
@@ -25,6 +29,8 @@ public class AggiungiRistoranteController implements Initializable {
     @FXML
     private TextField nomeField;
     @FXML
+    private Label nomeStatoLabel;
+    @FXML
     private ComboBox<String> cucinaCombo;
     @FXML
     private ComboBox<String> prezzoCombo;
@@ -58,7 +64,7 @@ public class AggiungiRistoranteController implements Initializable {
     private Label successLabel;
 
     private String currentUser; // Username del ristoratore
-    private DashboardRistoratoreController parentController;
+    private String duplicatiConfermati; // nome e coordinate per cui l'utente ha confermato l'inserimento
 
     /**
      * Inizializza i controlli UI e aggiunge listener per la validazione dei campi.
@@ -96,6 +102,11 @@ public class AggiungiRistoranteController implements Initializable {
             }
         });
 
+        // Segnala subito i nomi già presenti: la verifica usa l'indice in memoria del catalogo
+        nomeField.textProperty().addListener((observable, oldValue, newValue) ->
+                nomeStatoLabel.setText(FileManager.esisteRistorante(newValue)
+                        ? "Esiste già un ristorante con questo nome" : ""));
+
         // Aggiungi listener per il telefono (solo numeri, spazi, +, -, ())
         telefonoField.textProperty().addListener((observable, oldValue, newValue) -> {
             if (!newValue.matches("[\\d\\s\\+\\-\\(\\)]*")) {
@@ -114,19 +125,9 @@ public class AggiungiRistoranteController implements Initializable {
         this.currentUser = username;
     }
 
-    /**
-     * Imposta il controller genitore (dashboard ristoratore) per aggiornamenti.
-     *
-     * @param parentController Controller genitore.
-     * @since 1.0
-     */
-    public void setParentController(DashboardRistoratoreController parentController) {
-        this.parentController = parentController;
-    }
-
     /**
      * Gestisce il salvataggio del nuovo ristorante dopo la validazione dei campi.
-     * Crea l'oggetto Ristorante, lo salva via FileManager e aggiorna il parent.
+     * Crea l'oggetto Ristorante, lo salva via FileManager e notifica le viste tramite EventBus.
      * Mostra messaggi di errore in caso di problemi.
      *
      * @since 1.0
@@ -169,14 +170,12 @@ public class AggiungiRistoranteController implements Initializable {
 
             if (salvato) {
                 // Aggiorna anche la lista in memoria dell'applicazione
-                theknife.Main.ristoranti.add(nuovoRistorante);
+                CatalogoRistoranti.aggiungi(nuovoRistorante);
 
                 successLabel.setText("✅ Ristorante aggiunto con successo! Sarà visibile nel sistema.");
 
-                // Aggiorna il dashboard del parent se presente
-                if (parentController != null) {
-                    parentController.refreshData();
-                }
+                // Notifica le viste aperte (dashboard, esplorazione)
+                EventBus.pubblica(new EventBus.RistoranteAggiunto(nuovoRistorante));
 
                 // Chiudi la finestra dopo 2 secondi
                 new Thread(() -> {
@@ -275,7 +274,41 @@ public class AggiungiRistoranteController implements Initializable {
             return false;
         }
 
-        return true;
+        return verificaDuplicati();
+    }
+
+    /**
+     * Segnala i ristoranti già presenti nello stesso punto con un nome simile.
+     * Alla prima pressione di Salva mostra l'avviso; una seconda pressione
+     * con gli stessi dati conferma l'inserimento.
+     *
+     * @return true se non ci sono probabili duplicati o l'utente ha confermato.
+     * @since 1.0
+     */
+    private boolean verificaDuplicati() {
+        String nome = nomeField.getText().trim();
+        double lat = Double.parseDouble(latitudineField.getText().trim());
+        double lon = Double.parseDouble(longitudineField.getText().trim());
+
+        List<Ristorante> duplicati = CatalogoRistoranti.possibiliDuplicati(nome, lat, lon);
+        if (duplicati.isEmpty()) {
+            return true;
+        }
+
+        String chiave = nome + "|" + lat + "|" + lon;
+        if (chiave.equals(duplicatiConfermati)) {
+            return true;
+        }
+        duplicatiConfermati = chiave;
+
+        StringBuilder avviso = new StringBuilder("⚠️ Possibile duplicato, a meno di "
+                + (int) IndiceDuplicati.RAGGIO_METRI + " m esiste già:\n");
+        for (Ristorante r : duplicati) {
+            avviso.append("• ").append(r.getName()).append(" - ").append(r.getAddress()).append("\n");
+        }
+        avviso.append("Premi di nuovo Salva per inserirlo comunque.");
+        errorLabel.setText(avviso.toString());
+        return false;
     }
 
     /**
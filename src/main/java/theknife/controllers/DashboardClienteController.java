@@ -3,21 +3,18 @@ package theknife.controllers;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.scene.control.*;
-import javafx.scene.layout.HBox;
-import javafx.scene.layout.VBox;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
-import theknife.Main;
 import theknife.models.Recensione;
 import theknife.models.Ristorante;
 import theknife.models.Utente;
+import theknife.services.CatalogoRistoranti;
 import theknife.services.RecensioniManager;
 import theknife.services.PreferitiManager;
+import theknife.utils.EventBus;
+import theknife.utils.ViewFactory;
 
 import java.io.IOException;
 import java.net.URL;
@@ -58,6 +55,9 @@ public class DashboardClienteController implements Initializable {
     public void initialize(URL location, ResourceBundle resources) {
         setupRecensioniListView();
         setupPreferitiListView();
+
+        EventBus.iscrivi(this, EventBus.RecensioneAggiunta.class, DashboardClienteController::onRecensioniAggiunte);
+        EventBus.iscrivi(this, EventBus.PreferitoModificato.class, DashboardClienteController::onPreferitiModificati);
     }
 
     public void setCurrentUser(Utente user) {
@@ -70,34 +70,8 @@ public class DashboardClienteController implements Initializable {
      * @since 1.0
      */
     private void setupRecensioniListView() {
-        // Configura la ListView per le recensioni
-        recensioniListView.setCellFactory(listView -> new ListCell<>() {
-            @Override
-            protected void updateItem(Recensione recensione, boolean empty) {
-                super.updateItem(recensione, empty);
-                if (empty || recensione == null) {
-                    setGraphic(null);
-                } else {
-                    VBox card = createRecensioneCard(recensione);
-                    card.setOnMouseClicked(event -> apriDettaglioRistorante(recensione.getNomeRistorante()));
-                    setGraphic(card);
-                }
-            }
-        });
-
-        // Configura la ListView per i preferiti
-        preferitiListView.setCellFactory(listView -> new ListCell<>() {
-            @Override
-            protected void updateItem(Ristorante ristorante, boolean empty) {
-                super.updateItem(ristorante, empty);
-                if (empty || ristorante == null) {
-                    setGraphic(null);
-                } else {
-                    VBox card = createRistoranteCard(ristorante);
-                    setGraphic(card);
-                }
-            }
-        });
+        recensioniListView.setCellFactory(listView -> new RecensioneListCell(RecensioneListCell.Variante.CLIENTE,
+                recensione -> apriDettaglioRistorante(recensione.getNomeRistorante()), null));
     }
 
     /**
@@ -105,19 +79,12 @@ public class DashboardClienteController implements Initializable {
      * @since 1.0
      */
     private void setupPreferitiListView() {
-        // Configura la ListView per i preferiti
-        preferitiListView.setCellFactory(listView2 -> new ListCell<Ristorante>() {
-            @Override
-            protected void updateItem(Ristorante ristorante, boolean empty) {
-                super.updateItem(ristorante, empty);
-                if (empty || ristorante == null) {
-                    setGraphic(null);
-                } else {
-                    VBox card = createRistoranteCard(ristorante);
-                    setGraphic(card);
-                }
-            }
-        });
+        preferitiListView.setCellFactory(listView -> RistoranteListCell.preferito(
+                ristorante -> apriDettaglioRistorante(ristorante.getName()),
+                ristorante -> {
+                    PreferitiManager.rimuoviPreferito(currentUser.getUsername(), ristorante.getName());
+                    EventBus.pubblica(new EventBus.PreferitoModificato(currentUser.getUsername(), ristorante, false));
+                }));
     }
 
     /**
@@ -140,6 +107,18 @@ public class DashboardClienteController implements Initializable {
         ObservableList<Ristorante> preferitiObsList = FXCollections.observableArrayList(preferiti);
         preferitiListView.setItems(preferitiObsList);
 
+        updateRiepilogo();
+    }
+
+    /**
+     * Aggiorna statistiche ed etichette delle liste vuote a partire dalle
+     * liste attualmente mostrate.
+     * @since 1.0
+     */
+    private void updateRiepilogo() {
+        List<Recensione> recensioni = recensioniListView.getItems();
+        List<Ristorante> preferiti = preferitiListView.getItems();
+
         // Aggiorna statistiche
         updateStatistiche(recensioni, preferiti);
 
@@ -148,6 +127,57 @@ public class DashboardClienteController implements Initializable {
         nessunPreferitoLabel.setVisible(preferiti.isEmpty());
     }
 
+    /**
+     * Aggiunge in testa alla lista le nuove recensioni scritte dall'utente corrente.
+     *
+     * @param eventi Recensioni pubblicate dall'ultimo aggiornamento.
+     * @since 1.0
+     */
+    private void onRecensioniAggiunte(List<EventBus.RecensioneAggiunta> eventi) {
+        if (currentUser == null)
+            return;
+
+        boolean modificato = false;
+        for (EventBus.RecensioneAggiunta evento : eventi) {
+            Recensione recensione = evento.getRecensione();
+            if (recensione.getUsernameCliente().equals(currentUser.getUsername())) {
+                recensioniListView.getItems().add(0, recensione);
+                modificato = true;
+            }
+        }
+        if (modificato) {
+            updateRiepilogo();
+        }
+    }
+
+    /**
+     * Applica alla lista dei preferiti le aggiunte e rimozioni dell'utente corrente.
+     *
+     * @param eventi Modifiche ai preferiti dall'ultimo aggiornamento.
+     * @since 1.0
+     */
+    private void onPreferitiModificati(List<EventBus.PreferitoModificato> eventi) {
+        if (currentUser == null)
+            return;
+
+        ObservableList<Ristorante> preferiti = preferitiListView.getItems();
+        boolean modificato = false;
+        for (EventBus.PreferitoModificato evento : eventi) {
+            if (!evento.getUsername().equals(currentUser.getUsername()))
+                continue;
+
+            String nome = evento.getRistorante().getName();
+            preferiti.removeIf(r -> r.getName().equals(nome));
+            if (evento.isAggiunto()) {
+                preferiti.add(evento.getRistorante());
+            }
+            modificato = true;
+        }
+        if (modificato) {
+            updateRiepilogo();
+        }
+    }
+
     /**
      * Aggiorna le statistiche (numero recensioni, media valutazioni, preferiti).
      * @param recensioni Lista delle recensioni dell'utente.
@@ -171,111 +201,6 @@ public class DashboardClienteController implements Initializable {
         }
     }
 
-    /**
-     * Crea la card grafica per una recensione da mostrare nella ListView.
-     * @param recensione Oggetto Recensione da visualizzare.
-     * @return VBox contenente la rappresentazione grafica della recensione.
-     * @since 1.0
-     */
-    private VBox createRecensioneCard(Recensione recensione) {
-        VBox card = new VBox(8);
-        card.setStyle("-fx-background-color: white; -fx-border-color: #dee2e6; -fx-border-radius: 8; " +
-                "-fx-padding: 15; -fx-effect: dropshadow(gaussian, rgba(0,0,0,0.1), 4, 0, 0, 2);");
-
-        // Header
-        HBox header = new HBox(10);
-        header.setAlignment(javafx.geometry.Pos.CENTER_LEFT);
-
-        Text ristorante = new Text(recensione.getNomeRistorante());
-        ristorante.setStyle("-fx-font-size: 16; -fx-font-weight: bold;");
-
-        Text stelle = new Text(recensione.getStelle());
-        stelle.setStyle("-fx-font-size: 14; -fx-fill: #f39c12;");
-
-        Text data = new Text(recensione.getDataRecensioneFormatted());
-        data.setStyle("-fx-font-size: 10; -fx-fill: #6c757d;");
-
-        header.getChildren().addAll(ristorante, stelle, data);
-
-        // Titolo
-        Text titolo = new Text(recensione.getTitolo());
-        titolo.setStyle("-fx-font-size: 14; -fx-font-weight: bold;");
-
-        // Commento (troncato)
-        String commentoTroncato = recensione.getCommento().length() > 100
-                ? recensione.getCommento().substring(0, 100) + "..."
-                : recensione.getCommento();
-        Text commento = new Text(commentoTroncato);
-        commento.setStyle("-fx-font-size: 12; -fx-fill: #495057;");
-
-        // Risposta del ristoratore se presente
-        if (recensione.getRisposta() != null) {
-            Text risposta = new Text("💬 Il ristoratore ha risposto");
-            risposta.setStyle("-fx-font-size: 11; -fx-fill: #28a745; -fx-font-style: italic;");
-            card.getChildren().addAll(header, titolo, commento, risposta);
-        } else {
-            card.getChildren().addAll(header, titolo, commento);
-        } // Click per aprire dettagli
-        card.setOnMouseClicked(event -> apriDettaglioRistorante(recensione.getNomeRistorante()));
-        card.setStyle(card.getStyle() + "-fx-cursor: hand;");
-
-        return card;
-    }
-
-    /**
-     * Crea la card grafica per un ristorante da mostrare nella lista dei preferiti.
-     * @param ristorante Oggetto Ristorante da visualizzare.
-     * @return VBox contenente la rappresentazione grafica del ristorante.
-     * @since 1.0
-     */
-    private VBox createRistoranteCard(Ristorante ristorante) {
-        VBox card = new VBox(8);
-        card.setStyle("-fx-background-color: white; -fx-border-color: #dee2e6; -fx-border-radius: 8; " +
-                "-fx-padding: 15; -fx-effect: dropshadow(gaussian, rgba(0,0,0,0.1), 4, 0, 0, 2);");
-
-        // Nome e cucina
-        Text nome = new Text(ristorante.getName());
-        nome.setStyle("-fx-font-size: 16; -fx-font-weight: bold;");
-
-        Text cucina = new Text(ristorante.getCuisine());
-        cucina.setStyle("-fx-font-size: 12; -fx-fill: #6c757d;");
-
-        // Stelle Michelin
-        HBox stelleBox = new HBox(5);
-        if (ristorante.getStars() > 0) {
-            Text stelle = new Text("★".repeat(ristorante.getStars()) + " Michelin");
-            stelle.setStyle("-fx-font-size: 12; -fx-fill: #f39c12;");
-            stelleBox.getChildren().add(stelle);
-        }
-
-        if (ristorante.getGreenStar() != null && !ristorante.getGreenStar().trim().isEmpty()
-                && !ristorante.getGreenStar().equalsIgnoreCase("N/A")) {
-            Text greenStar = new Text("🌟 Green Star");
-            greenStar.setStyle("-fx-font-size: 12; -fx-fill: #27ae60;");
-            stelleBox.getChildren().add(greenStar);
-        }
-
-        // Località e prezzo
-        Text localita = new Text(ristorante.getLocation());
-        localita.setStyle("-fx-font-size: 12; -fx-fill: #495057;");
-
-        Text prezzo = new Text(ristorante.getPrice() != null ? ristorante.getPrice() : "N/A");
-        prezzo.setStyle("-fx-font-size: 12; -fx-fill: #e74c3c; -fx-font-weight: bold;");
-
-        Button rimuoviBtn = new Button("❤️ Rimuovi");
-        rimuoviBtn.setStyle("-fx-background-color: #e74c3c; -fx-text-fill: white; -fx-font-size: 10;");
-        rimuoviBtn.setOnAction(event -> {
-            PreferitiManager.rimuoviPreferito(currentUser.getUsername(), ristorante.getName());
-            loadUserData(); // Ricarica i dati
-        });
-
-        card.getChildren().addAll(nome, cucina, stelleBox, localita, prezzo, rimuoviBtn); // Click per aprire dettagli
-        card.setOnMouseClicked(event -> apriDettaglioRistorante(ristorante.getName()));
-        card.setStyle(card.getStyle() + "-fx-cursor: hand;");
-
-        return card;
-    }
-
     /**
      * Apre la finestra di esplorazione ristoranti passando l'utente corrente.
      * @since 1.0
@@ -283,12 +208,10 @@ public class DashboardClienteController implements Initializable {
     @FXML
     private void handleEsploraRistoranti() {
         try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/views/esploraRistoranti.fxml"));
-            Parent root = loader.load();
-
-            EsploraRistorantiController controller = loader.getController();
+            ViewFactory.VistaCaricata<EsploraRistorantiController> vista =
+                    ViewFactory.acquisisci(ViewFactory.Vista.ESPLORA_RISTORANTI);
+            EsploraRistorantiController controller = vista.getController();
             controller.setCurrentUser(currentUser);
-            controller.setParentController(this);
 
             Stage stage = new Stage();
             stage.setTitle("Esplora Ristoranti - The Knife");
@@ -296,7 +219,7 @@ public class DashboardClienteController implements Initializable {
             // Imposta l'icona della finestra
             theknife.Main.setApplicationIcon(stage);
 
-            stage.setScene(new Scene(root, 1000, 800));
+            stage.setScene(vista.creaScena(1000, 800));
             stage.show();
 
         } catch (IOException e) {
@@ -311,19 +234,18 @@ public class DashboardClienteController implements Initializable {
      */
     private void apriDettaglioRistorante(String nomeRistorante) {
         // Trova il ristorante
-        Ristorante ristorante = Main.ristoranti.stream()
+        Ristorante ristorante = CatalogoRistoranti.getRistoranti().stream()
                 .filter(r -> r.getName().equals(nomeRistorante))
                 .findFirst()
                 .orElse(null);
 
         if (ristorante != null) {
             try {
-                FXMLLoader loader = new FXMLLoader(getClass().getResource("/views/dettaglioRistorante.fxml"));
-                Parent root = loader.load();
-                DettaglioRistoranteController controller = loader.getController();
+                ViewFactory.VistaCaricata<DettaglioRistoranteController> vista =
+                        ViewFactory.acquisisci(ViewFactory.Vista.DETTAGLIO_RISTORANTE);
+                DettaglioRistoranteController controller = vista.getController();
                 controller.setRistorante(ristorante);
                 controller.setCurrentUser(currentUser.getUsername());
-                controller.setDashboardClienteParentController(this);
 
                 Stage stage = new Stage();
                 stage.setTitle("Dettaglio Ristorante - " + ristorante.getName());
@@ -331,7 +253,7 @@ public class DashboardClienteController implements Initializable {
                 // Imposta l'icona della finestra
                 theknife.Main.setApplicationIcon(stage);
 
-                stage.setScene(new Scene(root, 900, 700));
+                stage.setScene(vista.creaScena(900, 700));
                 stage.show();
             } catch (IOException e) {
                 e.printStackTrace();
@@ -339,11 +261,4 @@ public class DashboardClienteController implements Initializable {
         }
     }
 
-    /**
-     * Ricarica i dati del dashboard (usato come callback dai child controllers).
-     * @since 1.0
-     */
-    public void refreshData() {
-        loadUserData();
-    }
 }
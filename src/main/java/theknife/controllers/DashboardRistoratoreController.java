@@ -8,8 +8,6 @@ import javafx.fxml.Initializable;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
-import javafx.scene.layout.HBox;
-import javafx.scene.layout.VBox;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
 import theknife.models.Recensione;
@@ -17,10 +15,15 @@ import theknife.models.Ristorante;
 import theknife.models.Utente;
 import theknife.services.RecensioniManager;
 import theknife.services.RistorantiManager;
+import theknife.utils.EventBus;
+import theknife.utils.ViewFactory;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.stream.Collectors;
 
@@ -60,6 +63,8 @@ public class DashboardRistoratoreController implements Initializable {
 
     private Utente currentUser;
     private List<Recensione> tutteRecensioni;
+    // Testo delle statistiche recensioni per nome del ristorante, letto dalle celle
+    private final Map<String, String> statisticheRistoranti = new HashMap<>();
 
     /**
      * Inizializza il controller impostando le ListView e le configurazioni iniziali.
@@ -72,6 +77,9 @@ public class DashboardRistoratoreController implements Initializable {
     public void initialize(URL location, ResourceBundle resources) {
         setupRistorantiListView();
         setupRecensioniListView();
+
+        EventBus.iscrivi(this, EventBus.RistoranteAggiunto.class, DashboardRistoratoreController::onRistorantiAggiunti);
+        EventBus.iscrivi(this, EventBus.RecensioneAggiunta.class, DashboardRistoratoreController::onRecensioniAggiunte);
     }
 
     /**
@@ -90,18 +98,16 @@ public class DashboardRistoratoreController implements Initializable {
      * @since 1.0
      */
     private void setupRistorantiListView() {
-        ristorantiListView.setCellFactory(listView -> new ListCell<Ristorante>() {
-            @Override
-            protected void updateItem(Ristorante ristorante, boolean empty) {
-                super.updateItem(ristorante, empty);
-                if (empty || ristorante == null) {
-                    setGraphic(null);
-                } else {
-                    VBox card = createRistoranteCard(ristorante);
-                    setGraphic(card);
-                }
-            }
-        });
+        ristorantiListView.setCellFactory(listView -> RistoranteListCell.ristoratore(
+                this::apriDettaglioRistorante,
+                ristorante -> {
+                    // Cambia alla tab delle recensioni (indice 1)
+                    tabPane.getSelectionModel().select(1);
+                    // Filtra per il ristorante specifico
+                    filtroRistoranteCombo.setValue(ristorante.getName());
+                    handleFiltroRistorante();
+                },
+                ristorante -> statisticheRistoranti.getOrDefault(ristorante.getName(), "")));
     }
 
     /**
@@ -109,18 +115,8 @@ public class DashboardRistoratoreController implements Initializable {
      * @since 1.0
      */
     private void setupRecensioniListView() {
-        recensioniListView.setCellFactory(listView -> new ListCell<Recensione>() {
-            @Override
-            protected void updateItem(Recensione recensione, boolean empty) {
-                super.updateItem(recensione, empty);
-                if (empty || recensione == null) {
-                    setGraphic(null);
-                } else {
-                    VBox card = createRecensioneCardRistoratore(recensione);
-                    setGraphic(card);
-                }
-            }
-        });
+        recensioniListView.setCellFactory(listView -> new RecensioneListCell(RecensioneListCell.Variante.RISTORATORE,
+                null, this::apriFinstraRisposta));
     }
 
     /**
@@ -139,7 +135,7 @@ public class DashboardRistoratoreController implements Initializable {
         ristorantiListView.setItems(ristorantiList);
 
         // Carica recensioni per tutti i ristoranti del ristoratore
-        tutteRecensioni = RecensioniManager.getRecensioniPerRistoratore(currentUser.getUsername());
+        tutteRecensioni = new ArrayList<>(RecensioniManager.getRecensioniPerRistoratore(currentUser.getUsername()));
         ObservableList<Recensione> recensioniList = FXCollections.observableArrayList(tutteRecensioni);
         recensioniListView.setItems(recensioniList);
 
@@ -149,14 +145,104 @@ public class DashboardRistoratoreController implements Initializable {
                 .collect(Collectors.toList());
         filtroRistoranteCombo.setItems(FXCollections.observableArrayList(nomiRistoranti));
 
+        updateRiepilogo();
+    }
+
+    /**
+     * Aggiorna statistiche ed etichette delle liste vuote a partire dai
+     * ristoranti mostrati e da tutte le recensioni ricevute.
+     * @since 1.0
+     */
+    private void updateRiepilogo() {
+        List<Ristorante> ristoranti = ristorantiListView.getItems();
+
         // Aggiorna statistiche
         updateStatistiche(ristoranti, tutteRecensioni);
+        updateStatisticheRistoranti(ristoranti);
 
         // Mostra/nascondi labels per liste vuote
         nessunRistoranteLabel.setVisible(ristoranti.isEmpty());
         nessueRecensioniRistoratoreLabel.setVisible(tutteRecensioni.isEmpty());
     }
 
+    /**
+     * Aggiunge alla lista i nuovi ristoranti del ristoratore corrente.
+     *
+     * @param eventi Ristoranti aggiunti dall'ultimo aggiornamento.
+     * @since 1.0
+     */
+    private void onRistorantiAggiunti(List<EventBus.RistoranteAggiunto> eventi) {
+        if (currentUser == null)
+            return;
+
+        boolean modificato = false;
+        for (EventBus.RistoranteAggiunto evento : eventi) {
+            Ristorante ristorante = evento.getRistorante();
+            if (currentUser.getUsername().equals(ristorante.getProprietario())) {
+                ristorantiListView.getItems().add(ristorante);
+                filtroRistoranteCombo.getItems().add(ristorante.getName());
+                modificato = true;
+            }
+        }
+        if (modificato) {
+            updateRiepilogo();
+        }
+    }
+
+    /**
+     * Aggiunge le nuove recensioni ricevute dai ristoranti del ristoratore,
+     * rispettando il filtro per ristorante attivo.
+     *
+     * @param eventi Recensioni pubblicate dall'ultimo aggiornamento.
+     * @since 1.0
+     */
+    private void onRecensioniAggiunte(List<EventBus.RecensioneAggiunta> eventi) {
+        if (currentUser == null)
+            return;
+
+        String filtro = filtroRistoranteCombo.getValue();
+        boolean modificato = false;
+        for (EventBus.RecensioneAggiunta evento : eventi) {
+            Recensione recensione = evento.getRecensione();
+            String nome = recensione.getNomeRistorante();
+            if (!filtroRistoranteCombo.getItems().contains(nome))
+                continue;
+
+            tutteRecensioni.add(0, recensione);
+            if (filtro == null || filtro.isEmpty() || filtro.equals(nome)) {
+                recensioniListView.getItems().add(0, recensione);
+            }
+            modificato = true;
+        }
+        if (modificato) {
+            updateRiepilogo();
+        }
+    }
+
+    /**
+     * Ricalcola in un solo passaggio sulle recensioni il testo delle
+     * statistiche di ogni ristorante e aggiorna le celle visibili.
+     *
+     * @param ristoranti Ristoranti mostrati.
+     * @since 1.0
+     */
+    private void updateStatisticheRistoranti(List<Ristorante> ristoranti) {
+        Map<String, int[]> conteggi = new HashMap<>(); // nome -> {numero, somma valutazioni}
+        for (Recensione r : tutteRecensioni) {
+            int[] c = conteggi.computeIfAbsent(r.getNomeRistorante(), k -> new int[2]);
+            c[0]++;
+            c[1] += r.getValutazione();
+        }
+
+        statisticheRistoranti.clear();
+        for (Ristorante r : ristoranti) {
+            int[] c = conteggi.getOrDefault(r.getName(), new int[2]);
+            double media = c[0] == 0 ? 0.0 : (double) c[1] / c[0];
+            statisticheRistoranti.put(r.getName(), String.format("📊 %d recensioni (Media: %.1f)", c[0], media));
+        }
+        ristorantiListView.refresh();
+    }
+
     /**
      * Aggiorna le statistiche del ristoratore: numero ristoranti, recensioni, media e risposte mancanti.
      *
@@ -188,145 +274,6 @@ public class DashboardRistoratoreController implements Initializable {
         risposteDaInviareLabel.setText(String.valueOf(risposteDaInviare));
     }
 
-    /**
-     * Crea la card grafica per un ristorante.
-     * @param ristorante Ristorante da visualizzare.
-     * @return VBox con la rappresentazione grafica.
-     * @since 1.0
-     */
-    private VBox createRistoranteCard(Ristorante ristorante) {
-        VBox card = new VBox(10);
-        card.setStyle("-fx-background-color: white; -fx-border-color: #dee2e6; -fx-border-radius: 8; " +
-                "-fx-padding: 15; -fx-effect: dropshadow(gaussian, rgba(0,0,0,0.1), 4, 0, 0, 2);");
-
-        // Header
-        HBox header = new HBox(10);
-        header.setAlignment(javafx.geometry.Pos.CENTER_LEFT);
-
-        Text nome = new Text(ristorante.getName());
-        nome.setStyle("-fx-font-size: 18; -fx-font-weight: bold;");
-
-        Text cucina = new Text(ristorante.getCuisine());
-        cucina.setStyle("-fx-font-size: 12; -fx-fill: #6c757d;");
-
-        header.getChildren().addAll(nome, cucina);
-
-        // Info ristorante
-        Text localita = new Text("📍 " + ristorante.getLocation());
-        localita.setStyle("-fx-font-size: 12; -fx-fill: #495057;");
-
-        Text telefono = new Text("📞 " + ristorante.getPhoneNumber());
-        telefono.setStyle("-fx-font-size: 12; -fx-fill: #495057;");
-
-        // Stelle Michelin
-        HBox stelleBox = new HBox(10);
-        if (ristorante.getStars() > 0) {
-            Text stelle = new Text("★".repeat(ristorante.getStars()) + " Michelin");
-            stelle.setStyle("-fx-font-size: 12; -fx-fill: #f39c12; -fx-font-weight: bold;");
-            stelleBox.getChildren().add(stelle);
-        }
-
-        if (ristorante.hasGreenStar()) {
-            Text greenStar = new Text("🌟 Green Star");
-            greenStar.setStyle("-fx-font-size: 12; -fx-fill: #27ae60; -fx-font-weight: bold;");
-            stelleBox.getChildren().add(greenStar);
-        }
-
-        // Statistiche recensioni per questo ristorante
-        List<Recensione> recensioniRistorante = RecensioniManager.getRecensioniPerRistorante(ristorante.getName());
-        double media = RecensioniManager.getMediaValutazioni(ristorante.getName());
-
-        Text statsRecensioni = new Text(String.format("📊 %d recensioni (Media: %.1f)",
-                recensioniRistorante.size(), media));
-        statsRecensioni.setStyle("-fx-font-size: 11; -fx-fill: #28a745;");
-
-        // Pulsanti azione
-        HBox buttonsBox = new HBox(10);
-        Button visualizzaBtn = new Button("Visualizza Dettagli");
-        visualizzaBtn.setStyle("-fx-background-color: #3498db; -fx-text-fill: white; -fx-font-size: 10;");
-        visualizzaBtn.setOnAction(event -> apriDettaglioRistorante(ristorante));
-
-        Button recensioniBtn = new Button("Vedi Recensioni");
-        recensioniBtn.setStyle("-fx-background-color: #f39c12; -fx-text-fill: white; -fx-font-size: 10;");
-        recensioniBtn.setOnAction(event -> {
-            // Cambia alla tab delle recensioni (indice 1)
-            tabPane.getSelectionModel().select(1);
-            // Filtra per il ristorante specifico
-            filtroRistoranteCombo.setValue(ristorante.getName());
-            handleFiltroRistorante();
-        });
-
-        buttonsBox.getChildren().addAll(visualizzaBtn, recensioniBtn);
-
-        card.getChildren().addAll(header, localita, telefono, stelleBox, statsRecensioni, buttonsBox);
-        return card;
-    }
-
-    /**
-     * Crea la card grafica per una recensione destinata al ristoratore.
-     * @param recensione Recensione da visualizzare.
-     * @return VBox con la rappresentazione grafica.
-     * @since 1.0
-     */
-    private VBox createRecensioneCardRistoratore(Recensione recensione) {
-        VBox card = new VBox(8);
-        card.setStyle("-fx-background-color: white; -fx-border-color: #dee2e6; -fx-border-radius: 8; " +
-                "-fx-padding: 15; -fx-effect: dropshadow(gaussian, rgba(0,0,0,0.1), 4, 0, 0, 2);");
-
-        // Header
-        HBox header = new HBox(10);
-        header.setAlignment(javafx.geometry.Pos.CENTER_LEFT);
-
-        Text ristorante = new Text(recensione.getNomeRistorante());
-        ristorante.setStyle("-fx-font-size: 16; -fx-font-weight: bold;");
-
-        Text stelle = new Text(recensione.getStelle());
-        stelle.setStyle("-fx-font-size: 14; -fx-fill: #f39c12;");
-
-        Text cliente = new Text("di " + recensione.getUsernameCliente());
-        cliente.setStyle("-fx-font-size: 12; -fx-fill: #6c757d;");
-
-        Text data = new Text(recensione.getDataRecensioneFormatted());
-        data.setStyle("-fx-font-size: 10; -fx-fill: #6c757d;");
-
-        header.getChildren().addAll(ristorante, stelle, cliente, data);
-
-        // Titolo
-        Text titolo = new Text(recensione.getTitolo());
-        titolo.setStyle("-fx-font-size: 14; -fx-font-weight: bold;");
-
-        // Commento
-        Text commento = new Text(recensione.getCommento());
-        commento.setStyle("-fx-font-size: 12; -fx-fill: #495057;");
-        commento.setWrappingWidth(500);
-
-        card.getChildren().addAll(header, titolo, commento);
-
-        // Risposta o pulsante per rispondere
-        if (recensione.getRisposta() != null) {
-            VBox rispostaBox = new VBox(5);
-            rispostaBox.setStyle("-fx-background-color: #e8f5e8; -fx-padding: 10; -fx-border-radius: 5;");
-
-            Text rispostaHeader = new Text("✅ La tua risposta (" +
-                    recensione.getRisposta().getDataRispostaFormatted() + "):");
-            rispostaHeader.setStyle("-fx-font-size: 11; -fx-font-weight: bold; -fx-fill: #2e7d32;");
-
-            Text rispostaTesto = new Text(recensione.getRisposta().getTesto());
-            rispostaTesto.setStyle("-fx-font-size: 11; -fx-fill: #2e7d32;");
-            rispostaTesto.setWrappingWidth(480);
-
-            rispostaBox.getChildren().addAll(rispostaHeader, rispostaTesto);
-            card.getChildren().add(rispostaBox);
-        } else {
-            Button rispondiBtn = new Button("💬 Rispondi alla Recensione");
-            rispondiBtn.setStyle("-fx-background-color: #27ae60; -fx-text-fill: white; -fx-font-size: 11;");
-            rispondiBtn.setOnAction(event -> apriFinstraRisposta(recensione));
-            card.getChildren().add(rispondiBtn);
-        }
-
-        return card;
-    }
-
     /**
      * Apre la finestra per aggiungere un nuovo ristorante.
      * @since 1.0
@@ -336,12 +283,11 @@ public class DashboardRistoratoreController implements Initializable {
         try {
             // Carica la finestra per aggiungere un nuovo ristorante
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/views/aggiungiRistorante.fxml"));
-            Parent root = loader.load();
+            Parent root = ViewFactory.caricaFxml(loader);
 
             // Ottieni il controller e imposta i dati necessari
             AggiungiRistoranteController controller = loader.getController();
             controller.setCurrentUser(currentUser.getUsername());
-            controller.setParentController(this);
 
             // Crea e mostra la finestra modale
             Stage stage = new Stage();
@@ -400,10 +346,9 @@ public class DashboardRistoratoreController implements Initializable {
      */
     private void apriDettaglioRistorante(Ristorante ristorante) {
         try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/views/dettaglioRistorante.fxml"));
-            Parent root = loader.load();
-
-            DettaglioRistoranteController controller = loader.getController();
+            ViewFactory.VistaCaricata<DettaglioRistoranteController> vista =
+                    ViewFactory.acquisisci(ViewFactory.Vista.DETTAGLIO_RISTORANTE);
+            DettaglioRistoranteController controller = vista.getController();
             controller.setRistorante(ristorante);
             controller.setCurrentUser(currentUser.getUsername());
 
@@ -413,7 +358,7 @@ public class DashboardRistoratoreController implements Initializable {
             // Imposta l'icona della finestra
             theknife.Main.setApplicationIcon(stage);
 
-            stage.setScene(new Scene(root, 900, 700));
+            stage.setScene(vista.creaScena(900, 700));
             stage.show();
         } catch (IOException e) {
             e.printStackTrace();
@@ -428,7 +373,7 @@ public class DashboardRistoratoreController implements Initializable {
     private void apriFinstraRisposta(Recensione recensione) {
         try {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/views/rispondiRecensione.fxml"));
-            Parent root = loader.load();
+            Parent root = ViewFactory.caricaFxml(loader);
 
             RispondiRecensioneController controller = loader.getController();
             controller.setRecensione(recensione);
@@ -4,19 +4,22 @@ import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
-import javafx.scene.Parent;
+import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
-import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
 import theknife.models.Recensione;
 import theknife.models.Ristorante;
+import theknife.services.CatalogoRistoranti;
+import theknife.services.IndiceSpaziale;
 import theknife.services.PreferitiManager;
 import theknife.services.RecensioniManager;
+import theknife.utils.EventBus;
+import theknife.utils.ViewFactory;
 
 import java.awt.Desktop;
 import java.io.IOException;
@@ -37,7 +40,7 @@ import java.util.ResourceBundle;
  * @author Philip Jon Ji Ciuca
  * @version 1.0
  */
-public class DettaglioRistoranteController implements Initializable {
+public class DettaglioRistoranteController implements Initializable, ViewFactory.Preparabile, ViewFactory.Riutilizzabile {
 
     @FXML
     private Text nameLabel;
@@ -87,7 +90,7 @@ public class DettaglioRistoranteController implements Initializable {
     private TextArea facilitiesArea;
     private Ristorante ristorante;
     private String currentUser; // Username dell'utente corrente
-    private DashboardClienteController dashboardClienteParentController;
+    private static final int NUMERO_VICINI = 10; // risultati mostrati da "Vicino a questo ristorante"
 
     /**
      * Inizializza il controller e configura la ListView delle recensioni.
@@ -99,18 +102,19 @@ public class DettaglioRistoranteController implements Initializable {
     @Override
     public void initialize(URL location, ResourceBundle resources) {
         // Configura la ListView per le recensioni
-        recensioniListView.setCellFactory(listView -> new ListCell<Recensione>() {
-            @Override
-            protected void updateItem(Recensione recensione, boolean empty) {
-                super.updateItem(recensione, empty);
-                if (empty || recensione == null) {
-                    setGraphic(null);
-                } else {
-                    VBox card = createRecensioneCard(recensione);
-                    setGraphic(card);
-                }
-            }
-        });
+        recensioniListView.setCellFactory(listView ->
+                new RecensioneListCell(RecensioneListCell.Variante.DETTAGLIO, null, null));
+    }
+
+    /**
+     * Si iscrive agli eventi di recensioni e preferiti; chiamato da
+     * ViewFactory sul JavaFX Application Thread.
+     * @since 1.0
+     */
+    @Override
+    public void prepara() {
+        EventBus.iscrivi(this, EventBus.RecensioneAggiunta.class, DettaglioRistoranteController::onRecensioniAggiunte);
+        EventBus.iscrivi(this, EventBus.PreferitoModificato.class, DettaglioRistoranteController::onPreferitiModificati);
     }
 
     /**
@@ -139,13 +143,17 @@ public class DettaglioRistoranteController implements Initializable {
     }
 
     /**
-     * Imposta il controller parent della dashboard cliente per notifiche.
-     *
-     * @param parentController DashboardClienteController che ha aperto questa vista.
+     * Riporta la vista allo stato iniziale per il riutilizzo tramite ViewFactory.
      * @since 1.0
      */
-    public void setDashboardClienteParentController(DashboardClienteController parentController) {
-        this.dashboardClienteParentController = parentController;
+    @Override
+    public void reset() {
+        ristorante = null;
+        currentUser = null;
+        recensioniListView.setItems(FXCollections.observableArrayList());
+        mediaRecensioniLabel.setText("");
+        websiteLink.setOnAction(null);
+        websiteLink.setDisable(false);
     }
 
     /**
@@ -171,13 +179,27 @@ public class DettaglioRistoranteController implements Initializable {
         ObservableList<Recensione> recensioniList = FXCollections.observableArrayList(recensioni);
         recensioniListView.setItems(recensioniList);
 
+        updateMediaRecensioni();
+    }
+
+    /**
+     * Aggiorna la visibilità della lista e la media delle valutazioni a
+     * partire dalle recensioni attualmente mostrate.
+     * @since 1.0
+     */
+    private void updateMediaRecensioni() {
+        List<Recensione> recensioni = recensioniListView.getItems();
+
         // Mostra/nascondi il messaggio "nessuna recensione"
         boolean hasRecensioni = !recensioni.isEmpty();
         recensioniListView.setVisible(hasRecensioni);
 
         // Aggiorna la media delle valutazioni
         if (hasRecensioni) {
-            double media = RecensioniManager.getMediaValutazioni(ristorante.getName());
+            double media = recensioni.stream()
+                    .mapToInt(Recensione::getValutazione)
+                    .average()
+                    .orElse(0.0);
             String stelle = "★".repeat((int) Math.round(media)) +
                     "☆".repeat(5 - (int) Math.round(media));
             mediaRecensioniLabel.setText(String.format("%s (%.1f/5)", stelle, media));
@@ -187,62 +209,63 @@ public class DettaglioRistoranteController implements Initializable {
     }
 
     /**
-     * Crea la rappresentazione grafica di una recensione per la ListView.
+     * Aggiunge in testa alla lista le nuove recensioni del ristorante mostrato.
      *
-     * @param recensione Recensione da mostrare.
-     * @return VBox contenente la card della recensione.
+     * @param eventi Recensioni pubblicate dall'ultimo aggiornamento.
      * @since 1.0
      */
-    private VBox createRecensioneCard(Recensione recensione) {
-        VBox card = new VBox(8);
-        card.setStyle("-fx-background-color: white; -fx-border-color: #dee2e6; -fx-border-radius: 8; " +
-                "-fx-padding: 12; -fx-effect: dropshadow(gaussian, rgba(0,0,0,0.1), 4, 0, 0, 2);");
-
-        // Header con stelle e utente
-        HBox header = new HBox(10);
-        header.setAlignment(javafx.geometry.Pos.CENTER_LEFT);
-
-        Text stelle = new Text(recensione.getStelle());
-        stelle.setStyle("-fx-font-size: 16; -fx-fill: #f39c12;");
-
-        Text utente = new Text("di " + recensione.getUsernameCliente());
-        utente.setStyle("-fx-font-size: 12; -fx-fill: #6c757d;");
-
-        Text data = new Text(recensione.getDataRecensioneFormatted());
-        data.setStyle("-fx-font-size: 10; -fx-fill: #6c757d;");
-
-        header.getChildren().addAll(stelle, utente, data);
-
-        // Titolo
-        Text titolo = new Text(recensione.getTitolo());
-        titolo.setStyle("-fx-font-size: 14; -fx-font-weight: bold;");
-
-        // Commento
-        Text commento = new Text(recensione.getCommento());
-        commento.setStyle("-fx-font-size: 12;");
-        commento.setWrappingWidth(400);
-
-        card.getChildren().addAll(header, titolo, commento);
+    private void onRecensioniAggiunte(List<EventBus.RecensioneAggiunta> eventi) {
+        if (ristorante == null)
+            return;
 
-        // Aggiungi risposta del ristoratore se presente
-        if (recensione.getRisposta() != null) {
-            VBox rispostaBox = new VBox(5);
-            rispostaBox.setStyle("-fx-background-color: #f8f9fa; -fx-padding: 8; -fx-border-radius: 5; " +
-                    "-fx-margin: 8 0 0 0;");
+        boolean modificato = false;
+        for (EventBus.RecensioneAggiunta evento : eventi) {
+            Recensione recensione = evento.getRecensione();
+            if (recensione.getNomeRistorante().equals(ristorante.getName())
+                    && !isInLista(recensione.getId())) {
+                recensioniListView.getItems().add(0, recensione);
+                modificato = true;
+            }
+        }
+        if (modificato) {
+            updateMediaRecensioni();
+        }
+    }
 
-            Text rispostaHeader = new Text("Risposta del ristoratore (" +
-                    recensione.getRisposta().getDataRispostaFormatted() + "):");
-            rispostaHeader.setStyle("-fx-font-size: 11; -fx-font-weight: bold; -fx-fill: #495057;");
+    /**
+     * Indica se una recensione è già in lista, ad esempio perché la lista è
+     * stata ricaricata dopo la pubblicazione ma prima della consegna dell'evento.
+     *
+     * @param id Identificativo della recensione.
+     * @return true se la lista contiene già la recensione.
+     */
+    private boolean isInLista(String id) {
+        for (Recensione r : recensioniListView.getItems()) {
+            if (r.getId().equals(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-            Text rispostaTesto = new Text(recensione.getRisposta().getTesto());
-            rispostaTesto.setStyle("-fx-font-size: 11; -fx-fill: #495057;");
-            rispostaTesto.setWrappingWidth(380);
+    /**
+     * Aggiorna il pulsante preferiti se il ristorante mostrato è stato
+     * aggiunto o rimosso dai preferiti dell'utente corrente in un'altra vista.
+     *
+     * @param eventi Modifiche ai preferiti dall'ultimo aggiornamento.
+     * @since 1.0
+     */
+    private void onPreferitiModificati(List<EventBus.PreferitoModificato> eventi) {
+        if (ristorante == null || currentUser == null)
+            return;
 
-            rispostaBox.getChildren().addAll(rispostaHeader, rispostaTesto);
-            card.getChildren().add(rispostaBox);
+        for (EventBus.PreferitoModificato evento : eventi) {
+            if (evento.getUsername().equals(currentUser)
+                    && evento.getRistorante().getName().equals(ristorante.getName())) {
+                updateFavoritesButton();
+                return;
+            }
         }
-
-        return card;
     }
 
     /**
@@ -347,18 +370,11 @@ public class DettaglioRistoranteController implements Initializable {
         }
 
         try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/views/aggiungiRecensione.fxml"));
-            Parent root = loader.load();
-            AggiungiRecensioneController controller = loader.getController();
+            ViewFactory.VistaCaricata<AggiungiRecensioneController> vista =
+                    ViewFactory.acquisisci(ViewFactory.Vista.AGGIUNGI_RECENSIONE);
+            AggiungiRecensioneController controller = vista.getController();
             controller.setRistorante(ristorante);
             controller.setCurrentUser(currentUser);
-            controller.setParentController(this);
-
-            // Se abbiamo un riferimento alla dashboard cliente, passalo anche
-            // all'AggiungiRecensioneController
-            if (dashboardClienteParentController != null) {
-                controller.setParentController(dashboardClienteParentController);
-            }
 
             Stage stage = new Stage();
             stage.setTitle("Lascia una Recensione - " + ristorante.getName());
@@ -366,13 +382,11 @@ public class DettaglioRistoranteController implements Initializable {
             // Imposta l'icona della finestra
             theknife.Main.setApplicationIcon(stage);
 
-            stage.setScene(new Scene(root, 500, 400));
+            stage.setScene(vista.creaScena(500, 400));
             stage.initModality(javafx.stage.Modality.APPLICATION_MODAL);
+            // La nuova recensione arriva in lista tramite onRecensioniAggiunte
             stage.showAndWait();
 
-            // Ricarica le recensioni dopo aver chiuso la finestra
-            loadRecensioni();
-
         } catch (IOException e) {
             e.printStackTrace();
             showAlert("Errore", "Impossibile aprire la finestra",
@@ -400,11 +414,13 @@ public class DettaglioRistoranteController implements Initializable {
 
         if (isFavorite) {
             PreferitiManager.rimuoviPreferito(currentUser, ristorante.getName());
+            EventBus.pubblica(new EventBus.PreferitoModificato(currentUser, ristorante, false));
             aggiungiPreferiti.setText("❤️ Aggiungi ai Preferiti");
             showAlert("Rimosso", "Ristorante rimosso dai preferiti",
                     ristorante.getName() + " è stato rimosso dai tuoi preferiti.");
         } else {
             PreferitiManager.aggiungiPreferito(currentUser, ristorante.getName());
+            EventBus.pubblica(new EventBus.PreferitoModificato(currentUser, ristorante, true));
             aggiungiPreferiti.setText("💔 Rimuovi dai Preferiti");
             showAlert("Aggiunto", "Ristorante aggiunto ai preferiti",
                     ristorante.getName() + " è stato aggiunto ai tuoi preferiti.");
@@ -412,21 +428,121 @@ public class DettaglioRistoranteController implements Initializable {
     }
 
     /**
-     * Apre la mappa del ristorante nel browser oppure mostra un alert se non disponibile.
+     * Mostra il ristorante sulla mappa offline oppure un alert se la posizione non è disponibile.
      * @since 1.0
      */
     @FXML
     private void handleVisualizzaMappa() {
         if (ristorante != null && (ristorante.getLatitude() != 0.0 || ristorante.getLongitude() != 0.0)) {
-            String mapUrl = String.format(java.util.Locale.US, "https://www.google.com/maps?q=%.6f,%.6f",
-                    ristorante.getLatitude(), ristorante.getLongitude());
-            openUrl(mapUrl);
+            try {
+                ViewFactory.VistaCaricata<MapDialogController> vista = ViewFactory.acquisisci(ViewFactory.Vista.MAPPA);
+                MapDialogController controller = vista.getController();
+                controller.setRestaurant(ristorante);
+
+                Stage stage = new Stage();
+                stage.setTitle("Posizione - " + ristorante.getName());
+
+                // Imposta l'icona della finestra
+                theknife.Main.setApplicationIcon(stage);
+
+                stage.setScene(vista.creaScena(820, 720));
+                stage.show();
+            } catch (IOException e) {
+                // Fallback al browser
+                String mapUrl = String.format(java.util.Locale.US, "https://www.google.com/maps?q=%.6f,%.6f",
+                        ristorante.getLatitude(), ristorante.getLongitude());
+                openUrl(mapUrl);
+            }
         } else {
             showAlert("Informazione", "Posizione non disponibile",
                     "Le coordinate GPS per questo ristorante non sono disponibili.");
         }
     }
 
+    /**
+     * Mostra in una finestra i ristoranti più vicini a quello corrente;
+     * con un doppio click su un risultato se ne apre il dettaglio.
+     * @since 1.0
+     */
+    @FXML
+    private void handleVicini() {
+        if (ristorante == null)
+            return;
+
+        List<IndiceSpaziale.Risultato> vicini = CatalogoRistoranti.viciniA(ristorante, NUMERO_VICINI);
+        if (vicini.isEmpty()) {
+            showAlert("Informazione", "Posizione non disponibile",
+                    "Le coordinate GPS per questo ristorante non sono disponibili.");
+            return;
+        }
+
+        ListView<IndiceSpaziale.Risultato> lista = new ListView<>(FXCollections.observableArrayList(vicini));
+        lista.setCellFactory(listView -> new ListCell<>() {
+            @Override
+            protected void updateItem(IndiceSpaziale.Risultato risultato, boolean empty) {
+                super.updateItem(risultato, empty);
+                if (empty || risultato == null) {
+                    setText(null);
+                } else {
+                    Ristorante r = risultato.getRistorante();
+                    setText(String.format("%s - %s\n%s | %.1f km",
+                            r.getName(), r.getCuisine(), r.getLocation(), risultato.getDistanzaKm()));
+                }
+            }
+        });
+        lista.setOnMouseClicked(event -> {
+            IndiceSpaziale.Risultato selezionato = lista.getSelectionModel().getSelectedItem();
+            if (event.getClickCount() == 2 && selezionato != null) {
+                apriDettaglio(selezionato.getRistorante());
+            }
+        });
+
+        Text titolo = new Text("Ristoranti vicini a " + ristorante.getName());
+        titolo.getStyleClass().add("heading");
+        VBox root = new VBox(16, titolo, lista);
+        root.setPadding(new Insets(24));
+        root.getStyleClass().add("main-container");
+        VBox.setVgrow(lista, Priority.ALWAYS);
+
+        Stage stage = new Stage();
+        stage.setTitle("Vicino a " + ristorante.getName());
+
+        // Imposta l'icona della finestra
+        theknife.Main.setApplicationIcon(stage);
+
+        Scene scene = new Scene(root, 500, 500);
+        scene.getStylesheets().add(getClass().getResource("/styles/main.css").toExternalForm());
+        stage.setScene(scene);
+        stage.show();
+    }
+
+    /**
+     * Apre il dettaglio di un altro ristorante in una nuova finestra.
+     *
+     * @param altro Ristorante da aprire, must be non-null.
+     * @since 1.0
+     */
+    private void apriDettaglio(Ristorante altro) {
+        try {
+            ViewFactory.VistaCaricata<DettaglioRistoranteController> vista =
+                    ViewFactory.acquisisci(ViewFactory.Vista.DETTAGLIO_RISTORANTE);
+            DettaglioRistoranteController controller = vista.getController();
+            controller.setRistorante(altro);
+            controller.setCurrentUser(currentUser);
+
+            Stage stage = new Stage();
+            stage.setTitle("Dettaglio Ristorante - " + altro.getName());
+
+            // Imposta l'icona della finestra
+            theknife.Main.setApplicationIcon(stage);
+
+            stage.setScene(vista.creaScena(900, 700));
+            stage.show();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     /**
      * Tenta di avviare una chiamata al ristorante tramite il sistema; fallisce in modalità desktop.
      * @since 1.0
@@ -454,14 +570,6 @@ public class DettaglioRistoranteController implements Initializable {
         }
     }
 
-    /**
-     * Ricarica le recensioni dal servizio.
-     * @since 1.0
-     */
-    public void refreshRecensioni() {
-        loadRecensioni();
-    }
-
     /**
      * Aggiorna il testo del pulsante preferiti in base allo stato attuale.
      * @since 1.0
@@ -506,6 +614,7 @@ public class DettaglioRistoranteController implements Initializable {
                 && !ristorante.getWebsiteUrl().equalsIgnoreCase("N/A")) {
             websiteLink.setText(ristorante.getWebsiteUrl());
             websiteLink.setOnAction(this::openWebsite);
+            websiteLink.setDisable(false);
         } else {
             websiteLink.setText("Non disponibile");
             websiteLink.setDisable(true);
@@ -3,22 +3,24 @@ package theknife.controllers;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
-import theknife.Main;
 import theknife.models.Ristorante;
 import theknife.models.Utente;
+import theknife.services.CatalogoRistoranti;
 import theknife.services.PreferitiManager;
+import theknife.services.RicercaRistoranti;
+import theknife.utils.AllocazioniCelle;
+import theknife.utils.EventBus;
+import theknife.utils.ViewFactory;
 
 import java.io.IOException;
 import java.net.URL;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
@@ -29,7 +31,7 @@ import java.util.stream.Collectors;
  * @author Philip Jon Ji Ciuca
  * @version 1.0
  * */
-public class EsploraRistorantiController implements Initializable {
+public class EsploraRistorantiController implements Initializable, ViewFactory.Preparabile, ViewFactory.Riutilizzabile {
 
     @FXML
     private TextField searchField;
@@ -69,10 +71,11 @@ public class EsploraRistorantiController implements Initializable {
     private ObservableList<Ristorante> allRestaurants;
     private ObservableList<Ristorante> filteredRestaurants;
     private Utente currentUser;
-    private DashboardClienteController parentController;
 
     /**
-     * Inizializza il controller impostando i dati e l'interfaccia utente.
+     * Inizializza il controller configurando l'interfaccia utente; i dati
+     * vengono collegati in {@link #prepara()}, perché la vista può essere
+     * caricata in background da ViewFactory.
      *
      * @param location URL della risorsa FXML (ignored)
      * @param resources ResourceBundle eventualmente fornito (ignored)
@@ -80,9 +83,23 @@ public class EsploraRistorantiController implements Initializable {
      */
     @Override
     public void initialize(URL location, ResourceBundle resources) {
-        setupData();
         setupUI();
+    }
+
+    /**
+     * Carica il catalogo, installa il riquadro diagnostico e si iscrive agli
+     * eventi dell'applicazione; chiamato da ViewFactory sul JavaFX Application Thread.
+     * @since 1.0
+     */
+    @Override
+    public void prepara() {
+        setupData();
+        // Riquadro con le allocazioni per cella, se attivo -Dtheknife.diagnostica.allocazioni
+        AllocazioniCelle.installa(restaurantListView);
         updateStatistics();
+
+        EventBus.iscrivi(this, EventBus.PreferitoModificato.class, EsploraRistorantiController::onPreferitiModificati);
+        EventBus.iscrivi(this, EventBus.RistoranteAggiunto.class, EsploraRistorantiController::onRistorantiAggiunti);
     }
 
     /**
@@ -97,13 +114,23 @@ public class EsploraRistorantiController implements Initializable {
     }
 
     /**
-     * Imposta il controller genitore che ha aperto questa vista.
-     *
-     * @param parent Controller genitore (DashboardClienteController).
+     * Riporta la vista allo stato iniziale per il riutilizzo tramite ViewFactory:
+     * azzera i filtri e ricarica il catalogo, che potrebbe essere cambiato.
      * @since 1.0
      */
-    public void setParentController(DashboardClienteController parent) {
-        this.parentController = parent;
+    @Override
+    public void reset() {
+        currentUser = null;
+        searchField.clear();
+        cuisineComboBox.setValue(null);
+        locationComboBox.setValue(null);
+        priceRangeComboBox.setValue(null);
+        starsComboBox.setValue(null);
+        deliveryCheckBox.setSelected(false);
+        onlineBookingCheckBox.setSelected(false);
+        restaurantListView.getSelectionModel().clearSelection();
+        setupData();
+        updateStatistics();
     }
 
     /**
@@ -111,41 +138,18 @@ public class EsploraRistorantiController implements Initializable {
      * @since 1.0
      */
     private void setupData() {
-        allRestaurants = FXCollections.observableArrayList(Main.ristoranti);
+        allRestaurants = FXCollections.observableArrayList(CatalogoRistoranti.getRistoranti());
         filteredRestaurants = FXCollections.observableArrayList(allRestaurants);
         restaurantListView.setItems(filteredRestaurants);
 
-        // Popola ComboBox cucine
-        List<String> cuisines = allRestaurants.stream()
-                .map(Ristorante::getCuisine)
-                .filter(c -> c != null && !c.trim().isEmpty())
-                .distinct()
-                .sorted()
-                .collect(Collectors.toList());
-        cuisineComboBox.setItems(FXCollections.observableArrayList(cuisines));
-
-        // Popola ComboBox località
-        List<String> locations = allRestaurants.stream()
-                .map(Ristorante::getLocation)
-                .filter(l -> l != null && !l.trim().isEmpty())
-                .distinct()
-                .sorted()
-                .collect(Collectors.toList());
-        locationComboBox.setItems(FXCollections.observableArrayList(locations));
-
-        // Popola ComboBox fascia di prezzo
-        List<String> priceRanges = allRestaurants.stream()
-                .map(Ristorante::getPrice)
-                .filter(p -> p != null && !p.trim().isEmpty())
-                .distinct()
-                .sorted()
-                .collect(Collectors.toList());
-        priceRangeComboBox.setItems(FXCollections.observableArrayList(priceRanges));
-
-        // Popola ComboBox stelle
-        ObservableList<String> starsOptions = FXCollections.observableArrayList(
-                "1 Stella", "2 Stelle", "3 Stelle", "Stelle Verdi");
-        starsComboBox.setItems(starsOptions);
+        // Popola i filtri con i valori distinti del catalogo
+        cuisineComboBox.setItems(FXCollections.observableArrayList(
+                RicercaRistoranti.valoriDistinti(allRestaurants, Ristorante::getCuisine)));
+        locationComboBox.setItems(FXCollections.observableArrayList(
+                RicercaRistoranti.valoriDistinti(allRestaurants, Ristorante::getLocation)));
+        priceRangeComboBox.setItems(FXCollections.observableArrayList(
+                RicercaRistoranti.valoriDistinti(allRestaurants, Ristorante::getPrice)));
+        starsComboBox.setItems(FXCollections.observableArrayList(RicercaRistoranti.OPZIONI_STELLE));
     }
 
     /**
@@ -157,6 +161,7 @@ public class EsploraRistorantiController implements Initializable {
         restaurantListView.setCellFactory(listView -> new ListCell<Ristorante>() {
             @Override
             protected void updateItem(Ristorante restaurant, boolean empty) {
+                long allocati = AllocazioniCelle.inizio();
                 super.updateItem(restaurant, empty);
                 if (empty || restaurant == null) {
                     setText(null);
@@ -187,6 +192,7 @@ public class EsploraRistorantiController implements Initializable {
                             restaurant.getPrice() != null ? restaurant.getPrice() : "N/A");
                     setText(text);
                 }
+                AllocazioniCelle.fine(allocati);
             }
         });
 
@@ -215,10 +221,9 @@ public class EsploraRistorantiController implements Initializable {
      */
     private void openRestaurantDetails(Ristorante restaurant) {
         try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/views/dettaglioRistorante.fxml"));
-            Parent root = loader.load();
-
-            DettaglioRistoranteController controller = loader.getController();
+            ViewFactory.VistaCaricata<DettaglioRistoranteController> vista =
+                    ViewFactory.acquisisci(ViewFactory.Vista.DETTAGLIO_RISTORANTE);
+            DettaglioRistoranteController controller = vista.getController();
             controller.setRistorante(restaurant);
             controller.setCurrentUser(currentUser.getUsername());
 
@@ -228,7 +233,7 @@ public class EsploraRistorantiController implements Initializable {
             // Imposta l'icona della finestra
             theknife.Main.setApplicationIcon(stage);
 
-            stage.setScene(new Scene(root, 900, 700));
+            stage.setScene(vista.creaScena(900, 700));
             stage.show();
         } catch (IOException e) {
             e.printStackTrace();
@@ -253,11 +258,70 @@ public class EsploraRistorantiController implements Initializable {
             PreferitiManager.aggiungiPreferito(currentUser.getUsername(), restaurant.getName());
         }
 
-        // Aggiorna la vista
-        refreshView();
-        if (parentController != null) {
-            parentController.refreshData();
+        // Le viste aperte (compresa questa) si aggiornano tramite EventBus
+        EventBus.pubblica(new EventBus.PreferitoModificato(currentUser.getUsername(), restaurant, !isFavorite));
+    }
+
+    /**
+     * Aggiorna icone, pulsante e conteggio dei preferiti dopo una modifica
+     * ai preferiti dell'utente corrente.
+     *
+     * @param eventi Modifiche ai preferiti dall'ultimo aggiornamento.
+     * @since 1.0
+     */
+    private void onPreferitiModificati(List<EventBus.PreferitoModificato> eventi) {
+        if (currentUser == null
+                || eventi.stream().noneMatch(e -> e.getUsername().equals(currentUser.getUsername())))
+            return;
+
+        // Ridisegna solo le celle visibili
+        restaurantListView.refresh();
+        Ristorante selected = restaurantListView.getSelectionModel().getSelectedItem();
+        if (selected != null) {
+            boolean isFavorite = PreferitiManager.isPreferito(currentUser.getUsername(), selected.getName());
+            aggiungiPreferitiButton.setText(isFavorite ? "❤️ Rimuovi Preferito" : "🤍 Aggiungi Preferito");
         }
+        updateStatistics();
+    }
+
+    /**
+     * Inserisce i nuovi ristoranti nel catalogo mostrato senza ricaricarlo,
+     * rispettando i filtri attivi.
+     *
+     * @param eventi Ristoranti aggiunti dall'ultimo aggiornamento.
+     * @since 1.0
+     */
+    private void onRistorantiAggiunti(List<EventBus.RistoranteAggiunto> eventi) {
+        Predicate<Ristorante> filtro = creaFiltro();
+        for (EventBus.RistoranteAggiunto evento : eventi) {
+            Ristorante ristorante = evento.getRistorante();
+            if (allRestaurants.contains(ristorante))
+                continue;
+
+            allRestaurants.add(ristorante);
+            if (filtro.test(ristorante)) {
+                filteredRestaurants.add(ristorante);
+            }
+            aggiungiOpzione(cuisineComboBox, ristorante.getCuisine());
+            aggiungiOpzione(locationComboBox, ristorante.getLocation());
+            aggiungiOpzione(priceRangeComboBox, ristorante.getPrice());
+        }
+        updateStatistics();
+    }
+
+    /**
+     * Aggiunge un valore alle opzioni di un filtro se non già presente,
+     * mantenendo l'ordinamento.
+     *
+     * @param comboBox ComboBox del filtro.
+     * @param valore Valore da aggiungere, può essere null o vuoto (ignorato).
+     * @since 1.0
+     */
+    private void aggiungiOpzione(ComboBox<String> comboBox, String valore) {
+        if (valore == null || valore.trim().isEmpty() || comboBox.getItems().contains(valore))
+            return;
+        comboBox.getItems().add(valore);
+        FXCollections.sort(comboBox.getItems());
     }
 
     /**
@@ -266,52 +330,31 @@ public class EsploraRistorantiController implements Initializable {
      */
     @FXML
     private void handleSearch() {
-        String searchText = searchField.getText().toLowerCase().trim();
-        String selectedCuisine = cuisineComboBox.getValue();
-        String selectedLocation = locationComboBox.getValue();
-        String selectedPriceRange = priceRangeComboBox.getValue();
-        String selectedStars = starsComboBox.getValue();
-        boolean isDeliverySelected = deliveryCheckBox.isSelected();
-        boolean isOnlineBookingSelected = onlineBookingCheckBox.isSelected();
-
         List<Ristorante> filtered = allRestaurants.stream()
-                .filter(r -> {
-                    boolean matchesText = searchText.isEmpty() ||
-                            r.getName().toLowerCase().contains(searchText) ||
-                            (r.getCuisine() != null && r.getCuisine().toLowerCase().contains(searchText)) ||
-                            (r.getLocation() != null && r.getLocation().toLowerCase().contains(searchText));
-
-                    boolean matchesCuisine = selectedCuisine == null ||
-                            (r.getCuisine() != null && r.getCuisine().equals(selectedCuisine));
-
-                    boolean matchesLocation = selectedLocation == null ||
-                            (r.getLocation() != null && r.getLocation().equals(selectedLocation));
-
-                    boolean matchesPriceRange = selectedPriceRange == null ||
-                            (r.getPrice() != null && r.getPrice().equals(selectedPriceRange));
-
-                    boolean matchesStars = selectedStars == null ||
-                            switch (selectedStars) {
-                                case "1 Stella" -> r.getStars() == 1;
-                                case "2 Stelle" -> r.getStars() == 2;
-                                case "3 Stelle" -> r.getStars() == 3;
-                                case "Stelle Verdi" -> r.getGreenStar() != null && !r.getGreenStar().trim().isEmpty()
-                                        && !r.getGreenStar().equalsIgnoreCase("N/A");
-                                default -> true;
-                            };
-
-                    boolean matchesDelivery = !isDeliverySelected || r.isDeliveryAvailable();
-                    boolean matchesOnlineBooking = !isOnlineBookingSelected || r.isOnlineBookingAvailable();
-
-                    return matchesText && matchesCuisine && matchesLocation && matchesPriceRange &&
-                            matchesStars && matchesDelivery && matchesOnlineBooking;
-                })
+                .filter(creaFiltro())
                 .collect(Collectors.toList());
 
         filteredRestaurants.setAll(filtered);
         updateStatistics();
     }
 
+    /**
+     * Costruisce il filtro corrispondente ai valori attuali dei campi di ricerca.
+     *
+     * @return Predicato che accetta i ristoranti che soddisfano tutti i filtri.
+     * @since 1.0
+     */
+    private Predicate<Ristorante> creaFiltro() {
+        return RicercaRistoranti.creaFiltro(new RicercaRistoranti.Criteri(
+                searchField.getText(),
+                cuisineComboBox.getValue(),
+                locationComboBox.getValue(),
+                priceRangeComboBox.getValue(),
+                starsComboBox.getValue(),
+                deliveryCheckBox.isSelected(),
+                onlineBookingCheckBox.isSelected()));
+    }
+
     /**
      * Resetta tutti i filtri e mostra tutti i ristoranti.
      * @since 1.0
@@ -379,15 +422,13 @@ public class EsploraRistorantiController implements Initializable {
 
         // Crea finestra personalizzata per la mappa
         try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/views/mapDialog.fxml"));
-            Parent root = loader.load();
-
-            MapDialogController controller = loader.getController();
+            ViewFactory.VistaCaricata<MapDialogController> vista = ViewFactory.acquisisci(ViewFactory.Vista.MAPPA);
+            MapDialogController controller = vista.getController();
             controller.setRestaurant(restaurant);
 
             Stage stage = new Stage();
             stage.setTitle("Posizione - " + restaurant.getName());
-            stage.setScene(new Scene(root, 500, 300));
+            stage.setScene(vista.creaScena(820, 720));
             stage.initModality(javafx.stage.Modality.APPLICATION_MODAL);
             stage.show();
         } catch (IOException e) {
@@ -416,21 +457,13 @@ public class EsploraRistorantiController implements Initializable {
      * @since 1.0
      */
     private void updateStatistics() {
-        int total = filteredRestaurants.size();
-        long michelinStars = filteredRestaurants.stream()
-                .filter(r -> r.getStars() > 0)
-                .count();
-        long greenStars = filteredRestaurants.stream()
-                .filter(r -> r.getGreenStar() != null && !r.getGreenStar().trim().isEmpty()
-                        && !r.getGreenStar().equalsIgnoreCase("N/A"))
-                .count();
-
-        long favorites = 0;
-        if (currentUser != null) {
-            favorites = filteredRestaurants.stream()
-                    .filter(r -> PreferitiManager.isPreferito(currentUser.getUsername(), r.getName()))
-                    .count();
-        }
+        RicercaRistoranti.Statistiche statistiche = RicercaRistoranti.calcolaStatistiche(filteredRestaurants,
+                currentUser == null ? null
+                        : r -> PreferitiManager.isPreferito(currentUser.getUsername(), r.getName()));
+        int total = statistiche.getTotale();
+        long michelinStars = statistiche.getConStelle();
+        long greenStars = statistiche.getStelleVerdi();
+        long favorites = statistiche.getPreferiti();
 
         totalRestaurantsLabel.setText(String.valueOf(total));
         michelinStarsLabel.setText(String.valueOf(michelinStars));
@@ -453,14 +486,4 @@ public class EsploraRistorantiController implements Initializable {
         alert.setContentText(message);
         alert.showAndWait();
     }
-
-    /**
-     * Ricarica la vista mantenendo i filtri attuali.
-     * @since 1.0
-     */
-    public void refreshView() {
-        // Ricarica la lista mantenendo i filtri attuali
-        restaurantListView.refresh();
-        updateStatistics();
-    }
 }
@@ -3,21 +3,20 @@ package theknife.controllers;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
-import theknife.Main;
 import theknife.models.Ristorante;
+import theknife.services.CatalogoRistoranti;
+import theknife.services.RicercaRistoranti;
+import theknife.utils.AllocazioniCelle;
+import theknife.utils.ViewFactory;
 
 import java.io.IOException;
 import java.net.URL;
 import java.util.List;
 import java.util.ResourceBundle;
-import java.util.stream.Collectors;
 
 /**
  * Controller per la vista guest (ospite non autenticato).
@@ -82,41 +81,18 @@ public class GuestViewController implements Initializable {
      * @since 1.0
      */
     private void setupData() {
-        allRestaurants = FXCollections.observableArrayList(Main.ristoranti);
+        allRestaurants = FXCollections.observableArrayList(CatalogoRistoranti.getRistoranti());
         filteredRestaurants = FXCollections.observableArrayList(allRestaurants);
         restaurantListView.setItems(filteredRestaurants);
 
-        // Popola ComboBox cucine
-        List<String> cuisines = allRestaurants.stream()
-                .map(Ristorante::getCuisine)
-                .filter(c -> c != null && !c.trim().isEmpty())
-                .distinct()
-                .sorted()
-                .collect(Collectors.toList());
-        cuisineComboBox.setItems(FXCollections.observableArrayList(cuisines));
-
-        // Popola ComboBox località
-        List<String> locations = allRestaurants.stream()
-                .map(Ristorante::getLocation)
-                .filter(l -> l != null && !l.trim().isEmpty())
-                .distinct()
-                .sorted()
-                .collect(Collectors.toList());
-        locationComboBox.setItems(FXCollections.observableArrayList(locations));
-
-        // Popola ComboBox fascia di prezzo
-        List<String> priceRanges = allRestaurants.stream()
-                .map(Ristorante::getPrice)
-                .filter(p -> p != null && !p.trim().isEmpty())
-                .distinct()
-                .sorted()
-                .collect(Collectors.toList());
-        priceRangeComboBox.setItems(FXCollections.observableArrayList(priceRanges));
-
-        // Popola ComboBox stelle
-        ObservableList<String> starsOptions = FXCollections.observableArrayList(
-                "1 Stella", "2 Stelle", "3 Stelle", "Stelle Verdi");
-        starsComboBox.setItems(starsOptions);
+        // Popola i filtri con i valori distinti del catalogo
+        cuisineComboBox.setItems(FXCollections.observableArrayList(
+                RicercaRistoranti.valoriDistinti(allRestaurants, Ristorante::getCuisine)));
+        locationComboBox.setItems(FXCollections.observableArrayList(
+                RicercaRistoranti.valoriDistinti(allRestaurants, Ristorante::getLocation)));
+        priceRangeComboBox.setItems(FXCollections.observableArrayList(
+                RicercaRistoranti.valoriDistinti(allRestaurants, Ristorante::getPrice)));
+        starsComboBox.setItems(FXCollections.observableArrayList(RicercaRistoranti.OPZIONI_STELLE));
     }
 
     /**
@@ -127,6 +103,7 @@ public class GuestViewController implements Initializable {
         restaurantListView.setCellFactory(listView -> new ListCell<Ristorante>() {
             @Override
             protected void updateItem(Ristorante restaurant, boolean empty) {
+                long allocati = AllocazioniCelle.inizio();
                 super.updateItem(restaurant, empty);
                 if (empty || restaurant == null) {
                     setText(null);
@@ -149,8 +126,11 @@ public class GuestViewController implements Initializable {
                             restaurant.getPrice() != null ? restaurant.getPrice() : "N/A");
                     setText(text);
                 }
+                AllocazioniCelle.fine(allocati);
             }
         });
+        // Riquadro con le allocazioni per cella, se attivo -Dtheknife.diagnostica.allocazioni
+        AllocazioniCelle.installa(restaurantListView);
 
         // Abilita/disabilita pulsanti basandosi sulla selezione        restaurantListView.getSelectionModel().selectedItemProperty().addListener(
         restaurantListView.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) -> {
@@ -166,58 +146,14 @@ public class GuestViewController implements Initializable {
      */
     @FXML
     private void handleSearch() {
-        String searchText = searchField.getText().toLowerCase().trim();
-        String selectedCuisine = cuisineComboBox.getValue();
-        String selectedLocation = locationComboBox.getValue();
-        String selectedPriceRange = priceRangeComboBox.getValue();
-        String selectedStars = starsComboBox.getValue();
-        boolean isDeliverySelected = deliveryCheckBox.isSelected();
-        boolean isOnlineBookingSelected = onlineBookingCheckBox.isSelected();
-
-        List<Ristorante> filtered = allRestaurants.stream()
-                .filter(r -> {
-                    boolean matchesText = searchText.isEmpty() ||
-                            r.getName().toLowerCase().contains(searchText) ||
-                            (r.getCuisine() != null && r.getCuisine().toLowerCase().contains(searchText)) ||
-                            (r.getLocation() != null && r.getLocation().toLowerCase().contains(searchText));
-
-                    boolean matchesCuisine = selectedCuisine == null ||
-                            (r.getCuisine() != null && r.getCuisine().equals(selectedCuisine));
-
-                    boolean matchesLocation = selectedLocation == null ||
-                            (r.getLocation() != null && r.getLocation().equals(selectedLocation));
-
-                    boolean matchesPriceRange = selectedPriceRange == null ||
-                            (r.getPrice() != null && r.getPrice().equals(selectedPriceRange));
-
-                    boolean matchesStars = true;
-                    if (selectedStars != null) {
-                        switch (selectedStars) {
-                            case "1 Stella":
-                                matchesStars = r.getStars() == 1;
-                                break;
-                            case "2 Stelle":
-                                matchesStars = r.getStars() == 2;
-                                break;
-                            case "3 Stelle":
-                                matchesStars = r.getStars() == 3;
-                                break;
-                            case "Stelle Verdi":
-                                matchesStars = r.getGreenStar() != null && !r.getGreenStar().trim().isEmpty()
-                                        && !r.getGreenStar().equalsIgnoreCase("N/A");
-                                break;
-                            default:
-                                matchesStars = true;
-                        }
-                    }
-
-                    boolean matchesDelivery = !isDeliverySelected || r.isDeliveryAvailable();
-                    boolean matchesOnlineBooking = !isOnlineBookingSelected || r.isOnlineBookingAvailable();
-
-                    return matchesText && matchesCuisine && matchesLocation && matchesPriceRange &&
-                            matchesStars && matchesDelivery && matchesOnlineBooking;
-                })
-                .collect(Collectors.toList());
+        List<Ristorante> filtered = RicercaRistoranti.cerca(allRestaurants, new RicercaRistoranti.Criteri(
+                searchField.getText(),
+                cuisineComboBox.getValue(),
+                locationComboBox.getValue(),
+                priceRangeComboBox.getValue(),
+                starsComboBox.getValue(),
+                deliveryCheckBox.isSelected(),
+                onlineBookingCheckBox.isSelected()));
 
         filteredRestaurants.setAll(filtered);
         updateStatistics();
@@ -259,10 +195,9 @@ public class GuestViewController implements Initializable {
      */
     private void openRestaurantDetails(Ristorante restaurant) {
         try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/views/dettaglioRistorante.fxml"));
-            Parent root = loader.load();
-
-            DettaglioRistoranteController controller = loader.getController();
+            ViewFactory.VistaCaricata<DettaglioRistoranteController> vista =
+                    ViewFactory.acquisisci(ViewFactory.Vista.DETTAGLIO_RISTORANTE);
+            DettaglioRistoranteController controller = vista.getController();
             controller.setRistorante(restaurant);
             // Per gli ospiti, non passiamo l'username (sarà null)
             controller.setCurrentUser(null);
@@ -273,7 +208,7 @@ public class GuestViewController implements Initializable {
             // Imposta l'icona della finestra
             theknife.Main.setApplicationIcon(stage);
 
-            stage.setScene(new Scene(root, 900, 700));
+            stage.setScene(vista.creaScena(900, 700));
             stage.show();
         } catch (IOException e) {
             e.printStackTrace();
@@ -306,15 +241,13 @@ public class GuestViewController implements Initializable {
 
         // Crea finestra personalizzata per la mappa
         try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/views/mapDialog.fxml"));
-            Parent root = loader.load();
-
-            MapDialogController controller = loader.getController();
+            ViewFactory.VistaCaricata<MapDialogController> vista = ViewFactory.acquisisci(ViewFactory.Vista.MAPPA);
+            MapDialogController controller = vista.getController();
             controller.setRestaurant(restaurant);
 
             Stage stage = new Stage();
             stage.setTitle("Posizione - " + restaurant.getName());
-            stage.setScene(new Scene(root, 500, 300));
+            stage.setScene(vista.creaScena(820, 720));
             stage.initModality(javafx.stage.Modality.APPLICATION_MODAL);
             stage.show();
         } catch (IOException e) {
@@ -333,14 +266,10 @@ public class GuestViewController implements Initializable {
      * @since 1.0
      */
     private void updateStatistics() {
-        int total = filteredRestaurants.size();
-        long michelinStars = filteredRestaurants.stream()
-                .filter(r -> r.getStars() > 0)
-                .count();
-        long greenStars = filteredRestaurants.stream()
-                .filter(r -> r.getGreenStar() != null && !r.getGreenStar().trim().isEmpty()
-                        && !r.getGreenStar().equalsIgnoreCase("N/A"))
-                .count();
+        RicercaRistoranti.Statistiche statistiche = RicercaRistoranti.calcolaStatistiche(filteredRestaurants, null);
+        int total = statistiche.getTotale();
+        long michelinStars = statistiche.getConStelle();
+        long greenStars = statistiche.getStelleVerdi();
 
         totalRestaurantsLabel.setText(String.valueOf(total));
         michelinStarsLabel.setText(String.valueOf(michelinStars));
@@ -28,6 +28,8 @@ import javafx.scene.layout.StackPane;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import theknife.models.Utente;
+import theknife.utils.SessionManager;
+import theknife.utils.ViewFactory;
 
 import java.io.IOException;
 import java.net.URL;
@@ -42,7 +44,8 @@ public class HomeController implements Initializable {
     private Utente utenteLoggato;
 
     /**
-     * Inizializzazione del controller: carica la vista guest all'avvio.
+     * Inizializzazione del controller: ripristina la sessione salvata se valida,
+     * altrimenti carica la vista guest all'avvio.
      *
      * @param location  URL della risorsa FXML (ignored)
      * @param resources ResourceBundle eventualmente fornito (ignored)
@@ -50,6 +53,13 @@ public class HomeController implements Initializable {
      */
     @Override
     public void initialize(URL location, ResourceBundle resources) {
+        // Ripristina la sessione precedente senza ripetere il login
+        Utente utenteSessione = SessionManager.ripristinaSessione();
+        if (utenteSessione != null) {
+            setUtenteLoggato(utenteSessione);
+            return;
+        }
+
         // Carica il contenuto guest all'avvio
         loadGuestContent();
     }
@@ -121,7 +131,7 @@ public class HomeController implements Initializable {
     private void handleLogin() {
         try {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/views/login.fxml"));
-            Parent root = loader.load();
+            Parent root = ViewFactory.caricaFxml(loader);
 
             // Applica il CSS alla finestra di login
             Scene scene = new Scene(root, 500, 650);
@@ -160,7 +170,7 @@ public class HomeController implements Initializable {
         // Crea un menu semplice per l'utente loggato
         try {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/views/userMenu.fxml"));
-            Parent root = loader.load();
+            Parent root = ViewFactory.caricaFxml(loader);
 
             // Passa il riferimento al HomeController
             UserMenuController controller = loader.getController();
@@ -183,6 +193,7 @@ public class HomeController implements Initializable {
         } catch (IOException e) {
             e.printStackTrace();
             // Se il file non esiste, facciamo logout diretto per ora
+            SessionManager.revocaSessioneCorrente();
             handleLogout();
         }
     }
@@ -213,7 +224,7 @@ public class HomeController implements Initializable {
                     : "/views/dashboardRistoratore.fxml";
 
             FXMLLoader loader = new FXMLLoader(getClass().getResource(viewPath));
-            Parent dashboard = loader.load();
+            Parent dashboard = ViewFactory.caricaFxml(loader);
 
             // Passa l'utente corrente al controller della dashboard
             if (utenteLoggato.getRuolo().equals("Cliente")) {
@@ -241,7 +252,7 @@ public class HomeController implements Initializable {
     private void loadGuestContent() {
         try {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/views/guestView.fxml"));
-            Parent guestView = loader.load();
+            Parent guestView = ViewFactory.caricaFxml(loader);
             contentPane.getChildren().setAll(guestView);
         } catch (IOException e) {
             e.printStackTrace();
@@ -27,6 +27,8 @@ import javafx.scene.control.TextField;
 import javafx.stage.Stage;
 import theknife.models.Utente;
 import theknife.utils.AuthManager;
+import theknife.utils.SessionManager;
+import theknife.utils.ViewFactory;
 
 public class LoginController {
     /** Campo input per lo username (FXML). */
@@ -55,21 +57,26 @@ public class LoginController {
     /**
      * Tenta di autenticare l'utente con le credenziali inserite.
      * <p>
-     * Se l'autenticazione ha successo notifica il HomeController e chiude
-     * la finestra di login. In caso di fallimento mostra un messaggio di errore.
+     * Se l'autenticazione ha successo crea la sessione locale, notifica il
+     * HomeController e chiude la finestra di login. In caso di fallimento mostra un messaggio di errore.
      * </p>
      *
      * @since 1.0
      */
     @FXML
     private void handleLogin() {
-        Utente utente = AuthManager.autenticaUtente(
+        AuthManager.RisultatoAccesso risultato = AuthManager.accedi(
                 usernameField.getText(),
-                passwordField.getText());
+                passwordField.getText(),
+                AuthManager.CLIENT_LOCALE);
+        Utente utente = risultato.getUtente();
 
         if (utente != null) {
+            SessionManager.creaSessione(utente); // Evita un nuovo login al prossimo avvio
             homeController.setUtenteLoggato(utente); // Aggiorna HomeController
             ((Stage) usernameField.getScene().getWindow()).close(); // Chiude la finestra di login
+        } else if (risultato.getEsito() == AuthManager.RisultatoAccesso.Esito.LIMITATO) {
+            errorLabel.setText("Troppi tentativi, riprova tra qualche secondo.");
         } else {
             errorLabel.setText("Username o password errati!");
         }
@@ -87,7 +94,7 @@ public class LoginController {
     private void handleRegistrazione() {
         try {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/views/registrazione.fxml"));
-            Parent root = loader.load();
+            Parent root = ViewFactory.caricaFxml(loader);
 
             Stage stage = new Stage();
             stage.setTitle("Registrazione - The Knife");
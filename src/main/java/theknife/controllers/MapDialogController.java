@@ -8,6 +8,7 @@ import javafx.scene.input.ClipboardContent;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
 import theknife.models.Ristorante;
+import theknife.utils.ViewFactory;
 
 import java.awt.Desktop;
 import java.io.IOException;
@@ -18,13 +19,14 @@ import java.util.ResourceBundle;
 
 /**
  * Controller per la finestra di dialogo mappa.
- * Mostra coordinate, URL Google Maps e fornisce comandi per copiare
- * e aprire la posizione nel browser.
+ * Mostra il ristorante su una mappa offline del catalogo, le coordinate e
+ * l'URL Google Maps, e fornisce comandi per copiare e aprire la posizione
+ * nel browser quando è disponibile una connessione.
  *
  * @author Philip Jon Ji Ciuca
  * @version 1.0
  */
-public class MapDialogController implements Initializable {
+public class MapDialogController implements Initializable, ViewFactory.Riutilizzabile {
     @FXML
     private Text titleLabel;
     @FXML
@@ -33,6 +35,8 @@ public class MapDialogController implements Initializable {
     private TextField longitudeField;
     @FXML
     private TextField urlField;
+    @FXML
+    private MappaCanvas mappaCanvas;
 
     private Ristorante restaurant;
     private String mapUrl;
@@ -58,6 +62,27 @@ public class MapDialogController implements Initializable {
     public void setRestaurant(Ristorante restaurant) {
         this.restaurant = restaurant;
         updateFields();
+        mappaCanvas.mostra(restaurant);
+        // Un click sul marker di un altro ristorante ne mostra le coordinate
+        mappaCanvas.setOnRistoranteSelezionato(selezionato -> {
+            this.restaurant = selezionato;
+            updateFields();
+        });
+    }
+
+    /**
+     * Riporta la dialog allo stato iniziale per il riutilizzo tramite ViewFactory.
+     *
+     * @since 1.0
+     */
+    @Override
+    public void reset() {
+        restaurant = null;
+        mapUrl = null;
+        latitudeField.clear();
+        longitudeField.clear();
+        urlField.clear();
+        mappaCanvas.reset();
     }
 
     /**
@@ -78,6 +103,26 @@ public class MapDialogController implements Initializable {
         }
     }
 
+    /**
+     * Aumenta lo zoom della mappa.
+     *
+     * @since 1.0
+     */
+    @FXML
+    private void zoomIn() {
+        mappaCanvas.zoomIn();
+    }
+
+    /**
+     * Diminuisce lo zoom della mappa.
+     *
+     * @since 1.0
+     */
+    @FXML
+    private void zoomOut() {
+        mappaCanvas.zoomOut();
+    }
+
     /**
      * Copia la latitudine negli appunti di sistema.
      *
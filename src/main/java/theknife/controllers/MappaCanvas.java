@@ -0,0 +1,553 @@
+package theknife.controllers;
+
+import javafx.application.Platform;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+import javafx.scene.text.TextAlignment;
+import theknife.models.Ristorante;
+import theknife.services.CatalogoRistoranti;
+import theknife.services.MappaRistoranti;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Mappa offline dei ristoranti disegnata su un Canvas JavaFX.
+ * <p>
+ * La mappa usa la proiezione Web Mercator con tile da 256 px. Ogni tile
+ * (reticolo di meridiani e paralleli e marker dei cluster di
+ * {@link MappaRistoranti}) viene rasterizzato in un int[] su thread in
+ * background e convertito in WritableImage sul JavaFX Application Thread.
+ * Le immagini pronte sono conservate in una cache LRU, per cui durante il
+ * trascinamento il Canvas si limita a copiare immagini già pronte e a
+ * scrivere le etichette dei cluster visibili. Finché un tile non è pronto
+ * viene mostrato, ingrandito, un tile di zoom inferiore già in cache.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public class MappaCanvas extends Region {
+    private static final int LATO_TILE = 256;
+    private static final int ZOOM_MINIMO = 2;
+    private static final int ZOOM_MASSIMO = 18;
+    private static final int ZOOM_RISTORANTE = 14; // zoom iniziale centrato su un ristorante
+    private static final int MAX_TILE_IN_CACHE = 512;
+    private static final int MARGINE_MARKER_PX = 20; // raggio massimo di un marker, per non tagliarlo ai bordi del tile
+    private static final double LAT_MASSIMA = 85.05112878;
+
+    private static final int COLORE_SFONDO = 0xFFE8EEF3;
+    private static final int COLORE_RETICOLO = 0xFFD3DCE4;
+    private static final int COLORE_RETICOLO_PRINCIPALE = 0xFFB8C4CF;
+    private static final int COLORE_BORDO_MARKER = 0xFFFFFFFF;
+    private static final int COLORE_RISTORANTE = 0xFFC0392B;
+    private static final int COLORE_CLUSTER = 0xFFE67E22;
+
+    private static final ExecutorService rasterizzatore = Executors.newFixedThreadPool(2, r -> {
+        Thread t = new Thread(r, "theknife-map-tiles");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Canvas canvas = new Canvas();
+    private final Map<Long, Image> cache = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Image> eldest) {
+            return size() > MAX_TILE_IN_CACHE;
+        }
+    };
+    private final Set<Long> inCorso = new HashSet<>(); // tile in rasterizzazione
+    private final List<MappaRistoranti.Cluster> clusterVisibili = new ArrayList<>();
+
+    private MappaRistoranti mappa;
+    private int zoom = ZOOM_MINIMO;
+    private double centroX = LATO_TILE * (1 << ZOOM_MINIMO) / 2.0; // centro della vista in pixel mondo
+    private double centroY = LATO_TILE * (1 << ZOOM_MINIMO) / 2.0;
+    private volatile int[] vista = new int[5]; // zoom, tile x/y minimi e massimi visibili
+    private Ristorante evidenziato;
+    private Consumer<Ristorante> onRistoranteSelezionato;
+    private double ultimoX;
+    private double ultimoY;
+    private boolean trascinato;
+    private boolean ridisegnoPianificato;
+    // Un'unica istanza, così le richieste ripetute durante la ricostruzione contano una volta sola
+    private final Runnable ridisegnoDopoAggiornamento = () -> Platform.runLater(this::pianificaRidisegno);
+
+    /**
+     * Crea la mappa centrata sul mondo intero.
+     *
+     * @since 1.0
+     */
+    public MappaCanvas() {
+        getChildren().add(canvas);
+        getStyleClass().add("mappa-canvas");
+
+        setOnMousePressed(event -> {
+            ultimoX = event.getX();
+            ultimoY = event.getY();
+            trascinato = false;
+        });
+        setOnMouseDragged(event -> {
+            centroX -= event.getX() - ultimoX;
+            centroY -= event.getY() - ultimoY;
+            ultimoX = event.getX();
+            ultimoY = event.getY();
+            trascinato = true;
+            limitaCentro();
+            disegna();
+        });
+        setOnMouseClicked(event -> {
+            if (!trascinato && event.getButton() == MouseButton.PRIMARY) {
+                selezionaIn(event.getX(), event.getY());
+            }
+        });
+        setOnScroll(event -> {
+            if (event.getDeltaY() != 0) {
+                zoomIntorno(event.getDeltaY() > 0 ? 1 : -1, event.getX(), event.getY());
+            }
+        });
+    }
+
+    /**
+     * Centra la mappa sul ristorante e lo evidenzia.
+     *
+     * @param ristorante Ristorante da mostrare, must be non-null.
+     * @since 1.0
+     */
+    public void mostra(Ristorante ristorante) {
+        evidenziato = ristorante;
+        centra(ristorante.getLatitude(), ristorante.getLongitude(), ZOOM_RISTORANTE);
+    }
+
+    /**
+     * Centra la mappa su un punto al livello di zoom dato.
+     *
+     * @param lat Latitudine del centro.
+     * @param lon Longitudine del centro.
+     * @param livello Livello di zoom, limitato all'intervallo supportato.
+     * @since 1.0
+     */
+    public void centra(double lat, double lon, int livello) {
+        zoom = Math.max(ZOOM_MINIMO, Math.min(ZOOM_MASSIMO, livello));
+        double dimensione = dimensioneMondo(zoom);
+        centroX = xDaLon(lon, dimensione);
+        centroY = yDaLat(lat, dimensione);
+        pianificaRidisegno();
+    }
+
+    /**
+     * Aumenta lo zoom di un livello mantenendo il centro.
+     *
+     * @since 1.0
+     */
+    public void zoomIn() {
+        zoomIntorno(1, canvas.getWidth() / 2, canvas.getHeight() / 2);
+    }
+
+    /**
+     * Diminuisce lo zoom di un livello mantenendo il centro.
+     *
+     * @since 1.0
+     */
+    public void zoomOut() {
+        zoomIntorno(-1, canvas.getWidth() / 2, canvas.getHeight() / 2);
+    }
+
+    /**
+     * Imposta l'azione eseguita quando l'utente clicca il marker di un singolo ristorante.
+     *
+     * @param azione Azione da eseguire, può essere null.
+     * @since 1.0
+     */
+    public void setOnRistoranteSelezionato(Consumer<Ristorante> azione) {
+        this.onRistoranteSelezionato = azione;
+    }
+
+    /**
+     * Rimuove l'evidenziazione e riporta la vista sul mondo intero.
+     * La cache dei tile viene mantenuta.
+     *
+     * @since 1.0
+     */
+    public void reset() {
+        evidenziato = null;
+        onRistoranteSelezionato = null;
+        centra(0, 0, ZOOM_MINIMO);
+    }
+
+    @Override
+    protected void layoutChildren() {
+        canvas.setWidth(getWidth());
+        canvas.setHeight(getHeight());
+        disegna();
+    }
+
+    // ----- Disegno sul JavaFX Application Thread -----
+
+    private void pianificaRidisegno() {
+        if (!ridisegnoPianificato) {
+            ridisegnoPianificato = true;
+            Platform.runLater(() -> {
+                ridisegnoPianificato = false;
+                disegna();
+            });
+        }
+    }
+
+    private void disegna() {
+        double w = canvas.getWidth();
+        double h = canvas.getHeight();
+        if (w <= 0 || h <= 0) {
+            return;
+        }
+
+        MappaRistoranti corrente = CatalogoRistoranti.getMappa(ridisegnoDopoAggiornamento);
+        if (corrente != mappa) {
+            // Il catalogo è cambiato: i tile in cache non sono più validi
+            mappa = corrente;
+            cache.clear();
+        }
+
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        g.setFill(Color.web("#e8eef3"));
+        g.fillRect(0, 0, w, h);
+
+        double sinistra = centroX - w / 2;
+        double alto = centroY - h / 2;
+        int n = 1 << zoom;
+        int tx0 = (int) Math.floor(sinistra / LATO_TILE);
+        int tx1 = (int) Math.floor((sinistra + w) / LATO_TILE);
+        int ty0 = Math.max(0, (int) Math.floor(alto / LATO_TILE));
+        int ty1 = Math.min(n - 1, (int) Math.floor((alto + h) / LATO_TILE));
+        vista = new int[] {zoom, tx0, ty0, tx1, ty1};
+
+        for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                int x = Math.floorMod(tx, n);
+                double px = tx * (double) LATO_TILE - sinistra;
+                double py = ty * (double) LATO_TILE - alto;
+                Image tile = cache.get(chiave(zoom, x, ty));
+                if (tile != null) {
+                    g.drawImage(tile, px, py);
+                } else {
+                    richiediTile(zoom, x, ty);
+                    disegnaSostituto(g, zoom, x, ty, px, py);
+                }
+            }
+        }
+
+        disegnaEtichette(g, sinistra, alto, w, h);
+        disegnaEvidenziato(g, sinistra, alto);
+
+        g.setFill(Color.web("#555555"));
+        g.setFont(Font.font(11));
+        g.setTextAlign(TextAlignment.RIGHT);
+        g.setTextBaseline(VPos.BOTTOM);
+        g.fillText("Mappa offline · zoom " + zoom, w - 6, h - 4);
+    }
+
+    /**
+     * Disegna al posto di un tile mancante la porzione corrispondente del
+     * primo tile di zoom inferiore disponibile in cache.
+     */
+    private void disegnaSostituto(GraphicsContext g, int z, int x, int y, double px, double py) {
+        for (int k = 1; k <= 4 && z - k >= 0; k++) {
+            Image padre = cache.get(chiave(z - k, x >> k, y >> k));
+            if (padre != null) {
+                double lato = (double) LATO_TILE / (1 << k);
+                double sx = (x & ((1 << k) - 1)) * lato;
+                double sy = (y & ((1 << k) - 1)) * lato;
+                g.drawImage(padre, sx, sy, lato, lato, px, py, LATO_TILE, LATO_TILE);
+                return;
+            }
+        }
+    }
+
+    private void disegnaEtichette(GraphicsContext g, double sinistra, double alto, double w, double h) {
+        clusterVisibili.clear();
+        if (mappa == null) {
+            return;
+        }
+
+        double dimensione = dimensioneMondo(zoom);
+        double ovest = normalizzaLon(lonDaX(sinistra, dimensione));
+        double est = normalizzaLon(lonDaX(sinistra + w, dimensione));
+        if (w >= dimensione) {
+            ovest = -180;
+            est = 180;
+        }
+        double nord = latDaY(Math.max(0, alto), dimensione);
+        double sud = latDaY(Math.min(dimensione, alto + h), dimensione);
+        clusterVisibili.addAll(mappa.cluster(sud, ovest, nord, est, zoom));
+
+        g.setFill(Color.WHITE);
+        g.setFont(Font.font("System", FontWeight.BOLD, 11));
+        g.setTextAlign(TextAlignment.CENTER);
+        g.setTextBaseline(VPos.CENTER);
+        for (MappaRistoranti.Cluster c : clusterVisibili) {
+            if (c.getConteggio() > 1) {
+                double x = schermoX(xDaLon(c.getLongitudine(), dimensione), sinistra, dimensione);
+                double y = yDaLat(c.getLatitudine(), dimensione) - alto;
+                g.fillText(String.valueOf(c.getConteggio()), x, y);
+            }
+        }
+    }
+
+    private void disegnaEvidenziato(GraphicsContext g, double sinistra, double alto) {
+        if (evidenziato == null) {
+            return;
+        }
+        double dimensione = dimensioneMondo(zoom);
+        double x = schermoX(xDaLon(evidenziato.getLongitude(), dimensione), sinistra, dimensione);
+        double y = yDaLat(evidenziato.getLatitude(), dimensione) - alto;
+        g.setFill(Color.web("#2980b9"));
+        g.fillOval(x - 8, y - 8, 16, 16);
+        g.setStroke(Color.WHITE);
+        g.setLineWidth(3);
+        g.strokeOval(x - 8, y - 8, 16, 16);
+    }
+
+    /**
+     * Gestisce il click: un cluster viene ingrandito, un singolo ristorante selezionato.
+     */
+    private void selezionaIn(double sx, double sy) {
+        double dimensione = dimensioneMondo(zoom);
+        double sinistra = centroX - canvas.getWidth() / 2;
+        double alto = centroY - canvas.getHeight() / 2;
+
+        MappaRistoranti.Cluster colpito = null;
+        double migliore = Double.MAX_VALUE;
+        for (MappaRistoranti.Cluster c : clusterVisibili) {
+            double dx = schermoX(xDaLon(c.getLongitudine(), dimensione), sinistra, dimensione) - sx;
+            double dy = yDaLat(c.getLatitudine(), dimensione) - alto - sy;
+            double d2 = dx * dx + dy * dy;
+            double r = raggio(c.getConteggio()) + 2;
+            if (d2 <= r * r && d2 < migliore) {
+                migliore = d2;
+                colpito = c;
+            }
+        }
+        if (colpito == null) {
+            return;
+        }
+
+        Ristorante singolo = colpito.getRistorante();
+        if (singolo != null) {
+            evidenziato = singolo;
+            if (onRistoranteSelezionato != null) {
+                onRistoranteSelezionato.accept(singolo);
+            }
+            disegna();
+        } else {
+            centra(colpito.getLatitudine(), colpito.getLongitudine(), zoom + 2);
+        }
+    }
+
+    private void zoomIntorno(int delta, double sx, double sy) {
+        int nuovo = Math.max(ZOOM_MINIMO, Math.min(ZOOM_MASSIMO, zoom + delta));
+        if (nuovo == zoom) {
+            return;
+        }
+        double fattore = Math.pow(2, nuovo - zoom);
+        double dx = sx - canvas.getWidth() / 2;
+        double dy = sy - canvas.getHeight() / 2;
+        // Il punto sotto il cursore resta fermo sullo schermo
+        centroX = (centroX + dx) * fattore - dx;
+        centroY = (centroY + dy) * fattore - dy;
+        zoom = nuovo;
+        limitaCentro();
+        disegna();
+    }
+
+    private void limitaCentro() {
+        double dimensione = dimensioneMondo(zoom);
+        centroX = ((centroX % dimensione) + dimensione) % dimensione;
+        centroY = Math.max(0, Math.min(dimensione, centroY));
+    }
+
+    private double schermoX(double mondoX, double sinistra, double dimensione) {
+        double x = mondoX - sinistra;
+        // La mappa si ripete in orizzontale: sceglie la copia più vicina alla vista
+        if (x < -MARGINE_MARKER_PX) {
+            x += dimensione;
+        } else if (x > canvas.getWidth() + MARGINE_MARKER_PX) {
+            x -= dimensione;
+        }
+        return x;
+    }
+
+    // ----- Rasterizzazione dei tile in background -----
+
+    private void richiediTile(int z, int x, int y) {
+        long chiave = chiave(z, x, y);
+        if (mappa == null || !inCorso.add(chiave)) {
+            return;
+        }
+
+        MappaRistoranti sorgente = mappa;
+        rasterizzatore.execute(() -> {
+            if (!visibile(z, x, y)) {
+                // Tile uscito dalla vista prima di essere disegnato
+                Platform.runLater(() -> inCorso.remove(chiave));
+                return;
+            }
+            int[] pixel = rasterizza(sorgente, z, x, y);
+            Platform.runLater(() -> {
+                inCorso.remove(chiave);
+                if (sorgente != mappa) {
+                    return;
+                }
+                WritableImage immagine = new WritableImage(LATO_TILE, LATO_TILE);
+                immagine.getPixelWriter().setPixels(0, 0, LATO_TILE, LATO_TILE,
+                        PixelFormat.getIntArgbInstance(), pixel, 0, LATO_TILE);
+                cache.put(chiave, immagine);
+                pianificaRidisegno();
+            });
+        });
+    }
+
+    private boolean visibile(int z, int x, int y) {
+        int[] v = vista;
+        if (v[0] != z || y < v[2] || y > v[4]) {
+            return false;
+        }
+        int n = 1 << z;
+        for (int tx = v[1]; tx <= v[3]; tx++) {
+            if (Math.floorMod(tx, n) == x) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Disegna un tile in un buffer ARGB: sfondo, reticolo e marker dei cluster.
+     * Non accede a nodi JavaFX e può essere eseguito su qualsiasi thread.
+     */
+    static int[] rasterizza(MappaRistoranti mappa, int z, int x, int y) {
+        int[] pixel = new int[LATO_TILE * LATO_TILE];
+        Arrays.fill(pixel, COLORE_SFONDO);
+
+        double dimensione = dimensioneMondo(z);
+        double ox = x * (double) LATO_TILE;
+        double oy = y * (double) LATO_TILE;
+        disegnaReticolo(pixel, z, ox, oy, dimensione);
+
+        // Riquadro del tile allargato del raggio massimo di un marker
+        double ovest = normalizzaLon(lonDaX(ox - MARGINE_MARKER_PX, dimensione));
+        double est = normalizzaLon(lonDaX(ox + LATO_TILE + MARGINE_MARKER_PX, dimensione));
+        double nord = latDaY(Math.max(0, oy - MARGINE_MARKER_PX), dimensione);
+        double sud = latDaY(Math.min(dimensione, oy + LATO_TILE + MARGINE_MARKER_PX), dimensione);
+
+        for (MappaRistoranti.Cluster c : mappa.cluster(sud, ovest, nord, est, z)) {
+            double cx = xDaLon(c.getLongitudine(), dimensione) - ox;
+            if (cx < -MARGINE_MARKER_PX) {
+                cx += dimensione;
+            } else if (cx > LATO_TILE + MARGINE_MARKER_PX) {
+                cx -= dimensione;
+            }
+            double cy = yDaLat(c.getLatitudine(), dimensione) - oy;
+            int r = raggio(c.getConteggio());
+            cerchio(pixel, cx, cy, r + 1, COLORE_BORDO_MARKER);
+            cerchio(pixel, cx, cy, r, c.getConteggio() == 1 ? COLORE_RISTORANTE : COLORE_CLUSTER);
+        }
+        return pixel;
+    }
+
+    private static void disegnaReticolo(int[] pixel, int z, double ox, double oy, double dimensione) {
+        double passo = z <= 3 ? 30 : z <= 5 ? 10 : z <= 7 ? 5 : z <= 9 ? 1 : z <= 11 ? 0.5 : z <= 13 ? 0.1 : 0.05;
+
+        double ovest = lonDaX(ox, dimensione);
+        double est = lonDaX(ox + LATO_TILE, dimensione);
+        for (double lon = Math.ceil(ovest / passo) * passo; lon <= est; lon += passo) {
+            int px = (int) Math.round(xDaLon(lon, dimensione) - ox);
+            if (px >= 0 && px < LATO_TILE) {
+                int colore = Math.abs(lon) < 1e-9 ? COLORE_RETICOLO_PRINCIPALE : COLORE_RETICOLO;
+                for (int py = 0; py < LATO_TILE; py++) {
+                    pixel[py * LATO_TILE + px] = colore;
+                }
+            }
+        }
+
+        double nord = latDaY(oy, dimensione);
+        double sud = latDaY(oy + LATO_TILE, dimensione);
+        for (double lat = Math.ceil(sud / passo) * passo; lat <= nord; lat += passo) {
+            int py = (int) Math.round(yDaLat(lat, dimensione) - oy);
+            if (py >= 0 && py < LATO_TILE) {
+                int colore = Math.abs(lat) < 1e-9 ? COLORE_RETICOLO_PRINCIPALE : COLORE_RETICOLO;
+                Arrays.fill(pixel, py * LATO_TILE, (py + 1) * LATO_TILE, colore);
+            }
+        }
+    }
+
+    private static void cerchio(int[] pixel, double cx, double cy, int r, int colore) {
+        int y0 = Math.max(0, (int) Math.floor(cy - r));
+        int y1 = Math.min(LATO_TILE - 1, (int) Math.ceil(cy + r));
+        double r2 = r * (double) r;
+        for (int py = y0; py <= y1; py++) {
+            double dy = py + 0.5 - cy;
+            double dx = Math.sqrt(Math.max(0, r2 - dy * dy));
+            int x0 = Math.max(0, (int) Math.round(cx - dx));
+            int x1 = Math.min(LATO_TILE, (int) Math.round(cx + dx));
+            if (x0 < x1 && dy * dy <= r2) {
+                Arrays.fill(pixel, py * LATO_TILE + x0, py * LATO_TILE + x1, colore);
+            }
+        }
+    }
+
+    private static int raggio(int conteggio) {
+        if (conteggio <= 1) {
+            return 4;
+        }
+        return (int) Math.min(MARGINE_MARKER_PX - 2, 7 + 4 * Math.log10(conteggio));
+    }
+
+    // ----- Proiezione Web Mercator -----
+
+    private static long chiave(int z, int x, int y) {
+        return ((long) z << 58) | ((long) x << 29) | y;
+    }
+
+    private static double dimensioneMondo(int z) {
+        return LATO_TILE * (double) (1 << z);
+    }
+
+    private static double xDaLon(double lon, double dimensione) {
+        return (lon + 180.0) / 360.0 * dimensione;
+    }
+
+    private static double yDaLat(double lat, double dimensione) {
+        double phi = Math.toRadians(Math.max(-LAT_MASSIMA, Math.min(LAT_MASSIMA, lat)));
+        return (1 - Math.log(Math.tan(phi) + 1 / Math.cos(phi)) / Math.PI) / 2 * dimensione;
+    }
+
+    private static double lonDaX(double x, double dimensione) {
+        return x / dimensione * 360.0 - 180.0;
+    }
+
+    private static double latDaY(double y, double dimensione) {
+        double n = Math.PI - 2 * Math.PI * y / dimensione;
+        return Math.toDegrees(Math.atan(Math.sinh(n)));
+    }
+
+    private static double normalizzaLon(double lon) {
+        return ((lon + 180.0) % 360.0 + 360.0) % 360.0 - 180.0;
+    }
+}
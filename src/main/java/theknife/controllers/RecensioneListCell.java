@@ -0,0 +1,163 @@
+package theknife.controllers;
+
+import javafx.geometry.Pos;
+import javafx.scene.Node;
+import javafx.scene.control.Button;
+import javafx.scene.control.ListCell;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Text;
+import theknife.models.Recensione;
+import theknife.models.Risposta;
+
+import java.util.function.Consumer;
+
+/**
+ * Cella riutilizzabile per mostrare una recensione in una ListView.
+ * <p>
+ * Il grafo dei nodi (card, header, testi, box risposta) viene creato una sola
+ * volta per cella; updateItem si limita ad aggiornare i testi e la visibilità
+ * delle parti opzionali. Gli stili sono definiti come classi in main.css.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public class RecensioneListCell extends ListCell<Recensione> {
+
+    /**
+     * Variante di visualizzazione della card in base alla vista che la ospita.
+     */
+    public enum Variante {
+        /** Dettaglio ristorante: autore, commento completo e risposta del ristoratore. */
+        DETTAGLIO,
+        /** Dashboard cliente: nome ristorante, commento troncato, card cliccabile. */
+        CLIENTE,
+        /** Dashboard ristoratore: risposta inviata oppure pulsante per rispondere. */
+        RISTORATORE
+    }
+
+    private static final int LUNGHEZZA_COMMENTO_CLIENTE = 100;
+
+    private final Variante variante;
+    private final VBox card = new VBox(8);
+    private final Text ristorante = new Text();
+    private final Text stelle = new Text();
+    private final Text autore = new Text();
+    private final Text data = new Text();
+    private final Text titolo = new Text();
+    private final Text commento = new Text();
+    private final Text rispostaPresente = new Text("💬 Il ristoratore ha risposto");
+    private final VBox rispostaBox = new VBox(5);
+    private final Text rispostaHeader = new Text();
+    private final Text rispostaTesto = new Text();
+    private final Button rispondiBtn = new Button("💬 Rispondi alla Recensione");
+
+    /**
+     * Crea la cella e il suo grafo di nodi.
+     *
+     * @param variante Variante di visualizzazione, must be non-null.
+     * @param onApri Azione al click sulla card (solo variante CLIENTE), può essere null.
+     * @param onRispondi Azione del pulsante "Rispondi" (solo variante RISTORATORE), può essere null.
+     * @since 1.0
+     */
+    public RecensioneListCell(Variante variante, Consumer<Recensione> onApri, Consumer<Recensione> onRispondi) {
+        this.variante = variante;
+
+        card.getStyleClass().add("list-card");
+        ristorante.getStyleClass().add("card-heading");
+        stelle.getStyleClass().add("card-stars");
+        autore.getStyleClass().add("card-meta");
+        data.getStyleClass().add("card-date");
+        titolo.getStyleClass().add("card-title");
+        commento.getStyleClass().add("card-text");
+        rispostaPresente.getStyleClass().add("card-flag");
+        rispostaBox.getStyleClass().add("reply-box");
+        rispostaHeader.getStyleClass().add("reply-header");
+        rispostaTesto.getStyleClass().add("reply-text");
+        rispondiBtn.getStyleClass().addAll("card-button", "card-button-success");
+
+        HBox header = new HBox(10);
+        header.setAlignment(Pos.CENTER_LEFT);
+        rispostaBox.getChildren().addAll(rispostaHeader, rispostaTesto);
+
+        switch (variante) {
+            case DETTAGLIO:
+                card.getStyleClass().add("list-card-compact");
+                stelle.getStyleClass().add("card-stars-large");
+                commento.setWrappingWidth(400);
+                rispostaTesto.setWrappingWidth(380);
+                header.getChildren().addAll(stelle, autore, data);
+                card.getChildren().addAll(header, titolo, commento, rispostaBox);
+                break;
+            case CLIENTE:
+                card.getStyleClass().add("card-clickable");
+                header.getChildren().addAll(ristorante, stelle, data);
+                card.getChildren().addAll(header, titolo, commento, rispostaPresente);
+                card.setOnMouseClicked(event -> {
+                    if (getItem() != null && onApri != null) {
+                        onApri.accept(getItem());
+                    }
+                });
+                break;
+            case RISTORATORE:
+                rispostaBox.getStyleClass().add("reply-box-own");
+                commento.setWrappingWidth(500);
+                rispostaTesto.setWrappingWidth(480);
+                header.getChildren().addAll(ristorante, stelle, autore, data);
+                card.getChildren().addAll(header, titolo, commento, rispostaBox, rispondiBtn);
+                rispondiBtn.setOnAction(event -> {
+                    if (getItem() != null && onRispondi != null) {
+                        onRispondi.accept(getItem());
+                    }
+                });
+                break;
+        }
+    }
+
+    /**
+     * Aggiorna i testi della card con la recensione corrente senza ricreare i nodi.
+     *
+     * @param recensione Recensione da mostrare, può essere null.
+     * @param empty true se la cella è vuota.
+     * @since 1.0
+     */
+    @Override
+    protected void updateItem(Recensione recensione, boolean empty) {
+        super.updateItem(recensione, empty);
+        if (empty || recensione == null) {
+            setGraphic(null);
+            return;
+        }
+
+        ristorante.setText(recensione.getNomeRistorante());
+        stelle.setText(recensione.getStelle());
+        autore.setText("di " + recensione.getUsernameCliente());
+        data.setText(recensione.getDataRecensioneFormatted());
+        titolo.setText(recensione.getTitolo());
+
+        String testo = recensione.getCommento();
+        if (variante == Variante.CLIENTE && testo != null && testo.length() > LUNGHEZZA_COMMENTO_CLIENTE) {
+            testo = testo.substring(0, LUNGHEZZA_COMMENTO_CLIENTE) + "...";
+        }
+        commento.setText(testo);
+
+        Risposta risposta = recensione.getRisposta();
+        boolean haRisposta = risposta != null;
+        mostra(rispostaPresente, haRisposta);
+        mostra(rispostaBox, haRisposta && variante != Variante.CLIENTE);
+        mostra(rispondiBtn, !haRisposta && variante == Variante.RISTORATORE);
+        if (haRisposta) {
+            String prefisso = variante == Variante.RISTORATORE ? "✅ La tua risposta (" : "Risposta del ristoratore (";
+            rispostaHeader.setText(prefisso + risposta.getDataRispostaFormatted() + "):");
+            rispostaTesto.setText(risposta.getTesto());
+        }
+
+        setGraphic(card);
+    }
+
+    private static void mostra(Node nodo, boolean visibile) {
+        nodo.setVisible(visibile);
+        nodo.setManaged(visibile);
+    }
+}
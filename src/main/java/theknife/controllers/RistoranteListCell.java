@@ -0,0 +1,173 @@
+package theknife.controllers;
+
+import javafx.geometry.Pos;
+import javafx.scene.Node;
+import javafx.scene.control.Button;
+import javafx.scene.control.ListCell;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Text;
+import theknife.models.Ristorante;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Cella riutilizzabile per mostrare un ristorante come card in una ListView.
+ * <p>
+ * Come {@link RecensioneListCell}, costruisce il grafo dei nodi una sola volta
+ * e in updateItem aggiorna soltanto testi e visibilità. Le statistiche delle
+ * recensioni della variante RISTORATORE sono calcolate dal controller una
+ * volta per tutti i ristoranti e la cella si limita a leggerne il testo.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public class RistoranteListCell extends ListCell<Ristorante> {
+
+    /**
+     * Variante di visualizzazione della card.
+     */
+    public enum Variante {
+        /** Preferiti del cliente: card cliccabile con pulsante di rimozione. */
+        PREFERITO,
+        /** Ristoranti del ristoratore: contatti, statistiche recensioni e azioni. */
+        RISTORATORE
+    }
+
+    private final Variante variante;
+    private final VBox card = new VBox();
+    private final Text nome = new Text();
+    private final Text cucina = new Text();
+    private final Text localita = new Text();
+    private final Text telefono = new Text();
+    private final Text prezzo = new Text();
+    private final Text stelle = new Text();
+    private final Text greenStar = new Text("🌟 Green Star");
+    private final Text statsRecensioni = new Text();
+    private final Function<Ristorante, String> statistiche;
+
+    /**
+     * Crea la cella per la variante PREFERITO.
+     *
+     * @param onApri Azione al click sulla card, può essere null.
+     * @param onRimuovi Azione del pulsante di rimozione dai preferiti, può essere null.
+     * @return Nuova cella.
+     * @since 1.0
+     */
+    public static RistoranteListCell preferito(Consumer<Ristorante> onApri, Consumer<Ristorante> onRimuovi) {
+        return new RistoranteListCell(Variante.PREFERITO, onApri, onRimuovi, null, null);
+    }
+
+    /**
+     * Crea la cella per la variante RISTORATORE.
+     *
+     * @param onDettagli Azione del pulsante "Visualizza Dettagli", può essere null.
+     * @param onRecensioni Azione del pulsante "Vedi Recensioni", può essere null.
+     * @param statistiche Testo già pronto delle statistiche recensioni del ristorante, must be non-null.
+     * @return Nuova cella.
+     * @since 1.0
+     */
+    public static RistoranteListCell ristoratore(Consumer<Ristorante> onDettagli, Consumer<Ristorante> onRecensioni,
+            Function<Ristorante, String> statistiche) {
+        return new RistoranteListCell(Variante.RISTORATORE, onDettagli, null, onRecensioni, statistiche);
+    }
+
+    private RistoranteListCell(Variante variante, Consumer<Ristorante> onApri,
+            Consumer<Ristorante> onRimuovi, Consumer<Ristorante> onRecensioni,
+            Function<Ristorante, String> statistiche) {
+        this.variante = variante;
+        this.statistiche = statistiche;
+
+        card.getStyleClass().add("list-card");
+        nome.getStyleClass().add("card-heading");
+        cucina.getStyleClass().add("card-meta");
+        localita.getStyleClass().add("card-info");
+        telefono.getStyleClass().add("card-info");
+        prezzo.getStyleClass().add("card-price");
+        stelle.getStyleClass().add("card-michelin");
+        greenStar.getStyleClass().add("card-green-star");
+        statsRecensioni.getStyleClass().add("card-stats");
+
+        if (variante == Variante.PREFERITO) {
+            card.setSpacing(8);
+            card.getStyleClass().add("card-clickable");
+
+            HBox stelleBox = new HBox(5, stelle, greenStar);
+            Button rimuoviBtn = creaPulsante("❤️ Rimuovi", "card-button-danger", onRimuovi);
+
+            card.getChildren().addAll(nome, cucina, stelleBox, localita, prezzo, rimuoviBtn);
+            card.setOnMouseClicked(event -> {
+                if (getItem() != null && onApri != null) {
+                    onApri.accept(getItem());
+                }
+            });
+        } else {
+            card.setSpacing(10);
+            nome.getStyleClass().add("card-heading-large");
+            stelle.getStyleClass().add("card-bold");
+            greenStar.getStyleClass().add("card-bold");
+
+            HBox header = new HBox(10, nome, cucina);
+            header.setAlignment(Pos.CENTER_LEFT);
+            HBox stelleBox = new HBox(10, stelle, greenStar);
+            HBox buttonsBox = new HBox(10,
+                    creaPulsante("Visualizza Dettagli", "card-button-info", onApri),
+                    creaPulsante("Vedi Recensioni", "card-button-warning", onRecensioni));
+
+            card.getChildren().addAll(header, localita, telefono, stelleBox, statsRecensioni, buttonsBox);
+        }
+    }
+
+    /**
+     * Aggiorna i testi della card con il ristorante corrente senza ricreare i nodi.
+     *
+     * @param ristorante Ristorante da mostrare, può essere null.
+     * @param empty true se la cella è vuota.
+     * @since 1.0
+     */
+    @Override
+    protected void updateItem(Ristorante ristorante, boolean empty) {
+        super.updateItem(ristorante, empty);
+        if (empty || ristorante == null) {
+            setGraphic(null);
+            return;
+        }
+
+        nome.setText(ristorante.getName());
+        cucina.setText(ristorante.getCuisine());
+
+        int numeroStelle = ristorante.getStars();
+        stelle.setText(numeroStelle > 0 ? "★".repeat(numeroStelle) + " Michelin" : "");
+        mostra(stelle, numeroStelle > 0);
+        mostra(greenStar, ristorante.hasGreenStar());
+
+        if (variante == Variante.PREFERITO) {
+            localita.setText(ristorante.getLocation());
+            prezzo.setText(ristorante.getPrice() != null ? ristorante.getPrice() : "N/A");
+        } else {
+            localita.setText("📍 " + ristorante.getLocation());
+            telefono.setText("📞 " + ristorante.getPhoneNumber());
+            statsRecensioni.setText(statistiche.apply(ristorante));
+        }
+
+        setGraphic(card);
+    }
+
+    private Button creaPulsante(String testo, String stile, Consumer<Ristorante> azione) {
+        Button button = new Button(testo);
+        button.getStyleClass().addAll("card-button", stile);
+        button.setOnAction(event -> {
+            if (getItem() != null && azione != null) {
+                azione.accept(getItem());
+            }
+        });
+        return button;
+    }
+
+    private static void mostra(Node nodo, boolean visibile) {
+        nodo.setVisible(visibile);
+        nodo.setManaged(visibile);
+    }
+}
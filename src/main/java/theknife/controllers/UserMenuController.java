@@ -5,6 +5,7 @@ import javafx.fxml.Initializable;
 import javafx.scene.control.Label;
 import javafx.stage.Stage;
 import theknife.models.Utente;
+import theknife.utils.SessionManager;
 
 import java.net.URL;
 import java.util.ResourceBundle;
@@ -65,13 +66,14 @@ public class UserMenuController implements Initializable {
     }
 
     /**
-     * Esegue il logout dell'utente delegando al HomeController e chiude
-     * il menu corrente.
+     * Esegue il logout dell'utente revocando la sessione locale, delegando
+     * al HomeController e chiude il menu corrente.
      *
      * @since 1.0
      */
     @FXML
     private void handleLogout() {
+        SessionManager.revocaSessioneCorrente();
         if (homeController != null) {
             homeController.handleLogout();
         }
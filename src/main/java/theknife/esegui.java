@@ -1,5 +1,13 @@
 package theknife;
 
+import theknife.tools.EsportazioneColonnare;
+import theknife.tools.GeneratoreDati;
+import theknife.tools.Importatore;
+import theknife.server.ServerRest;
+import theknife.tools.ProvaCarico;
+import theknife.utils.Metriche;
+import theknife.utils.RegistrazioneJfr;
+
 import java.io.*;
 import java.util.*;
 
@@ -11,6 +19,35 @@ import java.util.*;
  * */
 public class esegui {
     public static void main(String[] args) {
+        // Riepilogo periodico delle metriche, se richiesto con -Dtheknife.metriche=<secondi>
+        Metriche.avviaDaConfigurazione();
+        // Registrazione JFR a buffer circolare, se richiesta con -Dtheknife.jfr=true
+        RegistrazioneJfr.avviaDaConfigurazione();
+        if (args.length > 0 && args[0].equals("--importa")) {
+            // Importazione in blocco senza avviare l'interfaccia grafica
+            Importatore.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && (args[0].equals("--esporta-colonnare") || args[0].equals("--analisi"))) {
+            // Esportazione colonnare e aggregazioni offline
+            EsportazioneColonnare.main(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--genera")) {
+            // Dati sintetici per le prove di carico
+            GeneratoreDati.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--carico")) {
+            // Prova di carico sui servizi, senza interfaccia grafica
+            ProvaCarico.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--server")) {
+            // API REST in JSON sui servizi, senza interfaccia grafica
+            ServerRest.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         Main.main(args);
     }
 
@@ -2,6 +2,7 @@ package theknife.models;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Rappresenta una recensione lasciata da un cliente per un ristorante.
@@ -15,6 +16,8 @@ import java.time.format.DateTimeFormatter;
  * @version 1.0
  * */
 public class Recensione {
+    private static final AtomicLong SEQUENZA_ID = new AtomicLong();
+
     private String id;
     private String usernameCliente;
     private String nomeRistorante;
@@ -59,7 +62,9 @@ public class Recensione {
      * @since 1.0
      */
     private String generateId() {
-        return "REV_" + System.currentTimeMillis() + "_" + (int) (Math.random() * 1000);
+        // Progressivo invece di un numero casuale: due recensioni create nello
+        // stesso millisecondo (ad esempio dal server REST) non collidono
+        return "REV_" + System.currentTimeMillis() + "_" + SEQUENZA_ID.incrementAndGet();
     }
 
     // Getters and Setters
@@ -2,6 +2,7 @@ package theknife.models;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Rappresenta la risposta di un ristoratore ad una recensione.
@@ -14,6 +15,8 @@ import java.time.format.DateTimeFormatter;
  * @version 1.0
  * */
 public class Risposta {
+    private static final AtomicLong SEQUENZA_ID = new AtomicLong();
+
     private String id;
     private String usernameRistoratore;
     private String recensioneId;
@@ -63,7 +66,8 @@ public class Risposta {
      * @since 1.0
      */
     private String generateId() {
-        return "RESP_" + System.currentTimeMillis() + "_" + (int) (Math.random() * 1000);
+        // Progressivo invece di un numero casuale, come per le recensioni
+        return "RESP_" + System.currentTimeMillis() + "_" + SEQUENZA_ID.incrementAndGet();
     }
 
     // Getters and Setters
@@ -0,0 +1,122 @@
+package theknife.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import theknife.models.Recensione;
+import theknife.models.Ristorante;
+import theknife.utils.Metriche;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Esportazione in streaming del catalogo e delle recensioni in formato
+ * NDJSON (un oggetto JSON per riga).
+ * <p>
+ * Le righe vengono scritte una alla volta sul corpo della risposta, inviato
+ * con codifica a blocchi (chunked) perché la lunghezza non è nota in
+ * anticipo; in memoria resta solo il buffer di scrittura, qualunque sia la
+ * dimensione dei dati. Se il client legge più lentamente di quanto il server
+ * scrive, la scrittura sul socket si blocca e con essa la lettura dei dati:
+ * il thread della richiesta avanza al passo del client.
+ * </p>
+ * <p>
+ * Le recensioni sono lette dall'istantanea immutabile di
+ * {@link theknife.services.RecensioniManager#getAllRecensioni()}, senza copie:
+ * le recensioni aggiunte durante l'esportazione non compaiono. L'ordine è
+ * quello di inserimento, quindi un client interrotto può riprendere con
+ * {@code ?da=<righe già ricevute>} e gli stessi parametri: con
+ * {@code ?ristorante=} {@code da} conta le righe del ristorante, non le
+ * posizioni nell'elenco completo.
+ * </p>
+ * <pre>
+ * GET /api/esportazione/ristoranti   ?da
+ * GET /api/esportazione/recensioni   ?da &amp;ristorante
+ * </pre>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+final class EsportazioneNdjson {
+    private static final String TIPO = "application/x-ndjson; charset=utf-8";
+    private static final int BUFFER = 64 * 1024;
+
+    private EsportazioneNdjson() {
+    }
+
+    /**
+     * Esporta il catalogo dei ristoranti, a partire dalla posizione indicata.
+     *
+     * @param scambio Richiesta da servire.
+     * @param catalogo Catalogo dei ristoranti.
+     * @param da Indice del primo ristorante da esportare.
+     * @since 1.0
+     */
+    static void ristoranti(HttpExchange scambio, List<Ristorante> catalogo, int da) {
+        esporta(scambio, "ristoranti", catalogo, da, null, Rappresentazioni::ristoranteCompleto);
+    }
+
+    /**
+     * Esporta le recensioni, a partire dalla posizione indicata e
+     * facoltativamente solo quelle di un ristorante.
+     *
+     * @param scambio Richiesta da servire.
+     * @param recensioni Istantanea delle recensioni.
+     * @param da Righe da saltare; con un ristorante indicato si contano solo le sue recensioni.
+     * @param ristorante Nome del ristorante, oppure null per tutte.
+     * @since 1.0
+     */
+    static void recensioni(HttpExchange scambio, List<Recensione> recensioni, int da, String ristorante) {
+        Predicate<Recensione> filtro = ristorante == null ? null
+                : r -> ristorante.equals(r.getNomeRistorante());
+        esporta(scambio, "recensioni", recensioni, da, filtro, Rappresentazioni::recensione);
+    }
+
+    /**
+     * Scrive gli elementi che soddisfano il filtro, saltando i primi {@code da}.
+     * Senza filtro si parte direttamente dalla posizione {@code da}; con un
+     * filtro le righe saltate sono quelle che lo soddisfano, così {@code da}
+     * corrisponde sempre alle righe già ricevute dal client.
+     */
+    private static <T> void esporta(HttpExchange scambio, String tabella, List<T> elementi, int da,
+                                    Predicate<T> filtro, BiConsumer<ScrittoreJson, T> rappresentazione) {
+        long inizio = System.nanoTime();
+        long righe = 0;
+        try {
+            scambio.getResponseHeaders().set("Content-Type", TIPO);
+            // Lunghezza 0: corpo a blocchi, terminato alla chiusura dello stream
+            scambio.sendResponseHeaders(200, 0);
+            try (Writer out = new BufferedWriter(
+                    new OutputStreamWriter(scambio.getResponseBody(), StandardCharsets.UTF_8), BUFFER)) {
+                ScrittoreJson json = new ScrittoreJson(out);
+                int daSaltare = filtro == null ? 0 : da;
+                for (int i = filtro == null ? da : 0; i < elementi.size(); i++) {
+                    T elemento = elementi.get(i);
+                    if (filtro != null && !filtro.test(elemento)) {
+                        continue;
+                    }
+                    if (daSaltare > 0) {
+                        daSaltare--;
+                        continue;
+                    }
+                    rappresentazione.accept(json.nuovoDocumento(), elemento);
+                    out.write('\n');
+                    righe++;
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            // Il client ha chiuso la connessione: le intestazioni sono già partite, non si può rispondere
+            Metriche.incrementa("server.connessioniInterrotte");
+            System.err.println("Esportazione " + tabella + " interrotta dopo " + righe + " righe: " + e.getMessage());
+        } finally {
+            Metriche.contatore("server.esportazione." + tabella + ".righe").add(righe);
+            Metriche.registra("server.esportazione", inizio);
+        }
+    }
+}
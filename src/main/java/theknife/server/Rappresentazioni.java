@@ -0,0 +1,121 @@
+package theknife.server;
+
+import theknife.models.Recensione;
+import theknife.models.Risposta;
+import theknife.models.Ristorante;
+import theknife.models.Utente;
+import theknife.services.RicercaRistoranti;
+
+/**
+ * Rappresentazioni JSON dei modelli esposte dal server.
+ * <p>
+ * I nomi dei campi sono quelli del dominio, in italiano; i dati riservati
+ * (hash della password, data di nascita) non vengono mai scritti.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+final class Rappresentazioni {
+
+    private Rappresentazioni() {
+    }
+
+    /**
+     * Scrive il riepilogo di un ristorante, usato negli elenchi.
+     *
+     * @param json Scrittore di destinazione.
+     * @param r Ristorante da scrivere.
+     * @since 1.0
+     */
+    static void ristorante(ScrittoreJson json, Ristorante r) {
+        json.inizioOggetto()
+                .campo("nome", r.getName())
+                .campo("localita", r.getLocation())
+                .campo("cucina", r.getCuisine())
+                .campo("prezzo", r.getPrice())
+                .campo("stelle", r.getStars())
+                .campo("stellaVerde", RicercaRistoranti.isStellaVerde(r))
+                .campo("latitudine", r.getLatitude())
+                .campo("longitudine", r.getLongitude())
+                .campo("consegna", r.isDeliveryAvailable())
+                .campo("prenotazioneOnline", r.isOnlineBookingAvailable())
+                .fineOggetto();
+    }
+
+    /**
+     * Scrive tutti i campi di un ristorante, usato nel dettaglio e nell'esportazione.
+     *
+     * @param json Scrittore di destinazione.
+     * @param r Ristorante da scrivere.
+     * @since 1.0
+     */
+    static void ristoranteCompleto(ScrittoreJson json, Ristorante r) {
+        json.inizioOggetto()
+                .campo("nome", r.getName())
+                .campo("indirizzo", r.getAddress())
+                .campo("localita", r.getLocation())
+                .campo("cucina", r.getCuisine())
+                .campo("prezzo", r.getPrice())
+                .campo("stelle", r.getStars())
+                .campo("riconoscimento", r.getAward())
+                .campo("stellaVerde", RicercaRistoranti.isStellaVerde(r))
+                .campo("latitudine", r.getLatitude())
+                .campo("longitudine", r.getLongitude())
+                .campo("telefono", r.getPhoneNumber())
+                .campo("url", r.getUrl())
+                .campo("sitoWeb", r.getWebsiteUrl())
+                .campo("servizi", r.getFacilitiesAndServices())
+                .campo("descrizione", r.getDescription())
+                .campo("consegna", r.isDeliveryAvailable())
+                .campo("prenotazioneOnline", r.isOnlineBookingAvailable())
+                .fineOggetto();
+    }
+
+    /**
+     * Scrive una recensione con l'eventuale risposta del ristoratore.
+     *
+     * @param json Scrittore di destinazione.
+     * @param r Recensione da scrivere.
+     * @since 1.0
+     */
+    static void recensione(ScrittoreJson json, Recensione r) {
+        json.inizioOggetto()
+                .campo("id", r.getId())
+                .campo("cliente", r.getUsernameCliente())
+                .campo("ristorante", r.getNomeRistorante())
+                .campo("valutazione", r.getValutazione())
+                .campo("titolo", r.getTitolo())
+                .campo("commento", r.getCommento())
+                .campo("data", r.getDataRecensione() != null ? r.getDataRecensione().toString() : null);
+        Risposta risposta = r.getRisposta();
+        json.nome("risposta");
+        if (risposta == null) {
+            json.valore((String) null);
+        } else {
+            json.inizioOggetto()
+                    .campo("ristoratore", risposta.getUsernameRistoratore())
+                    .campo("testo", risposta.getTesto())
+                    .campo("data", risposta.getDataRisposta() != null ? risposta.getDataRisposta().toString() : null)
+                    .fineOggetto();
+        }
+        json.fineOggetto();
+    }
+
+    /**
+     * Scrive i dati pubblici di un utente.
+     *
+     * @param json Scrittore di destinazione.
+     * @param u Utente da scrivere.
+     * @since 1.0
+     */
+    static void utente(ScrittoreJson json, Utente u) {
+        json.inizioOggetto()
+                .campo("username", u.getUsername())
+                .campo("nome", u.getNome())
+                .campo("cognome", u.getCognome())
+                .campo("domicilio", u.getDomicilio())
+                .campo("ruolo", u.getRuolo())
+                .fineOggetto();
+    }
+}
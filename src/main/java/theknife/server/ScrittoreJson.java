@@ -0,0 +1,306 @@
+package theknife.server;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Scrittore JSON minimale e in streaming.
+ * <p>
+ * Scrive direttamente su un {@link Appendable} (uno {@code StringBuilder}
+ * per le risposte piccole, un {@code Writer} sul corpo della risposta per
+ * quelle grandi) senza costruire un albero in memoria. Le virgole tra
+ * elementi e campi vengono inserite automaticamente; l'annidamento è
+ * limitato a 64 livelli. Gli errori di I/O vengono rilanciati come
+ * {@link UncheckedIOException}.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public class ScrittoreJson {
+    private final Appendable destinazione;
+    // Bit i = 1 se al livello i è già stato scritto un elemento (serve la virgola)
+    private long conElementi;
+    private int livello;
+    private boolean dopoNome;
+
+    /**
+     * Crea uno scrittore sulla destinazione indicata.
+     *
+     * @param destinazione Destinazione del testo JSON, must be non-null.
+     * @since 1.0
+     */
+    public ScrittoreJson(Appendable destinazione) {
+        this.destinazione = destinazione;
+    }
+
+    /**
+     * Apre un oggetto.
+     *
+     * @return Questo scrittore.
+     * @since 1.0
+     */
+    public ScrittoreJson inizioOggetto() {
+        prima();
+        scrivi('{');
+        return entra();
+    }
+
+    /**
+     * Chiude l'oggetto aperto.
+     *
+     * @return Questo scrittore.
+     * @since 1.0
+     */
+    public ScrittoreJson fineOggetto() {
+        esci();
+        scrivi('}');
+        return this;
+    }
+
+    /**
+     * Apre un array.
+     *
+     * @return Questo scrittore.
+     * @since 1.0
+     */
+    public ScrittoreJson inizioArray() {
+        prima();
+        scrivi('[');
+        return entra();
+    }
+
+    /**
+     * Chiude l'array aperto.
+     *
+     * @return Questo scrittore.
+     * @since 1.0
+     */
+    public ScrittoreJson fineArray() {
+        esci();
+        scrivi(']');
+        return this;
+    }
+
+    /**
+     * Scrive il nome di un campo; deve seguire un valore, un oggetto o un array.
+     *
+     * @param nome Nome del campo.
+     * @return Questo scrittore.
+     * @since 1.0
+     */
+    public ScrittoreJson nome(String nome) {
+        prima();
+        stringa(nome);
+        scrivi(':');
+        dopoNome = true;
+        return this;
+    }
+
+    /**
+     * Scrive una stringa, oppure null.
+     *
+     * @param valore Valore da scrivere.
+     * @return Questo scrittore.
+     * @since 1.0
+     */
+    public ScrittoreJson valore(String valore) {
+        prima();
+        if (valore == null) {
+            scrivi("null");
+        } else {
+            stringa(valore);
+        }
+        return this;
+    }
+
+    /**
+     * Scrive un numero intero.
+     *
+     * @param valore Valore da scrivere.
+     * @return Questo scrittore.
+     * @since 1.0
+     */
+    public ScrittoreJson valore(long valore) {
+        prima();
+        scrivi(Long.toString(valore));
+        return this;
+    }
+
+    /**
+     * Scrive un numero decimale; NaN e infiniti diventano null.
+     *
+     * @param valore Valore da scrivere.
+     * @return Questo scrittore.
+     * @since 1.0
+     */
+    public ScrittoreJson valore(double valore) {
+        prima();
+        scrivi(Double.isFinite(valore) ? Double.toString(valore) : "null");
+        return this;
+    }
+
+    /**
+     * Scrive un booleano.
+     *
+     * @param valore Valore da scrivere.
+     * @return Questo scrittore.
+     * @since 1.0
+     */
+    public ScrittoreJson valore(boolean valore) {
+        prima();
+        scrivi(valore ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * Scrive un campo stringa.
+     *
+     * @param nome Nome del campo.
+     * @param valore Valore, può essere null.
+     * @return Questo scrittore.
+     * @since 1.0
+     */
+    public ScrittoreJson campo(String nome, String valore) {
+        return nome(nome).valore(valore);
+    }
+
+    /**
+     * Scrive un campo intero.
+     *
+     * @param nome Nome del campo.
+     * @param valore Valore.
+     * @return Questo scrittore.
+     * @since 1.0
+     */
+    public ScrittoreJson campo(String nome, long valore) {
+        return nome(nome).valore(valore);
+    }
+
+    /**
+     * Scrive un campo decimale.
+     *
+     * @param nome Nome del campo.
+     * @param valore Valore.
+     * @return Questo scrittore.
+     * @since 1.0
+     */
+    public ScrittoreJson campo(String nome, double valore) {
+        return nome(nome).valore(valore);
+    }
+
+    /**
+     * Scrive un campo booleano.
+     *
+     * @param nome Nome del campo.
+     * @param valore Valore.
+     * @return Questo scrittore.
+     * @since 1.0
+     */
+    public ScrittoreJson campo(String nome, boolean valore) {
+        return nome(nome).valore(valore);
+    }
+
+    /**
+     * Prepara la scrittura di un nuovo documento sulla stessa destinazione
+     * (ad esempio la riga successiva di un file NDJSON).
+     *
+     * @return Questo scrittore.
+     * @since 1.0
+     */
+    public ScrittoreJson nuovoDocumento() {
+        conElementi = 0;
+        livello = 0;
+        dopoNome = false;
+        return this;
+    }
+
+    private void prima() {
+        if (dopoNome) {
+            dopoNome = false;
+            return;
+        }
+        if (livello > 0) {
+            long bit = 1L << (livello - 1);
+            if ((conElementi & bit) != 0) {
+                scrivi(',');
+            }
+            conElementi |= bit;
+        }
+    }
+
+    private ScrittoreJson entra() {
+        if (livello == 64) {
+            throw new IllegalStateException("Annidamento JSON troppo profondo");
+        }
+        livello++;
+        conElementi &= ~(1L << (livello - 1));
+        return this;
+    }
+
+    private void esci() {
+        if (livello == 0) {
+            throw new IllegalStateException("Nessun oggetto o array aperto");
+        }
+        livello--;
+    }
+
+    private void stringa(String s) {
+        scrivi('"');
+        int inizio = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            String sostituto;
+            switch (c) {
+                case '"' -> sostituto = "\\\"";
+                case '\\' -> sostituto = "\\\\";
+                case '\n' -> sostituto = "\\n";
+                case '\r' -> sostituto = "\\r";
+                case '\t' -> sostituto = "\\t";
+                default -> sostituto = c < 0x20 || c == '\u2028' || c == '\u2029'
+                        ? String.format("\\u%04x", (int) c) : null;
+            }
+            if (sostituto != null) {
+                scrivi(s, inizio, i);
+                scrivi(sostituto);
+                inizio = i + 1;
+            }
+        }
+        scrivi(s, inizio, s.length());
+        scrivi('"');
+    }
+
+    private void scrivi(char c) {
+        try {
+            destinazione.append(c);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void scrivi(CharSequence s) {
+        try {
+            destinazione.append(s);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void scrivi(String s, int inizio, int fine) {
+        if (inizio == 0 && fine == s.length()) {
+            scrivi(s);
+        } else if (inizio < fine) {
+            try {
+                // Writer.append(CharSequence, int, int) copierebbe la sottostringa
+                if (destinazione instanceof Writer w) {
+                    w.write(s, inizio, fine - inizio);
+                } else {
+                    destinazione.append(s, inizio, fine);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
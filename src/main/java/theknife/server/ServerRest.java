@@ -0,0 +1,553 @@
+package theknife.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import theknife.models.Recensione;
+import theknife.models.Ristorante;
+import theknife.models.Utente;
+import theknife.services.CatalogoRistoranti;
+import theknife.services.PreferitiManager;
+import theknife.services.RecensioniManager;
+import theknife.services.RicercaRistoranti;
+import theknife.utils.AuthManager;
+import theknife.utils.FileManager;
+import theknife.utils.Metriche;
+import theknife.utils.SessionManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Server REST senza interfaccia grafica sui servizi dell'applicazione.
+ * <p>
+ * Espone in JSON ricerca nel catalogo, dettaglio dei ristoranti, recensioni,
+ * preferiti e autenticazione, usando {@code com.sun.net.httpserver} del JDK e
+ * gli stessi manager dell'applicazione JavaFX. Ogni richiesta è servita da un
+ * thread virtuale quando la JVM li supporta (Java 21 e successivi), così
+ * migliaia di connessioni concorrenti non richiedono migliaia di thread di
+ * sistema; sulle JVM precedenti si usa un pool di thread limitato.
+ * </p>
+ * <p>
+ * Avvio: {@code esegui --server [--porta 8080] [--host 127.0.0.1]}. Per
+ * impostazione predefinita il server ascolta solo sull'interfaccia locale;
+ * per accettare connessioni da altre macchine va indicato esplicitamente
+ * {@code --host 0.0.0.0} (o l'indirizzo di un'interfaccia). Le
+ * richieste autenticate usano l'intestazione {@code Authorization: Bearer <token>}
+ * con il token restituito da {@code POST /api/accesso}; i corpi delle
+ * richieste sono form {@code application/x-www-form-urlencoded}.
+ * </p>
+ * <pre>
+ * GET    /api/salute
+ * POST   /api/accesso                       username, password
+ * POST   /api/uscita                        (autenticata)
+ * GET    /api/utente                        (autenticata)
+ * GET    /api/ristoranti                    ?testo &amp;cucina &amp;localita &amp;prezzo &amp;stelle &amp;consegna &amp;prenotazioneOnline &amp;da &amp;quanti
+ * GET    /api/ristoranti/{nome}
+ * GET    /api/ristoranti/{nome}/recensioni  ?da &amp;quanti
+ * POST   /api/ristoranti/{nome}/recensioni  valutazione, titolo, commento (autenticata)
+ * GET    /api/preferiti                     (autenticata)
+ * PUT    /api/preferiti/{nome}              (autenticata)
+ * DELETE /api/preferiti/{nome}              (autenticata)
+ * GET    /api/esportazione/ristoranti       ?da (NDJSON, vedi {@link EsportazioneNdjson})
+ * GET    /api/esportazione/recensioni       ?da &amp;ristorante (NDJSON)
+ * </pre>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public class ServerRest {
+    private static final int PORTA_PREDEFINITA = 8080;
+    private static final String HOST_PREDEFINITO = "127.0.0.1";
+    private static final int CODA_CONNESSIONI = 1024;
+    private static final int THREAD_SENZA_VIRTUALI = 200;
+    private static final int MAX_CORPO = 64 * 1024;
+    private static final int MAX_PAGINA = 500;
+    private static final int PAGINA_PREDEFINITA = 50;
+
+    /** Errore da restituire al client con lo stato HTTP indicato. */
+    static final class ErroreHttp extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int stato;
+
+        ErroreHttp(int stato, String messaggio) {
+            super(messaggio);
+            this.stato = stato;
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService esecutore;
+    private final List<Ristorante> catalogo;
+    private final Map<String, Ristorante> perNome;
+
+    /**
+     * Crea il server e carica il catalogo; non accetta connessioni finché
+     * non viene chiamato {@link #avvia()}.
+     *
+     * @param host Indirizzo su cui ascoltare (ad esempio "127.0.0.1").
+     * @param porta Porta TCP; 0 per sceglierne una libera.
+     * @throws IOException se la porta non può essere aperta.
+     * @since 1.0
+     */
+    public ServerRest(String host, int porta) throws IOException {
+        catalogo = CatalogoRistoranti.imposta(FileManager.caricaRistoranti());
+        Map<String, Ristorante> indice = new HashMap<>();
+        for (Ristorante r : catalogo) {
+            indice.putIfAbsent(r.getName(), r);
+        }
+        perNome = indice;
+        // Carica le recensioni prima della prima richiesta
+        RecensioniManager.getAllRecensioni();
+
+        esecutore = creaEsecutore();
+        server = HttpServer.create(new InetSocketAddress(host, porta), CODA_CONNESSIONI);
+        server.setExecutor(esecutore);
+        server.createContext("/api/", this::gestisci);
+    }
+
+    /**
+     * Punto d'ingresso da riga di comando.
+     *
+     * @param args Opzioni {@code --porta N} e {@code --host H} (predefinito 127.0.0.1).
+     * @since 1.0
+     */
+    public static void main(String[] args) {
+        int porta = PORTA_PREDEFINITA;
+        String host = HOST_PREDEFINITO;
+        try {
+            for (int i = 0; i + 1 < args.length; i++) {
+                switch (args[i]) {
+                    case "--porta" -> porta = Integer.parseInt(args[++i]);
+                    case "--host" -> host = args[++i];
+                    default -> System.err.println("Opzione ignorata: " + args[i]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Uso: --server [--porta N] [--host H]");
+            System.exit(2);
+        }
+
+        InetSocketAddress indirizzo = new InetSocketAddress(host, porta);
+        if (!indirizzo.isUnresolved() && indirizzo.getAddress().isAnyLocalAddress()) {
+            System.out.println("Attenzione: il server accetta connessioni da tutte le interfacce di rete");
+        }
+
+        try {
+            ServerRest serverRest = new ServerRest(host, porta);
+            serverRest.avvia();
+            Runtime.getRuntime().addShutdownHook(new Thread(serverRest::ferma, "theknife-server-chiusura"));
+        } catch (IOException e) {
+            System.err.println("Impossibile avviare il server: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Inizia ad accettare connessioni.
+     *
+     * @since 1.0
+     */
+    public void avvia() {
+        server.start();
+        System.out.println("Server REST in ascolto su http://" + server.getAddress().getHostString()
+                + ":" + server.getAddress().getPort() + "/api/");
+    }
+
+    /**
+     * Porta su cui il server è in ascolto.
+     *
+     * @return Porta TCP.
+     * @since 1.0
+     */
+    public int getPorta() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Smette di accettare connessioni, attende fino a un secondo le
+     * richieste in corso e chiude l'esecutore.
+     *
+     * @since 1.0
+     */
+    public void ferma() {
+        server.stop(1);
+        esecutore.shutdown();
+        try {
+            esecutore.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Esecutore con un thread virtuale per richiesta se disponibile (Java 21+),
+     * altrimenti un pool limitato di thread di sistema.
+     */
+    static ExecutorService creaEsecutore() {
+        try {
+            Method virtuali = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            System.out.println("Richieste servite da thread virtuali");
+            return (ExecutorService) virtuali.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // JVM senza thread virtuali
+            AtomicInteger numero = new AtomicInteger();
+            System.out.println("Thread virtuali non disponibili: richieste servite da " + THREAD_SENZA_VIRTUALI + " thread");
+            return Executors.newFixedThreadPool(THREAD_SENZA_VIRTUALI, r -> {
+                Thread t = new Thread(r, "theknife-http-" + numero.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    private void gestisci(HttpExchange scambio) {
+        long inizio = System.nanoTime();
+        try {
+            instrada(scambio);
+        } catch (ErroreHttp e) {
+            rispondiErrore(scambio, e.stato, e.getMessage());
+        } catch (RuntimeException e) {
+            System.err.println("Errore nella richiesta " + scambio.getRequestMethod() + " "
+                    + scambio.getRequestURI() + ": " + e.getMessage());
+            e.printStackTrace();
+            rispondiErrore(scambio, 500, "Errore interno");
+        } finally {
+            scambio.close();
+            Metriche.registra("server.richiesta", inizio);
+        }
+    }
+
+    private void instrada(HttpExchange scambio) {
+        String metodo = scambio.getRequestMethod();
+        List<String> percorso = segmenti(scambio.getRequestURI().getRawPath());
+        String risorsa = percorso.isEmpty() ? "" : percorso.get(0);
+
+        switch (risorsa) {
+            case "salute" -> {
+                richiediMetodo(metodo, "GET");
+                rispondi(scambio, 200, json -> json.inizioOggetto()
+                        .campo("stato", "ok")
+                        .campo("ristoranti", catalogo.size())
+                        .campo("recensioni", RecensioniManager.getAllRecensioni().size())
+                        .fineOggetto());
+            }
+            case "accesso" -> {
+                richiediMetodo(metodo, "POST");
+                accesso(scambio);
+            }
+            case "uscita" -> {
+                richiediMetodo(metodo, "POST");
+                autentica(scambio);
+                SessionManager.revocaToken(token(scambio));
+                rispondiVuoto(scambio, 204);
+            }
+            case "utente" -> {
+                richiediMetodo(metodo, "GET");
+                Utente utente = autentica(scambio);
+                rispondi(scambio, 200, json -> Rappresentazioni.utente(json, utente));
+            }
+            case "ristoranti" -> {
+                if (percorso.size() == 1) {
+                    richiediMetodo(metodo, "GET");
+                    cerca(scambio);
+                } else if (percorso.size() == 2) {
+                    richiediMetodo(metodo, "GET");
+                    dettaglio(scambio, ristorante(percorso.get(1)));
+                } else if (percorso.size() == 3 && percorso.get(2).equals("recensioni")) {
+                    Ristorante r = ristorante(percorso.get(1));
+                    if (metodo.equals("POST")) {
+                        aggiungiRecensione(scambio, r);
+                    } else {
+                        richiediMetodo(metodo, "GET", "POST");
+                        recensioni(scambio, r);
+                    }
+                } else {
+                    throw new ErroreHttp(404, "Risorsa non trovata");
+                }
+            }
+            case "preferiti" -> {
+                Utente utente = autentica(scambio);
+                if (percorso.size() == 1) {
+                    richiediMetodo(metodo, "GET");
+                    preferiti(scambio, utente);
+                } else if (percorso.size() == 2) {
+                    Ristorante r = ristorante(percorso.get(1));
+                    if (metodo.equals("PUT")) {
+                        PreferitiManager.aggiungiPreferito(utente.getUsername(), r.getName());
+                    } else {
+                        richiediMetodo(metodo, "PUT", "DELETE");
+                        PreferitiManager.rimuoviPreferito(utente.getUsername(), r.getName());
+                    }
+                    rispondiVuoto(scambio, 204);
+                } else {
+                    throw new ErroreHttp(404, "Risorsa non trovata");
+                }
+            }
+            case "esportazione" -> {
+                richiediMetodo(metodo, "GET");
+                Map<String, String> query = parametri(scambio.getRequestURI().getRawQuery());
+                int da = intero(query, "da", 0, 0, Integer.MAX_VALUE);
+                String tabella = percorso.size() == 2 ? percorso.get(1) : "";
+                switch (tabella) {
+                    case "ristoranti" -> EsportazioneNdjson.ristoranti(scambio, catalogo, da);
+                    case "recensioni" -> EsportazioneNdjson.recensioni(scambio,
+                            RecensioniManager.getAllRecensioni(), da, query.get("ristorante"));
+                    default -> throw new ErroreHttp(404, "Risorsa non trovata");
+                }
+            }
+            default -> throw new ErroreHttp(404, "Risorsa non trovata");
+        }
+    }
+
+    // --- Endpoint ---
+
+    private void accesso(HttpExchange scambio) {
+        Map<String, String> form = leggiForm(scambio);
+        String username = form.get("username");
+        String password = form.get("password");
+        if (username == null || password == null) {
+            throw new ErroreHttp(400, "username e password sono obbligatori");
+        }
+        // I tentativi sono limitati per indirizzo del client, oltre che per username
+        String client = scambio.getRemoteAddress().getAddress().getHostAddress();
+        AuthManager.RisultatoAccesso risultato = AuthManager.accedi(username, password, client);
+        if (risultato.getEsito() == AuthManager.RisultatoAccesso.Esito.LIMITATO) {
+            scambio.getResponseHeaders().set("Retry-After", "15");
+            throw new ErroreHttp(429, "Troppi tentativi, riprovare più tardi");
+        }
+        Utente utente = risultato.getUtente();
+        if (utente == null) {
+            throw new ErroreHttp(401, "Credenziali non valide");
+        }
+        String token = SessionManager.emettiToken(utente);
+        if (token == null) {
+            throw new ErroreHttp(500, "Impossibile emettere il token");
+        }
+        rispondi(scambio, 200, json -> {
+            json.inizioOggetto().campo("token", token).nome("utente");
+            Rappresentazioni.utente(json, utente);
+            json.fineOggetto();
+        });
+    }
+
+    private void cerca(HttpExchange scambio) {
+        Map<String, String> query = parametri(scambio.getRequestURI().getRawQuery());
+        RicercaRistoranti.Criteri criteri = new RicercaRistoranti.Criteri(
+                query.get("testo"), query.get("cucina"), query.get("localita"), query.get("prezzo"),
+                query.get("stelle"), Boolean.parseBoolean(query.get("consegna")),
+                Boolean.parseBoolean(query.get("prenotazioneOnline")));
+        List<Ristorante> trovati = RicercaRistoranti.cerca(catalogo, criteri);
+        int da = intero(query, "da", 0, 0, Integer.MAX_VALUE);
+        int quanti = intero(query, "quanti", PAGINA_PREDEFINITA, 0, MAX_PAGINA);
+        List<Ristorante> pagina = trovati.subList(Math.min(da, trovati.size()), Math.min(da + quanti, trovati.size()));
+        rispondi(scambio, 200, json -> {
+            json.inizioOggetto().campo("totale", trovati.size()).campo("da", da).nome("risultati").inizioArray();
+            for (Ristorante r : pagina) {
+                Rappresentazioni.ristorante(json, r);
+            }
+            json.fineArray().fineOggetto();
+        });
+    }
+
+    private void dettaglio(HttpExchange scambio, Ristorante r) {
+        List<Recensione> recensioni = RecensioniManager.getRecensioniPerRistorante(r.getName());
+        double media = recensioni.stream().mapToInt(Recensione::getValutazione).average().orElse(0.0);
+        rispondi(scambio, 200, json -> {
+            json.inizioOggetto().nome("ristorante");
+            Rappresentazioni.ristoranteCompleto(json, r);
+            json.campo("recensioni", recensioni.size())
+                    .campo("mediaValutazioni", media)
+                    .fineOggetto();
+        });
+    }
+
+    private void recensioni(HttpExchange scambio, Ristorante r) {
+        Map<String, String> query = parametri(scambio.getRequestURI().getRawQuery());
+        List<Recensione> tutte = RecensioniManager.getRecensioniPerRistorante(r.getName());
+        int da = intero(query, "da", 0, 0, Integer.MAX_VALUE);
+        int quanti = intero(query, "quanti", PAGINA_PREDEFINITA, 0, MAX_PAGINA);
+        List<Recensione> pagina = tutte.subList(Math.min(da, tutte.size()), Math.min(da + quanti, tutte.size()));
+        rispondi(scambio, 200, json -> {
+            json.inizioOggetto().campo("totale", tutte.size()).campo("da", da).nome("recensioni").inizioArray();
+            for (Recensione recensione : pagina) {
+                Rappresentazioni.recensione(json, recensione);
+            }
+            json.fineArray().fineOggetto();
+        });
+    }
+
+    private void aggiungiRecensione(HttpExchange scambio, Ristorante r) {
+        Utente utente = autentica(scambio);
+        Map<String, String> form = leggiForm(scambio);
+        int valutazione;
+        try {
+            valutazione = Integer.parseInt(form.getOrDefault("valutazione", ""));
+        } catch (NumberFormatException e) {
+            valutazione = 0;
+        }
+        String titolo = form.getOrDefault("titolo", "").trim();
+        String commento = form.getOrDefault("commento", "").trim();
+        if (valutazione < 1 || valutazione > 5) {
+            throw new ErroreHttp(400, "La valutazione deve essere compresa tra 1 e 5");
+        }
+        if (titolo.isEmpty() || commento.isEmpty()) {
+            throw new ErroreHttp(400, "Titolo e commento sono obbligatori");
+        }
+        Recensione recensione = new Recensione(utente.getUsername(), r.getName(), valutazione, titolo, commento);
+        RecensioniManager.aggiungiRecensione(recensione);
+        scambio.getResponseHeaders().set("Location", "/api/ristoranti/" + codifica(r.getName()) + "/recensioni");
+        rispondi(scambio, 201, json -> Rappresentazioni.recensione(json, recensione));
+    }
+
+    private void preferiti(HttpExchange scambio, Utente utente) {
+        Set<String> nomi = PreferitiManager.getNomiPreferitiPerUtente(utente.getUsername());
+        rispondi(scambio, 200, json -> {
+            json.inizioArray();
+            for (String nome : nomi) {
+                Ristorante r = perNome.get(nome);
+                if (r != null) {
+                    Rappresentazioni.ristorante(json, r);
+                }
+            }
+            json.fineArray();
+        });
+    }
+
+    // --- Supporto ---
+
+    private Ristorante ristorante(String nome) {
+        Ristorante r = perNome.get(nome);
+        if (r == null) {
+            throw new ErroreHttp(404, "Ristorante non trovato: " + nome);
+        }
+        return r;
+    }
+
+    private static Utente autentica(HttpExchange scambio) {
+        Utente utente = SessionManager.validaToken(token(scambio));
+        if (utente == null) {
+            scambio.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+            throw new ErroreHttp(401, "Token mancante, scaduto o revocato");
+        }
+        return utente;
+    }
+
+    private static String token(HttpExchange scambio) {
+        String intestazione = scambio.getRequestHeaders().getFirst("Authorization");
+        if (intestazione == null || !intestazione.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return null;
+        }
+        return intestazione.substring(7).trim();
+    }
+
+    private static void richiediMetodo(String metodo, String... consentiti) {
+        for (String c : consentiti) {
+            if (c.equals(metodo)) {
+                return;
+            }
+        }
+        throw new ErroreHttp(405, "Metodo non consentito: " + metodo);
+    }
+
+    private static List<String> segmenti(String percorsoGrezzo) {
+        // percorsoGrezzo inizia con /api/
+        List<String> segmenti = new ArrayList<>();
+        for (String s : percorsoGrezzo.substring("/api/".length()).split("/")) {
+            if (!s.isEmpty()) {
+                // Nel percorso '+' è un carattere, non uno spazio
+                segmenti.add(URLDecoder.decode(s.replace("+", "%2B"), StandardCharsets.UTF_8));
+            }
+        }
+        return segmenti;
+    }
+
+    static Map<String, String> parametri(String queryGrezza) {
+        if (queryGrezza == null || queryGrezza.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> parametri = new HashMap<>();
+        for (String coppia : queryGrezza.split("&")) {
+            int uguale = coppia.indexOf('=');
+            String chiave = uguale < 0 ? coppia : coppia.substring(0, uguale);
+            String valore = uguale < 0 ? "" : coppia.substring(uguale + 1);
+            parametri.putIfAbsent(URLDecoder.decode(chiave, StandardCharsets.UTF_8),
+                    URLDecoder.decode(valore, StandardCharsets.UTF_8));
+        }
+        return parametri;
+    }
+
+    private static Map<String, String> leggiForm(HttpExchange scambio) {
+        try (InputStream in = scambio.getRequestBody()) {
+            byte[] corpo = in.readNBytes(MAX_CORPO + 1);
+            if (corpo.length > MAX_CORPO) {
+                throw new ErroreHttp(413, "Corpo della richiesta troppo grande");
+            }
+            return parametri(new String(corpo, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new ErroreHttp(400, "Corpo della richiesta non leggibile");
+        }
+    }
+
+    static int intero(Map<String, String> query, String nome, int predefinito, int minimo, int massimo) {
+        String valore = query.get(nome);
+        if (valore == null || valore.isEmpty()) {
+            return predefinito;
+        }
+        try {
+            return Math.max(minimo, Math.min(massimo, Integer.parseInt(valore)));
+        } catch (NumberFormatException e) {
+            throw new ErroreHttp(400, "Parametro non numerico: " + nome);
+        }
+    }
+
+    private static String codifica(String segmento) {
+        return URLEncoder.encode(segmento, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    private static void rispondi(HttpExchange scambio, int stato, Consumer<ScrittoreJson> corpo) {
+        StringBuilder testo = new StringBuilder(256);
+        corpo.accept(new ScrittoreJson(testo));
+        byte[] dati = testo.toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            scambio.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            scambio.sendResponseHeaders(stato, dati.length);
+            try (OutputStream out = scambio.getResponseBody()) {
+                out.write(dati);
+            }
+        } catch (IOException e) {
+            // Il client ha chiuso la connessione: niente da fare
+            Metriche.incrementa("server.connessioniInterrotte");
+        }
+    }
+
+    private static void rispondiVuoto(HttpExchange scambio, int stato) {
+        try {
+            scambio.sendResponseHeaders(stato, -1);
+        } catch (IOException e) {
+            Metriche.incrementa("server.connessioniInterrotte");
+        }
+    }
+
+    static void rispondiErrore(HttpExchange scambio, int stato, String messaggio) {
+        Metriche.incrementa("server.errori." + stato);
+        rispondi(scambio, stato, json -> json.inizioOggetto().campo("errore", messaggio).fineOggetto());
+    }
+}
@@ -0,0 +1,426 @@
+package theknife.services;
+
+import theknife.models.Ristorante;
+import theknife.utils.ListaPersistente;
+import theknife.utils.MappaPersistente;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Catalogo dei ristoranti in memoria e punto di accesso agli indici
+ * costruiti su di esso.
+ * <p>
+ * Il catalogo è un'istantanea immutabile pubblicata tramite
+ * {@link AtomicReference}: i lettori (thread JavaFX, caricamento delle viste
+ * in background, thread del server) non prendono lock e vedono sempre una
+ * versione coerente. Le modifiche passano solo da {@link #imposta(List)} e
+ * {@link #aggiungi(Ristorante)}, una alla volta, e pubblicano la versione
+ * successiva. L'indice dei nomi fa parte dell'istantanea: viene costruito
+ * alla prima verifica e poi esteso a ogni aggiunta insieme alla lista,
+ * quindi non può mai riferirsi a un catalogo diverso da quello letto.
+ * </p>
+ * <p>
+ * L'indice spaziale e i cluster della mappa vengono costruiti alla prima
+ * richiesta (o in anticipo con {@link #preparaIndici()}) e ricostruiti,
+ * ciascuno per conto suo, quando il catalogo cambia o dopo una chiamata a
+ * {@link #invalida()}. La ricostruzione avviene su un thread in background:
+ * nel frattempo le richieste ricevono la versione precedente, che viene
+ * sostituita in un colpo solo quando la nuova è pronta.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public class CatalogoRistoranti {
+    /**
+     * Versione immutabile del catalogo: ristoranti in ordine di caricamento,
+     * generazione (cambia quando il catalogo viene sostituito, non con le
+     * aggiunte in coda) e nomi normalizzati con chiaveNome, null finché non
+     * servono.
+     */
+    private static final class Istantanea {
+        final ListaPersistente<Ristorante> ristoranti;
+        final long generazione;
+        final MappaPersistente<String, Boolean> nomi;
+
+        Istantanea(ListaPersistente<Ristorante> ristoranti, long generazione,
+                MappaPersistente<String, Boolean> nomi) {
+            this.ristoranti = ristoranti;
+            this.generazione = generazione;
+            this.nomi = nomi;
+        }
+    }
+
+    private static final Object scrittura = new Object();
+    private static final AtomicReference<Istantanea> corrente =
+            new AtomicReference<>(new Istantanea(ListaPersistente.vuota(), 0, null));
+
+    /** Indice costruito sul catalogo, insieme alla versione del catalogo da cui deriva. */
+    private static final class Versione<T> {
+        final ListaPersistente<Ristorante> ristoranti;
+        final long generazione;
+        final T valore;
+
+        Versione(Istantanea istantanea, T valore) {
+            this.ristoranti = istantanea.ristoranti;
+            this.generazione = istantanea.generazione;
+            this.valore = valore;
+        }
+
+        boolean valePer(Istantanea istantanea) {
+            return ristoranti == istantanea.ristoranti && generazione == istantanea.generazione;
+        }
+    }
+
+    /**
+     * Indice ricostruito in background quando il catalogo cambia. Solo il
+     * primo uso, quando non esiste ancora nessuna versione, costruisce
+     * l'indice nel thread chiamante.
+     */
+    private static final class Indice<T> {
+        private final Function<List<Ristorante>, T> costruttore;
+        private volatile Versione<T> versione;
+        private final AtomicBoolean inCostruzione = new AtomicBoolean(false);
+        private final Set<Runnable> inAttesa = ConcurrentHashMap.newKeySet();
+
+        Indice(Function<List<Ristorante>, T> costruttore) {
+            this.costruttore = costruttore;
+        }
+
+        T get(Runnable quandoAggiornato) {
+            Versione<T> v = versione;
+            if (v == null) {
+                return costruisci();
+            }
+            if (!v.valePer(corrente.get())) {
+                if (quandoAggiornato != null) {
+                    inAttesa.add(quandoAggiornato);
+                }
+                pianifica();
+            }
+            return v.valore;
+        }
+
+        synchronized T costruisci() {
+            Istantanea istantanea = corrente.get();
+            Versione<T> v = versione;
+            if (v == null || !v.valePer(istantanea)) {
+                v = new Versione<>(istantanea, costruttore.apply(istantanea.ristoranti));
+                versione = v;
+            }
+            return v.valore;
+        }
+
+        void pianifica() {
+            if (!inCostruzione.compareAndSet(false, true)) {
+                return;
+            }
+            indicizzatore.execute(() -> {
+                boolean riuscita = false;
+                try {
+                    costruisci();
+                    riuscita = true;
+                } catch (RuntimeException e) {
+                    System.err.println("Errore nella costruzione dell'indice dei ristoranti: " + e.getMessage());
+                    e.printStackTrace();
+                } finally {
+                    inCostruzione.set(false);
+                }
+                // Dopo aver liberato inCostruzione, così chi si è messo in attesa
+                // mentre la costruzione finiva viene comunque avvisato
+                for (Runnable r : inAttesa) {
+                    if (inAttesa.remove(r)) {
+                        r.run();
+                    }
+                }
+                if (riuscita && !versione.valePer(corrente.get())) {
+                    pianifica();
+                }
+            });
+        }
+    }
+
+    private static final ExecutorService indicizzatore = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "theknife-indici");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final Indice<IndiceSpaziale> indiceSpaziale = new Indice<>(IndiceSpaziale::new);
+    private static final Indice<MappaRistoranti> mappa = new Indice<>(MappaRistoranti::new);
+    private static IndiceDuplicati indiceDuplicati;
+    private static int dimensioneDuplicati = -1; // ristoranti del catalogo già inseriti nell'indice duplicati
+    private static long generazioneDuplicati = -1; // generazione del catalogo indicizzata dall'indice duplicati
+
+    /**
+     * Restituisce l'istantanea corrente del catalogo.
+     * <p>
+     * La lista è immutabile e non cambia dopo essere stata restituita; le
+     * aggiunte successive producono una nuova istantanea.
+     * </p>
+     *
+     * @return Ristoranti in ordine di caricamento, lista vuota prima del caricamento.
+     * @since 1.0
+     */
+    public static List<Ristorante> getRistoranti() {
+        return corrente.get().ristoranti;
+    }
+
+    /**
+     * Sostituisce l'intero catalogo, ad esempio dopo il caricamento dal CSV.
+     *
+     * @param ristoranti Ristoranti da pubblicare, must be non-null.
+     * @return L'istantanea pubblicata.
+     * @since 1.0
+     */
+    public static List<Ristorante> imposta(List<Ristorante> ristoranti) {
+        ListaPersistente<Ristorante> nuovo = ListaPersistente.vuota();
+        for (Ristorante r : ristoranti) {
+            nuovo = nuovo.con(r);
+        }
+        synchronized (scrittura) {
+            corrente.set(new Istantanea(nuovo, corrente.get().generazione + 1, null));
+        }
+        return nuovo;
+    }
+
+    /**
+     * Aggiunge in coda al catalogo un ristorante appena salvato.
+     *
+     * @param ristorante Ristorante da aggiungere, must be non-null.
+     * @since 1.0
+     */
+    public static void aggiungi(Ristorante ristorante) {
+        synchronized (scrittura) {
+            Istantanea i = corrente.get();
+            corrente.set(new Istantanea(i.ristoranti.con(ristorante), i.generazione,
+                    i.nomi != null ? conNome(i.nomi, ristorante) : null));
+        }
+    }
+
+    /**
+     * Avvia in background la costruzione dell'indice spaziale e dei cluster
+     * della mappa, così il primo uso non la paga nel thread dell'interfaccia.
+     *
+     * @since 1.0
+     */
+    public static void preparaIndici() {
+        indiceSpaziale.pianifica();
+        mappa.pianifica();
+    }
+
+    /**
+     * Restituisce l'indice spaziale del catalogo.
+     * <p>
+     * Se il catalogo è cambiato dall'ultima costruzione restituisce la
+     * versione precedente e ne avvia la ricostruzione in background.
+     * </p>
+     *
+     * @return Indice spaziale dei ristoranti con coordinate.
+     * @since 1.0
+     */
+    public static IndiceSpaziale getIndiceSpaziale() {
+        return indiceSpaziale.get(null);
+    }
+
+    /**
+     * Restituisce i cluster geohash per la mappa.
+     * <p>
+     * Se il catalogo è cambiato dall'ultima costruzione restituisce la
+     * versione precedente e ne avvia la ricostruzione in background.
+     * </p>
+     *
+     * @return Servizio dati della mappa.
+     * @since 1.0
+     */
+    public static MappaRistoranti getMappa() {
+        return mappa.get(null);
+    }
+
+    /**
+     * Come {@link #getMappa()}, ma se la versione restituita non è
+     * aggiornata esegue {@code quandoAggiornata} (nel thread in background)
+     * appena la nuova è pronta, ad esempio per ridisegnare la mappa. La
+     * stessa azione registrata più volte durante una ricostruzione viene
+     * eseguita una volta sola.
+     *
+     * @param quandoAggiornata Azione da eseguire dopo la ricostruzione, must be non-null.
+     * @return Servizio dati della mappa, eventualmente della versione precedente.
+     * @since 1.0
+     */
+    public static MappaRistoranti getMappa(Runnable quandoAggiornata) {
+        return mappa.get(quandoAggiornata);
+    }
+
+    /**
+     * Trova i ristoranti più vicini a quello dato, escluso il ristorante stesso.
+     *
+     * @param ristorante Ristorante di riferimento, must be non-null.
+     * @param n Numero massimo di risultati.
+     * @return Risultati ordinati per distanza; lista vuota se il ristorante non ha coordinate.
+     * @since 1.0
+     */
+    public static List<IndiceSpaziale.Risultato> viciniA(Ristorante ristorante, int n) {
+        List<IndiceSpaziale.Risultato> risultati = new ArrayList<>();
+        if (!IndiceSpaziale.haCoordinate(ristorante)) {
+            return risultati;
+        }
+
+        for (IndiceSpaziale.Risultato r : getIndiceSpaziale()
+                .vicini(ristorante.getLatitude(), ristorante.getLongitude(), n + 1)) {
+            if (r.getRistorante() != ristorante && risultati.size() < n) {
+                risultati.add(r);
+            }
+        }
+        return risultati;
+    }
+
+    /**
+     * Trova i ristoranti lungo un percorso, ordinati per km progressivo.
+     *
+     * @param tappe Tappe del percorso come coppie {latitudine, longitudine}, in ordine.
+     * @param distanzaMassimaKm Distanza massima dal percorso in km.
+     * @return Risultati ordinati per posizione lungo il percorso.
+     * @since 1.0
+     */
+    public static List<IndiceSpaziale.RisultatoPercorso> lungoPercorso(List<double[]> tappe,
+            double distanzaMassimaKm) {
+        return getIndiceSpaziale().lungoPercorso(tappe, distanzaMassimaKm);
+    }
+
+    /**
+     * Cerca nel catalogo i probabili duplicati di un ristorante da inserire:
+     * stesse coordinate entro pochi metri e nome simile.
+     * <p>
+     * Finché il catalogo non viene sostituito cresce solo in coda, quindi i
+     * ristoranti aggiunti dopo l'ultima chiamata vengono inseriti nell'indice
+     * uno alla volta invece di ricostruirlo.
+     * </p>
+     *
+     * @param nome Nome del ristorante da inserire.
+     * @param lat Latitudine in gradi.
+     * @param lon Longitudine in gradi.
+     * @return Ristoranti già presenti che sembrano lo stesso locale.
+     * @since 1.0
+     */
+    public static synchronized List<Ristorante> possibiliDuplicati(String nome, double lat, double lon) {
+        Istantanea istantanea = corrente.get();
+        List<Ristorante> ristoranti = istantanea.ristoranti;
+        if (indiceDuplicati == null || generazioneDuplicati != istantanea.generazione
+                || dimensioneDuplicati > ristoranti.size()) {
+            indiceDuplicati = new IndiceDuplicati(ristoranti);
+        } else {
+            for (int i = dimensioneDuplicati; i < ristoranti.size(); i++) {
+                indiceDuplicati.aggiungi(ristoranti.get(i));
+            }
+        }
+        dimensioneDuplicati = ristoranti.size();
+        generazioneDuplicati = istantanea.generazione;
+        return indiceDuplicati.possibiliDuplicati(nome, lat, lon);
+    }
+
+    /**
+     * Verifica se nel catalogo esiste già un ristorante con il nome dato,
+     * ignorando maiuscole/minuscole e spazi iniziali e finali.
+     * <p>
+     * La verifica è una ricerca in un insieme hash e non legge il CSV,
+     * quindi può essere chiamata a ogni modifica di un campo di testo.
+     * </p>
+     *
+     * @param nome Nome da cercare.
+     * @return true se il nome è già presente, false altrimenti o se vuoto.
+     * @since 1.0
+     */
+    public static boolean esisteNome(String nome) {
+        if (nome == null || nome.trim().isEmpty()) {
+            return false;
+        }
+        return nomi().contiene(chiaveNome(nome));
+    }
+
+    /**
+     * Registra il nome di un ristorante appena salvato, così è subito
+     * visibile a {@link #esisteNome(String)} anche prima che il ristorante
+     * venga aggiunto al catalogo.
+     *
+     * @param ristorante Ristorante salvato, must be non-null.
+     * @since 1.0
+     */
+    public static void registraNome(Ristorante ristorante) {
+        nomi();
+        synchronized (scrittura) {
+            Istantanea i = corrente.get();
+            // Se nel frattempo l'indice è stato scartato verrà ricostruito dal
+            // catalogo, a cui il ristorante viene aggiunto dopo il salvataggio
+            if (i.nomi != null) {
+                corrente.set(new Istantanea(i.ristoranti, i.generazione, conNome(i.nomi, ristorante)));
+            }
+        }
+    }
+
+    /**
+     * Forza la ricostruzione degli indici alla prossima richiesta.
+     *
+     * @since 1.0
+     */
+    public static synchronized void invalida() {
+        dimensioneDuplicati = -1;
+        synchronized (scrittura) {
+            Istantanea i = corrente.get();
+            corrente.set(new Istantanea(i.ristoranti, i.generazione + 1, null));
+        }
+    }
+
+    /**
+     * Restituisce l'indice dei nomi dell'istantanea corrente, costruendolo
+     * fuori dal lock se manca. Le aggiunte arrivate durante la costruzione
+     * vengono recuperate prima di pubblicarlo; se invece il catalogo è stato
+     * sostituito, l'indice costruito vale solo per la verifica in corso.
+     */
+    private static MappaPersistente<String, Boolean> nomi() {
+        Istantanea letta = corrente.get();
+        if (letta.nomi != null) {
+            return letta.nomi;
+        }
+        MappaPersistente<String, Boolean> nomi = MappaPersistente.vuota();
+        for (Ristorante r : letta.ristoranti) {
+            nomi = conNome(nomi, r);
+        }
+        synchronized (scrittura) {
+            Istantanea attuale = corrente.get();
+            if (attuale.nomi == null && attuale.generazione == letta.generazione) {
+                for (int i = letta.ristoranti.size(); i < attuale.ristoranti.size(); i++) {
+                    nomi = conNome(nomi, attuale.ristoranti.get(i));
+                }
+                corrente.set(new Istantanea(attuale.ristoranti, attuale.generazione, nomi));
+            }
+        }
+        return nomi;
+    }
+
+    private static MappaPersistente<String, Boolean> conNome(MappaPersistente<String, Boolean> nomi,
+            Ristorante ristorante) {
+        String nome = ristorante.getName();
+        return nome != null && !nome.trim().isEmpty() ? nomi.con(chiaveNome(nome), Boolean.TRUE) : nomi;
+    }
+
+    /**
+     * Chiave del nome con le stesse regole di String.equalsIgnoreCase:
+     * ogni carattere viene portato in maiuscolo e poi in minuscolo.
+     */
+    private static String chiaveNome(String nome) {
+        String n = nome.trim();
+        StringBuilder sb = new StringBuilder(n.length());
+        for (int i = 0; i < n.length(); i++) {
+            sb.append(Character.toLowerCase(Character.toUpperCase(n.charAt(i))));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,235 @@
+package theknife.services;
+
+import theknife.models.Ristorante;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Indice per individuare probabili duplicati all'inserimento di un ristorante:
+ * stesse coordinate entro pochi metri e nomi normalizzati simili.
+ * <p>
+ * I ristoranti sono distribuiti in una griglia hash con celle di
+ * {@link #RAGGIO_METRI} metri di lato in latitudine; un inserimento costa
+ * O(1) atteso e una ricerca esamina solo le celle adiacenti al punto, senza
+ * rileggere il CSV. In longitudine la cella misura lo stesso numero di gradi,
+ * quindi alle latitudini alte si esaminano più colonne vicine.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public class IndiceDuplicati {
+
+    /** Distanza massima in metri tra due ristoranti considerati nello stesso luogo. */
+    public static final double RAGGIO_METRI = 50.0;
+
+    /** Somiglianza minima tra nomi normalizzati (0..1) per segnalare un duplicato. */
+    public static final double SOGLIA_SOMIGLIANZA = 0.8;
+
+    private static final double METRI_PER_GRADO = IndiceSpaziale.RAGGIO_TERRA_KM * 1000.0 * Math.PI / 180.0;
+    private static final double LATO_CELLA_GRADI = RAGGIO_METRI / METRI_PER_GRADO;
+    private static final long COLONNE = (long) Math.ceil(360.0 / LATO_CELLA_GRADI);
+
+    // Parole troppo comuni nei nomi per distinguere un locale da un altro
+    private static final Set<String> PAROLE_IGNORATE = new HashSet<>(Arrays.asList(
+            "ristorante", "restaurant", "trattoria", "osteria", "pizzeria", "bistrot", "bistro",
+            "il", "lo", "la", "i", "gli", "le", "l", "da", "di", "del", "della", "al", "alla",
+            "the", "of", "and", "e", "et", "les", "de", "du", "des", "el", "los", "las"));
+
+    private static final class Voce {
+        final Ristorante ristorante;
+        final String nome; // nome normalizzato
+        final Set<String> parole;
+
+        Voce(Ristorante ristorante, String nome) {
+            this.ristorante = ristorante;
+            this.nome = nome;
+            this.parole = new HashSet<>(Arrays.asList(nome.split(" ")));
+        }
+    }
+
+    private final Map<Long, List<Voce>> celle = new HashMap<>();
+    private int dimensione;
+
+    /**
+     * Costruisce l'indice sui ristoranti con coordinate valide.
+     *
+     * @param ristoranti Ristoranti del catalogo, must be non-null.
+     * @since 1.0
+     */
+    public IndiceDuplicati(Collection<Ristorante> ristoranti) {
+        for (Ristorante r : ristoranti) {
+            aggiungi(r);
+        }
+    }
+
+    /**
+     * Aggiunge un ristorante all'indice in tempo costante atteso.
+     * I ristoranti senza coordinate valide vengono ignorati.
+     *
+     * @param ristorante Ristorante da indicizzare, must be non-null.
+     * @since 1.0
+     */
+    public void aggiungi(Ristorante ristorante) {
+        if (!IndiceSpaziale.haCoordinate(ristorante)) {
+            return;
+        }
+        long riga = riga(ristorante.getLatitude());
+        long colonna = colonna(ristorante.getLongitude());
+        celle.computeIfAbsent(chiave(riga, colonna), k -> new ArrayList<>())
+                .add(new Voce(ristorante, normalizzaNome(ristorante.getName())));
+        dimensione++;
+    }
+
+    /**
+     * Restituisce il numero di ristoranti indicizzati.
+     *
+     * @return Numero di ristoranti con coordinate presenti nell'indice.
+     * @since 1.0
+     */
+    public int getDimensione() {
+        return dimensione;
+    }
+
+    /**
+     * Cerca i ristoranti già presenti entro {@link #RAGGIO_METRI} dal punto
+     * con un nome simile a quello dato.
+     *
+     * @param nome Nome del ristorante da inserire.
+     * @param lat Latitudine in gradi.
+     * @param lon Longitudine in gradi.
+     * @return Probabili duplicati; lista vuota se nessuno o se i dati non sono validi.
+     * @since 1.0
+     */
+    public List<Ristorante> possibiliDuplicati(String nome, double lat, double lon) {
+        List<Ristorante> risultato = new ArrayList<>();
+        if (nome == null || Double.isNaN(lat) || Double.isNaN(lon)
+                || lat < -90 || lat > 90 || lon < -180 || lon > 180) {
+            return risultato;
+        }
+
+        String normalizzato = normalizzaNome(nome);
+        Set<String> parole = new HashSet<>(Arrays.asList(normalizzato.split(" ")));
+        long riga = riga(lat);
+        long colonna = colonna(lon);
+
+        // Le colonne si restringono verso i poli: servono più colonne per coprire il raggio
+        double latEstrema = Math.min(89.9, Math.abs(lat) + LATO_CELLA_GRADI);
+        long ampiezza = Math.min(COLONNE / 2, (long) Math.ceil(1.0 / Math.cos(Math.toRadians(latEstrema))));
+
+        for (long dr = -1; dr <= 1; dr++) {
+            for (long dc = -ampiezza; dc <= ampiezza; dc++) {
+                List<Voce> voci = celle.get(chiave(riga + dr, Math.floorMod(colonna + dc, COLONNE)));
+                if (voci == null) {
+                    continue;
+                }
+                for (Voce v : voci) {
+                    double metri = IndiceSpaziale.distanzaKm(lat, lon,
+                            v.ristorante.getLatitude(), v.ristorante.getLongitude()) * 1000.0;
+                    if (metri <= RAGGIO_METRI && somiglianza(normalizzato, parole, v) >= SOGLIA_SOMIGLIANZA) {
+                        risultato.add(v.ristorante);
+                    }
+                }
+            }
+        }
+        return risultato;
+    }
+
+    /**
+     * Normalizza un nome per il confronto: minuscole, senza accenti né
+     * punteggiatura, senza parole comuni come "ristorante" o articoli.
+     *
+     * @param nome Nome originale.
+     * @return Parole significative separate da un singolo spazio; stringa vuota se null.
+     * @since 1.0
+     */
+    public static String normalizzaNome(String nome) {
+        if (nome == null) {
+            return "";
+        }
+        String semplice = Normalizer.normalize(nome, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase()
+                .replaceAll("[^\\p{L}\\p{N}]+", " ")
+                .trim();
+
+        StringBuilder sb = new StringBuilder();
+        for (String parola : semplice.split(" ")) {
+            if (!parola.isEmpty() && !PAROLE_IGNORATE.contains(parola)) {
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(parola);
+            }
+        }
+        // Se il nome è fatto solo di parole comuni le si tiene tutte
+        return sb.length() > 0 ? sb.toString() : semplice;
+    }
+
+    /**
+     * Somiglianza tra due nomi normalizzati: il massimo tra la distanza di
+     * edit relativa e la sovrapposizione delle parole, così "Da Mario" e
+     * "Trattoria da Mario" oppure "Osteria Francescana" e "Francescanna"
+     * risultano simili.
+     */
+    private static double somiglianza(String nome, Set<String> parole, Voce v) {
+        if (nome.isEmpty() || v.nome.isEmpty()) {
+            return 0.0;
+        }
+        if (nome.equals(v.nome)) {
+            return 1.0;
+        }
+
+        int lunghezza = Math.max(nome.length(), v.nome.length());
+        double edit = 1.0 - (double) levenshtein(nome, v.nome) / lunghezza;
+
+        int comuni = 0;
+        for (String p : parole) {
+            if (v.parole.contains(p)) {
+                comuni++;
+            }
+        }
+        double sovrapposizione = (double) comuni / Math.min(parole.size(), v.parole.size());
+
+        return Math.max(edit, sovrapposizione);
+    }
+
+    private static int levenshtein(String a, String b) {
+        int[] precedente = new int[b.length() + 1];
+        int[] corrente = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            precedente[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            corrente[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int costo = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                corrente[j] = Math.min(Math.min(corrente[j - 1] + 1, precedente[j] + 1), precedente[j - 1] + costo);
+            }
+            int[] t = precedente;
+            precedente = corrente;
+            corrente = t;
+        }
+        return precedente[b.length()];
+    }
+
+    private static long riga(double lat) {
+        return (long) Math.floor((lat + 90.0) / LATO_CELLA_GRADI);
+    }
+
+    private static long colonna(double lon) {
+        return Math.floorMod((long) Math.floor((lon + 180.0) / LATO_CELLA_GRADI), COLONNE);
+    }
+
+    private static long chiave(long riga, long colonna) {
+        return (riga << 32) | colonna;
+    }
+}
@@ -0,0 +1,563 @@
+package theknife.services;
+
+import theknife.models.Ristorante;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Indice spaziale immutabile (k-d tree) sulle coordinate dei ristoranti.
+ * <p>
+ * Ogni ristorante è rappresentato come vettore unitario 3D sulla sfera
+ * terrestre: la distanza euclidea tra due vettori (la corda) cresce con la
+ * distanza sul cerchio massimo, quindi i vicini per corda sono esattamente
+ * i vicini per distanza haversine, senza problemi all'antimeridiano o ai poli.
+ * L'albero è implicito: i punti sono permutati in modo che l'elemento centrale
+ * di ogni intervallo sia il nodo che lo divide, e non servono oggetti nodo.
+ * I ristoranti senza coordinate (0,0) non vengono indicizzati.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public class IndiceSpaziale {
+
+    /** Raggio medio terrestre in km. */
+    public static final double RAGGIO_TERRA_KM = 6371.0088;
+
+    /**
+     * Risultato di una ricerca: ristorante e distanza dal punto cercato.
+     */
+    public static final class Risultato {
+        private final Ristorante ristorante;
+        private final double distanzaKm;
+
+        Risultato(Ristorante ristorante, double distanzaKm) {
+            this.ristorante = ristorante;
+            this.distanzaKm = distanzaKm;
+        }
+
+        public Ristorante getRistorante() {
+            return ristorante;
+        }
+
+        public double getDistanzaKm() {
+            return distanzaKm;
+        }
+    }
+
+    /**
+     * Risultato di una ricerca lungo un percorso: ristorante, distanza dal
+     * percorso e posizione lungo il percorso.
+     */
+    public static final class RisultatoPercorso {
+        private final Ristorante ristorante;
+        private final double distanzaKm;
+        private final double progressivaKm;
+
+        RisultatoPercorso(Ristorante ristorante, double distanzaKm, double progressivaKm) {
+            this.ristorante = ristorante;
+            this.distanzaKm = distanzaKm;
+            this.progressivaKm = progressivaKm;
+        }
+
+        public Ristorante getRistorante() {
+            return ristorante;
+        }
+
+        /**
+         * @return Distanza minima del ristorante dal percorso, in km.
+         */
+        public double getDistanzaKm() {
+            return distanzaKm;
+        }
+
+        /**
+         * @return Km percorsi dalla partenza fino al punto del percorso più vicino al ristorante.
+         */
+        public double getProgressivaKm() {
+            return progressivaKm;
+        }
+    }
+
+    private static final double TRATTO_MINIMO_KM = 10.0; // lunghezza minima dei tratti in cui si suddivide un segmento
+    private static final int MAX_TRATTI_PER_SEGMENTO = 2000;
+
+    private final Ristorante[] punti;
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] zs;
+    private final byte[] assi; // asse di divisione del nodo in ogni posizione
+
+    /**
+     * Costruisce l'indice dai ristoranti dati in O(N log N).
+     *
+     * @param ristoranti Ristoranti da indicizzare, must be non-null.
+     * @since 1.0
+     */
+    public IndiceSpaziale(Collection<Ristorante> ristoranti) {
+        List<Ristorante> validi = new ArrayList<>(ristoranti.size());
+        for (Ristorante r : ristoranti) {
+            if (haCoordinate(r)) {
+                validi.add(r);
+            }
+        }
+
+        int n = validi.size();
+        punti = validi.toArray(new Ristorante[0]);
+        xs = new double[n];
+        ys = new double[n];
+        zs = new double[n];
+        assi = new byte[n];
+        for (int i = 0; i < n; i++) {
+            double lat = Math.toRadians(punti[i].getLatitude());
+            double lon = Math.toRadians(punti[i].getLongitude());
+            xs[i] = Math.cos(lat) * Math.cos(lon);
+            ys[i] = Math.cos(lat) * Math.sin(lon);
+            zs[i] = Math.sin(lat);
+        }
+        costruisci(0, n);
+    }
+
+    /**
+     * Indica se il ristorante ha coordinate utilizzabili.
+     *
+     * @param r Ristorante da controllare.
+     * @return false se le coordinate sono assenti (0,0) o non valide.
+     * @since 1.0
+     */
+    public static boolean haCoordinate(Ristorante r) {
+        double lat = r.getLatitude();
+        double lon = r.getLongitude();
+        if (lat == 0.0 && lon == 0.0) {
+            return false;
+        }
+        return lat >= -90 && lat <= 90 && lon >= -180 && lon <= 180;
+    }
+
+    /**
+     * Restituisce il numero di ristoranti indicizzati.
+     *
+     * @return Numero di punti nell'indice.
+     * @since 1.0
+     */
+    public int size() {
+        return punti.length;
+    }
+
+    /**
+     * Trova gli n ristoranti più vicini a un punto.
+     *
+     * @param lat Latitudine del punto in gradi.
+     * @param lon Longitudine del punto in gradi.
+     * @param n Numero massimo di risultati.
+     * @return Risultati ordinati per distanza crescente.
+     * @since 1.0
+     */
+    public List<Risultato> vicini(double lat, double lon, int n) {
+        if (n <= 0 || punti.length == 0) {
+            return new ArrayList<>();
+        }
+
+        double[] q = versore(lat, lon);
+        // Max-heap sulle distanze al quadrato: in testa il peggiore dei migliori n
+        PriorityQueue<double[]> migliori = new PriorityQueue<>(n + 1,
+                Comparator.comparingDouble((double[] e) -> e[0]).reversed());
+        cercaVicini(0, punti.length, q, n, migliori);
+
+        List<Risultato> risultati = new ArrayList<>(migliori.size());
+        for (double[] e : migliori) {
+            risultati.add(new Risultato(punti[(int) e[1]], cordaInKm(Math.sqrt(e[0]))));
+        }
+        risultati.sort(Comparator.comparingDouble(Risultato::getDistanzaKm));
+        return risultati;
+    }
+
+    /**
+     * Trova tutti i ristoranti entro un raggio da un punto.
+     *
+     * @param lat Latitudine del punto in gradi.
+     * @param lon Longitudine del punto in gradi.
+     * @param raggioKm Raggio di ricerca in km.
+     * @return Risultati ordinati per distanza crescente.
+     * @since 1.0
+     */
+    public List<Risultato> entroRaggio(double lat, double lon, double raggioKm) {
+        List<Risultato> risultati = new ArrayList<>();
+        if (raggioKm < 0 || punti.length == 0) {
+            return risultati;
+        }
+
+        double corda = kmInCorda(raggioKm);
+        cercaEntroRaggio(0, punti.length, versore(lat, lon), corda * corda, risultati);
+        risultati.sort(Comparator.comparingDouble(Risultato::getDistanzaKm));
+        return risultati;
+    }
+
+    /**
+     * Trova i ristoranti entro una certa distanza da un percorso, ordinati
+     * per posizione lungo il percorso.
+     * <p>
+     * Ogni segmento tra due tappe è un arco di cerchio massimo. Il segmento
+     * viene suddiviso in tratti brevi; per ciascun tratto si interroga
+     * l'albero con il riquadro 3D degli estremi allargato della distanza
+     * massima e della freccia dell'arco, e i candidati vengono poi filtrati
+     * con la distanza esatta dal segmento (cross-track).
+     * </p>
+     *
+     * @param tappe Tappe del percorso come coppie {latitudine, longitudine} in gradi, in ordine.
+     * @param distanzaMassimaKm Semiampiezza del corridoio in km.
+     * @return Risultati ordinati per km progressivo lungo il percorso; ogni ristorante compare una volta.
+     * @since 1.0
+     */
+    public List<RisultatoPercorso> lungoPercorso(List<double[]> tappe, double distanzaMassimaKm) {
+        List<RisultatoPercorso> risultati = new ArrayList<>();
+        if (tappe.isEmpty() || distanzaMassimaKm < 0 || punti.length == 0) {
+            return risultati;
+        }
+        if (tappe.size() == 1) {
+            for (Risultato r : entroRaggio(tappe.get(0)[0], tappe.get(0)[1], distanzaMassimaKm)) {
+                risultati.add(new RisultatoPercorso(r.getRistorante(), r.getDistanzaKm(), 0.0));
+            }
+            return risultati;
+        }
+
+        double angoloMassimo = distanzaMassimaKm / RAGGIO_TERRA_KM;
+        double cordaMassima = kmInCorda(distanzaMassimaKm);
+        double lunghezzaTratto = Math.max(TRATTO_MINIMO_KM, 2 * distanzaMassimaKm) / RAGGIO_TERRA_KM;
+
+        // Indice del punto -> {distanza angolare, progressiva angolare}
+        Map<Integer, double[]> migliori = new HashMap<>();
+        List<Integer> candidati = new ArrayList<>();
+        double progressiva = 0.0;
+
+        for (int s = 0; s + 1 < tappe.size(); s++) {
+            double[] a = versore(tappe.get(s)[0], tappe.get(s)[1]);
+            double[] b = versore(tappe.get(s + 1)[0], tappe.get(s + 1)[1]);
+            double lunghezza = angolo(a, b);
+
+            int tratti = (int) Math.min(MAX_TRATTI_PER_SEGMENTO, Math.max(1, Math.ceil(lunghezza / lunghezzaTratto)));
+            double passo = lunghezza / tratti;
+            double margine = cordaMassima + (1 - Math.cos(passo / 2)); // corridoio + freccia dell'arco
+            double[] minimo = new double[3];
+            double[] massimo = new double[3];
+
+            candidati.clear();
+            double[] inizio = a;
+            for (int t = 1; t <= tratti; t++) {
+                double[] fine = t == tratti ? b : interpola(a, b, lunghezza, t * passo);
+                for (int k = 0; k < 3; k++) {
+                    minimo[k] = Math.min(inizio[k], fine[k]) - margine;
+                    massimo[k] = Math.max(inizio[k], fine[k]) + margine;
+                }
+                cercaNelRiquadro(0, punti.length, minimo, massimo, candidati);
+                inizio = fine;
+            }
+
+            for (int i : candidati) {
+                double[] posizione = proiettaSuSegmento(i, a, b, lunghezza);
+                if (posizione[0] > angoloMassimo) {
+                    continue;
+                }
+                double[] attuale = migliori.get(i);
+                if (attuale == null || posizione[0] < attuale[0]) {
+                    migliori.put(i, new double[] {posizione[0], progressiva + posizione[1]});
+                }
+            }
+            progressiva += lunghezza;
+        }
+
+        for (Map.Entry<Integer, double[]> e : migliori.entrySet()) {
+            risultati.add(new RisultatoPercorso(punti[e.getKey()],
+                    e.getValue()[0] * RAGGIO_TERRA_KM, e.getValue()[1] * RAGGIO_TERRA_KM));
+        }
+        risultati.sort(Comparator.comparingDouble(RisultatoPercorso::getProgressivaKm)
+                .thenComparingDouble(RisultatoPercorso::getDistanzaKm));
+        return risultati;
+    }
+
+    /**
+     * Distanza haversine tra due punti.
+     *
+     * @param lat1 Latitudine del primo punto in gradi.
+     * @param lon1 Longitudine del primo punto in gradi.
+     * @param lat2 Latitudine del secondo punto in gradi.
+     * @param lon2 Longitudine del secondo punto in gradi.
+     * @return Distanza in km.
+     * @since 1.0
+     */
+    public static double distanzaKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * RAGGIO_TERRA_KM * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    // ----- Costruzione -----
+
+    /**
+     * Ordina ricorsivamente l'intervallo [da, a) in modo che l'elemento
+     * centrale sia la mediana sull'asse di maggiore estensione.
+     */
+    private void costruisci(int da, int a) {
+        if (a - da <= 1) {
+            if (a - da == 1) {
+                assi[da] = 0;
+            }
+            return;
+        }
+
+        int asse = asseDiMassimaEstensione(da, a);
+        int medio = (da + a) >>> 1;
+        seleziona(da, a - 1, medio, asse);
+        assi[medio] = (byte) asse;
+        costruisci(da, medio);
+        costruisci(medio + 1, a);
+    }
+
+    private int asseDiMassimaEstensione(int da, int a) {
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, minZ = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE, maxZ = -Double.MAX_VALUE;
+        for (int i = da; i < a; i++) {
+            minX = Math.min(minX, xs[i]);
+            maxX = Math.max(maxX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxY = Math.max(maxY, ys[i]);
+            minZ = Math.min(minZ, zs[i]);
+            maxZ = Math.max(maxZ, zs[i]);
+        }
+        double dx = maxX - minX, dy = maxY - minY, dz = maxZ - minZ;
+        if (dx >= dy && dx >= dz) {
+            return 0;
+        }
+        return dy >= dz ? 1 : 2;
+    }
+
+    /**
+     * Quickselect: porta in posizione k l'elemento che vi starebbe se
+     * l'intervallo [sinistra, destra] fosse ordinato sull'asse dato.
+     */
+    private void seleziona(int sinistra, int destra, int k, int asse) {
+        while (destra > sinistra) {
+            double pivot = coordinata((sinistra + destra) >>> 1, asse);
+            int i = sinistra, j = destra;
+            while (i <= j) {
+                while (coordinata(i, asse) < pivot) {
+                    i++;
+                }
+                while (coordinata(j, asse) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    scambia(i++, j--);
+                }
+            }
+            if (k <= j) {
+                destra = j;
+            } else if (k >= i) {
+                sinistra = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void scambia(int i, int j) {
+        Ristorante r = punti[i];
+        punti[i] = punti[j];
+        punti[j] = r;
+        double t = xs[i];
+        xs[i] = xs[j];
+        xs[j] = t;
+        t = ys[i];
+        ys[i] = ys[j];
+        ys[j] = t;
+        t = zs[i];
+        zs[i] = zs[j];
+        zs[j] = t;
+    }
+
+    // ----- Ricerca -----
+
+    private void cercaVicini(int da, int a, double[] q, int n, PriorityQueue<double[]> migliori) {
+        if (da >= a) {
+            return;
+        }
+        int medio = (da + a) >>> 1;
+        double d2 = distanza2(medio, q);
+        if (migliori.size() < n) {
+            migliori.add(new double[] {d2, medio});
+        } else if (d2 < migliori.peek()[0]) {
+            migliori.poll();
+            migliori.add(new double[] {d2, medio});
+        }
+
+        int asse = assi[medio];
+        double delta = q[asse] - coordinata(medio, asse);
+        // Visita prima il lato che contiene il punto cercato
+        if (delta < 0) {
+            cercaVicini(da, medio, q, n, migliori);
+            if (migliori.size() < n || delta * delta < migliori.peek()[0]) {
+                cercaVicini(medio + 1, a, q, n, migliori);
+            }
+        } else {
+            cercaVicini(medio + 1, a, q, n, migliori);
+            if (migliori.size() < n || delta * delta < migliori.peek()[0]) {
+                cercaVicini(da, medio, q, n, migliori);
+            }
+        }
+    }
+
+    private void cercaEntroRaggio(int da, int a, double[] q, double raggio2, List<Risultato> risultati) {
+        if (da >= a) {
+            return;
+        }
+        int medio = (da + a) >>> 1;
+        double d2 = distanza2(medio, q);
+        if (d2 <= raggio2) {
+            risultati.add(new Risultato(punti[medio], cordaInKm(Math.sqrt(d2))));
+        }
+
+        int asse = assi[medio];
+        double delta = q[asse] - coordinata(medio, asse);
+        if (delta < 0 || delta * delta <= raggio2) {
+            cercaEntroRaggio(da, medio, q, raggio2, risultati);
+        }
+        if (delta >= 0 || delta * delta <= raggio2) {
+            cercaEntroRaggio(medio + 1, a, q, raggio2, risultati);
+        }
+    }
+
+    private void cercaNelRiquadro(int da, int a, double[] minimo, double[] massimo, List<Integer> risultati) {
+        if (da >= a) {
+            return;
+        }
+        int medio = (da + a) >>> 1;
+        double x = xs[medio], y = ys[medio], z = zs[medio];
+        if (x >= minimo[0] && x <= massimo[0] && y >= minimo[1] && y <= massimo[1]
+                && z >= minimo[2] && z <= massimo[2]) {
+            risultati.add(medio);
+        }
+
+        int asse = assi[medio];
+        double valore = coordinata(medio, asse);
+        if (minimo[asse] <= valore) {
+            cercaNelRiquadro(da, medio, minimo, massimo, risultati);
+        }
+        if (massimo[asse] >= valore) {
+            cercaNelRiquadro(medio + 1, a, minimo, massimo, risultati);
+        }
+    }
+
+    /**
+     * Distanza angolare del punto i dall'arco a-b e posizione angolare,
+     * a partire da a, del punto dell'arco più vicino.
+     *
+     * @return {distanza, progressiva} in radianti.
+     */
+    private double[] proiettaSuSegmento(int i, double[] a, double[] b, double lunghezza) {
+        double[] p = {xs[i], ys[i], zs[i]};
+        double[] normale = vettoriale(a, b);
+        double modulo = Math.sqrt(scalare(normale, normale));
+        if (modulo < 1e-12) {
+            // Segmento degenere (tappe coincidenti o antipodali)
+            return new double[] {angolo(p, a), 0.0};
+        }
+        for (int k = 0; k < 3; k++) {
+            normale[k] /= modulo;
+        }
+
+        // Posizione lungo il cerchio massimo della proiezione del punto
+        double[] proiezione = new double[3];
+        double componenteNormale = scalare(p, normale);
+        for (int k = 0; k < 3; k++) {
+            proiezione[k] = p[k] - componenteNormale * normale[k];
+        }
+        double lungo = Math.atan2(scalare(vettoriale(a, proiezione), normale), scalare(a, proiezione));
+
+        if (lungo >= 0 && lungo <= lunghezza) {
+            return new double[] {Math.abs(Math.asin(Math.max(-1, Math.min(1, componenteNormale)))), lungo};
+        }
+        double da = angolo(p, a);
+        double db = angolo(p, b);
+        return da <= db ? new double[] {da, 0.0} : new double[] {db, lunghezza};
+    }
+
+    // ----- Geometria -----
+
+    /**
+     * Punto dell'arco di cerchio massimo a-b a distanza angolare t da a.
+     */
+    private static double[] interpola(double[] a, double[] b, double lunghezza, double t) {
+        double sinLunghezza = Math.sin(lunghezza);
+        if (sinLunghezza < 1e-12) {
+            return a;
+        }
+        double wa = Math.sin(lunghezza - t) / sinLunghezza;
+        double wb = Math.sin(t) / sinLunghezza;
+        return new double[] {wa * a[0] + wb * b[0], wa * a[1] + wb * b[1], wa * a[2] + wb * b[2]};
+    }
+
+    private static double angolo(double[] u, double[] v) {
+        double[] c = vettoriale(u, v);
+        return Math.atan2(Math.sqrt(scalare(c, c)), scalare(u, v));
+    }
+
+    private static double scalare(double[] u, double[] v) {
+        return u[0] * v[0] + u[1] * v[1] + u[2] * v[2];
+    }
+
+    private static double[] vettoriale(double[] u, double[] v) {
+        return new double[] {
+                u[1] * v[2] - u[2] * v[1],
+                u[2] * v[0] - u[0] * v[2],
+                u[0] * v[1] - u[1] * v[0]
+        };
+    }
+
+    private double coordinata(int i, int asse) {
+        switch (asse) {
+            case 0:
+                return xs[i];
+            case 1:
+                return ys[i];
+            default:
+                return zs[i];
+        }
+    }
+
+    private double distanza2(int i, double[] q) {
+        double dx = xs[i] - q[0];
+        double dy = ys[i] - q[1];
+        double dz = zs[i] - q[2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    static double[] versore(double lat, double lon) {
+        double phi = Math.toRadians(lat);
+        double lambda = Math.toRadians(lon);
+        return new double[] {
+                Math.cos(phi) * Math.cos(lambda),
+                Math.cos(phi) * Math.sin(lambda),
+                Math.sin(phi)
+        };
+    }
+
+    static double cordaInKm(double corda) {
+        return 2 * RAGGIO_TERRA_KM * Math.asin(Math.min(1.0, corda / 2));
+    }
+
+    static double kmInCorda(double km) {
+        if (km >= Math.PI * RAGGIO_TERRA_KM) {
+            return 2.0;
+        }
+        return 2 * Math.sin(km / (2 * RAGGIO_TERRA_KM));
+    }
+}
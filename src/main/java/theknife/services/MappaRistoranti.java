@@ -0,0 +1,277 @@
+package theknife.services;
+
+import theknife.models.Ristorante;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Servizio dati per la mappa: raggruppa i ristoranti in celle geohash e
+ * precalcola per ogni precisione i cluster (numero di ristoranti e centroide).
+ * <p>
+ * Una richiesta per un riquadro visibile e un livello di zoom sceglie la
+ * precisione geohash adatta allo zoom ed enumera solo le celle che
+ * intersecano il riquadro, quindi il costo dipende dal numero di cluster
+ * visibili e non dalla dimensione del catalogo. Le celle geohash non
+ * attraversano mai l'antimeridiano, per cui la media di latitudini e
+ * longitudini di una cella è un centroide corretto.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public class MappaRistoranti {
+
+    /** Precisione massima gestita (caratteri geohash, celle di circa 38 x 19 m). */
+    public static final int PRECISIONE_MASSIMA = 8;
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+    private static final int LATO_CELLA_MINIMO_PX = 64; // dimensione minima di una cella sullo schermo
+    private static final int MAX_CELLE_ENUMERATE = 4096;
+
+    /**
+     * Cluster di ristoranti contenuti in una cella geohash.
+     */
+    public static final class Cluster {
+        private final long cella;
+        private final int precisione;
+        private int conteggio;
+        private double sommaLat;
+        private double sommaLon;
+        private Ristorante primo;
+
+        Cluster(long cella, int precisione) {
+            this.cella = cella;
+            this.precisione = precisione;
+        }
+
+        void aggiungi(Ristorante r) {
+            if (conteggio == 0) {
+                primo = r;
+            }
+            conteggio++;
+            sommaLat += r.getLatitude();
+            sommaLon += r.getLongitude();
+        }
+
+        public int getConteggio() {
+            return conteggio;
+        }
+
+        public double getLatitudine() {
+            return sommaLat / conteggio;
+        }
+
+        public double getLongitudine() {
+            return sommaLon / conteggio;
+        }
+
+        public int getPrecisione() {
+            return precisione;
+        }
+
+        /**
+         * Restituisce il geohash della cella del cluster.
+         *
+         * @return Stringa geohash di lunghezza pari alla precisione.
+         * @since 1.0
+         */
+        public String getGeohash() {
+            return inBase32(cella, precisione);
+        }
+
+        /**
+         * Restituisce il ristorante del cluster se è l'unico della cella.
+         *
+         * @return Ristorante; null se il cluster ne contiene più di uno.
+         * @since 1.0
+         */
+        public Ristorante getRistorante() {
+            return conteggio == 1 ? primo : null;
+        }
+    }
+
+    // Per ogni precisione (indice 1..PRECISIONE_MASSIMA): cella geohash -> cluster
+    private final List<Map<Long, Cluster>> livelli = new ArrayList<>();
+    private final Map<Long, List<Ristorante>> secchi = new HashMap<>(); // cella a precisione massima -> ristoranti
+
+    /**
+     * Costruisce secchi e cluster per tutti i livelli di precisione.
+     *
+     * @param ristoranti Ristoranti del catalogo, must be non-null.
+     * @since 1.0
+     */
+    public MappaRistoranti(Collection<Ristorante> ristoranti) {
+        livelli.add(new HashMap<>()); // precisione 0 non usata
+        for (int p = 1; p <= PRECISIONE_MASSIMA; p++) {
+            livelli.add(new HashMap<>());
+        }
+
+        for (Ristorante r : ristoranti) {
+            if (!IndiceSpaziale.haCoordinate(r)) {
+                continue;
+            }
+            long cella = cella(r.getLatitude(), r.getLongitude(), PRECISIONE_MASSIMA);
+            secchi.computeIfAbsent(cella, k -> new ArrayList<>()).add(r);
+            for (int p = PRECISIONE_MASSIMA; p >= 1; p--) {
+                long prefisso = cella >>> (5 * (PRECISIONE_MASSIMA - p));
+                int precisione = p;
+                livelli.get(p).computeIfAbsent(prefisso, k -> new Cluster(k, precisione)).aggiungi(r);
+            }
+        }
+    }
+
+    /**
+     * Restituisce i cluster visibili nel riquadro dato al livello di zoom dato.
+     * <p>
+     * Se ovest &gt; est il riquadro attraversa l'antimeridiano.
+     * </p>
+     *
+     * @param sud Latitudine minima.
+     * @param ovest Longitudine del bordo sinistro.
+     * @param nord Latitudine massima.
+     * @param est Longitudine del bordo destro.
+     * @param zoom Livello di zoom della mappa (0 = mondo intero in 256 px).
+     * @return Cluster le cui celle intersecano il riquadro.
+     * @since 1.0
+     */
+    public List<Cluster> cluster(double sud, double ovest, double nord, double est, int zoom) {
+        List<Cluster> risultato = new ArrayList<>();
+        int precisione = precisionePerZoom(zoom);
+        if (ovest > est) {
+            raccogli(sud, ovest, nord, 180.0, precisione, risultato);
+            raccogli(sud, -180.0, nord, est, precisione, risultato);
+        } else {
+            raccogli(sud, ovest, nord, est, precisione, risultato);
+        }
+        return risultato;
+    }
+
+    /**
+     * Restituisce i ristoranti della cella più fine che contiene il punto.
+     *
+     * @param lat Latitudine del punto.
+     * @param lon Longitudine del punto.
+     * @return Ristoranti nella cella; lista vuota se nessuno.
+     * @since 1.0
+     */
+    public List<Ristorante> ristorantiNellaCella(double lat, double lon) {
+        List<Ristorante> secchio = secchi.get(cella(lat, lon, PRECISIONE_MASSIMA));
+        return secchio != null ? new ArrayList<>(secchio) : new ArrayList<>();
+    }
+
+    /**
+     * Sceglie la precisione geohash più fine per cui una cella occupa almeno
+     * LATO_CELLA_MINIMO_PX pixel in larghezza al livello di zoom dato
+     * (proiezione Web Mercator con tile da 256 px).
+     *
+     * @param zoom Livello di zoom.
+     * @return Precisione tra 1 e PRECISIONE_MASSIMA.
+     * @since 1.0
+     */
+    public static int precisionePerZoom(int zoom) {
+        double pixelPerGrado = 256.0 * Math.pow(2, Math.max(0, zoom)) / 360.0;
+        int precisione = 1;
+        for (int p = 1; p <= PRECISIONE_MASSIMA; p++) {
+            int bitLon = (5 * p + 1) / 2;
+            double larghezzaCellaPx = 360.0 / (1L << bitLon) * pixelPerGrado;
+            if (larghezzaCellaPx < LATO_CELLA_MINIMO_PX) {
+                break;
+            }
+            precisione = p;
+        }
+        return precisione;
+    }
+
+    /**
+     * Calcola il geohash di un punto.
+     *
+     * @param lat Latitudine in gradi.
+     * @param lon Longitudine in gradi.
+     * @param precisione Numero di caratteri, tra 1 e PRECISIONE_MASSIMA.
+     * @return Stringa geohash.
+     * @since 1.0
+     */
+    public static String geohash(double lat, double lon, int precisione) {
+        return inBase32(cella(lat, lon, precisione), precisione);
+    }
+
+    private void raccogli(double sud, double ovest, double nord, double est, int precisione, List<Cluster> risultato) {
+        Map<Long, Cluster> livello = livelli.get(precisione);
+        int bit = 5 * precisione;
+        int bitLon = (bit + 1) / 2;
+        int bitLat = bit / 2;
+
+        long x0 = indice(ovest, -180, 360, bitLon);
+        long x1 = indice(est, -180, 360, bitLon);
+        long y0 = indice(sud, -90, 180, bitLat);
+        long y1 = indice(nord, -90, 180, bitLat);
+
+        long celle = (x1 - x0 + 1) * (y1 - y0 + 1);
+        if (celle > MAX_CELLE_ENUMERATE || celle > livello.size()) {
+            // Più celle nel riquadro che cluster esistenti: conviene scorrere i cluster
+            for (Cluster c : livello.values()) {
+                double lat = c.getLatitudine();
+                double lon = c.getLongitudine();
+                if (lat >= sud && lat <= nord && lon >= ovest && lon <= est) {
+                    risultato.add(c);
+                }
+            }
+            return;
+        }
+
+        for (long x = x0; x <= x1; x++) {
+            for (long y = y0; y <= y1; y++) {
+                Cluster c = livello.get(interleave(x, y, bitLon, bitLat));
+                if (c != null) {
+                    risultato.add(c);
+                }
+            }
+        }
+    }
+
+    private static long indice(double valore, double minimo, double ampiezza, int bit) {
+        long n = 1L << bit;
+        long i = (long) Math.floor((valore - minimo) / ampiezza * n);
+        return Math.max(0, Math.min(n - 1, i));
+    }
+
+    /**
+     * Cella geohash del punto come intero: bit di longitudine e latitudine
+     * alternati a partire dalla longitudine, come nella codifica standard.
+     */
+    private static long cella(double lat, double lon, int precisione) {
+        int bit = 5 * precisione;
+        int bitLon = (bit + 1) / 2;
+        int bitLat = bit / 2;
+        return interleave(indice(lon, -180, 360, bitLon), indice(lat, -90, 180, bitLat), bitLon, bitLat);
+    }
+
+    private static long interleave(long x, long y, int bitLon, int bitLat) {
+        long cella = 0;
+        int totale = bitLon + bitLat;
+        int ix = bitLon - 1;
+        int iy = bitLat - 1;
+        for (int i = 0; i < totale; i++) {
+            cella <<= 1;
+            if (i % 2 == 0) {
+                cella |= (x >>> ix--) & 1;
+            } else {
+                cella |= (y >>> iy--) & 1;
+            }
+        }
+        return cella;
+    }
+
+    private static String inBase32(long cella, int precisione) {
+        char[] caratteri = new char[precisione];
+        for (int i = precisione - 1; i >= 0; i--) {
+            caratteri[i] = BASE32.charAt((int) (cella & 31));
+            cella >>>= 5;
+        }
+        return new String(caratteri);
+    }
+}
@@ -1,83 +1,59 @@
 package theknife.services;
 
 import theknife.models.Ristorante;
-import theknife.Main;
 
-import java.io.*;
+import theknife.storage.Archivio;
+import theknife.storage.Tabella;
+import theknife.utils.MappaPersistente;
+import theknife.utils.Metriche;
+
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 /**
  * Gestisce i preferiti degli utenti.
  * <p>
- * Fornisce metodi statici per caricare/salvare la mappa username -> ristoranti preferiti
- * e per aggiungere/rimuovere/controllare i preferiti di un utente.
+ * Fornisce metodi statici per aggiungere/rimuovere/controllare i preferiti di un utente.
+ * I preferiti sono memorizzati nella tabella {@link Tabella#PREFERITI} dell'archivio,
+ * con chiave (username, ristorante).
+ * </p>
+ * <p>
+ * Le letture usano un'istantanea immutabile (username -> insieme dei nomi)
+ * pubblicata tramite {@link AtomicReference}, senza lock; le scritture
+ * passano una alla volta, aggiornano l'archivio e pubblicano la versione
+ * successiva, che condivide con la precedente gli insiemi degli altri utenti.
  * </p>
  *
  * @author Philip Jon Ji Ciuca
  * @version 1.0
  * */
 public class PreferitiManager {
-    private static final String PREFERITI_FILE = "src/main/resources/data/preferiti.csv";
-    private static Map<String, Set<String>> preferiti = new HashMap<>(); // username -> set di nomi ristoranti
+    private static final Object scrittura = new Object();
+    private static final AtomicReference<MappaPersistente<String, Set<String>>> corrente =
+            new AtomicReference<>(carica());
 
     static {
-        caricaPreferiti();
+        Metriche.indicatore("preferiti.utenti", () -> corrente.get().dimensione());
     }
 
-    /**
-     * Carica i preferiti da un file CSV nella mappa dei preferiti.
-     * <p>
-     * Il file deve trovarsi nel percorso specificato da {@link #PREFERITI_FILE}.
-     * Ogni riga del file deve contenere un nome utente e un ristorante preferito, separati da una virgola.
-     * </p>
-     */
-    public static void caricaPreferiti() {
-        preferiti.clear();
-        File file = new File(PREFERITI_FILE);
-        if (!file.exists()) {
-            return;
+    private static MappaPersistente<String, Set<String>> carica() {
+        long inizio = System.nanoTime();
+        Map<String, Set<String>> perUtente = new HashMap<>();
+        for (String[] riga : Archivio.righe(Tabella.PREFERITI)) {
+            perUtente.computeIfAbsent(riga[0], u -> new LinkedHashSet<>()).add(riga[1]);
         }
-
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            String line;
-            br.readLine(); // Skip header
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length >= 2) {
-                    String username = parts[0];
-                    String nomeRistorante = parts[1];
-                    
-                    preferiti.computeIfAbsent(username, k -> new HashSet<>()).add(nomeRistorante);
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+        MappaPersistente<String, Set<String>> istantanea = MappaPersistente.vuota();
+        for (Map.Entry<String, Set<String>> e : perUtente.entrySet()) {
+            istantanea = istantanea.con(e.getKey(), Collections.unmodifiableSet(e.getValue()));
         }
+        Metriche.registra("preferiti.caricamento", inizio);
+        return istantanea;
     }
 
-    /**
-     * Salva i preferiti correnti nella mappa dei preferiti su un file CSV.
-     * <p>
-     * Il file verrà creato o sovrascritto nel percorso specificato da {@link #PREFERITI_FILE}.
-     * </p>
-     */
-    public static void salvaPreferiti() {
-        File file = new File(PREFERITI_FILE);
-        file.getParentFile().mkdirs();
-        
-        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
-            writer.println("username,nomeRistorante");
-            
-            for (Map.Entry<String, Set<String>> entry : preferiti.entrySet()) {
-                String username = entry.getKey();
-                for (String nomeRistorante : entry.getValue()) {
-                    writer.println(username + "," + nomeRistorante);
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    private static Set<String> nomi(String username) {
+        Set<String> nomi = corrente.get().get(username);
+        return nomi != null ? nomi : Collections.emptySet();
     }
 
     /**
@@ -87,8 +63,15 @@ public class PreferitiManager {
      * @param nomeRistorante il nome del ristorante da aggiungere ai preferiti
      */
     public static void aggiungiPreferito(String username, String nomeRistorante) {
-        preferiti.computeIfAbsent(username, k -> new HashSet<>()).add(nomeRistorante);
-        salvaPreferiti();
+        long inizio = System.nanoTime();
+        synchronized (scrittura) {
+            if (Archivio.esegui(tx -> tx.scrivi(Tabella.PREFERITI, username, nomeRistorante))) {
+                Set<String> nomi = new LinkedHashSet<>(nomi(username));
+                nomi.add(nomeRistorante);
+                corrente.set(corrente.get().con(username, Collections.unmodifiableSet(nomi)));
+            }
+        }
+        Metriche.registra("preferiti.aggiunta", inizio);
     }
 
     /**
@@ -98,14 +81,18 @@ public class PreferitiManager {
      * @param nomeRistorante il nome del ristorante da rimuovere dai preferiti
      */
     public static void rimuoviPreferito(String username, String nomeRistorante) {
-        Set<String> userPreferiti = preferiti.get(username);
-        if (userPreferiti != null) {
-            userPreferiti.remove(nomeRistorante);
-            if (userPreferiti.isEmpty()) {
-                preferiti.remove(username);
+        long inizio = System.nanoTime();
+        synchronized (scrittura) {
+            if (isPreferito(username, nomeRistorante)
+                    && Archivio.esegui(tx -> tx.elimina(Tabella.PREFERITI, username, nomeRistorante))) {
+                Set<String> nomi = new LinkedHashSet<>(nomi(username));
+                nomi.remove(nomeRistorante);
+                corrente.set(nomi.isEmpty()
+                        ? corrente.get().senza(username)
+                        : corrente.get().con(username, Collections.unmodifiableSet(nomi)));
             }
-            salvaPreferiti();
         }
+        Metriche.registra("preferiti.rimozione", inizio);
     }
 
     /**
@@ -116,8 +103,7 @@ public class PreferitiManager {
      * @return true se il ristorante è nei preferiti dell'utente, false altrimenti
      */
     public static boolean isPreferito(String username, String nomeRistorante) {
-        Set<String> userPreferiti = preferiti.get(username);
-        return userPreferiti != null && userPreferiti.contains(nomeRistorante);
+        return nomi(username).contains(nomeRistorante);
     }
 
     /**
@@ -127,13 +113,9 @@ public class PreferitiManager {
      * @return una lista di ristoranti preferiti dall'utente, o una lista vuota se non ce ne sono
      */
     public static List<Ristorante> getPreferitiPerUtente(String username) {
-        if (Main.ristoranti == null) {
-            return new ArrayList<>();
-        }
-
-        Set<String> nomiPreferiti = preferiti.getOrDefault(username, new HashSet<>());
+        Set<String> nomiPreferiti = getNomiPreferitiPerUtente(username);
         
-        return Main.ristoranti.stream()
+        return CatalogoRistoranti.getRistoranti().stream()
                 .filter(r -> nomiPreferiti.contains(r.getName()))
                 .collect(Collectors.toList());
     }
@@ -142,10 +124,10 @@ public class PreferitiManager {
      * Restituisce i nomi dei ristoranti preferiti per un dato utente.
      *
      * @param username il nome dell'utente
-     * @return un insieme di nomi di ristoranti preferiti dall'utente
+     * @return un insieme immutabile di nomi di ristoranti preferiti dall'utente
      */
     public static Set<String> getNomiPreferitiPerUtente(String username) {
-        return new HashSet<>(preferiti.getOrDefault(username, new HashSet<>()));
+        return nomi(username);
     }
 
     /**
@@ -155,7 +137,6 @@ public class PreferitiManager {
      * @return il numero di ristoranti nei preferiti dell'utente
      */
     public static int getNumeroPreferiti(String username) {
-        Set<String> userPreferiti = preferiti.get(username);
-        return userPreferiti != null ? userPreferiti.size() : 0;
+        return nomi(username).size();
     }
 }
\ No newline at end of file
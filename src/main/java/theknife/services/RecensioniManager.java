@@ -3,129 +3,157 @@ package theknife.services;
 import theknife.models.Recensione;
 import theknife.models.Risposta;
 import theknife.models.Ristorante;
+import theknife.storage.Archivio;
+import theknife.storage.Tabella;
+import theknife.utils.ListaPersistente;
+import theknife.utils.MappaPersistente;
+import theknife.utils.Metriche;
 
-import java.io.*;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 /**
  * Gestisce il caricamento, il salvataggio e le operazioni sulle recensioni.
  * <p>
- * Fornisce metodi statici per leggere e scrivere il file CSV delle recensioni,
- * aggiungere recensioni e risposte, e ottenere viste filtrate delle recensioni
- * per ristorante, cliente o ristoratore.
+ * Fornisce metodi statici per caricare le recensioni dall'archivio,
+ * aggiungere recensioni e risposte (ogni scrittura aggiorna una sola riga
+ * della tabella {@link Tabella#RECENSIONI}) e ottenere viste filtrate delle
+ * recensioni per ristorante, cliente o ristoratore.
+ * </p>
+ * <p>
+ * Lo stato in memoria è un'istantanea immutabile pubblicata tramite
+ * {@link AtomicReference}: i lettori non prendono lock e vedono sempre una
+ * versione coerente, anche mentre un altro thread scrive. Le scritture
+ * passano una alla volta dal lock {@code scrittura}, registrano la modifica
+ * nell'archivio e pubblicano la versione successiva, che condivide con la
+ * precedente tutti i blocchi non toccati. Le recensioni pubblicate non
+ * vengono modificate: aggiungere una risposta sostituisce la recensione con
+ * una copia.
  * </p>
  *
  * @author Philip Jon Ji Ciuca
  * @version 1.0
  */
 public class RecensioniManager {
-    private static final String RECENSIONI_FILE = "src/main/resources/data/recensioni.csv";
-    private static List<Recensione> recensioni = new ArrayList<>();
+
+    /**
+     * Versione immutabile dello stato: recensioni in ordine di inserimento
+     * e posizione di ciascuna per ID.
+     */
+    private static final class Istantanea {
+        final ListaPersistente<Recensione> recensioni;
+        final MappaPersistente<String, Integer> posizioni;
+
+        Istantanea(ListaPersistente<Recensione> recensioni, MappaPersistente<String, Integer> posizioni) {
+            this.recensioni = recensioni;
+            this.posizioni = posizioni;
+        }
+
+        Istantanea con(Recensione recensione) {
+            Integer pos = posizioni.get(recensione.getId());
+            if (pos != null) {
+                return new Istantanea(recensioni.sostituisci(pos, recensione), posizioni);
+            }
+            return new Istantanea(recensioni.con(recensione), posizioni.con(recensione.getId(), recensioni.size()));
+        }
+    }
+
+    private static final Object scrittura = new Object();
+    private static final AtomicReference<Istantanea> corrente = new AtomicReference<>(
+            new Istantanea(ListaPersistente.vuota(), MappaPersistente.vuota()));
 
     static {
         caricaRecensioni();
+        Metriche.indicatore("recensioni.totale", () -> corrente.get().recensioni.size());
     }
 
     /**
-     * Carica tutte le recensioni dal file CSV nella memoria (lista statica).
+     * Carica tutte le recensioni dall'archivio e pubblica una nuova istantanea.
      * <p>
-     * Se il file non esiste, il metodo ritorna silenziosamente lasciando la
-     * lista delle recensioni vuota.
+     * Le righe non valide vengono segnalate e ignorate.
      * </p>
      * @since 1.0
      */
     public static void caricaRecensioni() {
-        recensioni.clear();
-        File file = new File(RECENSIONI_FILE);
-        if (!file.exists()) {
-            return;
-        }
-
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            String line;
-            br.readLine(); // Skip header
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", -1);
+        long inizio = System.nanoTime();
+        synchronized (scrittura) {
+            Istantanea nuova = new Istantanea(ListaPersistente.vuota(), MappaPersistente.vuota());
+            for (String[] parts : Archivio.righe(Tabella.RECENSIONI)) {
                 if (parts.length >= 7) {
-                    Recensione recensione = new Recensione();
-                    recensione.setId(parts[0]);
-                    recensione.setUsernameCliente(parts[1]);
-                    recensione.setNomeRistorante(parts[2]);
-                    recensione.setValutazione(Integer.parseInt(parts[3]));
-                    recensione.setTitolo(parts[4].replace("\"", ""));
-                    recensione.setCommento(parts[5].replace("\"", ""));
-                    recensione.setDataRecensione(LocalDateTime.parse(parts[6]));
-
-                    // Carica risposta se presente
-                    if (parts.length >= 10 && !parts[7].isEmpty()) {
-                        Risposta risposta = new Risposta();
-                        risposta.setId(parts[7]);
-                        risposta.setUsernameRistoratore(parts[8]);
-                        risposta.setTesto(parts[9].replace("\"", ""));
-                        if (parts.length >= 11) {
-                            risposta.setDataRisposta(LocalDateTime.parse(parts[10]));
+                    try {
+                        Recensione recensione = new Recensione();
+                        recensione.setId(parts[0]);
+                        recensione.setUsernameCliente(parts[1]);
+                        recensione.setNomeRistorante(parts[2]);
+                        recensione.setValutazione(Integer.parseInt(parts[3]));
+                        recensione.setTitolo(parts[4]);
+                        recensione.setCommento(parts[5]);
+                        recensione.setDataRecensione(LocalDateTime.parse(parts[6]));
+
+                        // Carica risposta se presente
+                        if (parts.length >= 10 && !parts[7].isEmpty()) {
+                            Risposta risposta = new Risposta();
+                            risposta.setId(parts[7]);
+                            risposta.setUsernameRistoratore(parts[8]);
+                            risposta.setTesto(parts[9]);
+                            if (parts.length >= 11 && !parts[10].isEmpty()) {
+                                risposta.setDataRisposta(LocalDateTime.parse(parts[10]));
+                            }
+                            recensione.setRisposta(risposta);
                         }
-                        recensione.setRisposta(risposta);
-                    }
 
-                    recensioni.add(recensione);
+                        nuova = nuova.con(recensione);
+                    } catch (RuntimeException e) {
+                        System.err.println("Errore nel parsing della recensione " + parts[0] + ": " + e.getMessage());
+                    }
                 }
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+            corrente.set(nuova);
         }
+        Metriche.registra("recensioni.caricamento", inizio);
     }
 
     /**
-     * Salva tutte le recensioni correnti nel file CSV.
-     * Il file viene creato se non esiste.
+     * Converte una recensione nei campi della tabella {@link Tabella#RECENSIONI}.
+     *
+     * @param r Recensione da convertire, must be non-null.
+     * @return Campi nell'ordine del CSV.
      * @since 1.0
      */
-    public static void salvaRecensioni() {
-        File file = new File(RECENSIONI_FILE);
-        file.getParentFile().mkdirs();
-
-        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
-            writer.println(
-                    "id,usernameCliente,nomeRistorante,valutazione,titolo,commento,dataRecensione,rispostaId,usernameRistoratore,testoRisposta,dataRisposta");
-
-            for (Recensione r : recensioni) {
-                StringBuilder sb = new StringBuilder();
-                sb.append(r.getId()).append(",");
-                sb.append(r.getUsernameCliente()).append(",");
-                sb.append(r.getNomeRistorante()).append(",");
-                sb.append(r.getValutazione()).append(",");
-                sb.append("\"").append(r.getTitolo()).append("\",");
-                sb.append("\"").append(r.getCommento()).append("\",");
-                sb.append(r.getDataRecensione()).append(",");
-
-                if (r.getRisposta() != null) {
-                    sb.append(r.getRisposta().getId()).append(",");
-                    sb.append(r.getRisposta().getUsernameRistoratore()).append(",");
-                    sb.append("\"").append(r.getRisposta().getTesto()).append("\",");
-                    sb.append(r.getRisposta().getDataRisposta());
-                } else {
-                    sb.append(",,,");
-                }
-
-                writer.println(sb.toString());
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    private static String[] inCampi(Recensione r) {
+        Risposta risposta = r.getRisposta();
+        return new String[] {
+                r.getId(),
+                r.getUsernameCliente(),
+                r.getNomeRistorante(),
+                String.valueOf(r.getValutazione()),
+                r.getTitolo(),
+                r.getCommento(),
+                String.valueOf(r.getDataRecensione()),
+                risposta != null ? risposta.getId() : "",
+                risposta != null ? risposta.getUsernameRistoratore() : "",
+                risposta != null ? risposta.getTesto() : "",
+                risposta != null && risposta.getDataRisposta() != null
+                        ? risposta.getDataRisposta().toString() : ""
+        };
     }
 
     /**
-     * Aggiunge una recensione alla lista in memoria e la salva su disco.
+     * Salva una recensione su disco e la pubblica nella nuova istantanea.
      *
      * @param recensione Recensione da aggiungere, must be non-null.
      * @since 1.0
      */
     public static void aggiungiRecensione(Recensione recensione) {
-        recensioni.add(recensione);
-        salvaRecensioni();
+        long inizio = System.nanoTime();
+        synchronized (scrittura) {
+            if (Archivio.esegui(tx -> tx.scrivi(Tabella.RECENSIONI, inCampi(recensione)))) {
+                corrente.set(corrente.get().con(recensione));
+            }
+        }
+        Metriche.registra("recensioni.aggiunta", inizio);
     }
 
     /**
@@ -137,10 +165,13 @@ public class RecensioniManager {
      * @since 1.0
      */
     public static List<Recensione> getRecensioniPerRistorante(String nomeRistorante) {
-        return recensioni.stream()
+        long inizio = System.nanoTime();
+        List<Recensione> trovate = corrente.get().recensioni.stream()
                 .filter(r -> r.getNomeRistorante().equals(nomeRistorante))
                 .sorted((r1, r2) -> r2.getDataRecensione().compareTo(r1.getDataRecensione()))
                 .collect(Collectors.toList());
+        Metriche.registra("recensioni.perRistorante", inizio);
+        return trovate;
     }
 
     /**
@@ -151,7 +182,7 @@ public class RecensioniManager {
      * @since 1.0
      */
     public static List<Recensione> getRecensioniPerCliente(String usernameCliente) {
-        return recensioni.stream()
+        return corrente.get().recensioni.stream()
                 .filter(r -> r.getUsernameCliente().equals(usernameCliente))
                 .sorted((r1, r2) -> r2.getDataRecensione().compareTo(r1.getDataRecensione()))
                 .collect(Collectors.toList());
@@ -166,12 +197,12 @@ public class RecensioniManager {
      */
     public static List<Recensione> getRecensioniPerRistoratore(String usernameRistoratore) {
         // Trova i ristoranti del ristoratore e poi le recensioni per quei ristoranti
-        List<String> nomiRistoranti = RistorantiManager.getRistorantiPerProprietario(usernameRistoratore)
+        Set<String> nomiRistoranti = RistorantiManager.getRistorantiPerProprietario(usernameRistoratore)
                 .stream()
                 .map(Ristorante::getName)
-                .collect(Collectors.toList());
+                .collect(Collectors.toSet());
 
-        return recensioni.stream()
+        return corrente.get().recensioni.stream()
                 .filter(r -> nomiRistoranti.contains(r.getNomeRistorante()))
                 .sorted((r1, r2) -> r2.getDataRecensione().compareTo(r1.getDataRecensione()))
                 .collect(Collectors.toList());
@@ -185,31 +216,60 @@ public class RecensioniManager {
      * @since 1.0
      */
     public static void aggiungiRisposta(String recensioneId, Risposta risposta) {
-        recensioni.stream()
-                .filter(r -> r.getId().equals(recensioneId))
-                .findFirst()
-                .ifPresent(r -> {
-                    r.setRisposta(risposta);
-                    salvaRecensioni();
-                });
+        salvaRisposta(recensioneId, risposta);
     }
 
     /**
      * Aggiunge una risposta a un oggetto Recensione esistente.
+     * <p>
+     * L'oggetto passato non viene modificato: la recensione nell'istantanea
+     * è sostituita da una copia con la risposta, visibile alle letture
+     * successive.
+     * </p>
      *
      * @param recensione Oggetto Recensione target, must be non-null.
      * @param risposta Risposta da associare.
      * @since 1.0
      */
     public static void aggiungiRisposta(Recensione recensione, Risposta risposta) {
-        // Trova la recensione e aggiungi la risposta
-        for (Recensione r : recensioni) {
-            if (r.getId().equals(recensione.getId())) {
-                r.setRisposta(risposta);
-                salvaRecensioni();
-                break;
+        salvaRisposta(recensione.getId(), risposta);
+    }
+
+    /**
+     * Aggiorna solo la riga della recensione nell'archivio e pubblica
+     * un'istantanea con la copia che contiene la risposta.
+     *
+     * @param recensioneId ID della recensione.
+     * @param risposta Risposta da associare.
+     * @since 1.0
+     */
+    private static void salvaRisposta(String recensioneId, Risposta risposta) {
+        long inizio = System.nanoTime();
+        synchronized (scrittura) {
+            Istantanea attuale = corrente.get();
+            Integer pos = attuale.posizioni.get(recensioneId);
+            if (pos == null) {
+                return;
+            }
+            Recensione copia = copiaConRisposta(attuale.recensioni.get(pos), risposta);
+            if (Archivio.esegui(tx -> tx.scrivi(Tabella.RECENSIONI, inCampi(copia)))) {
+                corrente.set(new Istantanea(attuale.recensioni.sostituisci(pos, copia), attuale.posizioni));
             }
         }
+        Metriche.registra("recensioni.risposta", inizio);
+    }
+
+    private static Recensione copiaConRisposta(Recensione r, Risposta risposta) {
+        Recensione copia = new Recensione();
+        copia.setId(r.getId());
+        copia.setUsernameCliente(r.getUsernameCliente());
+        copia.setNomeRistorante(r.getNomeRistorante());
+        copia.setValutazione(r.getValutazione());
+        copia.setTitolo(r.getTitolo());
+        copia.setCommento(r.getCommento());
+        copia.setDataRecensione(r.getDataRecensione());
+        copia.setRisposta(risposta);
+        return copia;
     }
 
     /**
@@ -232,12 +292,17 @@ public class RecensioniManager {
     }
 
     /**
-     * Restituisce tutte le recensioni attualmente caricate in memoria.
+     * Restituisce l'istantanea corrente di tutte le recensioni.
+     * <p>
+     * La lista è immutabile e non cambia con le scritture successive, quindi
+     * può essere scorsa da un thread in background (ad esempio per salvarla)
+     * senza copie né lock.
+     * </p>
      *
-     * @return Nuova lista contenente tutte le recensioni.
+     * @return Lista in sola lettura delle recensioni, in ordine di inserimento.
      * @since 1.0
      */
     public static List<Recensione> getAllRecensioni() {
-        return new ArrayList<>(recensioni);
+        return corrente.get().recensioni;
     }
 }
\ No newline at end of file
@@ -0,0 +1,238 @@
+package theknife.services;
+
+import theknife.models.Ristorante;
+import theknife.utils.EventiJfr;
+import theknife.utils.Metriche;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Motore di ricerca del catalogo, indipendente dall'interfaccia grafica.
+ * <p>
+ * Raccoglie la logica di filtro, le statistiche e l'estrazione dei valori
+ * distinti per i filtri che prima era duplicata in
+ * {@code GuestViewController} ed {@code EsploraRistorantiController}, così
+ * che le viste la condividano e i benchmark possano misurarla.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public final class RicercaRistoranti {
+
+    /** Opzioni del filtro sulle stelle, nell'ordine mostrato nelle viste. */
+    public static final List<String> OPZIONI_STELLE = List.of("1 Stella", "2 Stelle", "3 Stelle", "Stelle Verdi");
+
+    private RicercaRistoranti() {
+    }
+
+    /**
+     * Criteri di ricerca impostati dall'utente. I valori null (o il testo
+     * vuoto) indicano un filtro non attivo.
+     */
+    public static final class Criteri {
+        private final String testo;
+        private final String cucina;
+        private final String localita;
+        private final String prezzo;
+        private final String stelle;
+        private final boolean consegna;
+        private final boolean prenotazioneOnline;
+
+        /**
+         * Crea i criteri di ricerca.
+         *
+         * @param testo Testo cercato in nome, cucina e località; may be null.
+         * @param cucina Cucina esatta, oppure null.
+         * @param localita Località esatta, oppure null.
+         * @param prezzo Fascia di prezzo esatta, oppure null.
+         * @param stelle Una delle {@link #OPZIONI_STELLE}, oppure null.
+         * @param consegna true per mostrare solo i ristoranti con consegna.
+         * @param prenotazioneOnline true per mostrare solo quelli con prenotazione online.
+         * @since 1.0
+         */
+        public Criteri(String testo, String cucina, String localita, String prezzo, String stelle,
+                boolean consegna, boolean prenotazioneOnline) {
+            this.testo = testo == null ? "" : testo.toLowerCase().trim();
+            this.cucina = cucina;
+            this.localita = localita;
+            this.prezzo = prezzo;
+            this.stelle = stelle;
+            this.consegna = consegna;
+            this.prenotazioneOnline = prenotazioneOnline;
+        }
+    }
+
+    /**
+     * Conteggi mostrati nelle viste per un elenco di ristoranti.
+     */
+    public static final class Statistiche {
+        private final int totale;
+        private final long conStelle;
+        private final long stelleVerdi;
+        private final long preferiti;
+
+        Statistiche(int totale, long conStelle, long stelleVerdi, long preferiti) {
+            this.totale = totale;
+            this.conStelle = conStelle;
+            this.stelleVerdi = stelleVerdi;
+            this.preferiti = preferiti;
+        }
+
+        public int getTotale() {
+            return totale;
+        }
+
+        public long getConStelle() {
+            return conStelle;
+        }
+
+        public long getStelleVerdi() {
+            return stelleVerdi;
+        }
+
+        public long getPreferiti() {
+            return preferiti;
+        }
+    }
+
+    /**
+     * Costruisce il predicato corrispondente ai criteri.
+     * <p>
+     * I filtri esatti, più economici, vengono valutati prima della ricerca
+     * testuale, che viene eseguita solo sui ristoranti che li superano.
+     * </p>
+     *
+     * @param criteri Criteri di ricerca, must be non-null.
+     * @return Predicato che accetta i ristoranti che soddisfano tutti i filtri.
+     * @since 1.0
+     */
+    public static Predicate<Ristorante> creaFiltro(Criteri criteri) {
+        String searchText = criteri.testo;
+        String selectedCuisine = criteri.cucina;
+        String selectedLocation = criteri.localita;
+        String selectedPriceRange = criteri.prezzo;
+        String selectedStars = criteri.stelle;
+        boolean isDeliverySelected = criteri.consegna;
+        boolean isOnlineBookingSelected = criteri.prenotazioneOnline;
+
+        return r -> {
+            if (selectedCuisine != null && (r.getCuisine() == null || !r.getCuisine().equals(selectedCuisine)))
+                return false;
+            if (selectedLocation != null && (r.getLocation() == null || !r.getLocation().equals(selectedLocation)))
+                return false;
+            if (selectedPriceRange != null && (r.getPrice() == null || !r.getPrice().equals(selectedPriceRange)))
+                return false;
+            if (isDeliverySelected && !r.isDeliveryAvailable())
+                return false;
+            if (isOnlineBookingSelected && !r.isOnlineBookingAvailable())
+                return false;
+
+            boolean matchesStars = selectedStars == null ||
+                    switch (selectedStars) {
+                        case "1 Stella" -> r.getStars() == 1;
+                        case "2 Stelle" -> r.getStars() == 2;
+                        case "3 Stelle" -> r.getStars() == 3;
+                        case "Stelle Verdi" -> isStellaVerde(r);
+                        default -> true;
+                    };
+            if (!matchesStars)
+                return false;
+
+            return searchText.isEmpty() ||
+                    r.getName().toLowerCase().contains(searchText) ||
+                    (r.getCuisine() != null && r.getCuisine().toLowerCase().contains(searchText)) ||
+                    (r.getLocation() != null && r.getLocation().toLowerCase().contains(searchText));
+        };
+    }
+
+    /**
+     * Restituisce i ristoranti che soddisfano i criteri, nell'ordine di partenza.
+     *
+     * @param ristoranti Ristoranti da filtrare, must be non-null.
+     * @param criteri Criteri di ricerca, must be non-null.
+     * @return Nuova lista con i ristoranti trovati.
+     * @since 1.0
+     */
+    public static List<Ristorante> cerca(Collection<Ristorante> ristoranti, Criteri criteri) {
+        long inizio = System.nanoTime();
+        EventiJfr.Ricerca evento = new EventiJfr.Ricerca();
+        evento.begin();
+        Predicate<Ristorante> filtro = creaFiltro(criteri);
+        List<Ristorante> risultato = new ArrayList<>();
+        for (Ristorante r : ristoranti) {
+            if (filtro.test(r)) {
+                risultato.add(r);
+            }
+        }
+        Metriche.registra("ricerca.cerca", inizio);
+        if (evento.shouldCommit()) {
+            evento.testo = criteri.testo;
+            evento.cucina = criteri.cucina;
+            evento.localita = criteri.localita;
+            evento.candidati = ristoranti.size();
+            evento.risultati = risultato.size();
+            evento.commit();
+        }
+        return risultato;
+    }
+
+    /**
+     * Calcola totale, ristoranti stellati, stelle verdi e preferiti in una
+     * sola passata.
+     *
+     * @param ristoranti Ristoranti da contare, must be non-null.
+     * @param preferito Predicato dei preferiti dell'utente; null se non c'è un utente.
+     * @return Statistiche dell'elenco.
+     * @since 1.0
+     */
+    public static Statistiche calcolaStatistiche(Collection<Ristorante> ristoranti, Predicate<Ristorante> preferito) {
+        long conStelle = 0;
+        long stelleVerdi = 0;
+        long preferiti = 0;
+        for (Ristorante r : ristoranti) {
+            if (r.getStars() > 0)
+                conStelle++;
+            if (isStellaVerde(r))
+                stelleVerdi++;
+            if (preferito != null && preferito.test(r))
+                preferiti++;
+        }
+        return new Statistiche(ristoranti.size(), conStelle, stelleVerdi, preferiti);
+    }
+
+    /**
+     * Estrae i valori distinti e non vuoti di un campo, in ordine alfabetico,
+     * per popolare le opzioni di un filtro.
+     *
+     * @param ristoranti Ristoranti da cui estrarre i valori, must be non-null.
+     * @param campo Funzione che legge il campo (ad esempio {@code Ristorante::getCuisine}).
+     * @return Lista ordinata di valori distinti.
+     * @since 1.0
+     */
+    public static List<String> valoriDistinti(Collection<Ristorante> ristoranti, Function<Ristorante, String> campo) {
+        return ristoranti.stream()
+                .map(campo)
+                .filter(v -> v != null && !v.trim().isEmpty())
+                .distinct()
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Indica se il ristorante ha una stella verde.
+     *
+     * @param r Ristorante da controllare, must be non-null.
+     * @return true se il campo GreenStar è valorizzato e diverso da "N/A".
+     * @since 1.0
+     */
+    public static boolean isStellaVerde(Ristorante r) {
+        return r.getGreenStar() != null && !r.getGreenStar().trim().isEmpty()
+                && !r.getGreenStar().equalsIgnoreCase("N/A");
+    }
+}
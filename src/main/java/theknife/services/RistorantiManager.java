@@ -1,79 +1,78 @@
 package theknife.services;
 
 import theknife.models.Ristorante;
-import theknife.Main;
 
-import java.io.*;
+import theknife.storage.Archivio;
+import theknife.storage.Tabella;
+import theknife.storage.Transazione;
+import theknife.utils.MappaPersistente;
+import theknife.utils.Metriche;
+
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
  * Gestisce l'associazione proprietario -> ristoranti e operazioni correlate.
  * <p>
- * Fornisce metodi per caricare/salvare la mappa dei proprietari, aggiungere o
- * rimuovere proprietari e recuperare i ristoranti associati ad un proprietario.
+ * Fornisce metodi per aggiungere o rimuovere proprietari e recuperare i
+ * ristoranti associati ad un proprietario. Le associazioni sono memorizzate
+ * nella tabella {@link Tabella#PROPRIETARI} dell'archivio, con chiave
+ * (username, ristorante).
+ * </p>
+ * <p>
+ * Le letture usano un'istantanea immutabile pubblicata tramite
+ * {@link AtomicReference} (ristoranti per proprietario e proprietario per
+ * ristorante), senza lock; le scritture passano una alla volta, aggiornano
+ * l'archivio e pubblicano la versione successiva.
  * </p>
  *
  * @author Philip Jon Ji Ciuca
  * @version 1.0
  */
 public class RistorantiManager {
-    private static final String PROPRIETARI_FILE = "src/main/resources/data/proprietari_ristoranti.csv";
-    private static Map<String, Set<String>> proprietari = new HashMap<>(); // username -> set di nomi ristoranti
 
-    static {
-        caricaProprietari();
-    }
+    /** Versione immutabile delle associazioni, nei due versi. */
+    private static final class Istantanea {
+        final MappaPersistente<String, Set<String>> perProprietario;
+        final MappaPersistente<String, String> proprietarioDi;
 
-    /**
-     * Carica i proprietari da un file CSV e popola la mappa dei proprietari.
-     * Il file deve trovarsi nel percorso specificato da PROPRIETARI_FILE.
-     * I dati esistenti nella mappa vengono sovrascritti.
-     */
-    public static void caricaProprietari() {
-        proprietari.clear();
-        File file = new File(PROPRIETARI_FILE);
-        if (!file.exists()) {
-            return;
+        Istantanea(MappaPersistente<String, Set<String>> perProprietario,
+                MappaPersistente<String, String> proprietarioDi) {
+            this.perProprietario = perProprietario;
+            this.proprietarioDi = proprietarioDi;
         }
+    }
 
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            String line;
-            br.readLine(); // Skip header
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length >= 2) {
-                    String username = parts[0];
-                    String nomeRistorante = parts[1];
-
-                    proprietari.computeIfAbsent(username, k -> new HashSet<>()).add(nomeRistorante);
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    private static final Object scrittura = new Object();
+    private static final AtomicReference<Istantanea> corrente = new AtomicReference<>(carica());
+
+    static {
+        Metriche.indicatore("proprietari.ristoranti", () -> corrente.get().proprietarioDi.dimensione());
     }
 
-    /**
-     * Salva la mappa dei proprietari su un file CSV.
-     * Il file viene creato nel percorso specificato da PROPRIETARI_FILE.
-     */
-    public static void salvaProprietari() {
-        File file = new File(PROPRIETARI_FILE);
-        file.getParentFile().mkdirs();
-
-        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
-            writer.println("username,nomeRistorante");
-
-            for (Map.Entry<String, Set<String>> entry : proprietari.entrySet()) {
-                String username = entry.getKey();
-                for (String nomeRistorante : entry.getValue()) {
-                    writer.println(username + "," + nomeRistorante);
-                }
+    private static Istantanea carica() {
+        long inizio = System.nanoTime();
+        Map<String, Set<String>> perProprietario = new HashMap<>();
+        MappaPersistente<String, String> proprietarioDi = MappaPersistente.vuota();
+        for (String[] riga : Archivio.righe(Tabella.PROPRIETARI)) {
+            perProprietario.computeIfAbsent(riga[0], u -> new LinkedHashSet<>()).add(riga[1]);
+            if (!proprietarioDi.contiene(riga[1])) {
+                proprietarioDi = proprietarioDi.con(riga[1], riga[0]);
             }
-        } catch (IOException e) {
-            e.printStackTrace();
         }
+        MappaPersistente<String, Set<String>> istantanea = MappaPersistente.vuota();
+        for (Map.Entry<String, Set<String>> e : perProprietario.entrySet()) {
+            istantanea = istantanea.con(e.getKey(), Collections.unmodifiableSet(e.getValue()));
+        }
+        Metriche.registra("proprietari.caricamento", inizio);
+        return new Istantanea(istantanea, proprietarioDi);
+    }
+
+    private static Set<String> nomi(String username) {
+        Set<String> nomi = corrente.get().perProprietario.get(username);
+        return nomi != null ? nomi : Collections.emptySet();
     }
 
     /**
@@ -83,8 +82,39 @@ public class RistorantiManager {
      * @param nomeRistorante Il nome del ristorante da aggiungere.
      */
     public static void aggiungiProprietario(String username, String nomeRistorante) {
-        proprietari.computeIfAbsent(username, k -> new HashSet<>()).add(nomeRistorante);
-        salvaProprietari();
+        aggiungiProprietario(username, nomeRistorante, tx -> { });
+    }
+
+    /**
+     * Aggiunge un ristorante a un proprietario nella stessa transazione di
+     * altre scritture (ad esempio la riga del ristorante appena creato).
+     *
+     * @param username       L'username del proprietario.
+     * @param nomeRistorante Il nome del ristorante da aggiungere.
+     * @param altreScritture Scritture da registrare insieme all'associazione.
+     * @return true se la transazione è stata registrata.
+     */
+    public static boolean aggiungiProprietario(String username, String nomeRistorante,
+            Consumer<Transazione> altreScritture) {
+        long inizio = System.nanoTime();
+        synchronized (scrittura) {
+            boolean salvato = Archivio.esegui(tx -> {
+                altreScritture.accept(tx);
+                tx.scrivi(Tabella.PROPRIETARI, username, nomeRistorante);
+            });
+            if (salvato) {
+                Istantanea attuale = corrente.get();
+                Set<String> nomi = new LinkedHashSet<>(nomi(username));
+                nomi.add(nomeRistorante);
+                corrente.set(new Istantanea(
+                        attuale.perProprietario.con(username, Collections.unmodifiableSet(nomi)),
+                        attuale.proprietarioDi.contiene(nomeRistorante)
+                                ? attuale.proprietarioDi
+                                : attuale.proprietarioDi.con(nomeRistorante, username)));
+            }
+            Metriche.registra("proprietari.aggiunta", inizio);
+            return salvato;
+        }
     }
 
     /**
@@ -94,13 +124,20 @@ public class RistorantiManager {
      * @param nomeRistorante Il nome del ristorante da rimuovere.
      */
     public static void rimuoviProprietario(String username, String nomeRistorante) {
-        Set<String> userRistoranti = proprietari.get(username);
-        if (userRistoranti != null) {
-            userRistoranti.remove(nomeRistorante);
-            if (userRistoranti.isEmpty()) {
-                proprietari.remove(username);
+        synchronized (scrittura) {
+            if (isProprietario(username, nomeRistorante)
+                    && Archivio.esegui(tx -> tx.elimina(Tabella.PROPRIETARI, username, nomeRistorante))) {
+                Istantanea attuale = corrente.get();
+                Set<String> nomi = new LinkedHashSet<>(nomi(username));
+                nomi.remove(nomeRistorante);
+                corrente.set(new Istantanea(
+                        nomi.isEmpty()
+                                ? attuale.perProprietario.senza(username)
+                                : attuale.perProprietario.con(username, Collections.unmodifiableSet(nomi)),
+                        username.equals(attuale.proprietarioDi.get(nomeRistorante))
+                                ? attuale.proprietarioDi.senza(nomeRistorante)
+                                : attuale.proprietarioDi));
             }
-            salvaProprietari();
         }
     }
 
@@ -112,8 +149,7 @@ public class RistorantiManager {
      * @return true se l'utente è proprietario del ristorante, false altrimenti.
      */
     public static boolean isProprietario(String username, String nomeRistorante) {
-        Set<String> userRistoranti = proprietari.get(username);
-        return userRistoranti != null && userRistoranti.contains(nomeRistorante);
+        return nomi(username).contains(nomeRistorante);
     }
 
     /**
@@ -123,13 +159,9 @@ public class RistorantiManager {
      * @return Una lista di oggetti Ristorante associati al proprietario.
      */
     public static List<Ristorante> getRistorantiPerProprietario(String username) {
-        if (Main.ristoranti == null) {
-            return new ArrayList<>();
-        }
+        Set<String> nomiRistoranti = getNomiRistorantiPerProprietario(username);
 
-        Set<String> nomiRistoranti = proprietari.getOrDefault(username, new HashSet<>());
-
-        return Main.ristoranti.stream()
+        return CatalogoRistoranti.getRistoranti().stream()
                 .filter(r -> nomiRistoranti.contains(r.getName()))
                 .collect(Collectors.toList());
     }
@@ -138,10 +170,10 @@ public class RistorantiManager {
      * Restituisce i nomi dei ristoranti associati a un proprietario.
      *
      * @param username L'username del proprietario.
-     * @return Un insieme di stringhe contenente i nomi dei ristoranti.
+     * @return Un insieme immutabile contenente i nomi dei ristoranti.
      */
     public static Set<String> getNomiRistorantiPerProprietario(String username) {
-        return new HashSet<>(proprietari.getOrDefault(username, new HashSet<>()));
+        return nomi(username);
     }
 
     /**
@@ -151,8 +183,7 @@ public class RistorantiManager {
      * @return Il numero di ristoranti associati.
      */
     public static int getNumeroRistoranti(String username) {
-        Set<String> userRistoranti = proprietari.get(username);
-        return userRistoranti != null ? userRistoranti.size() : 0;
+        return nomi(username).size();
     }
 
     /**
@@ -162,12 +193,7 @@ public class RistorantiManager {
      * @return L'username del proprietario, oppure null se non trovato.
      */
     public static String getProprietarioRistorante(String nomeRistorante) {
-        for (Map.Entry<String, Set<String>> entry : proprietari.entrySet()) {
-            if (entry.getValue().contains(nomeRistorante)) {
-                return entry.getKey();
-            }
-        }
-        return null;
+        return corrente.get().proprietarioDi.get(nomeRistorante);
     }
 
     /**
@@ -176,6 +202,8 @@ public class RistorantiManager {
      * @return Una lista di stringhe contenente gli username di tutti i proprietari.
      */
     public static List<String> getTuttiProprietari() {
-        return new ArrayList<>(proprietari.keySet());
+        List<String> usernames = new ArrayList<>();
+        corrente.get().perProprietario.perOgni((username, nomi) -> usernames.add(username));
+        return usernames;
     }
 }
\ No newline at end of file
@@ -0,0 +1,542 @@
+package theknife.storage;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import theknife.utils.EventiJfr;
+import theknife.utils.Metriche;
+
+/**
+ * Archivio transazionale dei dati dell'applicazione (ristoranti, utenti,
+ * recensioni, preferiti e proprietà).
+ * <p>
+ * Ogni tabella è tenuta in memoria in un indice primario ordinato per
+ * chiave; una transazione viene prima registrata nel log di scrittura
+ * (con fsync) e poi applicata agli indici, quindi una scrittura costa
+ * O(log N) più l'append del record, e le scritture su più tabelle della
+ * stessa transazione sono atomiche. Periodicamente, e alla chiusura, le
+ * tabelle modificate vengono riscritte nei rispettivi CSV tramite file
+ * temporaneo e rinomina atomica e il log viene svuotato: i CSV restano
+ * il formato leggibile dei dati e fungono da checkpoint.
+ * </p>
+ * <p>
+ * Il checkpoint periodico gira in background: con il lock in scrittura
+ * copia solo i riferimenti alle righe delle tabelle modificate e ruota il
+ * log, poi ordina e scrive i CSV senza lock, mentre letture e nuove
+ * transazioni proseguono nel nuovo file di log. Il segmento di log
+ * precedente viene eliminato solo dopo la rinomina dei CSV, quindi dopo
+ * un crash le sue transazioni vengono riapplicate.
+ * </p>
+ * <p>
+ * La cartella dei dati è data dalla proprietà di sistema {@code theknife.data};
+ * in sua assenza si usa {@code src/main/resources/data} se esiste, altrimenti
+ * {@code data}. Un CSV mancante viene inizializzato dalla risorsa nel classpath.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public class Archivio {
+    private static final String FILE_REGISTRO = "theknife.wal";
+    private static final long SOGLIA_CHECKPOINT = 1024 * 1024; // byte di log oltre cui riscrivere i CSV
+
+    /**
+     * Riga di una tabella: l'ordine di inserimento è mantenuto nei CSV.
+     */
+    private static final class Riga {
+        final long sequenza;
+        final String[] campi;
+
+        Riga(long sequenza, String[] campi) {
+            this.sequenza = sequenza;
+            this.campi = campi;
+        }
+    }
+
+    private static final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private static final Map<Tabella, TreeMap<String, Riga>> indici = new EnumMap<>(Tabella.class);
+    private static final Map<Tabella, String> intestazioni = new EnumMap<>(Tabella.class);
+    // Righe in ordine di inserimento, calcolate alla prima lettura dopo ogni modifica della tabella
+    private static final Map<Tabella, List<String[]>> inOrdine = new ConcurrentHashMap<>();
+    private static final Set<Tabella> modificate = EnumSet.noneOf(Tabella.class);
+    // Un checkpoint alla volta; va preso prima del lock in scrittura
+    private static final Object salvataggio = new Object();
+    private static final AtomicBoolean checkpointPianificato = new AtomicBoolean(false);
+    private static final ExecutorService checkpointer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "theknife-archivio-checkpoint");
+        t.setDaemon(true);
+        return t;
+    });
+    private static Path cartella;
+    private static RegistroScritture registro;
+    private static long prossimaSequenza;
+    private static volatile boolean aperto;
+
+    /**
+     * Esegue una transazione: le scritture raccolte dal corpo vengono
+     * registrate e applicate tutte insieme, oppure nessuna.
+     *
+     * @param corpo Codice che raccoglie le scritture sulla transazione.
+     * @return true se la transazione è stata confermata, false in caso di errore di scrittura.
+     * @since 1.0
+     */
+    public static boolean esegui(Consumer<Transazione> corpo) {
+        assicuraAperto();
+        Transazione transazione = new Transazione();
+        corpo.accept(transazione);
+        if (transazione.getOperazioni().isEmpty()) {
+            return true;
+        }
+
+        long inizio = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            registro.registra(transazione.getOperazioni());
+            applica(transazione.getOperazioni());
+            if (registro.dimensione() > SOGLIA_CHECKPOINT && checkpointPianificato.compareAndSet(false, true)) {
+                checkpointer.execute(Archivio::checkpointInBackground);
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Errore nella scrittura dell'archivio: " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+            Metriche.registra("archivio.transazione", inizio);
+        }
+    }
+
+    /**
+     * Restituisce tutte le righe di una tabella nell'ordine di inserimento.
+     * <p>
+     * L'ordinamento viene calcolato alla prima lettura dopo una modifica
+     * della tabella; le letture successive restituiscono la stessa lista
+     * senza copie.
+     * </p>
+     *
+     * @param tabella Tabella da leggere.
+     * @return Lista immutabile delle righe (i campi non vanno modificati).
+     * @since 1.0
+     */
+    public static List<String[]> righe(Tabella tabella) {
+        assicuraAperto();
+        lock.readLock().lock();
+        try {
+            // Le scritture invalidano la cache con il lock in scrittura, quindi
+            // la lista calcolata qui corrisponde allo stato corrente dell'indice
+            return inOrdine.computeIfAbsent(tabella, t -> {
+                List<String[]> risultato = new ArrayList<>(indici.get(t).size());
+                for (Riga r : ordinatePerInserimento(t)) {
+                    risultato.add(r.campi);
+                }
+                return Collections.unmodifiableList(risultato);
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Cerca una riga per chiave primaria in O(log N).
+     *
+     * @param tabella Tabella da leggere.
+     * @param valoriChiave Valori di tutte le colonne chiave, nell'ordine.
+     * @return Campi della riga; null se non presente.
+     * @since 1.0
+     */
+    public static String[] leggi(Tabella tabella, String... valoriChiave) {
+        assicuraAperto();
+        lock.readLock().lock();
+        try {
+            Riga riga = indici.get(tabella).get(Tabella.chiave(valoriChiave));
+            return riga != null ? riga.campi : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Restituisce le righe la cui chiave inizia con i valori dati, in ordine di chiave.
+     * Ad esempio i preferiti di un utente si ottengono con il solo username.
+     *
+     * @param tabella Tabella da leggere.
+     * @param primiValori Valori delle prime colonne chiave.
+     * @return Righe corrispondenti; lista vuota se nessuna.
+     * @since 1.0
+     */
+    public static List<String[]> conPrefisso(Tabella tabella, String... primiValori) {
+        assicuraAperto();
+        String da = Tabella.chiave(primiValori) + Tabella.SEPARATORE;
+        String a = Tabella.chiave(primiValori) + (char) (Tabella.SEPARATORE + 1);
+        lock.readLock().lock();
+        try {
+            List<String[]> risultato = new ArrayList<>();
+            for (Riga r : indici.get(tabella).subMap(da, true, a, false).values()) {
+                risultato.add(r.campi);
+            }
+            return risultato;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Restituisce il numero di righe di una tabella.
+     *
+     * @param tabella Tabella da contare.
+     * @return Numero di righe.
+     * @since 1.0
+     */
+    public static int conteggio(Tabella tabella) {
+        assicuraAperto();
+        lock.readLock().lock();
+        try {
+            return indici.get(tabella).size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Restituisce la cartella dei dati in uso.
+     *
+     * @return Percorso della cartella.
+     * @since 1.0
+     */
+    public static Path getCartella() {
+        assicuraAperto();
+        return cartella;
+    }
+
+    /**
+     * Importa in blocco righe già validate, senza passare dal log di scrittura.
+     * <p>
+     * Le righe devono essere ordinate per chiave primaria e senza chiavi
+     * ripetute: l'indice viene ricostruito una sola volta inserendole in
+     * ordine e la tabella viene subito salvata nel CSV con una rinomina
+     * atomica, quindi l'importazione è visibile per intero o per niente
+     * anche dopo un crash. Le righe con una chiave già presente sostituiscono
+     * quella esistente mantenendone la posizione.
+     * </p>
+     *
+     * @param tabella Tabella di destinazione.
+     * @param righe Righe ordinate per chiave (vedi {@link Tabella#chiaveDi(String[])}).
+     * @param posizioni Posizione di ogni riga nel file di origine, per conservarne l'ordine nel CSV.
+     * @return true se l'importazione è stata salvata, false in caso di errore di scrittura.
+     * @since 1.0
+     */
+    public static boolean importa(Tabella tabella, List<String[]> righe, long[] posizioni) {
+        assicuraAperto();
+        synchronized (salvataggio) {
+            return importaConLock(tabella, righe, posizioni);
+        }
+    }
+
+    private static boolean importaConLock(Tabella tabella, List<String[]> righe, long[] posizioni) {
+        lock.writeLock().lock();
+        TreeMap<String, Riga> precedente = indici.get(tabella);
+        long sequenzaPrecedente = prossimaSequenza;
+        try {
+            // Il CSV deve contenere tutte le transazioni confermate prima di essere sostituito
+            salvaCheckpoint();
+
+            TreeMap<String, Riga> indice = new TreeMap<>(precedente);
+            long base = prossimaSequenza;
+            long massima = base - 1;
+            for (int i = 0; i < righe.size(); i++) {
+                String[] campi = righe.get(i);
+                String chiave = tabella.chiaveDi(campi);
+                Riga esistente = indice.get(chiave);
+                long sequenza = esistente != null ? esistente.sequenza : base + posizioni[i];
+                massima = Math.max(massima, sequenza);
+                indice.put(chiave, new Riga(sequenza, campi));
+            }
+
+            indici.put(tabella, indice);
+            inOrdine.remove(tabella);
+            prossimaSequenza = massima + 1;
+            scriviCsv(tabella, istantanea(tabella));
+            return true;
+        } catch (IOException e) {
+            indici.put(tabella, precedente);
+            inOrdine.remove(tabella);
+            prossimaSequenza = sequenzaPrecedente;
+            System.err.println("Errore nell'importazione in " + tabella + ": " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Riscrive nei CSV le tabelle modificate e svuota il log di scrittura.
+     *
+     * @since 1.0
+     */
+    public static void checkpoint() {
+        if (!aperto) {
+            return;
+        }
+        synchronized (salvataggio) {
+            lock.writeLock().lock();
+            try {
+                salvaCheckpoint();
+            } catch (IOException e) {
+                System.err.println("Errore nel salvataggio dei CSV: " + e.getMessage());
+                e.printStackTrace();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Checkpoint pianificato da {@link #esegui(Consumer)} quando il log supera
+     * la soglia: il lock in scrittura serve solo per copiare le righe e
+     * ruotare il log, la scrittura dei CSV avviene senza lock.
+     */
+    private static void checkpointInBackground() {
+        synchronized (salvataggio) {
+            try {
+                Map<Tabella, Riga[]> istantanee = new EnumMap<>(Tabella.class);
+                lock.writeLock().lock();
+                try {
+                    if (registro.haPrecedente()) {
+                        // Un checkpoint precedente non è stato completato: il suo
+                        // segmento di log serve ancora, quindi salva tutto con il lock
+                        salvaCheckpoint();
+                        return;
+                    }
+                    for (Tabella tabella : modificate) {
+                        istantanee.put(tabella, istantanea(tabella));
+                    }
+                    modificate.clear();
+                    registro.ruota();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+
+                long inizio = System.nanoTime();
+                try {
+                    for (Map.Entry<Tabella, Riga[]> e : istantanee.entrySet()) {
+                        scriviCsv(e.getKey(), e.getValue());
+                    }
+                } catch (IOException e) {
+                    // Le tabelle verranno riscritte al prossimo checkpoint, il log resta
+                    lock.writeLock().lock();
+                    try {
+                        modificate.addAll(istantanee.keySet());
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                    throw e;
+                }
+                // Solo ora che i CSV sono su disco il segmento precedente non serve più
+                registro.eliminaPrecedente();
+                Metriche.registra("archivio.checkpoint", inizio);
+            } catch (IOException e) {
+                System.err.println("Errore nel salvataggio dei CSV: " + e.getMessage());
+                e.printStackTrace();
+            } finally {
+                checkpointPianificato.set(false);
+            }
+        }
+    }
+
+    private static void assicuraAperto() {
+        if (aperto) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!aperto) {
+                long inizio = System.nanoTime();
+                apri();
+                Metriche.registra("archivio.apertura", inizio);
+                aperto = true;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Impossibile aprire l'archivio dei dati: " + e.getMessage(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void apri() throws IOException {
+        cartella = cartellaDati();
+        Files.createDirectories(cartella);
+
+        for (Tabella tabella : Tabella.values()) {
+            indici.put(tabella, new TreeMap<>());
+            caricaCsv(tabella);
+        }
+
+        // Le transazioni nel log sono successive all'ultimo checkpoint: riapplicarle
+        registro = new RegistroScritture(cartella.resolve(FILE_REGISTRO));
+        List<List<Transazione.Operazione>> transazioni = registro.rileggi();
+        for (List<Transazione.Operazione> operazioni : transazioni) {
+            applica(operazioni);
+        }
+        if (!transazioni.isEmpty()) {
+            System.out.println("Recuperate " + transazioni.size() + " transazioni dal log di scrittura");
+            salvaCheckpoint();
+        }
+
+        Thread chiusura = new Thread(Archivio::checkpoint, "theknife-archivio-chiusura");
+        Runtime.getRuntime().addShutdownHook(chiusura);
+    }
+
+    private static Path cartellaDati() {
+        String configurata = System.getProperty("theknife.data");
+        if (configurata != null && !configurata.trim().isEmpty()) {
+            return Paths.get(configurata.trim());
+        }
+        Path sorgenti = Paths.get("src/main/resources/data");
+        return Files.isDirectory(sorgenti) ? sorgenti : Paths.get("data");
+    }
+
+    private static void caricaCsv(Tabella tabella) throws IOException {
+        Path file = cartella.resolve(tabella.getFile());
+        InputStream in;
+        if (Files.exists(file)) {
+            in = Files.newInputStream(file);
+        } else {
+            in = Archivio.class.getResourceAsStream("/data/" + tabella.getFile());
+            if (in == null) {
+                return;
+            }
+            modificate.add(tabella); // verrà creato nella cartella dei dati al primo checkpoint
+        }
+
+        TreeMap<String, Riga> indice = indici.get(tabella);
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            boolean prima = tabella.getIntestazione() != null;
+            String riga;
+            while ((riga = Csv.leggiRiga(br)) != null) {
+                if (prima) {
+                    intestazioni.put(tabella, riga);
+                    prima = false;
+                    continue;
+                }
+                if (riga.trim().isEmpty()) {
+                    continue;
+                }
+                String[] campi = Csv.dividi(riga);
+                String chiave = tabella.chiaveDi(campi);
+                if (indice.containsKey(chiave)) {
+                    // Righe con la stessa chiave nel CSV originale: conservarle entrambe
+                    chiave = chiave + Tabella.SEPARATORE + "#" + prossimaSequenza;
+                }
+                indice.put(chiave, new Riga(prossimaSequenza++, campi));
+            }
+        }
+    }
+
+    private static void applica(List<Transazione.Operazione> operazioni) {
+        for (Transazione.Operazione op : operazioni) {
+            TreeMap<String, Riga> indice = indici.get(op.tabella);
+            if (op.isEliminazione()) {
+                indice.remove(op.chiave);
+            } else {
+                Riga esistente = indice.get(op.chiave);
+                long sequenza = esistente != null ? esistente.sequenza : prossimaSequenza++;
+                indice.put(op.chiave, new Riga(sequenza, op.campi));
+            }
+            modificate.add(op.tabella);
+            inOrdine.remove(op.tabella);
+        }
+    }
+
+    private static void salvaCheckpoint() throws IOException {
+        long inizio = System.nanoTime();
+        for (Tabella tabella : Tabella.values()) {
+            if (modificate.contains(tabella)) {
+                scriviCsv(tabella, istantanea(tabella));
+            }
+        }
+        modificate.clear();
+        // Solo ora che tutti i CSV sono su disco il log non serve più
+        registro.svuota();
+        Metriche.registra("archivio.checkpoint", inizio);
+    }
+
+    private static List<Riga> ordinatePerInserimento(Tabella tabella) {
+        List<Riga> righe = new ArrayList<>(indici.get(tabella).values());
+        righe.sort(Comparator.comparingLong(r -> r.sequenza));
+        return righe;
+    }
+
+    /** Copia dei riferimenti alle righe della tabella, da prendere con il lock. */
+    private static Riga[] istantanea(Tabella tabella) {
+        return indici.get(tabella).values().toArray(new Riga[0]);
+    }
+
+    /**
+     * Scrive le righe nel CSV della tabella in ordine di inserimento. Le righe
+     * sono immutabili, quindi l'istantanea può essere scritta senza lock.
+     */
+    private static void scriviCsv(Tabella tabella, Riga[] righe) throws IOException {
+        Path file = cartella.resolve(tabella.getFile());
+        Path temporaneo = cartella.resolve(tabella.getFile() + ".tmp");
+        EventiJfr.RiscritturaCsv evento = new EventiJfr.RiscritturaCsv();
+        evento.begin();
+
+        Arrays.sort(righe, Comparator.comparingLong(r -> r.sequenza));
+        String intestazione = intestazioni.getOrDefault(tabella, tabella.getIntestazione());
+
+        try (FileOutputStream out = new FileOutputStream(temporaneo.toFile());
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            if (intestazione != null) {
+                writer.write(intestazione);
+                writer.newLine();
+            }
+            for (Riga r : righe) {
+                writer.write(Csv.unisci(r.campi));
+                writer.newLine();
+            }
+            writer.flush();
+            out.getFD().sync();
+        }
+
+        try {
+            Files.move(temporaneo, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaneo, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (evento.shouldCommit()) {
+            evento.tabella = tabella.name();
+            evento.righe = righe.length;
+            evento.byteScritti = Files.size(file);
+            evento.commit();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package theknife.storage;
+
+import theknife.models.Ristorante;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Conversione delle righe CSV del catalogo in oggetti {@link Ristorante}.
+ * <p>
+ * Non dipende dall'interfaccia grafica né dall'archivio, quindi può essere
+ * usata (e misurata) anche fuori dall'applicazione, ad esempio dai
+ * benchmark del modulo {@code benchmarks}.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public final class CatalogoCsv {
+
+    private CatalogoCsv() {
+    }
+
+    /**
+     * Legge tutte le righe del catalogo da un reader.
+     * Supporta formati sia con le nuove colonne (16) che con il formato precedente (14).
+     *
+     * @param br Reader posizionato all'inizio del file, must be non-null.
+     * @param conIntestazione true se la prima riga è l'intestazione da saltare.
+     * @return Lista di Ristorante nell'ordine del file; le righe non valide vengono ignorate.
+     * @throws IOException in caso di errore di lettura.
+     * @since 1.0
+     */
+    public static List<Ristorante> leggi(BufferedReader br, boolean conIntestazione) throws IOException {
+        List<Ristorante> ristoranti = new ArrayList<>();
+        String line;
+        boolean firstLine = conIntestazione;
+
+        while ((line = br.readLine()) != null) {
+            if (firstLine) {
+                firstLine = false;
+                continue; // Skip header
+            }
+
+            Ristorante r = creaRistorante(parseCSVLine(line));
+            if (r != null) {
+                ristoranti.add(r);
+            }
+        }
+        return ristoranti;
+    }
+
+    /**
+     * Crea un Ristorante dai campi di una riga del catalogo.
+     * Supporta formati sia con le nuove colonne (16) che con il formato precedente (14).
+     *
+     * @param values Campi della riga.
+     * @return Ristorante creato; null se la riga è incompleta o non valida.
+     * @since 1.0
+     */
+    public static Ristorante creaRistorante(String[] values) {
+        try {
+            if (values.length >= 16) { // Aggiornato per le nuove colonne
+                return new Ristorante(
+                        cleanValue(values[0]), // Name
+                        cleanValue(values[1]), // Address
+                        cleanValue(values[2]), // Location
+                        cleanValue(values[3]), // Price
+                        cleanValue(values[4]), // Cuisine
+                        parseDouble(values[5]), // Longitude
+                        parseDouble(values[6]), // Latitude
+                        cleanValue(values[7]), // PhoneNumber
+                        cleanValue(values[8]), // Url
+                        cleanValue(values[9]), // WebsiteUrl
+                        cleanValue(values[10]), // Award
+                        cleanValue(values[11]), // GreenStar
+                        cleanValue(values[12]), // FacilitiesAndServices
+                        cleanValue(values[13]), // Description
+                        cleanValue(values[14]), // DeliveryAvailable
+                        cleanValue(values[15]) // OnlineBookingAvailable
+                );
+            } else if (values.length >= 14) {
+                // Compatibilità con i vecchi CSV che non hanno le nuove colonne
+                return new Ristorante(
+                        cleanValue(values[0]), // Name
+                        cleanValue(values[1]), // Address
+                        cleanValue(values[2]), // Location
+                        cleanValue(values[3]), // Price
+                        cleanValue(values[4]), // Cuisine
+                        parseDouble(values[5]), // Longitude
+                        parseDouble(values[6]), // Latitude
+                        cleanValue(values[7]), // PhoneNumber
+                        cleanValue(values[8]), // Url
+                        cleanValue(values[9]), // WebsiteUrl
+                        cleanValue(values[10]), // Award
+                        cleanValue(values[11]), // GreenStar
+                        cleanValue(values[12]), // FacilitiesAndServices
+                        cleanValue(values[13]) // Description
+                );
+            }
+        } catch (Exception e) {
+            System.err.println(
+                    "Errore nel parsing del ristorante: " + cleanValue(values[0]) + " - " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Parsea una riga CSV rispettando i campi racchiusi tra virgolette.
+     * <p>
+     * Restituisce un array con i valori trovati nella riga, preservando
+     * le virgole che si trovano all'interno di campi tra virgolette.
+     * </p>
+     *
+     * @param line La riga CSV da parsare, may be null or empty.
+     * @return Array di String contenente i campi letti dalla riga.
+     * @since 1.0
+     */
+    public static String[] parseCSVLine(String line) {
+        return Csv.dividi(line);
+    }
+
+    /**
+     * Pulisce un valore letto dal CSV rimuovendo virgolette esterne e spazi.
+     *
+     * @param value Valore grezzo letto dal CSV, può essere null.
+     * @return String pulita e senza virgolette esterne; stringa vuota se il valore è null.
+     * @since 1.0
+     */
+    public static String cleanValue(String value) {
+        if (value == null)
+            return "";
+        return value.trim().replaceAll("^\"|\"$", "");
+    }
+
+    /**
+     * Converte una stringa in double gestendo valori null, vuoti o "N/A".
+     *
+     * @param value Stringa da convertire.
+     * @return Valore double parsato o 0.0 in caso di valore non parsabile.
+     * @since 1.0
+     */
+    public static double parseDouble(String value) {
+        try {
+            if (value == null || value.trim().isEmpty() || value.equalsIgnoreCase("N/A")) {
+                return 0.0;
+            }
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return 0.0;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package theknife.storage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Codifica e decodifica delle righe CSV usate dai file dei dati.
+ * <p>
+ * I campi che contengono virgole, virgolette o a capo sono racchiusi tra
+ * virgolette e le virgolette interne vengono doppiate; in lettura una
+ * coppia di virgolette dentro un campo tra virgolette diventa una virgoletta.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public final class Csv {
+
+    private Csv() {
+    }
+
+    /**
+     * Divide una riga CSV nei suoi campi, rimuovendo le virgolette di delimitazione.
+     *
+     * @param riga Riga da dividere, must be non-null.
+     * @return Campi della riga (almeno uno).
+     * @since 1.0
+     */
+    public static String[] dividi(String riga) {
+        List<String> campi = new ArrayList<>();
+        StringBuilder campo = new StringBuilder();
+        boolean traVirgolette = false;
+
+        for (int i = 0; i < riga.length(); i++) {
+            char c = riga.charAt(i);
+            if (c == '"') {
+                if (traVirgolette && i + 1 < riga.length() && riga.charAt(i + 1) == '"') {
+                    campo.append('"');
+                    i++;
+                } else {
+                    traVirgolette = !traVirgolette;
+                }
+            } else if (c == ',' && !traVirgolette) {
+                campi.add(campo.toString());
+                campo.setLength(0);
+            } else {
+                campo.append(c);
+            }
+        }
+        campi.add(campo.toString());
+        return campi.toArray(new String[0]);
+    }
+
+    /**
+     * Compone una riga CSV dai campi dati.
+     *
+     * @param campi Valori dei campi; i null vengono scritti come campi vuoti.
+     * @return Riga CSV senza terminatore.
+     * @since 1.0
+     */
+    public static String unisci(String[] campi) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < campi.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(campo(campi[i]));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Prepara un singolo valore per il CSV.
+     *
+     * @param valore Valore da scrivere, può essere null.
+     * @return Valore tra virgolette se necessario; stringa vuota se null.
+     * @since 1.0
+     */
+    public static String campo(String valore) {
+        if (valore == null) {
+            return "";
+        }
+        if (valore.indexOf(',') >= 0 || valore.indexOf('"') >= 0
+                || valore.indexOf('\n') >= 0 || valore.indexOf('\r') >= 0) {
+            return "\"" + valore.replace("\"", "\"\"") + "\"";
+        }
+        return valore;
+    }
+
+    /**
+     * Legge una riga logica del CSV: un campo tra virgolette può contenere a capo,
+     * nel qual caso la riga prosegue sulle righe fisiche successive.
+     *
+     * @param br Reader da cui leggere.
+     * @return Riga logica senza terminatore; null a fine file.
+     * @throws IOException in caso di errore di lettura.
+     * @since 1.0
+     */
+    public static String leggiRiga(BufferedReader br) throws IOException {
+        String riga = br.readLine();
+        if (riga == null) {
+            return null;
+        }
+        StringBuilder sb = null;
+        while (virgoletteAperte(sb != null ? sb : riga)) {
+            String seguito = br.readLine();
+            if (seguito == null) {
+                break;
+            }
+            if (sb == null) {
+                sb = new StringBuilder(riga);
+            }
+            sb.append('\n').append(seguito);
+        }
+        return sb != null ? sb.toString() : riga;
+    }
+
+    private static boolean virgoletteAperte(CharSequence s) {
+        int virgolette = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) == '"') {
+                virgolette++;
+            }
+        }
+        return virgolette % 2 != 0;
+    }
+}
@@ -0,0 +1,398 @@
+package theknife.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Legge i file scritti da {@link ScrittoreColonnare}.
+ * <p>
+ * All'apertura viene letto solo l'indice in coda al file; i dati di una
+ * colonna in un chunk vengono letti e decompressi solo quando richiesti,
+ * quindi una scansione che usa due colonne non tocca le altre. Le
+ * statistiche min/max permettono di saltare interi chunk.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public class LettoreColonnare implements Closeable {
+
+    /** Valore restituito da {@link #leggiDate(String, int)} per una data assente. */
+    public static final long DATA_ASSENTE = Long.MIN_VALUE;
+
+    /**
+     * Valori minimo e massimo di una colonna in un chunk.
+     */
+    public static final class Statistiche {
+        private final boolean presenti;
+        private final double minimoNumerico;
+        private final double massimoNumerico;
+        private final String minimoTesto;
+        private final String massimoTesto;
+
+        Statistiche(ScrittoreColonnare.Blocco b) {
+            this.presenti = b.conStatistiche;
+            this.minimoNumerico = b.minimoNumerico;
+            this.massimoNumerico = b.massimoNumerico;
+            this.minimoTesto = b.minimoTesto;
+            this.massimoTesto = b.massimoTesto;
+        }
+
+        /**
+         * Indica se il chunk contiene almeno un valore (per le date: almeno una data presente).
+         *
+         * @return true se minimo e massimo sono definiti.
+         * @since 1.0
+         */
+        public boolean isPresenti() {
+            return presenti;
+        }
+
+        public double getMinimoNumerico() {
+            return minimoNumerico;
+        }
+
+        public double getMassimoNumerico() {
+            return massimoNumerico;
+        }
+
+        public String getMinimoTesto() {
+            return minimoTesto;
+        }
+
+        public String getMassimoTesto() {
+            return massimoTesto;
+        }
+
+        /**
+         * Indica se qualche valore numerico del chunk può cadere nell'intervallo dato.
+         *
+         * @param da Estremo inferiore incluso.
+         * @param a Estremo superiore incluso.
+         * @return false se il chunk può essere saltato.
+         * @since 1.0
+         */
+        public boolean interseca(double da, double a) {
+            return presenti && massimoNumerico >= da && minimoNumerico <= a;
+        }
+    }
+
+    private final RandomAccessFile file;
+    private final Map<String, Integer> colonne = new LinkedHashMap<>();
+    private final TipoColonna[] tipi;
+    private final long righe;
+    private final int[] righeChunk;
+    private final ScrittoreColonnare.Blocco[][] blocchi;
+    private final Inflater decompressore = new Inflater();
+
+    /**
+     * Apre un file colonnare e ne legge l'indice.
+     *
+     * @param percorso File da aprire.
+     * @throws IOException se il file non esiste o non è un file colonnare valido.
+     * @since 1.0
+     */
+    public LettoreColonnare(Path percorso) throws IOException {
+        file = new RandomAccessFile(percorso.toFile(), "r");
+        try {
+            long lunghezza = file.length();
+            byte[] firma = new byte[4];
+            file.seek(lunghezza - 4);
+            file.readFully(firma);
+            if (lunghezza < 16 || !Arrays.equals(firma, ScrittoreColonnare.FIRMA)) {
+                throw new IOException("Non è un file colonnare: " + percorso);
+            }
+            file.seek(lunghezza - 12);
+            file.seek(file.readLong());
+
+            int numeroColonne = file.readInt();
+            tipi = new TipoColonna[numeroColonne];
+            for (int c = 0; c < numeroColonne; c++) {
+                colonne.put(leggiStringa(), c);
+                tipi[c] = TipoColonna.values()[file.readUnsignedByte()];
+            }
+            righe = file.readLong();
+            int numeroChunk = file.readInt();
+            righeChunk = new int[numeroChunk];
+            blocchi = new ScrittoreColonnare.Blocco[numeroChunk][numeroColonne];
+            for (int k = 0; k < numeroChunk; k++) {
+                righeChunk[k] = file.readInt();
+                for (int c = 0; c < numeroColonne; c++) {
+                    ScrittoreColonnare.Blocco b = new ScrittoreColonnare.Blocco();
+                    b.posizione = file.readLong();
+                    b.compressa = file.readInt();
+                    b.originale = file.readInt();
+                    b.conStatistiche = file.readBoolean();
+                    if (b.conStatistiche) {
+                        if (tipi[c].isNumerica()) {
+                            b.minimoNumerico = file.readDouble();
+                            b.massimoNumerico = file.readDouble();
+                        } else {
+                            b.minimoTesto = leggiStringa();
+                            b.massimoTesto = leggiStringa();
+                        }
+                    }
+                    blocchi[k][c] = b;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e instanceof IOException ? (IOException) e : new IOException("File colonnare danneggiato", e);
+        }
+    }
+
+    /**
+     * Restituisce i nomi delle colonne nell'ordine del file.
+     *
+     * @return Nomi delle colonne.
+     * @since 1.0
+     */
+    public List<String> getColonne() {
+        return new ArrayList<>(colonne.keySet());
+    }
+
+    /**
+     * Restituisce la codifica di una colonna.
+     *
+     * @param colonna Nome della colonna.
+     * @return Tipo della colonna.
+     * @since 1.0
+     */
+    public TipoColonna getTipo(String colonna) {
+        return tipi[indice(colonna)];
+    }
+
+    public long getNumeroRighe() {
+        return righe;
+    }
+
+    public int getNumeroChunk() {
+        return righeChunk.length;
+    }
+
+    /**
+     * Restituisce il numero di righe di un chunk.
+     *
+     * @param chunk Indice del chunk.
+     * @return Righe del chunk.
+     * @since 1.0
+     */
+    public int getRigheChunk(int chunk) {
+        return righeChunk[chunk];
+    }
+
+    /**
+     * Restituisce le statistiche min/max di una colonna in un chunk, senza leggerne i dati.
+     *
+     * @param colonna Nome della colonna.
+     * @param chunk Indice del chunk.
+     * @return Statistiche del chunk.
+     * @since 1.0
+     */
+    public Statistiche getStatistiche(String colonna, int chunk) {
+        return new Statistiche(blocchi[chunk][indice(colonna)]);
+    }
+
+    /**
+     * Legge i valori di una colonna di testo (TESTO o DIZIONARIO) in un chunk.
+     *
+     * @param colonna Nome della colonna.
+     * @param chunk Indice del chunk.
+     * @return Un valore per riga; le righe con lo stesso valore di dizionario condividono la stringa.
+     * @throws IOException in caso di errore di lettura o dati danneggiati.
+     * @since 1.0
+     */
+    public String[] leggiTesti(String colonna, int chunk) throws IOException {
+        int c = indice(colonna);
+        Decodifica d = new Decodifica(leggiBlocco(chunk, c));
+        int n = righeChunk[chunk];
+        String[] valori = new String[n];
+        if (tipi[c] == TipoColonna.TESTO) {
+            for (int i = 0; i < n; i++) {
+                valori[i] = d.testo();
+            }
+        } else if (tipi[c] == TipoColonna.DIZIONARIO) {
+            String[] dizionario = new String[(int) d.varint()];
+            for (int i = 0; i < dizionario.length; i++) {
+                dizionario[i] = d.testo();
+            }
+            for (int i = 0; i < n; i++) {
+                valori[i] = dizionario[(int) d.varint()];
+            }
+        } else {
+            throw new IllegalArgumentException("La colonna " + colonna + " non è di testo");
+        }
+        return valori;
+    }
+
+    /**
+     * Legge i valori di una colonna INTERO in un chunk.
+     *
+     * @param colonna Nome della colonna.
+     * @param chunk Indice del chunk.
+     * @return Un valore per riga.
+     * @throws IOException in caso di errore di lettura o dati danneggiati.
+     * @since 1.0
+     */
+    public long[] leggiInteri(String colonna, int chunk) throws IOException {
+        int c = verificaTipo(colonna, TipoColonna.INTERO);
+        Decodifica d = new Decodifica(leggiBlocco(chunk, c));
+        long[] valori = new long[righeChunk[chunk]];
+        for (int i = 0; i < valori.length; i++) {
+            valori[i] = dezigzag(d.varint());
+        }
+        return valori;
+    }
+
+    /**
+     * Legge i valori di una colonna DECIMALE in un chunk.
+     *
+     * @param colonna Nome della colonna.
+     * @param chunk Indice del chunk.
+     * @return Un valore per riga.
+     * @throws IOException in caso di errore di lettura o dati danneggiati.
+     * @since 1.0
+     */
+    public double[] leggiDecimali(String colonna, int chunk) throws IOException {
+        int c = verificaTipo(colonna, TipoColonna.DECIMALE);
+        byte[] dati = leggiBlocco(chunk, c);
+        double[] valori = new double[righeChunk[chunk]];
+        for (int i = 0; i < valori.length; i++) {
+            long bit = 0;
+            for (int b = 0; b < 8; b++) {
+                bit = (bit << 8) | (dati[i * 8 + b] & 0xFF);
+            }
+            valori[i] = Double.longBitsToDouble(bit);
+        }
+        return valori;
+    }
+
+    /**
+     * Legge i valori di una colonna DATA in un chunk.
+     *
+     * @param colonna Nome della colonna.
+     * @param chunk Indice del chunk.
+     * @return Millisecondi dall'epoca (UTC) per riga; {@link #DATA_ASSENTE} se la data manca.
+     * @throws IOException in caso di errore di lettura o dati danneggiati.
+     * @since 1.0
+     */
+    public long[] leggiDate(String colonna, int chunk) throws IOException {
+        int c = verificaTipo(colonna, TipoColonna.DATA);
+        byte[] dati = leggiBlocco(chunk, c);
+        int n = righeChunk[chunk];
+        int byteBitmap = (n + 7) / 8;
+        Decodifica d = new Decodifica(dati);
+        d.posizione = byteBitmap;
+        long[] valori = new long[n];
+        long precedente = 0;
+        for (int i = 0; i < n; i++) {
+            if ((dati[i >>> 3] & (1 << (i & 7))) != 0) {
+                precedente += dezigzag(d.varint());
+                valori[i] = precedente;
+            } else {
+                valori[i] = DATA_ASSENTE;
+            }
+        }
+        return valori;
+    }
+
+    @Override
+    public void close() throws IOException {
+        decompressore.end();
+        file.close();
+    }
+
+    private int indice(String colonna) {
+        Integer c = colonne.get(colonna);
+        if (c == null) {
+            throw new IllegalArgumentException("Colonna sconosciuta: " + colonna);
+        }
+        return c;
+    }
+
+    private int verificaTipo(String colonna, TipoColonna tipo) {
+        int c = indice(colonna);
+        if (tipi[c] != tipo) {
+            throw new IllegalArgumentException("La colonna " + colonna + " è " + tipi[c] + ", non " + tipo);
+        }
+        return c;
+    }
+
+    private byte[] leggiBlocco(int chunk, int colonna) throws IOException {
+        ScrittoreColonnare.Blocco b = blocchi[chunk][colonna];
+        byte[] compressi = new byte[b.compressa];
+        file.seek(b.posizione);
+        file.readFully(compressi);
+
+        byte[] dati = new byte[b.originale];
+        decompressore.reset();
+        decompressore.setInput(compressi);
+        try {
+            int letti = 0;
+            while (letti < dati.length && !decompressore.finished()) {
+                int n = decompressore.inflate(dati, letti, dati.length - letti);
+                if (n == 0 && (decompressore.needsInput() || decompressore.needsDictionary())) {
+                    break;
+                }
+                letti += n;
+            }
+            if (letti != dati.length) {
+                throw new IOException("Blocco colonnare incompleto");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Blocco colonnare danneggiato", e);
+        }
+        return dati;
+    }
+
+    private String leggiStringa() throws IOException {
+        byte[] b = new byte[file.readInt()];
+        file.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static long dezigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Cursore sui byte decompressi di un blocco.
+     */
+    private static final class Decodifica {
+        final byte[] dati;
+        int posizione;
+
+        Decodifica(byte[] dati) {
+            this.dati = dati;
+        }
+
+        long varint() {
+            long v = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = dati[posizione++];
+                v |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return v;
+        }
+
+        String testo() {
+            int lunghezza = (int) varint();
+            String s = new String(dati, posizione, lunghezza, StandardCharsets.UTF_8);
+            posizione += lunghezza;
+            return s;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package theknife.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Log di scrittura (write-ahead log) dell'archivio.
+ * <p>
+ * Ogni transazione confermata è un record {@code [lunghezza][crc32][dati]}
+ * reso persistente con fsync prima di essere applicato in memoria. In
+ * rilettura ci si ferma al primo record incompleto o con CRC errato (una
+ * scrittura interrotta) e il file viene troncato lì, quindi una transazione
+ * è presente per intero o per niente.
+ * </p>
+ * <p>
+ * Per salvare i CSV senza bloccare le scritture il log può essere ruotato:
+ * il file corrente diventa il segmento precedente (con suffisso
+ * {@code .precedente}) e le nuove transazioni vanno in un file vuoto. Il
+ * segmento precedente viene eliminato quando i CSV che ne contengono le
+ * transazioni sono su disco; finché esiste viene riletto per primo.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+class RegistroScritture {
+    private static final int INTESTAZIONE_RECORD = 8; // lunghezza + crc
+    private static final int LUNGHEZZA_MASSIMA = 64 * 1024 * 1024;
+
+    private final Path file;
+    private final Path precedente;
+    private FileChannel canale;
+
+    RegistroScritture(Path file) throws IOException {
+        this.file = file;
+        this.precedente = file.resolveSibling(file.getFileName() + ".precedente");
+        canale = apri(file);
+    }
+
+    /**
+     * Rilegge le transazioni registrate, prima quelle del segmento precedente
+     * se esiste, e tronca un'eventuale coda danneggiata del file corrente.
+     *
+     * @return Transazioni nell'ordine di conferma.
+     * @throws IOException in caso di errore di lettura.
+     * @since 1.0
+     */
+    List<List<Transazione.Operazione>> rileggi() throws IOException {
+        List<List<Transazione.Operazione>> transazioni = new ArrayList<>();
+        if (Files.exists(precedente)) {
+            try (FileChannel vecchio = FileChannel.open(precedente, StandardOpenOption.READ)) {
+                leggiRecord(vecchio, transazioni);
+            }
+        }
+
+        long posizione = leggiRecord(canale, transazioni);
+        if (posizione < canale.size()) {
+            System.err.println("Log di scrittura troncato a " + posizione + " byte (coda incompleta)");
+            canale.truncate(posizione);
+            canale.force(true);
+        }
+        canale.position(posizione);
+        return transazioni;
+    }
+
+    /**
+     * Legge i record completi e validi di un file di log.
+     *
+     * @return Posizione del primo byte dopo l'ultimo record valido.
+     */
+    private static long leggiRecord(FileChannel canale, List<List<Transazione.Operazione>> transazioni)
+            throws IOException {
+        ByteBuffer intestazione = ByteBuffer.allocate(INTESTAZIONE_RECORD);
+        long posizione = 0;
+        long dimensione = canale.size();
+
+        while (posizione + INTESTAZIONE_RECORD <= dimensione) {
+            intestazione.clear();
+            leggiTutto(canale, intestazione, posizione);
+            intestazione.flip();
+            int lunghezza = intestazione.getInt();
+            int crc = intestazione.getInt();
+            if (lunghezza <= 0 || lunghezza > LUNGHEZZA_MASSIMA
+                    || posizione + INTESTAZIONE_RECORD + lunghezza > dimensione) {
+                break;
+            }
+
+            ByteBuffer dati = ByteBuffer.allocate(lunghezza);
+            leggiTutto(canale, dati, posizione + INTESTAZIONE_RECORD);
+            CRC32 controllo = new CRC32();
+            controllo.update(dati.array());
+            if ((int) controllo.getValue() != crc) {
+                break;
+            }
+
+            transazioni.add(decodifica(dati.array()));
+            posizione += INTESTAZIONE_RECORD + lunghezza;
+        }
+        return posizione;
+    }
+
+    /**
+     * Aggiunge una transazione al log e attende che sia su disco.
+     *
+     * @param operazioni Operazioni della transazione.
+     * @throws IOException in caso di errore di scrittura.
+     * @since 1.0
+     */
+    void registra(List<Transazione.Operazione> operazioni) throws IOException {
+        byte[] dati = codifica(operazioni);
+        CRC32 controllo = new CRC32();
+        controllo.update(dati);
+
+        ByteBuffer record = ByteBuffer.allocate(INTESTAZIONE_RECORD + dati.length);
+        record.putInt(dati.length).putInt((int) controllo.getValue()).put(dati).flip();
+        long inizio = canale.position();
+        try {
+            while (record.hasRemaining()) {
+                canale.write(record);
+            }
+            canale.force(false);
+        } catch (IOException e) {
+            // Non lasciare un record parziale prima del prossimo
+            canale.truncate(inizio);
+            canale.position(inizio);
+            throw e;
+        }
+    }
+
+    long dimensione() throws IOException {
+        return canale.size();
+    }
+
+    /**
+     * Indica se esiste un segmento precedente non ancora eliminato.
+     *
+     * @return true se una rotazione attende ancora il salvataggio dei CSV.
+     * @since 1.0
+     */
+    boolean haPrecedente() {
+        return Files.exists(precedente);
+    }
+
+    /**
+     * Chiude il file corrente come segmento precedente e ne apre uno vuoto
+     * per le transazioni successive. Non va chiamato se esiste già un
+     * segmento precedente.
+     *
+     * @throws IOException in caso di errore di scrittura.
+     * @since 1.0
+     */
+    void ruota() throws IOException {
+        canale.force(true);
+        canale.close();
+        try {
+            Files.move(file, precedente, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(file, precedente);
+        } finally {
+            // Se lo spostamento fallisce si continua ad aggiungere al file corrente
+            canale = apri(file);
+        }
+    }
+
+    /**
+     * Elimina il segmento precedente dopo che le sue transazioni sono state
+     * salvate nei CSV.
+     *
+     * @throws IOException in caso di errore di scrittura.
+     * @since 1.0
+     */
+    void eliminaPrecedente() throws IOException {
+        Files.deleteIfExists(precedente);
+    }
+
+    /**
+     * Svuota il log dopo che tutte le tabelle sono state salvate nei CSV.
+     *
+     * @throws IOException in caso di errore di scrittura.
+     * @since 1.0
+     */
+    void svuota() throws IOException {
+        canale.truncate(0);
+        canale.position(0);
+        canale.force(true);
+        eliminaPrecedente();
+    }
+
+    void chiudi() throws IOException {
+        canale.close();
+    }
+
+    private static FileChannel apri(Path file) throws IOException {
+        FileChannel canale = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        canale.position(canale.size());
+        return canale;
+    }
+
+    private static void leggiTutto(FileChannel canale, ByteBuffer buffer, long posizione) throws IOException {
+        while (buffer.hasRemaining()) {
+            int letti = canale.read(buffer, posizione + buffer.position());
+            if (letti < 0) {
+                throw new IOException("Fine inattesa del log di scrittura");
+            }
+        }
+    }
+
+    private static byte[] codifica(List<Transazione.Operazione> operazioni) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(operazioni.size());
+        for (Transazione.Operazione op : operazioni) {
+            out.writeByte(op.tabella.ordinal());
+            scriviStringa(out, op.chiave);
+            if (op.isEliminazione()) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(op.campi.length);
+                for (String campo : op.campi) {
+                    scriviStringa(out, campo);
+                }
+            }
+        }
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    private static List<Transazione.Operazione> decodifica(byte[] dati) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(dati));
+        int numero = in.readInt();
+        List<Transazione.Operazione> operazioni = new ArrayList<>(numero);
+        Tabella[] tabelle = Tabella.values();
+        for (int i = 0; i < numero; i++) {
+            Tabella tabella = tabelle[in.readUnsignedByte()];
+            String chiave = leggiStringa(in);
+            int numeroCampi = in.readInt();
+            String[] campi = null;
+            if (numeroCampi >= 0) {
+                campi = new String[numeroCampi];
+                for (int c = 0; c < numeroCampi; c++) {
+                    campi[c] = leggiStringa(in);
+                }
+            }
+            operazioni.add(new Transazione.Operazione(tabella, chiave, campi));
+        }
+        return operazioni;
+    }
+
+    // writeUTF è limitato a 64 KB: le descrizioni possono essere più lunghe
+    private static void scriviStringa(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String leggiStringa(DataInputStream in) throws IOException {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,374 @@
+package theknife.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Scrive una tabella in un file colonnare compresso, a chunk di righe.
+ * <p>
+ * Per ogni chunk ogni colonna viene codificata secondo il suo
+ * {@link TipoColonna} e compressa con Deflate separatamente dalle altre,
+ * così un lettore può decomprimere solo le colonne che gli servono. Un
+ * indice in coda al file riporta per ogni chunk e colonna posizione,
+ * dimensioni e valori minimo e massimo, usati per saltare i chunk che non
+ * possono soddisfare un filtro.
+ * </p>
+ * <p>
+ * Struttura: {@code "TKC1"}, dati dei chunk, indice, posizione dell'indice
+ * (long) e di nuovo {@code "TKC1"}. Il file viene scritto in un file
+ * temporaneo e rinominato atomicamente alla chiusura.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public class ScrittoreColonnare implements Closeable {
+
+    /** Intestazione e chiusura del file. */
+    static final byte[] FIRMA = {'T', 'K', 'C', '1'};
+
+    /** Righe per chunk predefinite. */
+    public static final int RIGHE_PER_CHUNK = 65536;
+
+    /**
+     * Posizione, dimensioni e statistiche di una colonna in un chunk.
+     */
+    static final class Blocco {
+        long posizione;
+        int compressa;
+        int originale;
+        boolean conStatistiche;
+        double minimoNumerico;
+        double massimoNumerico;
+        String minimoTesto;
+        String massimoTesto;
+    }
+
+    private final Path file;
+    private final Path temporaneo;
+    private final String[] nomi;
+    private final TipoColonna[] tipi;
+    private final int righePerChunk;
+    private final DataOutputStream out;
+    private final Deflater compressore = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final List<String[]> chunkCorrente = new ArrayList<>();
+    private final List<Integer> righeChunk = new ArrayList<>();
+    private final List<Blocco[]> blocchi = new ArrayList<>();
+    private long posizione;
+    private long righe;
+
+    /**
+     * Crea lo scrittore con la dimensione di chunk predefinita.
+     *
+     * @param file File di destinazione.
+     * @param nomi Nomi delle colonne.
+     * @param tipi Codifica di ogni colonna, nello stesso ordine dei nomi.
+     * @throws IOException se il file temporaneo non può essere creato.
+     * @since 1.0
+     */
+    public ScrittoreColonnare(Path file, String[] nomi, TipoColonna[] tipi) throws IOException {
+        this(file, nomi, tipi, RIGHE_PER_CHUNK);
+    }
+
+    /**
+     * Crea lo scrittore.
+     *
+     * @param file File di destinazione.
+     * @param nomi Nomi delle colonne.
+     * @param tipi Codifica di ogni colonna, nello stesso ordine dei nomi.
+     * @param righePerChunk Numero di righe per chunk (almeno 1).
+     * @throws IOException se il file temporaneo non può essere creato.
+     * @since 1.0
+     */
+    public ScrittoreColonnare(Path file, String[] nomi, TipoColonna[] tipi, int righePerChunk) throws IOException {
+        if (nomi.length != tipi.length) {
+            throw new IllegalArgumentException("Nomi e tipi delle colonne non corrispondono");
+        }
+        this.file = file;
+        this.temporaneo = file.resolveSibling(file.getFileName() + ".tmp");
+        this.nomi = nomi.clone();
+        this.tipi = tipi.clone();
+        this.righePerChunk = Math.max(1, righePerChunk);
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaneo.toFile()), 1 << 16));
+        out.write(FIRMA);
+        posizione = FIRMA.length;
+    }
+
+    /**
+     * Aggiunge una riga. I valori mancanti o non interpretabili valgono 0
+     * per interi e decimali e "assente" per le date.
+     *
+     * @param valori Valori della riga come testo, nell'ordine delle colonne.
+     * @throws IOException in caso di errore di scrittura di un chunk completo.
+     * @since 1.0
+     */
+    public void aggiungi(String[] valori) throws IOException {
+        chunkCorrente.add(valori);
+        righe++;
+        if (chunkCorrente.size() == righePerChunk) {
+            scriviChunk();
+        }
+    }
+
+    /**
+     * Scrive l'ultimo chunk e l'indice e rende visibile il file.
+     *
+     * @throws IOException in caso di errore di scrittura.
+     * @since 1.0
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!chunkCorrente.isEmpty()) {
+                scriviChunk();
+            }
+            long inizioIndice = posizione;
+            scriviIndice();
+            out.writeLong(inizioIndice);
+            out.write(FIRMA);
+            out.flush();
+        } finally {
+            out.close();
+            compressore.end();
+        }
+        try {
+            Files.move(temporaneo, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaneo, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void scriviChunk() throws IOException {
+        Blocco[] blocchiChunk = new Blocco[nomi.length];
+        for (int c = 0; c < nomi.length; c++) {
+            Blocco blocco = new Blocco();
+            byte[] codificati = codifica(c, blocco);
+            byte[] compressi = comprimi(codificati);
+            blocco.posizione = posizione;
+            blocco.compressa = compressi.length;
+            blocco.originale = codificati.length;
+            out.write(compressi);
+            posizione += compressi.length;
+            blocchiChunk[c] = blocco;
+        }
+        blocchi.add(blocchiChunk);
+        righeChunk.add(chunkCorrente.size());
+        chunkCorrente.clear();
+    }
+
+    private byte[] codifica(int colonna, Blocco blocco) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        int n = chunkCorrente.size();
+        switch (tipi[colonna]) {
+            case TESTO:
+                for (String[] riga : chunkCorrente) {
+                    String v = valore(riga, colonna);
+                    aggiornaTesto(blocco, v);
+                    scriviTesto(buffer, v);
+                }
+                break;
+            case DIZIONARIO: {
+                Map<String, Integer> codici = new HashMap<>();
+                List<String> dizionario = new ArrayList<>();
+                int[] righeCodificate = new int[n];
+                for (int i = 0; i < n; i++) {
+                    String v = valore(chunkCorrente.get(i), colonna);
+                    Integer codice = codici.get(v);
+                    if (codice == null) {
+                        codice = dizionario.size();
+                        codici.put(v, codice);
+                        dizionario.add(v);
+                        aggiornaTesto(blocco, v);
+                    }
+                    righeCodificate[i] = codice;
+                }
+                scriviVarint(buffer, dizionario.size());
+                for (String v : dizionario) {
+                    scriviTesto(buffer, v);
+                }
+                for (int codice : righeCodificate) {
+                    scriviVarint(buffer, codice);
+                }
+                break;
+            }
+            case INTERO:
+                for (String[] riga : chunkCorrente) {
+                    long v = interoOZero(valore(riga, colonna));
+                    aggiornaNumero(blocco, v);
+                    scriviVarint(buffer, zigzag(v));
+                }
+                break;
+            case DECIMALE:
+                for (String[] riga : chunkCorrente) {
+                    double v = decimaleOZero(valore(riga, colonna));
+                    aggiornaNumero(blocco, v);
+                    long bit = Double.doubleToLongBits(v);
+                    for (int s = 56; s >= 0; s -= 8) {
+                        buffer.write((int) (bit >>> s));
+                    }
+                }
+                break;
+            case DATA: {
+                byte[] presenti = new byte[(n + 7) / 8];
+                long[] millis = new long[n];
+                for (int i = 0; i < n; i++) {
+                    Long ms = dataInMillis(valore(chunkCorrente.get(i), colonna));
+                    if (ms != null) {
+                        presenti[i >>> 3] |= (byte) (1 << (i & 7));
+                        millis[i] = ms;
+                        aggiornaNumero(blocco, ms);
+                    }
+                }
+                buffer.write(presenti, 0, presenti.length);
+                long precedente = 0;
+                for (int i = 0; i < n; i++) {
+                    if ((presenti[i >>> 3] & (1 << (i & 7))) != 0) {
+                        scriviVarint(buffer, zigzag(millis[i] - precedente));
+                        precedente = millis[i];
+                    }
+                }
+                break;
+            }
+            default:
+                throw new IllegalStateException("Tipo di colonna non gestito: " + tipi[colonna]);
+        }
+        return buffer.toByteArray();
+    }
+
+    private byte[] comprimi(byte[] dati) {
+        compressore.reset();
+        compressore.setInput(dati);
+        compressore.finish();
+        ByteArrayOutputStream compressi = new ByteArrayOutputStream(Math.max(64, dati.length / 2));
+        byte[] buffer = new byte[8192];
+        while (!compressore.finished()) {
+            int n = compressore.deflate(buffer);
+            compressi.write(buffer, 0, n);
+        }
+        return compressi.toByteArray();
+    }
+
+    private void scriviIndice() throws IOException {
+        out.writeInt(nomi.length);
+        for (int c = 0; c < nomi.length; c++) {
+            scriviStringa(nomi[c]);
+            out.writeByte(tipi[c].ordinal());
+        }
+        out.writeLong(righe);
+        out.writeInt(blocchi.size());
+        for (int k = 0; k < blocchi.size(); k++) {
+            out.writeInt(righeChunk.get(k));
+            for (int c = 0; c < nomi.length; c++) {
+                Blocco b = blocchi.get(k)[c];
+                out.writeLong(b.posizione);
+                out.writeInt(b.compressa);
+                out.writeInt(b.originale);
+                out.writeBoolean(b.conStatistiche);
+                if (b.conStatistiche) {
+                    if (tipi[c].isNumerica()) {
+                        out.writeDouble(b.minimoNumerico);
+                        out.writeDouble(b.massimoNumerico);
+                    } else {
+                        scriviStringa(b.minimoTesto);
+                        scriviStringa(b.massimoTesto);
+                    }
+                }
+            }
+        }
+    }
+
+    private void scriviStringa(String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String valore(String[] riga, int colonna) {
+        return colonna < riga.length && riga[colonna] != null ? riga[colonna] : "";
+    }
+
+    private static void aggiornaTesto(Blocco b, String v) {
+        if (!b.conStatistiche) {
+            b.minimoTesto = v;
+            b.massimoTesto = v;
+            b.conStatistiche = true;
+        } else if (v.compareTo(b.minimoTesto) < 0) {
+            b.minimoTesto = v;
+        } else if (v.compareTo(b.massimoTesto) > 0) {
+            b.massimoTesto = v;
+        }
+    }
+
+    private static void aggiornaNumero(Blocco b, double v) {
+        if (!b.conStatistiche) {
+            b.minimoNumerico = v;
+            b.massimoNumerico = v;
+            b.conStatistiche = true;
+        } else {
+            b.minimoNumerico = Math.min(b.minimoNumerico, v);
+            b.massimoNumerico = Math.max(b.massimoNumerico, v);
+        }
+    }
+
+    private static long interoOZero(String s) {
+        try {
+            return Long.parseLong(s.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static double decimaleOZero(String s) {
+        try {
+            return Double.parseDouble(s.trim());
+        } catch (NumberFormatException e) {
+            return 0.0;
+        }
+    }
+
+    private static Long dataInMillis(String s) {
+        if (s.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(s.trim()).toInstant(ZoneOffset.UTC).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static void scriviVarint(ByteArrayOutputStream buffer, long v) {
+        while ((v & ~0x7FL) != 0) {
+            buffer.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buffer.write((int) v);
+    }
+
+    private static void scriviTesto(ByteArrayOutputStream buffer, String v) {
+        byte[] b = v.getBytes(StandardCharsets.UTF_8);
+        scriviVarint(buffer, b.length);
+        buffer.write(b, 0, b.length);
+    }
+}
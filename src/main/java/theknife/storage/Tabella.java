@@ -0,0 +1,85 @@
+package theknife.storage;
+
+/**
+ * Tabelle dell'archivio, ognuna con il proprio file CSV di checkpoint e le
+ * colonne che ne formano la chiave primaria.
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public enum Tabella {
+    RISTORANTI("michelin_my_maps.csv",
+            "Name,Address,Location,Price,Cuisine,Longitude,Latitude,PhoneNumber,Url,WebsiteUrl,Award,"
+                    + "GreenStar,FacilitiesAndServices,Description,DeliveryAvailable,OnlineBookingAvailable",
+            0, 1, 2),
+    UTENTI("utenti.csv", null, 2),
+    RECENSIONI("recensioni.csv",
+            "id,usernameCliente,nomeRistorante,valutazione,titolo,commento,dataRecensione,"
+                    + "rispostaId,usernameRistoratore,testoRisposta,dataRisposta",
+            0),
+    PREFERITI("preferiti.csv", "username,nomeRistorante", 0, 1),
+    PROPRIETARI("proprietari_ristoranti.csv", "username,nomeRistorante", 0, 1);
+
+    /** Separatore tra le colonne di una chiave composta. */
+    static final char SEPARATORE = '\0';
+
+    private final String file;
+    private final String intestazione;
+    private final int[] colonneChiave;
+
+    Tabella(String file, String intestazione, int... colonneChiave) {
+        this.file = file;
+        this.intestazione = intestazione;
+        this.colonneChiave = colonneChiave;
+    }
+
+    /**
+     * Restituisce il nome del file CSV della tabella nella cartella dei dati.
+     *
+     * @return Nome del file.
+     * @since 1.0
+     */
+    public String getFile() {
+        return file;
+    }
+
+    /**
+     * Restituisce l'intestazione predefinita del CSV.
+     *
+     * @return Riga di intestazione; null se il file non ne ha una.
+     * @since 1.0
+     */
+    public String getIntestazione() {
+        return intestazione;
+    }
+
+    /**
+     * Calcola la chiave primaria di una riga.
+     *
+     * @param campi Campi della riga.
+     * @return Chiave composta dai valori delle colonne chiave.
+     * @since 1.0
+     */
+    public String chiaveDi(String[] campi) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < colonneChiave.length; i++) {
+            if (i > 0) {
+                sb.append(SEPARATORE);
+            }
+            int c = colonneChiave[i];
+            sb.append(c < campi.length && campi[c] != null ? campi[c] : "");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Compone una chiave (o un suo prefisso) a partire dai valori delle colonne chiave.
+     *
+     * @param valori Valori delle prime colonne chiave, nell'ordine.
+     * @return Chiave composta.
+     * @since 1.0
+     */
+    static String chiave(String... valori) {
+        return String.join(String.valueOf(SEPARATORE), valori);
+    }
+}
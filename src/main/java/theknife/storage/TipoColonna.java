@@ -0,0 +1,30 @@
+package theknife.storage;
+
+/**
+ * Codifica di una colonna nei file colonnari.
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public enum TipoColonna {
+    /** Testo libero: lunghezza varint e byte UTF-8 per ogni valore. */
+    TESTO,
+    /** Testo con pochi valori distinti: dizionario del chunk e codici varint. */
+    DIZIONARIO,
+    /** Intero: varint zigzag. */
+    INTERO,
+    /** Decimale: 8 byte IEEE 754. */
+    DECIMALE,
+    /** Data e ora ISO: bitmap dei valori presenti e differenze in millisecondi come varint zigzag. */
+    DATA;
+
+    /**
+     * Indica se le statistiche min/max della colonna sono numeriche.
+     *
+     * @return true per interi, decimali e date (in millisecondi).
+     * @since 1.0
+     */
+    public boolean isNumerica() {
+        return this == INTERO || this == DECIMALE || this == DATA;
+    }
+}
@@ -0,0 +1,73 @@
+package theknife.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Insieme di scritture su una o più tabelle applicate in modo atomico
+ * da {@link Archivio#esegui(java.util.function.Consumer)}.
+ * <p>
+ * Le operazioni vengono solo raccolte: nulla è visibile alle letture finché
+ * la transazione non è stata registrata nel log di scrittura.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public class Transazione {
+
+    /**
+     * Singola scrittura: inserimento/sostituzione o, con campi null, eliminazione.
+     */
+    static final class Operazione {
+        final Tabella tabella;
+        final String chiave;
+        final String[] campi;
+
+        Operazione(Tabella tabella, String chiave, String[] campi) {
+            this.tabella = tabella;
+            this.chiave = chiave;
+            this.campi = campi;
+        }
+
+        boolean isEliminazione() {
+            return campi == null;
+        }
+    }
+
+    private final List<Operazione> operazioni = new ArrayList<>();
+
+    Transazione() {
+    }
+
+    /**
+     * Inserisce una riga o sostituisce quella con la stessa chiave primaria.
+     * Una riga sostituita mantiene la sua posizione nel CSV.
+     *
+     * @param tabella Tabella di destinazione, must be non-null.
+     * @param campi Valori delle colonne, nell'ordine del CSV.
+     * @since 1.0
+     */
+    public void scrivi(Tabella tabella, String... campi) {
+        String[] copia = new String[campi.length];
+        for (int i = 0; i < campi.length; i++) {
+            copia[i] = campi[i] != null ? campi[i] : "";
+        }
+        operazioni.add(new Operazione(tabella, tabella.chiaveDi(copia), copia));
+    }
+
+    /**
+     * Elimina la riga con la chiave primaria data, se presente.
+     *
+     * @param tabella Tabella di destinazione, must be non-null.
+     * @param valoriChiave Valori delle colonne chiave, nell'ordine.
+     * @since 1.0
+     */
+    public void elimina(Tabella tabella, String... valoriChiave) {
+        operazioni.add(new Operazione(tabella, Tabella.chiave(valoriChiave), null));
+    }
+
+    List<Operazione> getOperazioni() {
+        return operazioni;
+    }
+}
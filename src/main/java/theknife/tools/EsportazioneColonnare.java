@@ -0,0 +1,238 @@
+package theknife.tools;
+
+import theknife.storage.Archivio;
+import theknife.storage.LettoreColonnare;
+import theknife.storage.ScrittoreColonnare;
+import theknife.storage.Tabella;
+import theknife.storage.TipoColonna;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Esportazione di ristoranti e recensioni in file colonnari per l'analisi
+ * offline, e scansioni aggregate sugli stessi file.
+ * <p>
+ * Vengono scritti {@code ristoranti.tkc} e {@code recensioni.tkc} nella
+ * cartella indicata. Cucina, località, prezzo e premio sono codificati a
+ * dizionario, le date come differenze in millisecondi. Le aggregazioni
+ * leggono solo le colonne necessarie (nome, cucina/località dei ristoranti;
+ * ristorante, valutazione e data delle recensioni) e saltano i chunk di
+ * recensioni fuori dall'intervallo di date grazie alle statistiche min/max.
+ * </p>
+ * <p>
+ * Uso: {@code esegui --esporta-colonnare <cartella>} e
+ * {@code esegui --analisi <cartella> [--dal AAAA-MM-GG] [--al AAAA-MM-GG]}.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public class EsportazioneColonnare {
+
+    /** Nome del file colonnare dei ristoranti. */
+    public static final String FILE_RISTORANTI = "ristoranti.tkc";
+
+    /** Nome del file colonnare delle recensioni. */
+    public static final String FILE_RECENSIONI = "recensioni.tkc";
+
+    private static final String[] COLONNE_RISTORANTI = {
+            "Name", "Address", "Location", "Price", "Cuisine", "Longitude", "Latitude", "PhoneNumber",
+            "Url", "WebsiteUrl", "Award", "GreenStar", "FacilitiesAndServices", "Description",
+            "DeliveryAvailable", "OnlineBookingAvailable"};
+    private static final TipoColonna[] TIPI_RISTORANTI = {
+            TipoColonna.TESTO, TipoColonna.TESTO, TipoColonna.DIZIONARIO, TipoColonna.DIZIONARIO,
+            TipoColonna.DIZIONARIO, TipoColonna.DECIMALE, TipoColonna.DECIMALE, TipoColonna.TESTO,
+            TipoColonna.TESTO, TipoColonna.TESTO, TipoColonna.DIZIONARIO, TipoColonna.DIZIONARIO,
+            TipoColonna.TESTO, TipoColonna.TESTO, TipoColonna.DIZIONARIO, TipoColonna.DIZIONARIO};
+
+    private static final String[] COLONNE_RECENSIONI = {
+            "id", "usernameCliente", "nomeRistorante", "valutazione", "titolo", "commento", "dataRecensione",
+            "rispostaId", "usernameRistoratore", "testoRisposta", "dataRisposta"};
+    private static final TipoColonna[] TIPI_RECENSIONI = {
+            TipoColonna.TESTO, TipoColonna.DIZIONARIO, TipoColonna.DIZIONARIO, TipoColonna.INTERO,
+            TipoColonna.TESTO, TipoColonna.TESTO, TipoColonna.DATA, TipoColonna.TESTO,
+            TipoColonna.DIZIONARIO, TipoColonna.TESTO, TipoColonna.DATA};
+
+    /**
+     * Conteggio e media delle valutazioni di un gruppo.
+     */
+    public static final class Aggregato {
+        private long conteggio;
+        private long somma;
+
+        void aggiungi(long valutazione) {
+            conteggio++;
+            somma += valutazione;
+        }
+
+        public long getConteggio() {
+            return conteggio;
+        }
+
+        public double getMedia() {
+            return conteggio > 0 ? (double) somma / conteggio : 0.0;
+        }
+    }
+
+    /**
+     * Punto d'ingresso da riga di comando.
+     *
+     * @param args {@code --esporta-colonnare <cartella>} oppure {@code --analisi <cartella> [--dal D] [--al D]}.
+     * @since 1.0
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Uso: --esporta-colonnare <cartella> | --analisi <cartella> [--dal AAAA-MM-GG] [--al AAAA-MM-GG]");
+            System.exit(2);
+        }
+        Path cartella = Paths.get(args[1]);
+        try {
+            if (args[0].equals("--esporta-colonnare")) {
+                long inizio = System.nanoTime();
+                esporta(cartella);
+                System.out.printf(Locale.ROOT, "Esportati %s e %s in %.2f s%n",
+                        cartella.resolve(FILE_RISTORANTI), cartella.resolve(FILE_RECENSIONI),
+                        (System.nanoTime() - inizio) / 1e9);
+            } else {
+                LocalDate dal = null;
+                LocalDate al = null;
+                for (int i = 2; i + 1 < args.length; i++) {
+                    if (args[i].equals("--dal")) {
+                        dal = LocalDate.parse(args[++i]);
+                    } else if (args[i].equals("--al")) {
+                        al = LocalDate.parse(args[++i]);
+                    }
+                }
+                stampa("Valutazioni per cucina", mediePerCucina(cartella, dal, al));
+                stampa("Valutazioni per regione", mediePerRegione(cartella, dal, al));
+            }
+        } catch (IOException e) {
+            System.err.println("Errore: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Esporta le tabelle dei ristoranti e delle recensioni dell'archivio.
+     *
+     * @param cartella Cartella di destinazione, creata se non esiste.
+     * @throws IOException in caso di errore di scrittura.
+     * @since 1.0
+     */
+    public static void esporta(Path cartella) throws IOException {
+        Files.createDirectories(cartella);
+        scrivi(cartella.resolve(FILE_RISTORANTI), COLONNE_RISTORANTI, TIPI_RISTORANTI,
+                Archivio.righe(Tabella.RISTORANTI));
+        scrivi(cartella.resolve(FILE_RECENSIONI), COLONNE_RECENSIONI, TIPI_RECENSIONI,
+                Archivio.righe(Tabella.RECENSIONI));
+    }
+
+    /**
+     * Media delle valutazioni per tipo di cucina.
+     *
+     * @param cartella Cartella con i file esportati.
+     * @param dal Prima data inclusa; null per nessun limite.
+     * @param al Ultima data inclusa; null per nessun limite.
+     * @return Aggregati per cucina, in ordine alfabetico.
+     * @throws IOException in caso di errore di lettura.
+     * @since 1.0
+     */
+    public static Map<String, Aggregato> mediePerCucina(Path cartella, LocalDate dal, LocalDate al)
+            throws IOException {
+        return aggrega(cartella, "Cuisine", false, dal, al);
+    }
+
+    /**
+     * Media delle valutazioni per regione (la parte della località dopo
+     * l'ultima virgola, di solito il paese).
+     *
+     * @param cartella Cartella con i file esportati.
+     * @param dal Prima data inclusa; null per nessun limite.
+     * @param al Ultima data inclusa; null per nessun limite.
+     * @return Aggregati per regione, in ordine alfabetico.
+     * @throws IOException in caso di errore di lettura.
+     * @since 1.0
+     */
+    public static Map<String, Aggregato> mediePerRegione(Path cartella, LocalDate dal, LocalDate al)
+            throws IOException {
+        return aggrega(cartella, "Location", true, dal, al);
+    }
+
+    private static void scrivi(Path file, String[] colonne, TipoColonna[] tipi, List<String[]> righe)
+            throws IOException {
+        try (ScrittoreColonnare scrittore = new ScrittoreColonnare(file, colonne, tipi)) {
+            for (String[] riga : righe) {
+                scrittore.aggiungi(riga);
+            }
+        }
+    }
+
+    private static Map<String, Aggregato> aggrega(Path cartella, String colonnaGruppo, boolean regione,
+            LocalDate dal, LocalDate al) throws IOException {
+        // Ristorante -> gruppo, leggendo solo nome e colonna del gruppo
+        Map<String, String> gruppi = new HashMap<>();
+        try (LettoreColonnare ristoranti = new LettoreColonnare(cartella.resolve(FILE_RISTORANTI))) {
+            for (int k = 0; k < ristoranti.getNumeroChunk(); k++) {
+                String[] nomi = ristoranti.leggiTesti("Name", k);
+                String[] valori = ristoranti.leggiTesti(colonnaGruppo, k);
+                for (int i = 0; i < nomi.length; i++) {
+                    gruppi.putIfAbsent(nomi[i], regione ? regione(valori[i]) : valori[i]);
+                }
+            }
+        }
+
+        double da = dal != null ? dal.atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli() : -Double.MAX_VALUE;
+        double a = al != null ? al.plusDays(1).atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli() - 1
+                : Double.MAX_VALUE;
+        boolean conFiltro = dal != null || al != null;
+
+        Map<String, Aggregato> risultato = new TreeMap<>();
+        try (LettoreColonnare recensioni = new LettoreColonnare(cartella.resolve(FILE_RECENSIONI))) {
+            for (int k = 0; k < recensioni.getNumeroChunk(); k++) {
+                if (conFiltro && !recensioni.getStatistiche("dataRecensione", k).interseca(da, a)) {
+                    continue; // nessuna recensione del chunk nell'intervallo
+                }
+                String[] nomi = recensioni.leggiTesti("nomeRistorante", k);
+                long[] valutazioni = recensioni.leggiInteri("valutazione", k);
+                long[] date = conFiltro ? recensioni.leggiDate("dataRecensione", k) : null;
+                for (int i = 0; i < nomi.length; i++) {
+                    if (date != null && (date[i] == LettoreColonnare.DATA_ASSENTE || date[i] < da || date[i] > a)) {
+                        continue;
+                    }
+                    String gruppo = gruppi.get(nomi[i]);
+                    if (gruppo == null || gruppo.isEmpty()) {
+                        gruppo = "(sconosciuto)";
+                    }
+                    risultato.computeIfAbsent(gruppo, g -> new Aggregato()).aggiungi(valutazioni[i]);
+                }
+            }
+        }
+        return risultato;
+    }
+
+    private static String regione(String localita) {
+        int virgola = localita.lastIndexOf(',');
+        return (virgola >= 0 ? localita.substring(virgola + 1) : localita).trim();
+    }
+
+    private static void stampa(String titolo, Map<String, Aggregato> aggregati) {
+        System.out.println(titolo + ":");
+        List<Map.Entry<String, Aggregato>> voci = new ArrayList<>(aggregati.entrySet());
+        for (Map.Entry<String, Aggregato> e : voci) {
+            System.out.printf(Locale.ROOT, "  %-30s %8d  %.2f%n",
+                    e.getKey(), e.getValue().getConteggio(), e.getValue().getMedia());
+        }
+    }
+}
@@ -0,0 +1,465 @@
+package theknife.tools;
+
+import org.mindrot.jbcrypt.BCrypt;
+import theknife.storage.Csv;
+import theknife.storage.Tabella;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generatore deterministico di dati sintetici per le prove di carico.
+ * <p>
+ * Scrive nella cartella indicata i CSV del catalogo, degli utenti, delle
+ * recensioni, dei preferiti e dei proprietari, negli stessi formati letti da
+ * {@link theknife.storage.Archivio} e da {@code FileManager}. A parità di
+ * seme e di parametri i file prodotti sono identici byte per byte.
+ * </p>
+ * <p>
+ * Le distribuzioni imitano quelle reali: cucine e città seguono una legge di
+ * Zipf (poche molto frequenti, molte rare), così come la popolarità dei
+ * ristoranti nelle recensioni e nei preferiti. Le password degli utenti sono
+ * hash BCrypt presi da un piccolo insieme precalcolato (l'utente {@code i}
+ * ha password {@code Password<i % 32>!}), generati con sali derivati dal
+ * seme. Ogni riga viene scritta appena generata, quindi la memoria usata non
+ * dipende dal numero di recensioni.
+ * </p>
+ * <p>
+ * Uso: {@code esegui --genera <cartella> [--ristoranti N] [--utenti N]
+ * [--recensioni N] [--preferiti M] [--seme S] [--costo-bcrypt C]}.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public class GeneratoreDati {
+
+    private static final int HASH_DISTINTI = 32;
+    private static final double QUOTA_RISTORATORI = 0.05;
+    private static final int RISTORANTI_PER_RISTORATORE = 3;
+    private static final LocalDateTime INIZIO_RECENSIONI = LocalDateTime.of(2022, 1, 1, 0, 0);
+    private static final int MINUTI_RECENSIONI = 3 * 365 * 24 * 60;
+
+    private static final String[] CUCINE = {
+            "Modern Cuisine", "Italian", "Creative", "French", "Japanese", "Traditional Cuisine",
+            "Contemporary", "Seafood", "Mediterranean Cuisine", "Classic Cuisine", "Regional Cuisine",
+            "Spanish", "Chinese", "Farm to table", "Country cooking", "Italian Contemporary", "Sushi",
+            "Vegetarian", "Korean", "Thai", "Indian", "Peruvian", "Mexican", "Nordic", "Steakhouse",
+            "Pizza", "Middle Eastern", "Fusion", "Vegan", "Market Cuisine"};
+
+    // Città con coordinate (latitudine, longitudine), dalla più alla meno frequente
+    private static final String[] CITTA = {
+            "Tokyo, Japan", "Paris, France", "Milano, Italy", "Roma, Italy", "London, United Kingdom",
+            "New York, USA", "Barcelona, Spain", "Kyoto, Japan", "Hong Kong, China", "Lyon, France",
+            "Madrid, Spain", "Firenze, Italy", "Torino, Italy", "Napoli, Italy", "Berlin, Germany",
+            "Singapore, Singapore", "Osaka, Japan", "Wien, Austria", "København, Denmark", "Chicago, USA",
+            "San Francisco, USA", "Bruxelles, Belgium", "Amsterdam, Netherlands", "Seoul, South Korea",
+            "Bologna, Italy", "Venezia, Italy", "Lisboa, Portugal", "Stockholm, Sweden", "Zürich, Switzerland",
+            "Como, Italy"};
+    private static final double[][] COORDINATE = {
+            {35.6762, 139.6503}, {48.8566, 2.3522}, {45.4642, 9.1900}, {41.9028, 12.4964}, {51.5074, -0.1278},
+            {40.7128, -74.0060}, {41.3851, 2.1734}, {35.0116, 135.7681}, {22.3193, 114.1694}, {45.7640, 4.8357},
+            {40.4168, -3.7038}, {43.7696, 11.2558}, {45.0703, 7.6869}, {40.8518, 14.2681}, {52.5200, 13.4050},
+            {1.3521, 103.8198}, {34.6937, 135.5023}, {48.2082, 16.3738}, {55.6761, 12.5683}, {41.8781, -87.6298},
+            {37.7749, -122.4194}, {50.8503, 4.3517}, {52.3676, 4.9041}, {37.5665, 126.9780},
+            {44.4949, 11.3426}, {45.4408, 12.3155}, {38.7223, -9.1393}, {59.3293, 18.0686}, {47.3769, 8.5417},
+            {45.8081, 9.0852}};
+
+    private static final String[] PREFISSI = {
+            "Trattoria", "Osteria", "Ristorante", "Locanda", "Bistrot", "Maison", "Casa", "Taverna",
+            "Enoteca", "Cantina", "Atelier", "Table", "Kitchen", "Brasserie", "Villa"};
+    private static final String[] NOMI_PROPRI = {
+            "Rossi", "Bianchi", "Ferrari", "Esposito", "Romano", "Colombo", "Ricci", "Marino", "Greco", "Bruno",
+            "Gallo", "Conti", "De Luca", "Mancini", "Costa", "Giordano", "Rizzo", "Lombardi", "Moretti", "Barbieri",
+            "Fontana", "Santoro", "Mariani", "Rinaldi", "Caruso", "Ferrara", "Galli", "Martini", "Leone", "Longo",
+            "del Lago", "del Porto", "della Valle", "al Duomo", "alle Vigne", "dei Mercanti", "del Borgo",
+            "Aurora", "Stella", "Luna"};
+
+    private static final String[] PREZZI = {"€", "€€", "€€€", "€€€€"};
+    private static final double[] PESI_PREZZI = {0.15, 0.40, 0.30, 0.15};
+    private static final String[] PREMI = {"Selected Restaurants", "Bib Gourmand", "1 Star", "2 Stars", "3 Stars"};
+    private static final double[] PESI_PREMI = {0.60, 0.15, 0.18, 0.05, 0.02};
+    private static final String[] SERVIZI = {
+            "Air conditioning", "Terrace", "Car park", "Wheelchair access", "Counter dining", "Great view",
+            "Garden or park", "Interesting wine list", "Valet parking", "Private dining room"};
+
+    private static final String[] NOMI = {
+            "Giulia", "Marco", "Francesca", "Luca", "Chiara", "Alessandro", "Sara", "Matteo", "Elena", "Davide",
+            "Martina", "Andrea", "Valentina", "Simone", "Giorgia", "Federico", "Alice", "Lorenzo", "Anna", "Paolo"};
+    private static final double[] PESI_VALUTAZIONI = {0.05, 0.08, 0.17, 0.35, 0.35};
+    private static final String[][] TITOLI = {
+            {"Deludente", "Non ci tornerò", "Esperienza negativa"},
+            {"Sotto le aspettative", "Poteva andare meglio", "Servizio lento"},
+            {"Nella media", "Discreto", "Qualche alto e basso"},
+            {"Ottima cucina", "Molto buono", "Bella serata"},
+            {"Esperienza incredibile", "Eccellente", "Da non perdere"}};
+    private static final String[] COMMENTI = {
+            "Abbiamo provato il menu degustazione",
+            "Siamo venuti per una cena di anniversario",
+            "Pranzo di lavoro in settimana",
+            "Prima volta in questo locale",
+            "Tornati dopo qualche anno"};
+    private static final String[][] GIUDIZI = {
+            {"piatti freddi e attese lunghissime.", "conto eccessivo per la qualità offerta."},
+            {"qualche piatto riuscito, ma nel complesso poco convincente.", "il servizio andrebbe rivisto."},
+            {"cucina corretta, senza particolari sorprese.", "buon rapporto qualità prezzo, ambiente rumoroso."},
+            {"materie prime ottime e servizio attento.", "carta dei vini curata, dolci molto buoni."},
+            {"ogni piatto era un capolavoro, servizio impeccabile.", "un'esperienza che consiglio a tutti."}};
+    private static final String[] RISPOSTE = {
+            "Grazie per la sua recensione, speriamo di rivederla presto!",
+            "Ci dispiace per l'inconveniente, terremo conto dei suoi suggerimenti.",
+            "Grazie di cuore, riferiremo i complimenti a tutta la brigata."};
+
+    private final Path cartella;
+    private final int ristoranti;
+    private final int utenti;
+    private final long recensioni;
+    private final int preferitiMedi;
+    private final long seme;
+    private final int costoBcrypt;
+
+    private final int ristoratori;
+
+    /**
+     * Prepara un generatore.
+     *
+     * @param cartella Cartella di destinazione, creata se non esiste.
+     * @param ristoranti Numero di ristoranti, must be > 0.
+     * @param utenti Numero di utenti (il 5% ristoratori, almeno uno), must be >= 2.
+     * @param recensioni Numero di recensioni.
+     * @param preferitiMedi Numero medio di preferiti per cliente.
+     * @param seme Seme di tutte le sequenze casuali.
+     * @param costoBcrypt Fattore di costo degli hash BCrypt (4-31).
+     * @since 1.0
+     */
+    public GeneratoreDati(Path cartella, int ristoranti, int utenti, long recensioni, int preferitiMedi,
+            long seme, int costoBcrypt) {
+        if (ristoranti <= 0 || utenti < 2) {
+            throw new IllegalArgumentException("Servono almeno un ristorante e due utenti");
+        }
+        this.cartella = cartella;
+        this.ristoranti = ristoranti;
+        this.utenti = utenti;
+        this.recensioni = recensioni;
+        this.preferitiMedi = preferitiMedi;
+        this.seme = seme;
+        this.costoBcrypt = costoBcrypt;
+        this.ristoratori = Math.max(1, Math.min(utenti - 1, (int) (utenti * QUOTA_RISTORATORI)));
+    }
+
+    /**
+     * Punto d'ingresso da riga di comando.
+     *
+     * @param args Cartella e opzioni (vedi documentazione della classe).
+     * @since 1.0
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Uso: --genera <cartella> [--ristoranti N] [--utenti N] [--recensioni N]"
+                    + " [--preferiti M] [--seme S] [--costo-bcrypt C]");
+            System.exit(2);
+        }
+        int ristoranti = 10_000;
+        int utenti = 1_000;
+        long recensioni = 100_000;
+        int preferiti = 5;
+        long seme = 42;
+        int costo = 10;
+        for (int i = 1; i + 1 < args.length; i++) {
+            switch (args[i]) {
+                case "--ristoranti" -> ristoranti = Integer.parseInt(args[++i]);
+                case "--utenti" -> utenti = Integer.parseInt(args[++i]);
+                case "--recensioni" -> recensioni = Long.parseLong(args[++i]);
+                case "--preferiti" -> preferiti = Integer.parseInt(args[++i]);
+                case "--seme" -> seme = Long.parseLong(args[++i]);
+                case "--costo-bcrypt" -> costo = Integer.parseInt(args[++i]);
+                default -> System.err.println("Opzione ignorata: " + args[i]);
+            }
+        }
+        try {
+            new GeneratoreDati(Paths.get(args[0]), ristoranti, utenti, recensioni, preferiti, seme, costo).genera();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Errore nella generazione dei dati: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Genera tutti i file.
+     *
+     * @throws IOException in caso di errore di scrittura.
+     * @since 1.0
+     */
+    public void genera() throws IOException {
+        Files.createDirectories(cartella);
+        long inizio = System.nanoTime();
+
+        scriviUtenti();
+        long proprietari = scriviRistorantiEProprietari();
+        scriviRecensioni();
+        long preferiti = scriviPreferiti();
+
+        System.out.printf(Locale.ROOT, "Generati in %s: %d ristoranti (%d con proprietario), %d utenti"
+                        + " (%d ristoratori), %d recensioni, %d preferiti in %.1f s%n",
+                cartella, ristoranti, proprietari, utenti, ristoratori, recensioni, preferiti,
+                (System.nanoTime() - inizio) / 1e9);
+        System.out.println("Password degli utenti: l'utente i ha password Password<i % " + HASH_DISTINTI + ">!");
+    }
+
+    /**
+     * Nome del ristorante di indice {@code i}: unico e ricostruibile senza
+     * tenere in memoria l'elenco dei nomi.
+     */
+    static String nomeRistorante(int i) {
+        int combinazioni = PREFISSI.length * NOMI_PROPRI.length;
+        String nome = PREFISSI[i % PREFISSI.length] + " " + NOMI_PROPRI[(i / PREFISSI.length) % NOMI_PROPRI.length];
+        return i < combinazioni ? nome : nome + " " + (i / combinazioni + 1);
+    }
+
+    private String username(int i) {
+        return i < ristoratori ? String.format(Locale.ROOT, "ristoratore%05d", i)
+                : String.format(Locale.ROOT, "cliente%07d", i - ristoratori);
+    }
+
+    /** Proprietario del ristorante di indice {@code i}, oppure -1 se non ne ha. */
+    private int proprietario(int i) {
+        return i < ristoratori * RISTORANTI_PER_RISTORATORE ? i % ristoratori : -1;
+    }
+
+    private void scriviUtenti() throws IOException {
+        String[] hash = hashPassword();
+        Random casuale = new Random(seme ^ 0x55L);
+        try (BufferedWriter w = apri(Tabella.UTENTI)) {
+            for (int i = 0; i < utenti; i++) {
+                LocalDateTime nascita = LocalDateTime.of(1950 + casuale.nextInt(55), 1 + casuale.nextInt(12),
+                        1 + casuale.nextInt(28), 0, 0);
+                String citta = CITTA[casuale.nextInt(CITTA.length)];
+                riga(w, NOMI[casuale.nextInt(NOMI.length)],
+                        NOMI_PROPRI[casuale.nextInt(30)],
+                        username(i),
+                        hash[i % HASH_DISTINTI],
+                        nascita.toLocalDate().toString(),
+                        citta.substring(0, citta.indexOf(',')),
+                        i < ristoratori ? "Ristoratore" : "Cliente");
+            }
+        }
+    }
+
+    /**
+     * Calcola l'insieme di hash BCrypt con sali deterministici (SHA1PRNG
+     * inizializzato con il seme), così i file restano riproducibili.
+     */
+    private String[] hashPassword() {
+        SecureRandom sali;
+        try {
+            sali = SecureRandom.getInstance("SHA1PRNG");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA1PRNG non disponibile", e);
+        }
+        sali.setSeed(seme);
+        String[] hash = new String[HASH_DISTINTI];
+        for (int i = 0; i < HASH_DISTINTI; i++) {
+            hash[i] = BCrypt.hashpw("Password" + i + "!", BCrypt.gensalt(costoBcrypt, sali));
+        }
+        return hash;
+    }
+
+    private long scriviRistorantiEProprietari() throws IOException {
+        Random casuale = new Random(seme ^ 0x1234L);
+        Zipf cucine = new Zipf(CUCINE.length, 1.1);
+        Zipf citta = new Zipf(CITTA.length, 1.0);
+        long proprietari = 0;
+        try (BufferedWriter w = apri(Tabella.RISTORANTI); BufferedWriter p = apri(Tabella.PROPRIETARI)) {
+            for (int i = 0; i < ristoranti; i++) {
+                String nome = nomeRistorante(i);
+                int c = citta.campiona(casuale) - 1;
+                String cucina = CUCINE[cucine.campiona(casuale) - 1];
+                String servizi = SERVIZI[casuale.nextInt(SERVIZI.length)] + "," + SERVIZI[casuale.nextInt(SERVIZI.length)];
+                String premio = PREMI[pesato(casuale, PESI_PREMI)];
+                riga(w, nome,
+                        "Via " + NOMI_PROPRI[casuale.nextInt(NOMI_PROPRI.length)] + " " + (1 + casuale.nextInt(200)),
+                        CITTA[c],
+                        PREZZI[pesato(casuale, PESI_PREZZI)],
+                        cucina,
+                        String.format(Locale.ROOT, "%.6f", COORDINATE[c][1] + (casuale.nextDouble() - 0.5) * 0.1),
+                        String.format(Locale.ROOT, "%.6f", COORDINATE[c][0] + (casuale.nextDouble() - 0.5) * 0.1),
+                        String.format(Locale.ROOT, "+39 0%d %07d", 2 + casuale.nextInt(8), casuale.nextInt(10_000_000)),
+                        "https://guide.michelin.com/it/it/ristorante/" + i,
+                        casuale.nextInt(5) == 0 ? "" : "https://www.ristorante" + i + ".example",
+                        premio,
+                        casuale.nextInt(20) == 0 ? "1" : "",
+                        servizi,
+                        cucina + " in un locale " + (casuale.nextBoolean() ? "elegante" : "informale")
+                                + " di " + CITTA[c].substring(0, CITTA[c].indexOf(',')) + ".",
+                        casuale.nextInt(4) == 0 ? "Sì" : "No",
+                        casuale.nextBoolean() ? "Sì" : "No");
+
+                int prop = proprietario(i);
+                if (prop >= 0) {
+                    riga(p, username(prop), nome);
+                    proprietari++;
+                }
+            }
+        }
+        return proprietari;
+    }
+
+    private void scriviRecensioni() throws IOException {
+        Random casuale = new Random(seme ^ 0xABCDL);
+        Zipf popolarita = new Zipf(ristoranti, 1.0);
+        int clienti = utenti - ristoratori;
+        try (BufferedWriter w = apri(Tabella.RECENSIONI)) {
+            for (long n = 0; n < recensioni; n++) {
+                int r = popolarita.campiona(casuale) - 1;
+                int voto = 1 + pesato(casuale, PESI_VALUTAZIONI);
+                LocalDateTime data = INIZIO_RECENSIONI.plusMinutes(casuale.nextInt(MINUTI_RECENSIONI));
+                String[] titoli = TITOLI[voto - 1];
+                String[] giudizi = GIUDIZI[voto - 1];
+
+                String rispostaId = "";
+                String ristoratore = "";
+                String testoRisposta = "";
+                String dataRisposta = "";
+                int prop = proprietario(r);
+                if (prop >= 0 && casuale.nextInt(10) < 3) {
+                    rispostaId = "RSP_G" + n;
+                    ristoratore = username(prop);
+                    testoRisposta = RISPOSTE[voto <= 2 ? 1 : casuale.nextBoolean() ? 0 : 2];
+                    dataRisposta = data.plusMinutes(30 + casuale.nextInt(72 * 60)).toString();
+                }
+
+                riga(w, "REV_G" + n,
+                        username(ristoratori + casuale.nextInt(clienti)),
+                        nomeRistorante(r),
+                        String.valueOf(voto),
+                        titoli[casuale.nextInt(titoli.length)],
+                        COMMENTI[casuale.nextInt(COMMENTI.length)] + ": " + giudizi[casuale.nextInt(giudizi.length)],
+                        data.toString(),
+                        rispostaId, ristoratore, testoRisposta, dataRisposta);
+            }
+        }
+    }
+
+    private long scriviPreferiti() throws IOException {
+        Random casuale = new Random(seme ^ 0x7777L);
+        Zipf popolarita = new Zipf(ristoranti, 1.0);
+        long scritti = 0;
+        Set<Integer> scelti = new HashSet<>();
+        try (BufferedWriter w = apri(Tabella.PREFERITI)) {
+            for (int u = ristoratori; u < utenti; u++) {
+                int quanti = Math.min(ristoranti, casuale.nextInt(2 * preferitiMedi + 1));
+                scelti.clear();
+                // Con pochi ristoranti la Zipf può ripetere a lungo gli stessi: limita i tentativi
+                for (int tentativi = 0; scelti.size() < quanti && tentativi < quanti * 20; tentativi++) {
+                    int r = popolarita.campiona(casuale) - 1;
+                    if (scelti.add(r)) {
+                        riga(w, username(u), nomeRistorante(r));
+                        scritti++;
+                    }
+                }
+            }
+        }
+        return scritti;
+    }
+
+    private BufferedWriter apri(Tabella tabella) throws IOException {
+        BufferedWriter w = Files.newBufferedWriter(cartella.resolve(tabella.getFile()), StandardCharsets.UTF_8);
+        if (tabella.getIntestazione() != null) {
+            w.write(tabella.getIntestazione());
+            w.newLine();
+        }
+        return w;
+    }
+
+    private static void riga(BufferedWriter w, String... campi) throws IOException {
+        w.write(Csv.unisci(campi));
+        w.newLine();
+    }
+
+    private static int pesato(Random casuale, double[] pesi) {
+        double x = casuale.nextDouble();
+        for (int i = 0; i < pesi.length - 1; i++) {
+            x -= pesi[i];
+            if (x < 0) {
+                return i;
+            }
+        }
+        return pesi.length - 1;
+    }
+
+    /**
+     * Campionatore della distribuzione di Zipf su {@code 1..n} con il metodo
+     * di rigetto-inversione di Hörmann e Derflinger: tempo costante per
+     * campione e nessuna tabella, anche con milioni di elementi.
+     */
+    static final class Zipf {
+        private final int n;
+        private final double esponente;
+        private final double hIntegraleX1;
+        private final double hIntegraleN;
+        private final double s;
+
+        Zipf(int n, double esponente) {
+            this.n = n;
+            this.esponente = esponente;
+            this.hIntegraleX1 = hIntegrale(1.5) - 1.0;
+            this.hIntegraleN = hIntegrale(n + 0.5);
+            this.s = 2.0 - hIntegraleInverso(hIntegrale(2.5) - h(2.0));
+        }
+
+        int campiona(Random casuale) {
+            while (true) {
+                double u = hIntegraleN + casuale.nextDouble() * (hIntegraleX1 - hIntegraleN);
+                double x = hIntegraleInverso(u);
+                int k = (int) (x + 0.5);
+                if (k < 1) {
+                    k = 1;
+                } else if (k > n) {
+                    k = n;
+                }
+                if (k - x <= s || u >= hIntegrale(k + 0.5) - h(k)) {
+                    return k;
+                }
+            }
+        }
+
+        private double h(double x) {
+            return Math.exp(-esponente * Math.log(x));
+        }
+
+        private double hIntegrale(double x) {
+            double logX = Math.log(x);
+            return ausiliaria2((1.0 - esponente) * logX) * logX;
+        }
+
+        private double hIntegraleInverso(double x) {
+            double t = x * (1.0 - esponente);
+            if (t < -1.0) {
+                t = -1.0; // evita NaN per errori di arrotondamento
+            }
+            return Math.exp(ausiliaria1(t) * x);
+        }
+
+        // log1p(x) / x, stabile vicino a zero
+        private static double ausiliaria1(double x) {
+            return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1.0 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+        }
+
+        // expm1(x) / x, stabile vicino a zero
+        private static double ausiliaria2(double x) {
+            return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1.0 + x * 0.5 * (1.0 + x / 3.0 * (1.0 + 0.25 * x));
+        }
+    }
+}
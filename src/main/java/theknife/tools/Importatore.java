@@ -0,0 +1,465 @@
+package theknife.tools;
+
+import theknife.storage.Archivio;
+import theknife.storage.Csv;
+import theknife.storage.Tabella;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Importazione in blocco di un CSV in una tabella dell'archivio, senza interfaccia grafica.
+ * <p>
+ * Il file viene elaborato da una pipeline parallela: un thread legge le
+ * righe e le raggruppa in lotti, più thread dividono e validano i lotti e
+ * li ordinano per chiave primaria, e i lotti ordinati vengono poi fusi in
+ * un'unica sequenza (a parità di chiave vince la riga più avanti nel file). Alla fine
+ * l'indice della tabella viene ricostruito una sola volta e salvato con
+ * {@link Archivio#importa(Tabella, List, long[])}, invece di una transazione
+ * per riga. Al termine vengono stampati throughput e righe scartate per motivo.
+ * </p>
+ * <p>
+ * Uso: {@code esegui --importa <tabella> <file.csv> [--thread N] [--senza-intestazione]},
+ * dove la tabella è uno tra ristoranti, utenti, recensioni, preferiti, proprietari.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public class Importatore {
+    private static final int RIGHE_PER_LOTTO = 4096;
+
+    /**
+     * Lotto di righe consecutive del file; dopo la validazione contiene le
+     * righe valide ordinate per chiave.
+     */
+    private static final class Lotto {
+        final long primaPosizione;
+        final List<String> righe;
+        String[] chiavi;
+        long[] posizioni;
+        String[][] campi;
+
+        Lotto(long primaPosizione, List<String> righe) {
+            this.primaPosizione = primaPosizione;
+            this.righe = righe;
+        }
+    }
+
+    // Segnala la fine dei dati ai validatori e al collettore
+    private static final Lotto FINE = new Lotto(-1, new ArrayList<>());
+
+    private final Tabella tabella;
+    private final Path file;
+    private final int numeroThread;
+    private final boolean conIntestazione;
+
+    private final LongAdder righeLette = new LongAdder();
+    private final Map<String, LongAdder> scarti = new ConcurrentHashMap<>();
+    private final List<Thread> pipeline = new ArrayList<>();
+    private volatile Throwable errore;
+
+    /**
+     * Prepara un'importazione.
+     *
+     * @param tabella Tabella di destinazione.
+     * @param file File CSV da importare.
+     * @param numeroThread Numero di thread di parsing e validazione (almeno 1).
+     * @param conIntestazione true se la prima riga del file è l'intestazione da saltare.
+     * @since 1.0
+     */
+    public Importatore(Tabella tabella, Path file, int numeroThread, boolean conIntestazione) {
+        this.tabella = tabella;
+        this.file = file;
+        this.numeroThread = Math.max(1, numeroThread);
+        this.conIntestazione = conIntestazione;
+    }
+
+    /**
+     * Punto d'ingresso da riga di comando.
+     *
+     * @param args Argomenti: tabella, file e opzioni (vedi documentazione della classe).
+     * @since 1.0
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Uso: --importa <ristoranti|utenti|recensioni|preferiti|proprietari> <file.csv>"
+                    + " [--thread N] [--senza-intestazione]");
+            System.exit(2);
+        }
+
+        Tabella tabella;
+        try {
+            tabella = Tabella.valueOf(args[0].toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Tabella sconosciuta: " + args[0]);
+            System.exit(2);
+            return;
+        }
+
+        int thread = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        boolean conIntestazione = tabella.getIntestazione() != null;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--thread") && i + 1 < args.length) {
+                thread = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--senza-intestazione")) {
+                conIntestazione = false;
+            }
+        }
+
+        boolean ok = new Importatore(tabella, Paths.get(args[1]), thread, conIntestazione).esegui();
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * Esegue l'importazione e stampa il riepilogo.
+     *
+     * @return true se le righe valide sono state salvate nell'archivio.
+     * @since 1.0
+     */
+    public boolean esegui() {
+        long inizio = System.nanoTime();
+        BlockingQueue<Lotto> daValidare = new ArrayBlockingQueue<>(numeroThread * 2);
+        BlockingQueue<Lotto> validati = new ArrayBlockingQueue<>(numeroThread * 2);
+        List<Lotto> ordinati = new ArrayList<>();
+
+        Thread lettore = creaThread("theknife-import-reader", () -> leggi(daValidare));
+        List<Thread> validatori = new ArrayList<>();
+        for (int i = 0; i < numeroThread; i++) {
+            validatori.add(creaThread("theknife-import-parser-" + i, () -> valida(daValidare, validati)));
+        }
+        Thread collettore = creaThread("theknife-import-collector", () -> raccogli(validati, ordinati));
+
+        pipeline.forEach(Thread::start);
+        try {
+            lettore.join();
+            for (Thread t : validatori) {
+                t.join();
+            }
+            // Se il collettore è terminato per un errore la coda può essere piena
+            while (errore == null && !validati.offer(FINE, 100, TimeUnit.MILLISECONDS)) {
+                if (!collettore.isAlive()) {
+                    break;
+                }
+            }
+            if (errore != null) {
+                collettore.interrupt();
+            }
+            collettore.join();
+        } catch (InterruptedException e) {
+            pipeline.forEach(Thread::interrupt);
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (errore != null) {
+            System.err.println("Importazione interrotta: " + errore);
+            errore.printStackTrace();
+            return false;
+        }
+        long letturaNs = System.nanoTime() - inizio;
+
+        // Unione dei lotti ordinati e costruzione dell'indice, una sola volta
+        long inizioIndice = System.nanoTime();
+        int totale = ordinati.stream().mapToInt(l -> l.chiavi.length).sum();
+        List<String[]> righe = new ArrayList<>(totale);
+        long[] posizioni = new long[totale];
+        long duplicati = unisci(ordinati, righe, posizioni);
+        boolean salvato = Archivio.importa(tabella, righe, Arrays.copyOf(posizioni, righe.size()));
+        long indiceNs = System.nanoTime() - inizioIndice;
+
+        stampaRiepilogo(righe.size(), duplicati, letturaNs, indiceNs, salvato);
+        return salvato;
+    }
+
+    /**
+     * Crea un thread della pipeline. Se il thread termina con un'eccezione o
+     * un errore (ad esempio OutOfMemoryError) il problema viene registrato e
+     * gli altri thread vengono interrotti, così nessuno resta bloccato su una
+     * coda che non verrà più svuotata o riempita.
+     */
+    private Thread creaThread(String nome, Runnable corpo) {
+        Thread t = new Thread(() -> {
+            try {
+                corpo.run();
+            } catch (Throwable e) {
+                synchronized (this) {
+                    if (errore == null) {
+                        errore = e;
+                    }
+                }
+                for (Thread altro : pipeline) {
+                    if (altro != Thread.currentThread()) {
+                        altro.interrupt();
+                    }
+                }
+            }
+        }, nome);
+        pipeline.add(t);
+        return t;
+    }
+
+    private void leggi(BlockingQueue<Lotto> daValidare) {
+        try (BufferedReader br = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8), 1 << 20)) {
+            if (conIntestazione) {
+                Csv.leggiRiga(br);
+            }
+            long posizione = 0;
+            List<String> righe = new ArrayList<>(RIGHE_PER_LOTTO);
+            String riga;
+            while ((riga = Csv.leggiRiga(br)) != null) {
+                righe.add(riga);
+                if (righe.size() == RIGHE_PER_LOTTO) {
+                    daValidare.put(new Lotto(posizione, righe));
+                    posizione += righe.size();
+                    righe = new ArrayList<>(RIGHE_PER_LOTTO);
+                }
+            }
+            if (!righe.isEmpty()) {
+                daValidare.put(new Lotto(posizione, righe));
+            }
+        } catch (IOException e) {
+            errore = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (int i = 0; i < numeroThread; i++) {
+                try {
+                    daValidare.put(FINE);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void valida(BlockingQueue<Lotto> daValidare, BlockingQueue<Lotto> validati) {
+        try {
+            Lotto lotto;
+            while ((lotto = daValidare.take()) != FINE) {
+                int n = lotto.righe.size();
+                String[] chiavi = new String[n];
+                String[][] campi = new String[n][];
+                long[] posizioni = new long[n];
+                Integer[] ordine = new Integer[n];
+                int validi = 0;
+
+                for (int i = 0; i < n; i++) {
+                    righeLette.increment();
+                    String riga = lotto.righe.get(i);
+                    if (riga.trim().isEmpty()) {
+                        scarta("riga vuota");
+                        continue;
+                    }
+                    String[] valori = Csv.dividi(riga);
+                    normalizza(valori);
+                    String motivo;
+                    try {
+                        motivo = motivoScarto(valori);
+                    } catch (RuntimeException e) {
+                        motivo = "errore di validazione";
+                    }
+                    if (motivo != null) {
+                        scarta(motivo);
+                        continue;
+                    }
+                    chiavi[validi] = tabella.chiaveDi(valori);
+                    campi[validi] = valori;
+                    posizioni[validi] = lotto.primaPosizione + i;
+                    ordine[validi] = validi;
+                    validi++;
+                }
+
+                // Ordinamento stabile: a parità di chiave resta prima la riga più vecchia
+                Integer[] indici = Arrays.copyOf(ordine, validi);
+                Arrays.sort(indici, Comparator.comparing(i -> chiavi[i]));
+                lotto.chiavi = new String[validi];
+                lotto.campi = new String[validi][];
+                lotto.posizioni = new long[validi];
+                for (int i = 0; i < validi; i++) {
+                    lotto.chiavi[i] = chiavi[indici[i]];
+                    lotto.campi[i] = campi[indici[i]];
+                    lotto.posizioni[i] = posizioni[indici[i]];
+                }
+                lotto.righe.clear();
+                validati.put(lotto);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void raccogli(BlockingQueue<Lotto> validati, List<Lotto> ordinati) {
+        try {
+            Lotto lotto;
+            while ((lotto = validati.take()) != FINE) {
+                ordinati.add(lotto);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Fusione a k vie dei lotti ordinati; delle righe con la stessa chiave
+     * tiene quella in posizione più avanzata nel file.
+     *
+     * @return Numero di righe scartate perché con chiave ripetuta.
+     */
+    private static long unisci(List<Lotto> lotti, List<String[]> righe, long[] posizioni) {
+        // Elementi della coda: {indice del lotto, indice nel lotto}
+        PriorityQueue<int[]> coda = new PriorityQueue<>((a, b) -> {
+            int c = lotti.get(a[0]).chiavi[a[1]].compareTo(lotti.get(b[0]).chiavi[b[1]]);
+            return c != 0 ? c : Long.compare(lotti.get(a[0]).posizioni[a[1]], lotti.get(b[0]).posizioni[b[1]]);
+        });
+        for (int l = 0; l < lotti.size(); l++) {
+            if (lotti.get(l).chiavi.length > 0) {
+                coda.add(new int[] {l, 0});
+            }
+        }
+
+        long duplicati = 0;
+        String ultimaChiave = null;
+        while (!coda.isEmpty()) {
+            int[] testa = coda.poll();
+            Lotto lotto = lotti.get(testa[0]);
+            String chiave = lotto.chiavi[testa[1]];
+            if (chiave.equals(ultimaChiave)) {
+                // Stessa chiave, riga più recente: sostituisce la precedente
+                righe.set(righe.size() - 1, lotto.campi[testa[1]]);
+                duplicati++;
+            } else {
+                posizioni[righe.size()] = lotto.posizioni[testa[1]];
+                righe.add(lotto.campi[testa[1]]);
+                ultimaChiave = chiave;
+            }
+            if (testa[1] + 1 < lotto.chiavi.length) {
+                coda.add(new int[] {testa[0], testa[1] + 1});
+            }
+        }
+        return duplicati;
+    }
+
+    /**
+     * Toglie gli spazi attorno ai campi che i manager leggono senza trim, così
+     * una riga accettata dalla validazione non viene poi scartata al caricamento
+     * (ad esempio la valutazione e la data delle recensioni).
+     */
+    private void normalizza(String[] v) {
+        if (tabella == Tabella.RECENSIONI && v.length >= 7) {
+            v[3] = v[3].trim();
+            v[6] = v[6].trim();
+        }
+    }
+
+    /**
+     * Valida i campi di una riga per la tabella di destinazione.
+     *
+     * @return Motivo dello scarto; null se la riga è valida.
+     */
+    private String motivoScarto(String[] v) {
+        switch (tabella) {
+            case RISTORANTI:
+                if (v.length < 14) {
+                    return "colonne mancanti";
+                }
+                if (v[0].trim().isEmpty()) {
+                    return "nome vuoto";
+                }
+                if (!coordinataValida(v[5], 180) || !coordinataValida(v[6], 90)) {
+                    return "coordinate non valide";
+                }
+                return null;
+            case UTENTI:
+                if (v.length < 7) {
+                    return "colonne mancanti";
+                }
+                return v[2].trim().isEmpty() ? "username vuoto" : null;
+            case RECENSIONI:
+                if (v.length < 7) {
+                    return "colonne mancanti";
+                }
+                if (v[0].trim().isEmpty()) {
+                    return "id vuoto";
+                }
+                try {
+                    int valutazione = Integer.parseInt(v[3]);
+                    if (valutazione < 1 || valutazione > 5) {
+                        return "valutazione fuori intervallo";
+                    }
+                    LocalDateTime.parse(v[6]);
+                } catch (NumberFormatException e) {
+                    return "valutazione non numerica";
+                } catch (DateTimeParseException e) {
+                    return "data non valida";
+                }
+                return null;
+            default:
+                if (v.length < 2) {
+                    return "colonne mancanti";
+                }
+                return v[0].trim().isEmpty() || v[1].trim().isEmpty() ? "chiave vuota" : null;
+        }
+    }
+
+    // Come FileManager, una coordinata vuota o N/A vale 0 e non scarta la riga
+    private static boolean coordinataValida(String valore, double limite) {
+        String s = valore.trim();
+        if (s.isEmpty() || s.equalsIgnoreCase("N/A")) {
+            return true;
+        }
+        try {
+            double d = Double.parseDouble(s);
+            return d >= -limite && d <= limite;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private void scarta(String motivo) {
+        scarti.computeIfAbsent(motivo, k -> new LongAdder()).increment();
+    }
+
+    private void stampaRiepilogo(int importate, long duplicati, long letturaNs, long indiceNs, boolean salvato) {
+        long lette = righeLette.sum();
+        long scartate = scarti.values().stream().mapToLong(LongAdder::sum).sum();
+        double secondi = (letturaNs + indiceNs) / 1e9;
+
+        System.out.println("Importazione in " + tabella + " da " + file + (salvato ? "" : " NON SALVATA"));
+        System.out.printf(Locale.ROOT, "  righe lette: %d, importate: %d, duplicate: %d, scartate: %d%n",
+                lette, importate, duplicati, scartate);
+        for (Map.Entry<String, LongAdder> e : new TreeMap<>(scarti).entrySet()) {
+            System.out.printf(Locale.ROOT, "    %-30s %d%n", e.getKey(), e.getValue().sum());
+        }
+        System.out.printf(Locale.ROOT, "  lettura e validazione: %.2f s (%d thread), indice e salvataggio: %.2f s%n",
+                letturaNs / 1e9, numeroThread, indiceNs / 1e9);
+        long dimensione;
+        try {
+            dimensione = Files.size(file);
+        } catch (IOException e) {
+            dimensione = 0;
+        }
+        System.out.printf(Locale.ROOT, "  throughput: %.0f righe/s, %.1f MB/s%n",
+                lette / secondi, dimensione / secondi / (1024 * 1024));
+    }
+}
@@ -0,0 +1,404 @@
+package theknife.tools;
+
+import theknife.models.Recensione;
+import theknife.models.Risposta;
+import theknife.models.Ristorante;
+import theknife.models.Utente;
+import theknife.services.CatalogoRistoranti;
+import theknife.services.PreferitiManager;
+import theknife.services.RecensioniManager;
+import theknife.services.RicercaRistoranti;
+import theknife.services.RistorantiManager;
+import theknife.utils.AuthManager;
+import theknife.utils.FileManager;
+import theknife.utils.IstogrammaLatenze;
+import theknife.utils.Metriche;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prova di carico senza interfaccia grafica sui servizi dell'applicazione.
+ * <p>
+ * Simula N utenti virtuali concorrenti che eseguono un misto realistico di
+ * operazioni (login, ricerca, apertura del dettaglio, nuova recensione,
+ * aggiunta/rimozione di un preferito, risposta del ristoratore) chiamando
+ * direttamente {@link AuthManager}, {@link RecensioniManager},
+ * {@link PreferitiManager} e {@link RistorantiManager}. Per ogni operazione
+ * riporta throughput, operazioni non riuscite e istogramma delle latenze
+ * ({@link IstogrammaLatenze}); le misure del periodo di riscaldamento sono
+ * scartate.
+ * </p>
+ * <p>
+ * Le operazioni di scrittura modificano i dati: per questo la prova si
+ * rifiuta di partire senza {@code -Dtheknife.data} o se la cartella indicata
+ * è quella dei dati distribuiti ({@code src/main/resources/data}). Va
+ * eseguita su una copia, ad esempio su dati creati con {@code esegui --genera}
+ * (le password {@code Password<i % 32>!} sono quelle del generatore). Uso:
+ * {@code java -Dtheknife.data=<cartella> ... esegui --carico [--utenti-virtuali N]
+ * [--durata S] [--riscaldamento S] [--pausa MS] [--mix login=5,ricerca=40,...] [--seme S]}.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public class ProvaCarico {
+
+    /** Operazioni simulate, con il peso predefinito nel misto. */
+    enum Operazione {
+        LOGIN(5), RICERCA(40), DETTAGLIO(30), RECENSIONE(8), PREFERITO(12), RISPOSTA(5);
+
+        final int pesoPredefinito;
+
+        Operazione(int pesoPredefinito) {
+            this.pesoPredefinito = pesoPredefinito;
+        }
+    }
+
+    /** Misure di un'operazione. */
+    private static final class Misure {
+        final IstogrammaLatenze latenze = new IstogrammaLatenze();
+        final LongAdder nonRiuscite = new LongAdder();
+    }
+
+    private final int utentiVirtuali;
+    private final long durataMs;
+    private final long riscaldamentoMs;
+    private final long pausaMs;
+    private final long seme;
+    private final Map<Operazione, Integer> pesi;
+
+    private final Map<Operazione, Misure> misure = new EnumMap<>(Operazione.class);
+    private final AtomicLong operazioniTotali = new AtomicLong();
+
+    private List<Ristorante> catalogo;
+    private List<String> cucine;
+    private List<Utente> utenti;
+    private List<Utente> clienti;
+    private List<Utente> proprietari;
+    private GeneratoreDati.Zipf popolarita;
+    private volatile boolean misurando;
+    private volatile boolean fine;
+
+    /**
+     * Prepara una prova di carico.
+     *
+     * @param utentiVirtuali Numero di utenti virtuali (thread), must be > 0.
+     * @param durataMs Durata della misura, esclusa la fase di riscaldamento.
+     * @param riscaldamentoMs Durata del riscaldamento, le cui misure vengono scartate.
+     * @param pausaMs Pausa tra due operazioni dello stesso utente (tempo di riflessione).
+     * @param pesi Peso di ogni operazione nel misto; le operazioni assenti non vengono eseguite.
+     * @param seme Seme delle scelte casuali degli utenti virtuali.
+     * @since 1.0
+     */
+    public ProvaCarico(int utentiVirtuali, long durataMs, long riscaldamentoMs, long pausaMs,
+            Map<Operazione, Integer> pesi, long seme) {
+        this.utentiVirtuali = Math.max(1, utentiVirtuali);
+        this.durataMs = durataMs;
+        this.riscaldamentoMs = riscaldamentoMs;
+        this.pausaMs = pausaMs;
+        this.pesi = pesi;
+        this.seme = seme;
+        for (Operazione op : Operazione.values()) {
+            misure.put(op, new Misure());
+        }
+    }
+
+    /**
+     * Punto d'ingresso da riga di comando.
+     *
+     * @param args Opzioni (vedi documentazione della classe).
+     * @since 1.0
+     */
+    public static void main(String[] args) {
+        int utentiVirtuali = 8;
+        long durata = 30;
+        long riscaldamento = 5;
+        long pausa = 0;
+        long seme = 1;
+        Map<Operazione, Integer> pesi = new EnumMap<>(Operazione.class);
+        for (Operazione op : Operazione.values()) {
+            pesi.put(op, op.pesoPredefinito);
+        }
+        try {
+            for (int i = 0; i + 1 < args.length; i++) {
+                switch (args[i]) {
+                    case "--utenti-virtuali" -> utentiVirtuali = Integer.parseInt(args[++i]);
+                    case "--durata" -> durata = Long.parseLong(args[++i]);
+                    case "--riscaldamento" -> riscaldamento = Long.parseLong(args[++i]);
+                    case "--pausa" -> pausa = Long.parseLong(args[++i]);
+                    case "--seme" -> seme = Long.parseLong(args[++i]);
+                    case "--mix" -> {
+                        pesi.clear();
+                        for (String voce : args[++i].split(",")) {
+                            String[] kv = voce.split("=");
+                            pesi.put(Operazione.valueOf(kv[0].trim().toUpperCase(Locale.ROOT)),
+                                    Integer.parseInt(kv[1].trim()));
+                        }
+                    }
+                    default -> System.err.println("Opzione ignorata: " + args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Opzioni non valide: " + e.getMessage());
+            System.err.println("Uso: --carico [--utenti-virtuali N] [--durata S] [--riscaldamento S] [--pausa MS]"
+                    + " [--mix login=5,ricerca=40,dettaglio=30,recensione=8,preferito=12,risposta=5] [--seme S]");
+            System.exit(2);
+        }
+
+        String dati = System.getProperty("theknife.data");
+        if (dati == null || dati.trim().isEmpty() || isDatiDistribuiti(Paths.get(dati.trim()))) {
+            System.err.println("La prova di carico scrive recensioni e preferiti: indicare con"
+                    + " -Dtheknife.data una cartella separata dai dati dell'applicazione"
+                    + " (ad esempio creata con esegui --genera)");
+            System.exit(2);
+        }
+
+        new ProvaCarico(utentiVirtuali, durata * 1000, riscaldamento * 1000, pausa, pesi, seme).esegui();
+        System.exit(0);
+    }
+
+    /**
+     * Indica se la cartella è quella dei dati distribuiti con l'applicazione.
+     *
+     * @param cartella Cartella indicata con {@code -Dtheknife.data}.
+     * @return true se coincide con {@code src/main/resources/data} o con {@code data}.
+     */
+    private static boolean isDatiDistribuiti(Path cartella) {
+        for (Path distribuiti : List.of(Paths.get("src/main/resources/data"), Paths.get("data"))) {
+            try {
+                if (Files.isDirectory(distribuiti) && Files.isDirectory(cartella)
+                        && Files.isSameFile(cartella, distribuiti)) {
+                    return true;
+                }
+            } catch (IOException e) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Carica i dati, esegue la prova e stampa il riepilogo.
+     *
+     * @since 1.0
+     */
+    public void esegui() {
+        prepara();
+        System.out.printf(Locale.ROOT, "Prova di carico: %d utenti virtuali, %d s di riscaldamento, %d s di misura, mix %s%n",
+                utentiVirtuali, riscaldamentoMs / 1000, durataMs / 1000, pesi);
+
+        AtomicInteger numero = new AtomicInteger();
+        ExecutorService esecutore = Executors.newFixedThreadPool(utentiVirtuali, r -> {
+            Thread t = new Thread(r, "theknife-carico-" + numero.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < utentiVirtuali; i++) {
+            long semeUtente = seme * 31 + i;
+            esecutore.execute(() -> utenteVirtuale(new Random(semeUtente)));
+        }
+
+        try {
+            Thread.sleep(riscaldamentoMs);
+            misurando = true;
+            long inizio = System.nanoTime();
+            long ultimo = operazioniTotali.get();
+            long scadenza = System.currentTimeMillis() + durataMs;
+            while (System.currentTimeMillis() < scadenza) {
+                Thread.sleep(Math.min(5_000, Math.max(1, scadenza - System.currentTimeMillis())));
+                long corrente = operazioniTotali.get();
+                System.out.printf(Locale.ROOT, "  %5.1f s: %d operazioni (+%d)%n",
+                        (System.nanoTime() - inizio) / 1e9, corrente, corrente - ultimo);
+                ultimo = corrente;
+            }
+            fine = true;
+            double secondi = (System.nanoTime() - inizio) / 1e9;
+            esecutore.shutdown();
+            esecutore.awaitTermination(30, TimeUnit.SECONDS);
+            stampaRiepilogo(secondi);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            esecutore.shutdownNow();
+        }
+    }
+
+    private void prepara() {
+        long inizio = System.nanoTime();
+        catalogo = CatalogoRistoranti.imposta(FileManager.caricaRistoranti());
+        if (catalogo.isEmpty()) {
+            throw new IllegalStateException("Il catalogo è vuoto: generare i dati con esegui --genera");
+        }
+        cucine = RicercaRistoranti.valoriDistinti(catalogo, Ristorante::getCuisine);
+        popolarita = new GeneratoreDati.Zipf(catalogo.size(), 1.0);
+
+        utenti = FileManager.caricaUtenti();
+        clienti = new ArrayList<>();
+        proprietari = new ArrayList<>();
+        for (Utente u : utenti) {
+            if ("Cliente".equals(u.getRuolo())) {
+                clienti.add(u);
+            } else if (!RistorantiManager.getNomiRistorantiPerProprietario(u.getUsername()).isEmpty()) {
+                proprietari.add(u);
+            }
+        }
+        if (clienti.isEmpty()) {
+            throw new IllegalStateException("Nessun cliente nei dati: generare i dati con esegui --genera");
+        }
+
+        // Forza il caricamento delle recensioni prima della misura
+        int recensioni = RecensioniManager.getAllRecensioni().size();
+        System.out.printf(Locale.ROOT, "Dati: %d ristoranti, %d utenti (%d proprietari), %d recensioni, caricati in %.1f s%n",
+                catalogo.size(), utenti.size(), proprietari.size(), recensioni, (System.nanoTime() - inizio) / 1e9);
+    }
+
+    private void utenteVirtuale(Random casuale) {
+        int pesoTotale = pesi.values().stream().mapToInt(Integer::intValue).sum();
+        while (!fine) {
+            Operazione op = scegli(casuale, pesoTotale);
+            long t0 = System.nanoTime();
+            boolean riuscita;
+            try {
+                riuscita = esegui(op, casuale);
+            } catch (RuntimeException e) {
+                riuscita = false;
+            }
+            long durata = System.nanoTime() - t0;
+            if (misurando && !fine) {
+                Misure m = misure.get(op);
+                m.latenze.registra(durata);
+                if (!riuscita) {
+                    m.nonRiuscite.increment();
+                }
+                operazioniTotali.incrementAndGet();
+            }
+            if (pausaMs > 0) {
+                try {
+                    Thread.sleep(pausaMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private Operazione scegli(Random casuale, int pesoTotale) {
+        int x = casuale.nextInt(pesoTotale);
+        for (Map.Entry<Operazione, Integer> e : pesi.entrySet()) {
+            x -= e.getValue();
+            if (x < 0) {
+                return e.getKey();
+            }
+        }
+        throw new IllegalStateException("Misto delle operazioni vuoto");
+    }
+
+    private boolean esegui(Operazione op, Random casuale) {
+        Utente cliente = clienti.get(casuale.nextInt(clienti.size()));
+        switch (op) {
+            case LOGIN: {
+                int i = casuale.nextInt(utenti.size());
+                // Password del generatore: l'utente i-esimo del file ha Password<i % 32>!
+                // Ogni utente virtuale è un client distinto per i limiti dei tentativi
+                return AuthManager.accedi(utenti.get(i).getUsername(), "Password" + (i % 32) + "!",
+                        Thread.currentThread().getName()).getUtente() != null;
+            }
+            case RICERCA: {
+                RicercaRistoranti.Criteri criteri;
+                if (casuale.nextBoolean()) {
+                    String cucina = cucine.get(casuale.nextInt(cucine.size()));
+                    criteri = new RicercaRistoranti.Criteri(cucina.substring(0, Math.min(4, cucina.length())),
+                            null, null, null, null, false, false);
+                } else {
+                    criteri = new RicercaRistoranti.Criteri("", cucine.get(casuale.nextInt(cucine.size())),
+                            null, null, casuale.nextInt(4) == 0 ? "1 Stella" : null, casuale.nextInt(5) == 0, false);
+                }
+                RicercaRistoranti.calcolaStatistiche(RicercaRistoranti.cerca(catalogo, criteri),
+                        r -> PreferitiManager.isPreferito(cliente.getUsername(), r.getName()));
+                return true;
+            }
+            case DETTAGLIO: {
+                Ristorante r = popolare(casuale);
+                RecensioniManager.getRecensioniPerRistorante(r.getName());
+                RecensioniManager.getMediaValutazioni(r.getName());
+                PreferitiManager.isPreferito(cliente.getUsername(), r.getName());
+                return true;
+            }
+            case RECENSIONE: {
+                Ristorante r = popolare(casuale);
+                Recensione recensione = new Recensione(cliente.getUsername(), r.getName(), 1 + casuale.nextInt(5),
+                        "Prova di carico", "Recensione scritta dalla prova di carico.");
+                RecensioniManager.aggiungiRecensione(recensione);
+                return true;
+            }
+            case PREFERITO: {
+                Ristorante r = popolare(casuale);
+                if (PreferitiManager.isPreferito(cliente.getUsername(), r.getName())) {
+                    PreferitiManager.rimuoviPreferito(cliente.getUsername(), r.getName());
+                } else {
+                    PreferitiManager.aggiungiPreferito(cliente.getUsername(), r.getName());
+                }
+                return true;
+            }
+            case RISPOSTA: {
+                if (proprietari.isEmpty()) {
+                    return false;
+                }
+                Utente proprietario = proprietari.get(casuale.nextInt(proprietari.size()));
+                for (String nome : RistorantiManager.getNomiRistorantiPerProprietario(proprietario.getUsername())) {
+                    for (Recensione recensione : RecensioniManager.getRecensioniPerRistorante(nome)) {
+                        if (recensione.getRisposta() == null) {
+                            RecensioniManager.aggiungiRisposta(recensione,
+                                    new Risposta(proprietario.getUsername(), "Grazie per la recensione!"));
+                            return true;
+                        }
+                    }
+                }
+                return false; // nessuna recensione senza risposta
+            }
+            default:
+                return false;
+        }
+    }
+
+    private Ristorante popolare(Random casuale) {
+        return catalogo.get(popolarita.campiona(casuale) - 1);
+    }
+
+    private void stampaRiepilogo(double secondi) {
+        System.out.printf(Locale.ROOT, "%nRiepilogo su %.1f s (%d operazioni, %.1f op/s):%n",
+                secondi, operazioniTotali.get(), operazioniTotali.get() / secondi);
+        IstogrammaLatenze complessivo = new IstogrammaLatenze();
+        for (Operazione op : Operazione.values()) {
+            Misure m = misure.get(op);
+            if (m.latenze.getConteggio() == 0) {
+                continue;
+            }
+            complessivo.aggiungi(m.latenze);
+            System.out.printf(Locale.ROOT, "  %-10s %9.1f op/s  non riuscite %-7d %s%n",
+                    op.name().toLowerCase(Locale.ROOT), m.latenze.getConteggio() / secondi,
+                    m.nonRiuscite.sum(), m.latenze.riepilogo(TimeUnit.MILLISECONDS));
+        }
+        System.out.printf(Locale.ROOT, "  %-10s %9.1f op/s  %s%n", "totale",
+                complessivo.getConteggio() / secondi, complessivo.riepilogo(TimeUnit.MILLISECONDS));
+        if (misure.get(Operazione.LOGIN).nonRiuscite.sum() > 0) {
+            System.out.println("  (i login non riusciti includono quelli rifiutati dal limite di tentativi di AuthManager)");
+        }
+        System.out.println();
+        System.out.println(Metriche.riga());
+    }
+}
@@ -0,0 +1,233 @@
+package theknife.utils;
+
+import javafx.animation.AnimationTimer;
+import javafx.beans.value.ObservableValue;
+import javafx.geometry.Bounds;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.stage.Popup;
+import javafx.stage.Window;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * Modalità diagnostica che misura la memoria allocata dalle celle delle liste.
+ * <p>
+ * Con {@code -Dtheknife.diagnostica.allocazioni=true}, le celle che chiamano
+ * {@link #inizio()} e {@link #fine(long)} attorno al corpo di
+ * {@code updateItem} registrano i byte allocati dal JavaFX Application
+ * Thread durante l'aggiornamento, letti con
+ * {@link com.sun.management.ThreadMXBean#getCurrentThreadAllocatedBytes()}.
+ * Le celle aggiornate nello stesso impulso (un passo di scorrimento con la
+ * rotella, la barra o la tastiera, oppure un nuovo filtro) sono sommate in
+ * un passo. I valori compaiono in un riquadro sovrapposto all'angolo della
+ * lista ({@link #installa(ListView)}); un clic sul riquadro azzera i conteggi.
+ * A regime, scorrendo una lista già vista, un rendering senza allocazioni
+ * mostra 0 B per cella.
+ * </p>
+ * <p>
+ * Se la modalità non è attiva, {@link #inizio()} restituisce -1 e
+ * {@link #fine(long)} non fa nulla, quindi le chiamate possono restare nel
+ * codice delle celle. I contatori sono comuni a tutte le liste strumentate
+ * e sono usati solo dal thread FX.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public final class AllocazioniCelle {
+    private static final com.sun.management.ThreadMXBean THREAD_MX =
+            Boolean.getBoolean("theknife.diagnostica.allocazioni") ? threadMx() : null;
+    private static final boolean ATTIVA = THREAD_MX != null;
+    private static final long AGGIORNAMENTO_RIQUADRO_NANOS = 250_000_000L;
+
+    private static long celle;
+    private static long byteCelle;
+    private static long ultimaCella;
+    private static long massimoCella;
+
+    private static long byteImpulso;
+    private static long celleImpulso;
+    private static long passi;
+    private static long bytePassi;
+    private static long ultimoPasso;
+    private static long massimoPasso;
+
+    private AllocazioniCelle() {
+    }
+
+    /**
+     * Indica se la modalità diagnostica è attiva.
+     *
+     * @return true se attiva e supportata dalla JVM.
+     * @since 1.0
+     */
+    public static boolean isAttiva() {
+        return ATTIVA;
+    }
+
+    /**
+     * Da chiamare all'inizio di {@code updateItem}.
+     *
+     * @return Byte allocati finora dal thread corrente; -1 se la modalità non è attiva.
+     * @since 1.0
+     */
+    public static long inizio() {
+        return ATTIVA ? THREAD_MX.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    /**
+     * Da chiamare alla fine di {@code updateItem} con il valore di {@link #inizio()}.
+     *
+     * @param inizio Valore restituito da {@link #inizio()}.
+     * @since 1.0
+     */
+    public static void fine(long inizio) {
+        if (inizio < 0) {
+            return;
+        }
+        long allocati = THREAD_MX.getCurrentThreadAllocatedBytes() - inizio;
+        celle++;
+        byteCelle += allocati;
+        ultimaCella = allocati;
+        massimoCella = Math.max(massimoCella, allocati);
+        celleImpulso++;
+        byteImpulso += allocati;
+    }
+
+    /**
+     * Mostra il riquadro delle allocazioni sopra la lista, se la modalità è
+     * attiva; altrimenti non fa nulla. Va chiamato sul thread FX.
+     * <p>
+     * Il riquadro è aggiornato solo mentre la lista è in una finestra
+     * visibile: quando la finestra viene chiusa o la lista lascia la scena
+     * (ad esempio una vista restituita al pool di ViewFactory) il timer si
+     * ferma e il riquadro viene nascosto, così né il timer né il riquadro
+     * tengono in vita la lista; riparte se la lista torna in una finestra.
+     * </p>
+     *
+     * @param lista Lista le cui celle chiamano {@link #inizio()} e {@link #fine(long)}.
+     * @since 1.0
+     */
+    public static void installa(ListView<?> lista) {
+        if (!ATTIVA) {
+            return;
+        }
+        Label etichetta = new Label();
+        etichetta.setStyle("-fx-background-color: rgba(0,0,0,0.75); -fx-text-fill: #7CFC00;"
+                + " -fx-font-family: monospace; -fx-font-size: 11px; -fx-padding: 4 6 4 6;");
+        etichetta.setOnMouseClicked(e -> azzera());
+        Popup riquadro = new Popup();
+        riquadro.getContent().add(etichetta);
+
+        AnimationTimer aggiornamento = new AnimationTimer() {
+            private long ultimoAggiornamento;
+
+            @Override
+            public void handle(long adesso) {
+                chiudiImpulso();
+                boolean visibile = lista.getScene() != null && lista.getScene().getWindow() != null
+                        && lista.getScene().getWindow().isShowing() && lista.isVisible();
+                if (!visibile) {
+                    riquadro.hide();
+                    return;
+                }
+                if (adesso - ultimoAggiornamento < AGGIORNAMENTO_RIQUADRO_NANOS) {
+                    return;
+                }
+                ultimoAggiornamento = adesso;
+                etichetta.setText(riepilogo());
+                Bounds schermo = lista.localToScreen(lista.getBoundsInLocal());
+                if (schermo == null) {
+                    return;
+                }
+                double x = schermo.getMaxX() - etichetta.getWidth() - 24;
+                double y = schermo.getMinY() + 4;
+                if (riquadro.isShowing()) {
+                    riquadro.setX(x);
+                    riquadro.setY(y);
+                } else {
+                    riquadro.show(lista.getScene().getWindow(), x, y);
+                }
+            }
+        };
+
+        // Segue la finestra corrente della lista, smettendo di osservare quella precedente
+        ObservableValue<Boolean> mostrata = lista.sceneProperty()
+                .flatMap(Scene::windowProperty)
+                .flatMap(Window::showingProperty)
+                .orElse(false);
+        mostrata.addListener((osservato, prima, adesso) -> {
+            if (adesso) {
+                aggiornamento.start();
+            } else {
+                aggiornamento.stop();
+                riquadro.hide();
+            }
+        });
+        if (mostrata.getValue()) {
+            aggiornamento.start();
+        }
+    }
+
+    /**
+     * Riepilogo delle allocazioni per cella e per passo di scorrimento.
+     *
+     * @return Testo su due righe.
+     * @since 1.0
+     */
+    public static String riepilogo() {
+        return String.format(Locale.ROOT, "celle: n=%d ultima=%s media=%s max=%s%npassi: n=%d ultimo=%s media=%s max=%s",
+                celle, byteLeggibili(ultimaCella), byteLeggibili(celle == 0 ? 0 : byteCelle / celle),
+                byteLeggibili(massimoCella),
+                passi, byteLeggibili(ultimoPasso), byteLeggibili(passi == 0 ? 0 : bytePassi / passi),
+                byteLeggibili(massimoPasso));
+    }
+
+    /**
+     * Chiude il passo corrente se nell'ultimo impulso sono state aggiornate celle.
+     * Chiamato a ogni impulso prima di aggiornare il riquadro.
+     */
+    private static void chiudiImpulso() {
+        if (celleImpulso == 0) {
+            return;
+        }
+        passi++;
+        bytePassi += byteImpulso;
+        ultimoPasso = byteImpulso;
+        massimoPasso = Math.max(massimoPasso, byteImpulso);
+        celleImpulso = 0;
+        byteImpulso = 0;
+    }
+
+    private static void azzera() {
+        celle = byteCelle = ultimaCella = massimoCella = 0;
+        byteImpulso = celleImpulso = 0;
+        passi = bytePassi = ultimoPasso = massimoPasso = 0;
+    }
+
+    private static String byteLeggibili(long b) {
+        if (b < 1024) {
+            return b + " B";
+        }
+        if (b < 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1f KB", b / 1024.0);
+        }
+        return String.format(Locale.ROOT, "%.1f MB", b / (1024.0 * 1024.0));
+    }
+
+    private static com.sun.management.ThreadMXBean threadMx() {
+        try {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean mx
+                    && mx.isThreadAllocatedMemorySupported()) {
+                mx.setThreadAllocatedMemoryEnabled(true);
+                return mx;
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Misura delle allocazioni non disponibile: " + e.getMessage());
+        }
+        return null;
+    }
+}
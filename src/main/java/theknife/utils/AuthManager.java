@@ -11,6 +11,10 @@ import java.util.*;
  * */
 
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.mindrot.jbcrypt.BCrypt;
 import theknife.models.Utente;
@@ -27,6 +31,65 @@ import theknife.utils.FileManager;
  * @version 1.0
  */
 public class AuthManager {
+    // Per utente: 5 tentativi in raffica, poi uno ogni 12 secondi
+    private static final int TENTATIVI_PER_UTENTE = 5;
+    private static final long RICARICA_PER_UTENTE_MS = 12_000;
+    // Per client: 10 tentativi in raffica, poi uno al secondo, qualunque sia lo username
+    private static final int TENTATIVI_PER_CLIENT = 10;
+    private static final long RICARICA_PER_CLIENT_MS = 1_000;
+    // Globale: limita il lavoro BCrypt complessivo a circa 5 verifiche al secondo
+    private static final int TENTATIVI_GLOBALI = 10;
+    private static final long RICARICA_GLOBALE_MS = 200;
+    private static final int MAX_SECCHI = 10_000;
+
+    /** Client dei tentativi fatti dall'applicazione desktop. */
+    public static final String CLIENT_LOCALE = "locale";
+
+    private static final Map<String, TokenBucket> limitiPerUtente = new ConcurrentHashMap<>();
+    private static final Map<String, TokenBucket> limitiPerClient = new ConcurrentHashMap<>();
+    private static final TokenBucket limiteGlobale =
+            new TokenBucket(TENTATIVI_GLOBALI, RICARICA_GLOBALE_MS, TimeUnit.MILLISECONDS);
+
+    /**
+     * Esito di un tentativo di accesso.
+     *
+     * @author Philip Jon Ji Ciuca
+     * @version 1.0
+     */
+    public static final class RisultatoAccesso {
+        /** Possibili esiti di un tentativo. */
+        public enum Esito {
+            RIUSCITO, CREDENZIALI_ERRATE, LIMITATO
+        }
+
+        private static final RisultatoAccesso ERRATO = new RisultatoAccesso(Esito.CREDENZIALI_ERRATE, null);
+        private static final RisultatoAccesso LIMITATO = new RisultatoAccesso(Esito.LIMITATO, null);
+
+        private final Esito esito;
+        private final Utente utente;
+
+        private RisultatoAccesso(Esito esito, Utente utente) {
+            this.esito = esito;
+            this.utente = utente;
+        }
+
+        /**
+         * @return Esito del tentativo.
+         * @since 1.0
+         */
+        public Esito getEsito() {
+            return esito;
+        }
+
+        /**
+         * @return Utente autenticato; null se il tentativo non è riuscito.
+         * @since 1.0
+         */
+        public Utente getUtente() {
+            return utente;
+        }
+    }
+
     /**
      * Verifica se uno username esiste già nel sistema.
      *
@@ -40,25 +103,130 @@ public class AuthManager {
     }
 
     /**
-     * Autentica un utente con username e password plaintext.
+     * Autentica un utente con username e password plaintext dall'applicazione desktop.
      *
      * @param username Username dell'utente.
      * @param password Password in chiaro da verificare contro l'hash salvato.
-     * @return Oggetto Utente se l'autenticazione ha successo; null altrimenti.
+     * @return Oggetto Utente se l'autenticazione ha successo; null altrimenti,
+     *         anche quando il tentativo è stato limitato (vedi {@link #accedi(String, String, String)}).
      * @since 1.0
      */
     public static Utente autenticaUtente(String username, String password) {
-        List<Utente> utenti = FileManager.caricaUtenti();
+        return accedi(username, password, CLIENT_LOCALE).getUtente();
+    }
+
+    /**
+     * Autentica un utente, distinguendo le credenziali errate dai tentativi limitati.
+     * <p>
+     * I tentativi sono limitati per client (ad esempio l'indirizzo IP di una
+     * richiesta al server), per username e globalmente: un tentativo oltre un
+     * limite viene rifiutato prima di qualsiasi calcolo BCrypt. Il limite del
+     * client è controllato per primo, così un client che supera il proprio
+     * limite non consuma i tentativi degli username che prova né quelli
+     * globali; il limite globale è controllato per ultimo e tiene il lavoro
+     * BCrypt sotto controllo anche se chi attacca cambia indirizzo e username.
+     * </p>
+     *
+     * @param username Username dell'utente.
+     * @param password Password in chiaro da verificare contro l'hash salvato.
+     * @param client Identificativo del client che fa il tentativo, must be non-null.
+     * @return Esito del tentativo, mai null.
+     * @since 1.0
+     */
+    public static RisultatoAccesso accedi(String username, String password, String client) {
+        if (username == null || password == null) {
+            return RisultatoAccesso.ERRATO;
+        }
+        if (!secchio(limitiPerClient, client, TENTATIVI_PER_CLIENT, RICARICA_PER_CLIENT_MS).tryConsume()
+                || !secchio(limitiPerUtente, chiaveLimite(username), TENTATIVI_PER_UTENTE,
+                        RICARICA_PER_UTENTE_MS).tryConsume()
+                || !limiteGlobale.tryConsume()) {
+            Metriche.incrementa("auth.login.limitati");
+            return RisultatoAccesso.LIMITATO;
+        }
+
+        long inizio = System.nanoTime();
+        try {
+            List<Utente> utenti = FileManager.caricaUtenti();
 
-        for (Utente u : utenti) {
-            boolean usernameMatch = u.getUsername().equalsIgnoreCase(username);
-            if (usernameMatch) {
-                boolean passwordMatch = BCrypt.checkpw(password, u.getPasswordHash());
-                if (passwordMatch) {
-                    return u;
+            for (Utente u : utenti) {
+                boolean usernameMatch = u.getUsername().equalsIgnoreCase(username);
+                if (usernameMatch) {
+                    long inizioBcrypt = System.nanoTime();
+                    EventiJfr.VerificaBcrypt evento = new EventiJfr.VerificaBcrypt();
+                    evento.begin();
+                    boolean passwordMatch = BCrypt.checkpw(password, u.getPasswordHash());
+                    Metriche.registra("auth.bcrypt", inizioBcrypt);
+                    if (evento.shouldCommit()) {
+                        evento.username = u.getUsername();
+                        evento.costo = costoBcrypt(u.getPasswordHash());
+                        evento.riuscita = passwordMatch;
+                        evento.commit();
+                    }
+                    if (passwordMatch) {
+                        Metriche.incrementa("auth.login.riusciti");
+                        return new RisultatoAccesso(RisultatoAccesso.Esito.RIUSCITO, u);
+                    }
                 }
             }
+            Metriche.incrementa("auth.login.falliti");
+            return RisultatoAccesso.ERRATO;
+        } finally {
+            Metriche.registra("auth.login", inizio);
         }
-        return null;
+    }
+
+    /**
+     * Indica se i tentativi di login per lo username sono temporaneamente bloccati.
+     * Non consuma tentativi e non considera i limiti del client e globale.
+     *
+     * @param username Username da controllare.
+     * @return true se il prossimo tentativo sullo username verrebbe rifiutato senza verificare la password.
+     * @since 1.0
+     */
+    public static boolean isLimitato(String username) {
+        if (username == null) {
+            return false;
+        }
+        TokenBucket limite = limitiPerUtente.get(chiaveLimite(username));
+        return limite != null && limite.isEsaurito();
+    }
+
+    /**
+     * Restituisce il token bucket associato alla chiave, creandolo se necessario.
+     * <p>
+     * Se la mappa cresce troppo (es. username o indirizzi casuali) vengono
+     * scartati i secchi già tornati pieni, che non contengono informazioni utili.
+     * </p>
+     *
+     * @param secchi Secchi per chiave.
+     * @param chiave Username normalizzato o client del tentativo.
+     * @param capacita Tentativi in raffica.
+     * @param ricaricaMs Tempo per rigenerare un tentativo.
+     * @return TokenBucket della chiave.
+     */
+    private static TokenBucket secchio(Map<String, TokenBucket> secchi, String chiave, int capacita, long ricaricaMs) {
+        if (secchi.size() > MAX_SECCHI) {
+            secchi.values().removeIf(TokenBucket::isPieno);
+        }
+        return secchi.computeIfAbsent(chiave, k -> new TokenBucket(capacita, ricaricaMs, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Legge il fattore di costo da un hash BCrypt ({@code $2a$10$...}).
+     *
+     * @param hash Hash BCrypt.
+     * @return Fattore di costo; -1 se l'hash non ha il formato atteso.
+     */
+    private static int costoBcrypt(String hash) {
+        try {
+            return Integer.parseInt(hash.substring(4, 6));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static String chiaveLimite(String username) {
+        return username.trim().toLowerCase(Locale.ROOT);
     }
 }
@@ -0,0 +1,200 @@
+package theknife.utils;
+
+import javafx.application.Platform;
+import theknife.models.Recensione;
+import theknife.models.Ristorante;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+/**
+ * Bus di eventi interno all'applicazione per notificare le modifiche ai dati
+ * tra controller che non si conoscono direttamente.
+ * <p>
+ * Gli eventi pubblicati vengono accodati e consegnati in blocco con un'unica
+ * Platform.runLater: tutti gli eventi prodotti prima del successivo giro del
+ * JavaFX Application Thread arrivano a ciascun iscritto in una sola lista, così
+ * un'azione dell'utente provoca al massimo un aggiornamento per vista.
+ * Il proprietario di un'iscrizione è tenuto con un riferimento debole: le
+ * iscrizioni dei controller non più raggiungibili vengono rimosse da sole.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public class EventBus {
+
+    /**
+     * Evento: un cliente ha pubblicato una nuova recensione.
+     */
+    public static final class RecensioneAggiunta {
+        private final Recensione recensione;
+
+        public RecensioneAggiunta(Recensione recensione) {
+            this.recensione = recensione;
+        }
+
+        public Recensione getRecensione() {
+            return recensione;
+        }
+    }
+
+    /**
+     * Evento: un ristorante è stato aggiunto o rimosso dai preferiti di un utente.
+     */
+    public static final class PreferitoModificato {
+        private final String username;
+        private final Ristorante ristorante;
+        private final boolean aggiunto;
+
+        public PreferitoModificato(String username, Ristorante ristorante, boolean aggiunto) {
+            this.username = username;
+            this.ristorante = ristorante;
+            this.aggiunto = aggiunto;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public Ristorante getRistorante() {
+            return ristorante;
+        }
+
+        public boolean isAggiunto() {
+            return aggiunto;
+        }
+    }
+
+    /**
+     * Evento: un ristoratore ha aggiunto un nuovo ristorante al catalogo.
+     */
+    public static final class RistoranteAggiunto {
+        private final Ristorante ristorante;
+
+        public RistoranteAggiunto(Ristorante ristorante) {
+            this.ristorante = ristorante;
+        }
+
+        public Ristorante getRistorante() {
+            return ristorante;
+        }
+    }
+
+    /**
+     * Iscrizione di un proprietario a un tipo di evento.
+     *
+     * @param <O> Tipo del proprietario.
+     * @param <E> Tipo dell'evento.
+     */
+    private static final class Iscrizione<O, E> {
+        private final WeakReference<O> proprietario;
+        private final Class<E> tipo;
+        private final BiConsumer<O, List<E>> gestore;
+
+        Iscrizione(O proprietario, Class<E> tipo, BiConsumer<O, List<E>> gestore) {
+            this.proprietario = new WeakReference<>(proprietario);
+            this.tipo = tipo;
+            this.gestore = gestore;
+        }
+
+        /**
+         * Consegna al proprietario gli eventi del tipo sottoscritto.
+         *
+         * @param eventi Eventi accumulati, in ordine di pubblicazione.
+         * @return false se il proprietario non esiste più e l'iscrizione va rimossa.
+         */
+        boolean consegna(List<Object> eventi) {
+            O o = proprietario.get();
+            if (o == null) {
+                return false;
+            }
+
+            List<E> selezionati = new ArrayList<>();
+            for (Object evento : eventi) {
+                if (tipo.isInstance(evento)) {
+                    selezionati.add(tipo.cast(evento));
+                }
+            }
+            if (!selezionati.isEmpty()) {
+                gestore.accept(o, selezionati);
+            }
+            return true;
+        }
+    }
+
+    private static final List<Iscrizione<?, ?>> iscrizioni = new CopyOnWriteArrayList<>();
+    private static final Queue<Object> inAttesa = new ConcurrentLinkedQueue<>();
+    private static final AtomicBoolean consegnaPianificata = new AtomicBoolean(false);
+
+    /**
+     * Iscrive un proprietario a un tipo di evento.
+     * <p>
+     * Il gestore riceve il proprietario come primo argomento e non deve
+     * catturarlo (usare un riferimento a metodo non legato, es.
+     * {@code MioController::onEventi}), altrimenti il riferimento debole
+     * non ha effetto.
+     * </p>
+     *
+     * @param proprietario Oggetto a cui legare la durata dell'iscrizione, must be non-null.
+     * @param tipo Classe dell'evento, must be non-null.
+     * @param gestore Gestore chiamato sul JavaFX Application Thread con gli eventi accumulati.
+     * @param <O> Tipo del proprietario.
+     * @param <E> Tipo dell'evento.
+     * @since 1.0
+     */
+    public static <O, E> void iscrivi(O proprietario, Class<E> tipo, BiConsumer<O, List<E>> gestore) {
+        iscrizioni.add(new Iscrizione<>(proprietario, tipo, gestore));
+    }
+
+    /**
+     * Pubblica un evento; verrà consegnato agli iscritti al prossimo giro
+     * del JavaFX Application Thread insieme agli altri eventi in attesa.
+     *
+     * @param evento Evento da pubblicare, must be non-null.
+     * @since 1.0
+     */
+    public static void pubblica(Object evento) {
+        inAttesa.offer(evento);
+        if (consegnaPianificata.compareAndSet(false, true)) {
+            Platform.runLater(EventBus::consegna);
+        }
+    }
+
+    /**
+     * Svuota la coda degli eventi e li consegna agli iscritti.
+     *
+     * @since 1.0
+     */
+    private static void consegna() {
+        // Gli eventi pubblicati da qui in poi pianificano una nuova consegna
+        consegnaPianificata.set(false);
+
+        List<Object> eventi = new ArrayList<>();
+        Object evento;
+        while ((evento = inAttesa.poll()) != null) {
+            eventi.add(evento);
+        }
+        if (eventi.isEmpty()) {
+            return;
+        }
+
+        for (Iscrizione<?, ?> iscrizione : iscrizioni) {
+            try {
+                if (!iscrizione.consegna(eventi)) {
+                    iscrizioni.remove(iscrizione);
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Errore nella gestione dell'evento " + iscrizione.tipo.getSimpleName()
+                        + ": " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+}
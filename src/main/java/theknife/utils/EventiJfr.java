@@ -0,0 +1,113 @@
+package theknife.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Eventi JFR (Java Flight Recorder) emessi dai punti caldi dell'applicazione.
+ * <p>
+ * Compaiono nelle registrazioni di JDK Mission Control sotto la categoria
+ * "The Knife". Quando nessuna registrazione li abilita, {@code begin()},
+ * {@code shouldCommit()} e {@code commit()} costano quasi nulla e l'evento
+ * non viene nemmeno allocato dopo la compilazione JIT; i campi vanno
+ * comunque valorizzati solo dentro {@code if (evento.shouldCommit())}.
+ * Per registrarli sempre in un buffer circolare vedi {@link RegistrazioneJfr}.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public final class EventiJfr {
+
+    private EventiJfr() {
+    }
+
+    /** Caricamento del catalogo dei ristoranti. */
+    @Name("theknife.CatalogLoad")
+    @Label("Caricamento catalogo")
+    @Category({"The Knife", "I/O"})
+    @Description("Lettura del catalogo dei ristoranti dall'archivio o da un CSV")
+    public static final class CaricamentoCatalogo extends Event {
+        @Label("Sorgente")
+        public String sorgente;
+
+        @Label("Ristoranti")
+        public int ristoranti;
+    }
+
+    /** Riscrittura completa di un CSV dell'archivio durante un checkpoint. */
+    @Name("theknife.CsvRewrite")
+    @Label("Riscrittura CSV")
+    @Category({"The Knife", "I/O"})
+    @Description("Riscrittura atomica di una tabella dell'archivio nel suo CSV")
+    public static final class RiscritturaCsv extends Event {
+        @Label("Tabella")
+        public String tabella;
+
+        @Label("Righe")
+        public int righe;
+
+        @Label("Byte scritti")
+        @DataAmount
+        public long byteScritti;
+    }
+
+    /** Ricerca nel catalogo. */
+    @Name("theknife.SearchQuery")
+    @Label("Ricerca ristoranti")
+    @Category({"The Knife", "Ricerca"})
+    @Description("Filtro del catalogo con i criteri scelti dall'utente")
+    @StackTrace(false)
+    public static final class Ricerca extends Event {
+        @Label("Testo")
+        public String testo;
+
+        @Label("Cucina")
+        public String cucina;
+
+        @Label("Località")
+        public String localita;
+
+        @Label("Candidati")
+        public int candidati;
+
+        @Label("Risultati")
+        public int risultati;
+    }
+
+    /** Verifica di una password con BCrypt. */
+    @Name("theknife.BcryptVerify")
+    @Label("Verifica BCrypt")
+    @Category({"The Knife", "Autenticazione"})
+    @Description("Confronto di una password con l'hash BCrypt salvato")
+    @StackTrace(false)
+    public static final class VerificaBcrypt extends Event {
+        @Label("Username")
+        public String username;
+
+        @Label("Costo")
+        public int costo;
+
+        @Label("Riuscita")
+        public boolean riuscita;
+    }
+
+    /** Caricamento di una vista FXML. */
+    @Name("theknife.ViewLoad")
+    @Label("Caricamento vista")
+    @Category({"The Knife", "Interfaccia"})
+    @Description("Parsing di un FXML e costruzione del grafo della scena")
+    public static final class CaricamentoVista extends Event {
+        @Label("Vista")
+        public String vista;
+
+        @Label("Precaricata")
+        @Description("true se caricata in anticipo sul thread in background di ViewFactory")
+        public boolean precaricata;
+    }
+}
@@ -2,19 +2,21 @@ package theknife.utils;
 
 import java.io.*;
 import java.util.*;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import theknife.models.Ristorante;
 import theknife.models.Utente;
+import theknife.services.CatalogoRistoranti;
 import theknife.services.RistorantiManager;
+import theknife.storage.Archivio;
+import theknife.storage.CatalogoCsv;
+import theknife.storage.Tabella;
 
 /**
  * Utility per la gestione dei file CSV dell'applicazione.
  * <p>
- * Fornisce metodi per caricare e salvare ristoranti e utenti dai file CSV
- * presenti nella cartella resources/data. Contiene anche funzioni di utilità
- * per il parsing/escaping delle righe CSV.
+ * Fornisce metodi per caricare e salvare ristoranti e utenti tramite
+ * l'archivio dei dati ({@link Archivio}) e per leggere un catalogo da un
+ * file CSV qualsiasi. Il parsing delle righe del catalogo è in
+ * {@link CatalogoCsv}.
  * </p>
  *
  * @author Philip Jon Ji Ciuca
@@ -22,6 +24,34 @@ import theknife.services.RistorantiManager;
  */
 public class FileManager {
 
+    /**
+     * Carica i ristoranti del catalogo dall'archivio dei dati.
+     *
+     * @return Lista di oggetti Ristorante nell'ordine del CSV; le righe non valide vengono ignorate.
+     * @since 1.0
+     */
+    public static List<Ristorante> caricaRistoranti() {
+        long inizio = System.nanoTime();
+        EventiJfr.CaricamentoCatalogo evento = new EventiJfr.CaricamentoCatalogo();
+        evento.begin();
+        List<String[]> righe = Archivio.righe(Tabella.RISTORANTI);
+        List<Ristorante> ristoranti = new ArrayList<>(righe.size());
+        for (String[] values : righe) {
+            Ristorante r = CatalogoCsv.creaRistorante(values);
+            if (r != null) {
+                ristoranti.add(r);
+            }
+        }
+        Metriche.registra("catalogo.caricamento", inizio);
+        if (evento.shouldCommit()) {
+            evento.sorgente = "archivio";
+            evento.ristoranti = ristoranti.size();
+            evento.commit();
+        }
+        System.out.println("Caricati " + ristoranti.size() + " ristoranti dall'archivio");
+        return ristoranti;
+    }
+
     /**
      * Carica i ristoranti da un file CSV specificato dal percorso.
      * Supporta formati sia con le nuove colonne (16) che con il formato precedente (14).
@@ -32,309 +62,129 @@ public class FileManager {
      */
     public static List<Ristorante> caricaRistorantiDaCSV(String filePath) {
         List<Ristorante> ristoranti = new ArrayList<>();
+        EventiJfr.CaricamentoCatalogo evento = new EventiJfr.CaricamentoCatalogo();
+        evento.begin();
 
         try (BufferedReader br = getBufferedReader(filePath)) {
-            String line;
-            boolean firstLine = true;
-
-            while ((line = br.readLine()) != null) {
-                if (firstLine) {
-                    firstLine = false;
-                    continue; // Skip header
-                }
-
-                String[] values = parseCSVLine(line);
-
-                if (values.length >= 16) { // Aggiornato per le nuove colonne
-                    try {
-                        Ristorante r = new Ristorante(
-                                cleanValue(values[0]), // Name
-                                cleanValue(values[1]), // Address
-                                cleanValue(values[2]), // Location
-                                cleanValue(values[3]), // Price
-                                cleanValue(values[4]), // Cuisine
-                                parseDouble(values[5]), // Longitude
-                                parseDouble(values[6]), // Latitude
-                                cleanValue(values[7]), // PhoneNumber
-                                cleanValue(values[8]), // Url
-                                cleanValue(values[9]), // WebsiteUrl
-                                cleanValue(values[10]), // Award
-                                cleanValue(values[11]), // GreenStar
-                                cleanValue(values[12]), // FacilitiesAndServices
-                                cleanValue(values[13]), // Description
-                                cleanValue(values[14]), // DeliveryAvailable
-                                cleanValue(values[15]) // OnlineBookingAvailable
-                        );
-                        ristoranti.add(r);
-                    } catch (Exception e) {
-                        System.err.println(
-                                "Errore nel parsing del ristorante: " + cleanValue(values[0]) + " - " + e.getMessage());
-                    }
-                } else if (values.length >= 14) {
-                    // Compatibilità con i vecchi CSV che non hanno le nuove colonne
-                    try {
-                        Ristorante r = new Ristorante(
-                                cleanValue(values[0]), // Name
-                                cleanValue(values[1]), // Address
-                                cleanValue(values[2]), // Location
-                                cleanValue(values[3]), // Price
-                                cleanValue(values[4]), // Cuisine
-                                parseDouble(values[5]), // Longitude
-                                parseDouble(values[6]), // Latitude
-                                cleanValue(values[7]), // PhoneNumber
-                                cleanValue(values[8]), // Url
-                                cleanValue(values[9]), // WebsiteUrl
-                                cleanValue(values[10]), // Award
-                                cleanValue(values[11]), // GreenStar
-                                cleanValue(values[12]), // FacilitiesAndServices
-                                cleanValue(values[13]) // Description
-                        );
-                        ristoranti.add(r);
-                    } catch (Exception e) {
-                        System.err.println(
-                                "Errore nel parsing del ristorante: " + cleanValue(values[0]) + " - " + e.getMessage());
-                    }
-                }
-            }
+            ristoranti = CatalogoCsv.leggi(br, true);
         } catch (IOException e) {
             System.err.println("Errore nel caricamento del file CSV: " + e.getMessage());
             e.printStackTrace();
         }
 
+        if (evento.shouldCommit()) {
+            evento.sorgente = filePath;
+            evento.ristoranti = ristoranti.size();
+            evento.commit();
+        }
         System.out.println("Caricati " + ristoranti.size() + " ristoranti dal CSV");
         return ristoranti;
     }
 
     /**
-     * Carica tutti gli utenti dal file utenti.csv.
+     * Carica tutti gli utenti dalla tabella degli utenti dell'archivio.
      *
-     * @return Lista di oggetti Utente; lista vuota se il file non esiste o in caso di errore.
+     * @return Lista di oggetti Utente; lista vuota se non ce ne sono.
      * @since 1.0
      */
     public static List<Utente> caricaUtenti() {
+        long inizio = System.nanoTime();
         List<Utente> utenti = new ArrayList<>();
-        String filePath = "data/utenti.csv";
 
-        try (BufferedReader br = getBufferedReader(filePath)) {
-            String line;
-
-            while ((line = br.readLine()) != null) {
-                String[] values = parseCSVLine(line);
-
-                if (values.length >= 7) {
-                    try {
-                        Utente u = new Utente(
-                                cleanValue(values[0]), // Nome
-                                cleanValue(values[1]), // Cognome
-                                cleanValue(values[2]), // Username
-                                cleanValue(values[3]), // PasswordHash
-                                cleanValue(values[4]), // DataNascita
-                                cleanValue(values[5]), // Domicilio
-                                cleanValue(values[6]) // Ruolo
-                        );
-                        utenti.add(u);
-                    } catch (Exception e) {
-                        System.err.println("Errore nel parsing dell'utente: " + e.getMessage());
-                    }
-                } else {
-                    System.out.println("Record utente incompleto: " + Arrays.toString(values));
+        for (String[] values : Archivio.righe(Tabella.UTENTI)) {
+            if (values.length >= 7) {
+                try {
+                    Utente u = new Utente(
+                            CatalogoCsv.cleanValue(values[0]), // Nome
+                            CatalogoCsv.cleanValue(values[1]), // Cognome
+                            CatalogoCsv.cleanValue(values[2]), // Username
+                            CatalogoCsv.cleanValue(values[3]), // PasswordHash
+                            CatalogoCsv.cleanValue(values[4]), // DataNascita
+                            CatalogoCsv.cleanValue(values[5]), // Domicilio
+                            CatalogoCsv.cleanValue(values[6]) // Ruolo
+                    );
+                    utenti.add(u);
+                } catch (Exception e) {
+                    System.err.println("Errore nel parsing dell'utente: " + e.getMessage());
                 }
+            } else {
+                System.out.println("Record utente incompleto: " + Arrays.toString(values));
             }
-        } catch (IOException e) {
-            System.out.println("Errore nel caricamento degli utenti: " + e.getMessage());
-            e.printStackTrace();
         }
+        Metriche.registra("utenti.caricamento", inizio);
         return utenti;
     }
 
     /**
-     * Aggiunge un nuovo utente al file utenti.csv (append).
+     * Aggiunge un nuovo utente alla tabella degli utenti dell'archivio.
      *
      * @param utente Oggetto Utente da salvare, must be non-null.
      * @since 1.0
      */
     public static void salvaUtente(Utente utente) {
-        String resourcePath = "data/michelin_my_maps.csv";
-
-        try (PrintWriter pw = getPrintWriterForWrite(resourcePath, true)) {
-            pw.printf("%s,%s,%s,%s,%s,%s,%s%n",
-                    escapeValue(utente.getNome()),
-                    escapeValue(utente.getCognome()),
-                    escapeValue(utente.getUsername()),
-                    escapeValue(utente.getPasswordHash()),
-                    escapeValue(utente.getDataNascita()),
-                    escapeValue(utente.getDomicilio()),
-                    escapeValue(utente.getRuolo()));
-        } catch (IOException e) {
-            System.err.println("Errore nel salvataggio dell'utente: " + e.getMessage());
-            e.printStackTrace();
-        }
+        long inizio = System.nanoTime();
+        Archivio.esegui(tx -> tx.scrivi(Tabella.UTENTI,
+                utente.getNome(),
+                utente.getCognome(),
+                utente.getUsername(),
+                utente.getPasswordHash(),
+                utente.getDataNascita(),
+                utente.getDomicilio(),
+                utente.getRuolo()));
+        Metriche.registra("utenti.salvataggio", inizio);
     }
 
-    // Utility methods
     /**
-     * Parsea una riga CSV rispettando i campi racchiusi tra virgolette.
-     * <p>
-     * Restituisce un array con i valori trovati nella riga, preservando
-     * le virgole che si trovano all'interno di campi tra virgolette.
-     * </p>
-     *
-     * @param line La riga CSV da parsare, may be null or empty.
-     * @return Array di String contenente i campi letti dalla riga.
-     * @since 1.0
-     */
-    private static String[] parseCSVLine(String line) {
-        List<String> result = new ArrayList<>();
-        boolean inQuotes = false;
-        StringBuilder currentField = new StringBuilder();
-
-        for (int i = 0; i < line.length(); i++) {
-            char c = line.charAt(i);
-
-            if (c == '"') {
-                inQuotes = !inQuotes;
-            } else if (c == ',' && !inQuotes) {
-                result.add(currentField.toString());
-                currentField = new StringBuilder();
-            } else {
-                currentField.append(c);
-            }
-        }
-        result.add(currentField.toString());
-
-        return result.toArray(new String[0]);
-    }
-
-    /**
-     * Pulisce un valore letto dal CSV rimuovendo virgolette esterne e spazi.
-     *
-     * @param value Valore grezzo letto dal CSV, può essere null.
-     * @return String pulita e senza virgolette esterne; stringa vuota se il valore è null.
-     * @since 1.0
-     */
-    private static String cleanValue(String value) {
-        if (value == null)
-            return "";
-        return value.trim().replaceAll("^\"|\"$", "");
-    }
-
-    /**
-     * Escapa un valore per essere salvato correttamente in un CSV.
-     * <p>
-     * Se il valore contiene virgole, virgolette o newline viene racchiuso
-     * tra virgolette e le virgolette interne vengono doppiate.
-     * </p>
-     *
-     * @param value Valore da escapare, può essere null.
-     * @return Valore pronto per il CSV; stringa vuota se il valore è null.
-     * @since 1.0
-     */
-    private static String escapeValue(String value) {
-        if (value == null)
-            return "";
-        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
-            return "\"" + value.replace("\"", "\"\"") + "\"";
-        }
-        return value;
-    }
-
-    /**
-     * Converte una stringa in double gestendo valori null, vuoti o "N/A".
-     *
-     * @param value Stringa da convertire.
-     * @return Valore double parsato o 0.0 in caso di valore non parsabile.
-     * @since 1.0
-     */
-    private static double parseDouble(String value) {
-        try {
-            if (value == null || value.trim().isEmpty() || value.equalsIgnoreCase("N/A")) {
-                return 0.0;
-            }
-            return Double.parseDouble(value.trim());
-        } catch (NumberFormatException e) {
-            return 0.0;
-        }
-    }
-
-    /**
-     * Aggiunge un nuovo ristorante al file CSV
+     * Aggiunge un nuovo ristorante al catalogo e lo associa al suo proprietario
+     * nella stessa transazione, così non può esistere l'uno senza l'altro.
      */
     public static boolean aggiungiRistoranteAlCSV(Ristorante ristorante) {
-        String resourcePath = "src/main/resources/data/michelin_my_maps.csv";
-
-        try (PrintWriter pw = getPrintWriterForWrite(resourcePath, true)) {
-            StringBuilder sb = new StringBuilder();
-
-            // Formato aggiornato con le nuove colonne:
-            // Name,Address,Location,Price,Cuisine,Longitude,Latitude,PhoneNumber,Url,WebsiteUrl,Award,GreenStar,FacilitiesAndServices,Description,DeliveryAvailable,OnlineBookingAvailable
-            sb.append(escapeValue(ristorante.getName())).append(",");
-            sb.append(escapeValue(ristorante.getAddress())).append(",");
-            sb.append(escapeValue(ristorante.getLocation())).append(",");
-            sb.append(escapeValue(ristorante.getPrice())).append(",");
-            sb.append(escapeValue(ristorante.getCuisine())).append(",");
-            sb.append(ristorante.getLongitude()).append(",");
-            sb.append(ristorante.getLatitude()).append(",");
-            sb.append(escapeValue(ristorante.getPhoneNumber())).append(",");
-            sb.append(escapeValue(ristorante.getUrl())).append(",");
-            sb.append(escapeValue(ristorante.getWebsiteUrl())).append(",");
-            sb.append(escapeValue(ristorante.getAward())).append(",");
-            sb.append(ristorante.getGreenStar()).append(",");
-            sb.append(escapeValue(ristorante.getFacilitiesAndServices())).append(",");
-            sb.append(escapeValue(ristorante.getDescription())).append(",");
-            sb.append(ristorante.isDeliveryAvailable() ? "Sì" : "No").append(",");
-            sb.append(ristorante.isOnlineBookingAvailable() ? "Sì" : "No");
-
-            pw.println(sb.toString());
-
-            // Aggiungi anche la proprietà al sistema
-            RistorantiManager.aggiungiProprietario(ristorante.getProprietario(), ristorante.getName());
-
-            return true;
-
-        } catch (IOException e) {
-            System.err.println("Errore nel salvataggio del ristorante: " + e.getMessage());
-            e.printStackTrace();
-            return false;
+        // Formato aggiornato con le nuove colonne:
+        // Name,Address,Location,Price,Cuisine,Longitude,Latitude,PhoneNumber,Url,WebsiteUrl,Award,GreenStar,FacilitiesAndServices,Description,DeliveryAvailable,OnlineBookingAvailable
+        String[] campi = {
+                ristorante.getName(),
+                ristorante.getAddress(),
+                ristorante.getLocation(),
+                ristorante.getPrice(),
+                ristorante.getCuisine(),
+                String.valueOf(ristorante.getLongitude()),
+                String.valueOf(ristorante.getLatitude()),
+                ristorante.getPhoneNumber(),
+                ristorante.getUrl(),
+                ristorante.getWebsiteUrl(),
+                ristorante.getAward(),
+                ristorante.getGreenStar(),
+                ristorante.getFacilitiesAndServices(),
+                ristorante.getDescription(),
+                ristorante.isDeliveryAvailable() ? "Sì" : "No",
+                ristorante.isOnlineBookingAvailable() ? "Sì" : "No"
+        };
+
+        long inizio = System.nanoTime();
+        // Con un proprietario la riga del ristorante e l'associazione sono
+        // registrate insieme, e RistorantiManager ne pubblica l'istantanea
+        boolean salvato = ristorante.getProprietario() != null
+                ? RistorantiManager.aggiungiProprietario(ristorante.getProprietario(), ristorante.getName(),
+                        tx -> tx.scrivi(Tabella.RISTORANTI, campi))
+                : Archivio.esegui(tx -> tx.scrivi(Tabella.RISTORANTI, campi));
+        Metriche.registra("catalogo.aggiunta", inizio);
+        if (salvato) {
+            CatalogoRistoranti.registraNome(ristorante);
+        } else {
+            System.err.println("Errore nel salvataggio del ristorante: " + ristorante.getName());
         }
+        return salvato;
     }
 
     /**
      * Verifica se esiste già un ristorante con il nome specificato
+     * (senza distinguere maiuscole e minuscole) tramite l'indice dei nomi del catalogo.
      */
     public static boolean esisteRistorante(String nomeRistorante) {
-        if (nomeRistorante == null || nomeRistorante.trim().isEmpty()) {
-            return false;
-        }
-
-        String resourcePath = "src/main/resources/data/michelin_my_maps.csv";
-
-        try (BufferedReader br = getBufferedReader(resourcePath)) {
-            String line;
-            boolean firstLine = true;
-
-            while ((line = br.readLine()) != null) {
-                if (firstLine) {
-                    firstLine = false;
-                    continue; // Skip header
-                }
-
-                String[] values = parseCSVLine(line);
-                if (values.length > 0) {
-                    String nomeEsistente = cleanValue(values[0]);
-                    if (nomeEsistente.equalsIgnoreCase(nomeRistorante.trim())) {
-                        return true;
-                    }
-                }
-            }
-        } catch (IOException e) {
-            System.err.println("Errore nella verifica del ristorante: " + e.getMessage());
-            e.printStackTrace();
-        }
-
-        return false;
+        return CatalogoRistoranti.esisteNome(nomeRistorante);
     }
 
-    // Added helpers to support classpath reading and external writing when running as jar
+    // Added helper to support classpath reading when running as jar
     private static BufferedReader getBufferedReader(String filePath) throws IOException {
         // Try opening as a regular file first
         File f = new File(filePath);
@@ -362,20 +212,4 @@ public class FileManager {
 
         throw new FileNotFoundException(filePath + " (Impossibile trovare il percorso specificato o la risorsa nel classpath)");
     }
-
-    private static PrintWriter getPrintWriterForWrite(String resourcePath, boolean append) throws IOException {
-        File f = new File(resourcePath);
-        if (f.exists() && f.canWrite()) {
-            return new PrintWriter(new FileWriter(f, append));
-        }
-
-        // Fallback: crea/usa cartella 'data' nella working directory per permettere scrittura quando si esegue il jar
-        Path dataDir = Paths.get("data");
-        if (!Files.exists(dataDir)) {
-            Files.createDirectories(dataDir);
-        }
-        String filename = new File(resourcePath).getName();
-        Path out = dataDir.resolve(filename);
-        return new PrintWriter(new FileWriter(out.toFile(), append));
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,175 @@
+package theknife.utils;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Istogramma delle latenze senza lock, con secchi log-lineari (come
+ * HdrHistogram).
+ * <p>
+ * I valori (in nanosecondi) sono raggruppati per potenza di due e ogni
+ * potenza è divisa in 32 secchi lineari, quindi l'errore relativo sui
+ * percentili resta sotto il 3% da pochi nanosecondi a ore, con un array di
+ * dimensione fissa. Registrare un valore è un solo incremento atomico, quindi
+ * molti thread possono registrare in parallelo senza bloccarsi; le letture
+ * (percentili, media) sono istantanee approssimate, coerenti al termine
+ * delle registrazioni.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public class IstogrammaLatenze {
+    private static final int BIT_SOTTO = 5;
+    private static final int SOTTO = 1 << BIT_SOTTO;           // secchi lineari per potenza di due
+    private static final int LINEARI = 2 * SOTTO;              // valori < 64 hanno un secchio ciascuno
+    private static final int SECCHI = LINEARI + (63 - BIT_SOTTO) * SOTTO;
+
+    private final AtomicLongArray conteggi = new AtomicLongArray(SECCHI);
+    private final AtomicLong totale = new AtomicLong();
+    private final AtomicLong somma = new AtomicLong();
+    private final AtomicLong massimo = new AtomicLong();
+
+    /**
+     * Registra una latenza.
+     *
+     * @param nanos Durata in nanosecondi; i valori negativi contano come zero.
+     * @since 1.0
+     */
+    public void registra(long nanos) {
+        long valore = Math.max(0, nanos);
+        conteggi.incrementAndGet(indice(valore));
+        totale.incrementAndGet();
+        somma.addAndGet(valore);
+        long corrente;
+        while (valore > (corrente = massimo.get()) && !massimo.compareAndSet(corrente, valore)) {
+            // riprova finché il massimo non è aggiornato o superato da un altro thread
+        }
+    }
+
+    /**
+     * Numero di valori registrati.
+     *
+     * @return Conteggio totale.
+     * @since 1.0
+     */
+    public long getConteggio() {
+        return totale.get();
+    }
+
+    /**
+     * Media dei valori registrati.
+     *
+     * @return Media in nanosecondi; 0 se non ci sono valori.
+     * @since 1.0
+     */
+    public double getMedia() {
+        long n = totale.get();
+        return n == 0 ? 0.0 : (double) somma.get() / n;
+    }
+
+    /**
+     * Valore massimo registrato (esatto).
+     *
+     * @return Massimo in nanosecondi.
+     * @since 1.0
+     */
+    public long getMassimo() {
+        return massimo.get();
+    }
+
+    /**
+     * Restituisce il percentile richiesto.
+     *
+     * @param percentile Percentile tra 0 e 100 (ad esempio 99.9).
+     * @return Valore in nanosecondi entro l'errore del secchio; 0 se l'istogramma è vuoto.
+     * @since 1.0
+     */
+    public long getPercentile(double percentile) {
+        long[] copia = new long[SECCHI];
+        long n = 0;
+        for (int i = 0; i < SECCHI; i++) {
+            copia[i] = conteggi.get(i);
+            n += copia[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long soglia = Math.max(1, (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * n));
+        long cumulato = 0;
+        for (int i = 0; i < SECCHI; i++) {
+            cumulato += copia[i];
+            if (cumulato >= soglia) {
+                return Math.min(valoreMedio(i), massimo.get());
+            }
+        }
+        return massimo.get();
+    }
+
+    /**
+     * Somma i valori di un altro istogramma in questo.
+     *
+     * @param altro Istogramma da aggiungere, must be non-null.
+     * @since 1.0
+     */
+    public void aggiungi(IstogrammaLatenze altro) {
+        for (int i = 0; i < SECCHI; i++) {
+            long c = altro.conteggi.get(i);
+            if (c != 0) {
+                conteggi.addAndGet(i, c);
+            }
+        }
+        totale.addAndGet(altro.totale.get());
+        somma.addAndGet(altro.somma.get());
+        long m = altro.massimo.get();
+        long corrente;
+        while (m > (corrente = massimo.get()) && !massimo.compareAndSet(corrente, m)) {
+            // come in registra
+        }
+    }
+
+    /**
+     * Riepilogo su una riga: conteggio, media, p50, p90, p99, p99.9 e massimo.
+     *
+     * @param unita Unità in cui mostrare le latenze.
+     * @return Testo del riepilogo.
+     * @since 1.0
+     */
+    public String riepilogo(TimeUnit unita) {
+        double fattore = unita.toNanos(1);
+        String simbolo = switch (unita) {
+            case NANOSECONDS -> "ns";
+            case MICROSECONDS -> "µs";
+            case MILLISECONDS -> "ms";
+            default -> unita.name().toLowerCase(Locale.ROOT);
+        };
+        return String.format(Locale.ROOT,
+                "n=%d media=%.2f%s p50=%.2f%s p90=%.2f%s p99=%.2f%s p99.9=%.2f%s max=%.2f%s",
+                getConteggio(), getMedia() / fattore, simbolo,
+                getPercentile(50) / fattore, simbolo, getPercentile(90) / fattore, simbolo,
+                getPercentile(99) / fattore, simbolo, getPercentile(99.9) / fattore, simbolo,
+                getMassimo() / fattore, simbolo);
+    }
+
+    private static int indice(long valore) {
+        if (valore < LINEARI) {
+            return (int) valore;
+        }
+        int esponente = 63 - Long.numberOfLeadingZeros(valore);  // >= BIT_SOTTO + 1
+        int spostamento = esponente - BIT_SOTTO;                 // >= 1
+        int mantissa = (int) (valore >>> spostamento);           // in [SOTTO, 2 * SOTTO)
+        return LINEARI + (spostamento - 1) * SOTTO + (mantissa - SOTTO);
+    }
+
+    private static long valoreMedio(int indice) {
+        if (indice < LINEARI) {
+            return indice;
+        }
+        int spostamento = (indice - LINEARI) / SOTTO + 1;
+        long mantissa = (indice - LINEARI) % SOTTO + SOTTO;
+        long inizio = mantissa << spostamento;
+        return inizio + (1L << (spostamento - 1)); // centro del secchio
+    }
+}
@@ -0,0 +1,169 @@
+package theknife.utils;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Lista immutabile a blocchi con condivisione strutturale.
+ * <p>
+ * Gli elementi sono raccolti in blocchi di 32, indicizzati da un albero a 32
+ * vie; l'ultimo blocco (la coda) resta fuori dall'albero finché non è pieno.
+ * Aggiungere in fondo copia solo la coda (e, ogni 32 elementi, il percorso
+ * verso il nuovo blocco); sostituire un elemento copia solo il percorso
+ * dalla radice al suo blocco. La versione precedente resta valida e
+ * condivide con la nuova tutti gli altri blocchi, quindi può essere letta da
+ * altri thread senza lock mentre uno scrittore prepara la successiva.
+ * </p>
+ * <p>
+ * Implementa {@link java.util.List} in sola lettura: i metodi di modifica
+ * ereditati lanciano {@link UnsupportedOperationException}.
+ * </p>
+ *
+ * @param <T> Tipo degli elementi.
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public final class ListaPersistente<T> extends AbstractList<T> implements RandomAccess {
+    private static final int BIT = 5;
+    private static final int LARGHEZZA = 1 << BIT;
+    private static final int MASCHERA = LARGHEZZA - 1;
+
+    private static final ListaPersistente<?> VUOTA =
+            new ListaPersistente<>(0, BIT, new Object[LARGHEZZA], new Object[0]);
+
+    private final int dimensione;
+    private final int livello;
+    private final Object[] radice;
+    private final Object[] coda;
+
+    private ListaPersistente(int dimensione, int livello, Object[] radice, Object[] coda) {
+        this.dimensione = dimensione;
+        this.livello = livello;
+        this.radice = radice;
+        this.coda = coda;
+    }
+
+    /**
+     * Restituisce la lista vuota.
+     *
+     * @param <T> Tipo degli elementi.
+     * @return Lista senza elementi.
+     * @since 1.0
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ListaPersistente<T> vuota() {
+        return (ListaPersistente<T>) VUOTA;
+    }
+
+    @Override
+    public int size() {
+        return dimensione;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int indice) {
+        return (T) blocco(indice)[indice & MASCHERA];
+    }
+
+    /**
+     * Restituisce una lista con l'elemento aggiunto in fondo.
+     *
+     * @param elemento Elemento da aggiungere.
+     * @return Nuova lista di dimensione {@code size() + 1}.
+     * @since 1.0
+     */
+    public ListaPersistente<T> con(T elemento) {
+        if (dimensione - inizioCoda() < LARGHEZZA) {
+            Object[] nuovaCoda = Arrays.copyOf(coda, coda.length + 1);
+            nuovaCoda[coda.length] = elemento;
+            return new ListaPersistente<>(dimensione + 1, livello, radice, nuovaCoda);
+        }
+
+        // Coda piena: entra nell'albero e ne inizia una nuova
+        Object[] nuovaRadice;
+        int nuovoLivello = livello;
+        if ((dimensione >>> BIT) > (1 << livello)) {
+            nuovaRadice = new Object[LARGHEZZA];
+            nuovaRadice[0] = radice;
+            nuovaRadice[1] = percorso(livello, coda);
+            nuovoLivello += BIT;
+        } else {
+            nuovaRadice = inserisciCoda(livello, radice, coda);
+        }
+        return new ListaPersistente<>(dimensione + 1, nuovoLivello, nuovaRadice, new Object[] {elemento});
+    }
+
+    /**
+     * Restituisce una lista con l'elemento in posizione {@code indice} sostituito.
+     *
+     * @param indice Posizione, must be in [0, size()).
+     * @param elemento Nuovo elemento.
+     * @return Nuova lista della stessa dimensione.
+     * @since 1.0
+     */
+    public ListaPersistente<T> sostituisci(int indice, T elemento) {
+        if (indice < 0 || indice >= dimensione) {
+            throw new IndexOutOfBoundsException("Indice " + indice + " fuori da [0, " + dimensione + ")");
+        }
+        if (indice >= inizioCoda()) {
+            Object[] nuovaCoda = coda.clone();
+            nuovaCoda[indice & MASCHERA] = elemento;
+            return new ListaPersistente<>(dimensione, livello, radice, nuovaCoda);
+        }
+        return new ListaPersistente<>(dimensione, livello, sostituisci(livello, radice, indice, elemento), coda);
+    }
+
+    private int inizioCoda() {
+        return dimensione < LARGHEZZA ? 0 : ((dimensione - 1) >>> BIT) << BIT;
+    }
+
+    private Object[] blocco(int indice) {
+        if (indice < 0 || indice >= dimensione) {
+            throw new IndexOutOfBoundsException("Indice " + indice + " fuori da [0, " + dimensione + ")");
+        }
+        if (indice >= inizioCoda()) {
+            return coda;
+        }
+        Object[] nodo = radice;
+        for (int l = livello; l > 0; l -= BIT) {
+            nodo = (Object[]) nodo[(indice >>> l) & MASCHERA];
+        }
+        return nodo;
+    }
+
+    private Object[] inserisciCoda(int l, Object[] genitore, Object[] blocco) {
+        int sotto = ((dimensione - 1) >>> l) & MASCHERA;
+        Object[] risultato = genitore.clone();
+        Object inserito;
+        if (l == BIT) {
+            inserito = blocco;
+        } else {
+            Object[] figlio = (Object[]) genitore[sotto];
+            inserito = figlio != null ? inserisciCoda(l - BIT, figlio, blocco) : percorso(l - BIT, blocco);
+        }
+        risultato[sotto] = inserito;
+        return risultato;
+    }
+
+    private static Object[] percorso(int l, Object[] blocco) {
+        if (l == 0) {
+            return blocco;
+        }
+        Object[] nodo = new Object[LARGHEZZA];
+        nodo[0] = percorso(l - BIT, blocco);
+        return nodo;
+    }
+
+    private static Object[] sostituisci(int l, Object[] nodo, int indice, Object elemento) {
+        Object[] risultato = nodo.clone();
+        if (l == 0) {
+            risultato[indice & MASCHERA] = elemento;
+        } else {
+            int sotto = (indice >>> l) & MASCHERA;
+            risultato[sotto] = sostituisci(l - BIT, (Object[]) nodo[sotto], indice, elemento);
+        }
+        return risultato;
+    }
+}
@@ -0,0 +1,373 @@
+package theknife.utils;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * Mappa immutabile con condivisione strutturale (hash trie a 32 vie).
+ * <p>
+ * Ogni modifica restituisce una nuova mappa che copia solo i nodi sul
+ * percorso della chiave (al più sette livelli) e condivide tutto il resto
+ * con la versione precedente, che resta valida e invariata. È pensata per
+ * essere pubblicata tramite un {@code AtomicReference}: i lettori leggono
+ * un'istantanea coerente senza lock, mentre un solo scrittore alla volta ne
+ * prepara la versione successiva.
+ * </p>
+ *
+ * @param <K> Tipo delle chiavi.
+ * @param <V> Tipo dei valori.
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public final class MappaPersistente<K, V> {
+    private static final int BIT = 5;
+    private static final int MASCHERA = (1 << BIT) - 1;
+
+    private static final MappaPersistente<?, ?> VUOTA = new MappaPersistente<>(new Nodo(0, new Object[0]), 0);
+
+    private final Nodo radice;
+    private final int dimensione;
+
+    private MappaPersistente(Nodo radice, int dimensione) {
+        this.radice = radice;
+        this.dimensione = dimensione;
+    }
+
+    /**
+     * Restituisce la mappa vuota.
+     *
+     * @param <K> Tipo delle chiavi.
+     * @param <V> Tipo dei valori.
+     * @return Mappa senza elementi.
+     * @since 1.0
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> MappaPersistente<K, V> vuota() {
+        return (MappaPersistente<K, V>) VUOTA;
+    }
+
+    /**
+     * Restituisce il valore associato alla chiave.
+     *
+     * @param chiave Chiave da cercare, must be non-null.
+     * @return Valore associato, oppure null se la chiave è assente.
+     * @since 1.0
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object chiave) {
+        Voce voce = cerca(radice, hash(chiave), chiave, 0);
+        return voce != null ? (V) voce.valore : null;
+    }
+
+    /**
+     * Indica se la chiave è presente.
+     *
+     * @param chiave Chiave da cercare, must be non-null.
+     * @return true se la mappa contiene la chiave.
+     * @since 1.0
+     */
+    public boolean contiene(Object chiave) {
+        return cerca(radice, hash(chiave), chiave, 0) != null;
+    }
+
+    /**
+     * Restituisce una mappa con la chiave associata al valore indicato.
+     *
+     * @param chiave Chiave, must be non-null.
+     * @param valore Valore da associare.
+     * @return Nuova mappa, oppure questa se l'associazione era già presente.
+     * @since 1.0
+     */
+    public MappaPersistente<K, V> con(K chiave, V valore) {
+        Objects.requireNonNull(chiave, "chiave");
+        boolean[] aggiunta = new boolean[1];
+        Nodo nuova = con(radice, new Voce(hash(chiave), chiave, valore), 0, aggiunta);
+        if (nuova == radice) {
+            return this;
+        }
+        return new MappaPersistente<>(nuova, aggiunta[0] ? dimensione + 1 : dimensione);
+    }
+
+    /**
+     * Restituisce una mappa senza la chiave indicata.
+     *
+     * @param chiave Chiave da rimuovere, must be non-null.
+     * @return Nuova mappa, oppure questa se la chiave era assente.
+     * @since 1.0
+     */
+    public MappaPersistente<K, V> senza(Object chiave) {
+        Object nuova = senza(radice, hash(chiave), chiave, 0);
+        if (nuova == radice) {
+            return this;
+        }
+        if (nuova == null) {
+            return vuota();
+        }
+        return new MappaPersistente<>((Nodo) nuova, dimensione - 1);
+    }
+
+    /**
+     * Restituisce il numero di chiavi.
+     *
+     * @return Dimensione della mappa.
+     * @since 1.0
+     */
+    public int dimensione() {
+        return dimensione;
+    }
+
+    /**
+     * Indica se la mappa è vuota.
+     *
+     * @return true se non ci sono chiavi.
+     * @since 1.0
+     */
+    public boolean isVuota() {
+        return dimensione == 0;
+    }
+
+    /**
+     * Visita tutte le associazioni, in un ordine non specificato.
+     *
+     * @param azione Azione da eseguire per ogni coppia chiave/valore.
+     * @since 1.0
+     */
+    public void perOgni(BiConsumer<? super K, ? super V> azione) {
+        visita(radice, azione);
+    }
+
+    private static int hash(Object chiave) {
+        int h = chiave.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int indice(int hash, int livello) {
+        return (hash >>> livello) & MASCHERA;
+    }
+
+    /** Coppia chiave/valore con l'hash già calcolato. */
+    private static final class Voce {
+        final int hash;
+        final Object chiave;
+        final Object valore;
+
+        Voce(int hash, Object chiave, Object valore) {
+            this.hash = hash;
+            this.chiave = chiave;
+            this.valore = valore;
+        }
+    }
+
+    /** Voci con lo stesso hash completo. */
+    private static final class Collisione {
+        final int hash;
+        final Voce[] voci;
+
+        Collisione(int hash, Voce[] voci) {
+            this.hash = hash;
+            this.voci = voci;
+        }
+    }
+
+    /** Nodo interno: bitmap degli slot occupati e figli compattati (Voce, Collisione o Nodo). */
+    private static final class Nodo {
+        final int bitmap;
+        final Object[] figli;
+
+        Nodo(int bitmap, Object[] figli) {
+            this.bitmap = bitmap;
+            this.figli = figli;
+        }
+    }
+
+    private static Voce cerca(Nodo nodo, int hash, Object chiave, int livello) {
+        while (true) {
+            int bit = 1 << indice(hash, livello);
+            if ((nodo.bitmap & bit) == 0) {
+                return null;
+            }
+            Object figlio = nodo.figli[Integer.bitCount(nodo.bitmap & (bit - 1))];
+            if (figlio instanceof Nodo) {
+                nodo = (Nodo) figlio;
+                livello += BIT;
+            } else if (figlio instanceof Voce) {
+                Voce voce = (Voce) figlio;
+                return voce.hash == hash && voce.chiave.equals(chiave) ? voce : null;
+            } else {
+                Collisione c = (Collisione) figlio;
+                if (c.hash != hash) {
+                    return null;
+                }
+                for (Voce voce : c.voci) {
+                    if (voce.chiave.equals(chiave)) {
+                        return voce;
+                    }
+                }
+                return null;
+            }
+        }
+    }
+
+    private static Nodo con(Nodo nodo, Voce nuova, int livello, boolean[] aggiunta) {
+        int bit = 1 << indice(nuova.hash, livello);
+        int pos = Integer.bitCount(nodo.bitmap & (bit - 1));
+        if ((nodo.bitmap & bit) == 0) {
+            Object[] figli = new Object[nodo.figli.length + 1];
+            System.arraycopy(nodo.figli, 0, figli, 0, pos);
+            figli[pos] = nuova;
+            System.arraycopy(nodo.figli, pos, figli, pos + 1, nodo.figli.length - pos);
+            aggiunta[0] = true;
+            return new Nodo(nodo.bitmap | bit, figli);
+        }
+
+        Object figlio = nodo.figli[pos];
+        Object sostituto;
+        if (figlio instanceof Nodo) {
+            sostituto = con((Nodo) figlio, nuova, livello + BIT, aggiunta);
+        } else if (figlio instanceof Voce) {
+            Voce voce = (Voce) figlio;
+            if (voce.hash == nuova.hash && voce.chiave.equals(nuova.chiave)) {
+                sostituto = voce.valore == nuova.valore ? voce : nuova;
+            } else {
+                sostituto = unisci(voce, voce.hash, nuova, livello + BIT);
+                aggiunta[0] = true;
+            }
+        } else {
+            Collisione c = (Collisione) figlio;
+            if (c.hash == nuova.hash) {
+                sostituto = conCollisione(c, nuova, aggiunta);
+            } else {
+                sostituto = unisci(c, c.hash, nuova, livello + BIT);
+                aggiunta[0] = true;
+            }
+        }
+        if (sostituto == figlio) {
+            return nodo;
+        }
+        Object[] figli = nodo.figli.clone();
+        figli[pos] = sostituto;
+        return new Nodo(nodo.bitmap, figli);
+    }
+
+    /**
+     * Crea il sottoalbero che contiene un elemento esistente (Voce o
+     * Collisione) e una nuova voce con hash diverso o uguale.
+     */
+    private static Object unisci(Object esistente, int hashEsistente, Voce nuova, int livello) {
+        if (hashEsistente == nuova.hash) {
+            Voce[] voci = esistente instanceof Voce
+                    ? new Voce[] {(Voce) esistente, nuova}
+                    : appendi(((Collisione) esistente).voci, nuova);
+            return new Collisione(nuova.hash, voci);
+        }
+        int a = indice(hashEsistente, livello);
+        int b = indice(nuova.hash, livello);
+        if (a == b) {
+            return new Nodo(1 << a, new Object[] {unisci(esistente, hashEsistente, nuova, livello + BIT)});
+        }
+        Object[] figli = a < b ? new Object[] {esistente, nuova} : new Object[] {nuova, esistente};
+        return new Nodo((1 << a) | (1 << b), figli);
+    }
+
+    private static Collisione conCollisione(Collisione c, Voce nuova, boolean[] aggiunta) {
+        for (int i = 0; i < c.voci.length; i++) {
+            if (c.voci[i].chiave.equals(nuova.chiave)) {
+                if (c.voci[i].valore == nuova.valore) {
+                    return c;
+                }
+                Voce[] voci = c.voci.clone();
+                voci[i] = nuova;
+                return new Collisione(c.hash, voci);
+            }
+        }
+        aggiunta[0] = true;
+        return new Collisione(c.hash, appendi(c.voci, nuova));
+    }
+
+    private static Voce[] appendi(Voce[] voci, Voce nuova) {
+        Voce[] risultato = Arrays.copyOf(voci, voci.length + 1);
+        risultato[voci.length] = nuova;
+        return risultato;
+    }
+
+    /**
+     * Rimuove la chiave dal sottoalbero.
+     *
+     * @return Il nodo stesso se la chiave è assente, null se il nodo resta
+     *         vuoto, altrimenti il sostituto (che può essere una singola Voce
+     *         quando un nodo interno resta con un solo elemento).
+     */
+    private static Object senza(Nodo nodo, int hash, Object chiave, int livello) {
+        int bit = 1 << indice(hash, livello);
+        if ((nodo.bitmap & bit) == 0) {
+            return nodo;
+        }
+        int pos = Integer.bitCount(nodo.bitmap & (bit - 1));
+        Object figlio = nodo.figli[pos];
+        Object sostituto;
+        if (figlio instanceof Nodo) {
+            sostituto = senza((Nodo) figlio, hash, chiave, livello + BIT);
+        } else if (figlio instanceof Voce) {
+            Voce voce = (Voce) figlio;
+            if (voce.hash != hash || !voce.chiave.equals(chiave)) {
+                return nodo;
+            }
+            sostituto = null;
+        } else {
+            Collisione c = (Collisione) figlio;
+            sostituto = c.hash == hash ? senzaCollisione(c, chiave) : c;
+        }
+        if (sostituto == figlio) {
+            return nodo;
+        }
+
+        if (sostituto == null) {
+            if (nodo.figli.length == 1) {
+                return null;
+            }
+            Object[] figli = new Object[nodo.figli.length - 1];
+            System.arraycopy(nodo.figli, 0, figli, 0, pos);
+            System.arraycopy(nodo.figli, pos + 1, figli, pos, figli.length - pos);
+            Nodo ridotto = new Nodo(nodo.bitmap & ~bit, figli);
+            return livello > 0 && figli.length == 1 && !(figli[0] instanceof Nodo) ? figli[0] : ridotto;
+        }
+        if (livello > 0 && nodo.figli.length == 1 && !(sostituto instanceof Nodo)) {
+            return sostituto; // il nodo resterebbe con un solo elemento: lo risale al genitore
+        }
+        Object[] figli = nodo.figli.clone();
+        figli[pos] = sostituto;
+        return new Nodo(nodo.bitmap, figli);
+    }
+
+    private static Object senzaCollisione(Collisione c, Object chiave) {
+        for (int i = 0; i < c.voci.length; i++) {
+            if (c.voci[i].chiave.equals(chiave)) {
+                if (c.voci.length == 2) {
+                    return c.voci[1 - i];
+                }
+                Voce[] voci = new Voce[c.voci.length - 1];
+                System.arraycopy(c.voci, 0, voci, 0, i);
+                System.arraycopy(c.voci, i + 1, voci, i, voci.length - i);
+                return new Collisione(c.hash, voci);
+            }
+        }
+        return c;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> void visita(Nodo nodo, BiConsumer<? super K, ? super V> azione) {
+        for (Object figlio : nodo.figli) {
+            if (figlio instanceof Nodo) {
+                visita((Nodo) figlio, azione);
+            } else if (figlio instanceof Voce) {
+                Voce voce = (Voce) figlio;
+                azione.accept((K) voce.chiave, (V) voce.valore);
+            } else {
+                for (Voce voce : ((Collisione) figlio).voci) {
+                    azione.accept((K) voce.chiave, (V) voce.valore);
+                }
+            }
+        }
+    }
+}
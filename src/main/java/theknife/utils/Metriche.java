@@ -0,0 +1,254 @@
+package theknife.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Registro delle metriche dell'applicazione: contatori, tempi e indicatori.
+ * <p>
+ * I contatori sono {@link LongAdder} e i tempi {@link IstogrammaLatenze},
+ * quindi registrare una misura non prende lock e costa pochi nanosecondi
+ * anche con molti thread; gli indicatori sono funzioni lette solo quando si
+ * produce un riepilogo. Le metriche vengono create al primo uso e hanno
+ * nomi puntati ({@code "recensioni.aggiunta"}).
+ * </p>
+ * <p>
+ * Con la proprietà di sistema {@code -Dtheknife.metriche=<secondi>} viene
+ * stampata periodicamente una riga di riepilogo e salvata un'istantanea
+ * JSON in {@code metriche.json} (oppure nel file indicato da
+ * {@code -Dtheknife.metriche.file}).
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public final class Metriche {
+    private static final Map<String, LongAdder> contatori = new ConcurrentHashMap<>();
+    private static final Map<String, IstogrammaLatenze> tempi = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> indicatori = new ConcurrentHashMap<>();
+
+    private static ScheduledExecutorService registrazione;
+
+    private Metriche() {
+    }
+
+    /**
+     * Restituisce il contatore con il nome indicato, creandolo se necessario.
+     *
+     * @param nome Nome del contatore.
+     * @return Contatore condiviso.
+     * @since 1.0
+     */
+    public static LongAdder contatore(String nome) {
+        return contatori.computeIfAbsent(nome, n -> new LongAdder());
+    }
+
+    /**
+     * Incrementa di uno il contatore indicato.
+     *
+     * @param nome Nome del contatore.
+     * @since 1.0
+     */
+    public static void incrementa(String nome) {
+        contatore(nome).increment();
+    }
+
+    /**
+     * Restituisce l'istogramma dei tempi con il nome indicato, creandolo se necessario.
+     *
+     * @param nome Nome del tempo misurato.
+     * @return Istogramma condiviso.
+     * @since 1.0
+     */
+    public static IstogrammaLatenze tempo(String nome) {
+        return tempi.computeIfAbsent(nome, n -> new IstogrammaLatenze());
+    }
+
+    /**
+     * Registra il tempo trascorso da {@code inizio}, letto con {@link System#nanoTime()}.
+     * <p>
+     * Uso tipico: {@code long t0 = System.nanoTime(); ...; Metriche.registra("ricerca", t0);}
+     * </p>
+     *
+     * @param nome Nome del tempo misurato.
+     * @param inizio Valore di {@link System#nanoTime()} all'inizio dell'operazione.
+     * @since 1.0
+     */
+    public static void registra(String nome, long inizio) {
+        tempo(nome).registra(System.nanoTime() - inizio);
+    }
+
+    /**
+     * Registra un indicatore, letto a ogni riepilogo. Un indicatore con lo
+     * stesso nome viene sostituito.
+     *
+     * @param nome Nome dell'indicatore.
+     * @param valore Funzione che restituisce il valore corrente; deve essere economica e thread-safe.
+     * @since 1.0
+     */
+    public static void indicatore(String nome, LongSupplier valore) {
+        indicatori.put(nome, valore);
+    }
+
+    /**
+     * Riepilogo su una riga, adatto ai log: tempi (conteggio, p50, p99 in ms),
+     * contatori e indicatori, in ordine di nome.
+     *
+     * @return Testo del riepilogo.
+     * @since 1.0
+     */
+    public static String riga() {
+        StringBuilder sb = new StringBuilder("metriche:");
+        for (Map.Entry<String, IstogrammaLatenze> e : new TreeMap<>(tempi).entrySet()) {
+            IstogrammaLatenze t = e.getValue();
+            sb.append(String.format(Locale.ROOT, " %s[n=%d p50=%.2fms p99=%.2fms]", e.getKey(),
+                    t.getConteggio(), t.getPercentile(50) / 1e6, t.getPercentile(99) / 1e6));
+        }
+        for (Map.Entry<String, LongAdder> e : new TreeMap<>(contatori).entrySet()) {
+            sb.append(' ').append(e.getKey()).append('=').append(e.getValue().sum());
+        }
+        for (Map.Entry<String, LongSupplier> e : new TreeMap<>(indicatori).entrySet()) {
+            sb.append(' ').append(e.getKey()).append('=').append(leggi(e.getValue()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Istantanea di tutte le metriche in formato JSON.
+     *
+     * @return Documento JSON con le sezioni "tempi" (in millisecondi), "contatori" e "indicatori".
+     * @since 1.0
+     */
+    public static String json() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n  \"istante\": \"").append(Instant.now()).append("\",\n  \"tempi\": {");
+        String separatore = "\n";
+        for (Map.Entry<String, IstogrammaLatenze> e : new TreeMap<>(tempi).entrySet()) {
+            IstogrammaLatenze t = e.getValue();
+            sb.append(separatore).append("    ").append(stringaJson(e.getKey())).append(String.format(Locale.ROOT,
+                    ": {\"conteggio\": %d, \"media\": %.3f, \"p50\": %.3f, \"p90\": %.3f, \"p99\": %.3f, \"p999\": %.3f, \"massimo\": %.3f}",
+                    t.getConteggio(), t.getMedia() / 1e6, t.getPercentile(50) / 1e6, t.getPercentile(90) / 1e6,
+                    t.getPercentile(99) / 1e6, t.getPercentile(99.9) / 1e6, t.getMassimo() / 1e6));
+            separatore = ",\n";
+        }
+        sb.append("\n  },\n  \"contatori\": {");
+        separatore = "\n";
+        for (Map.Entry<String, LongAdder> e : new TreeMap<>(contatori).entrySet()) {
+            sb.append(separatore).append("    ").append(stringaJson(e.getKey())).append(": ").append(e.getValue().sum());
+            separatore = ",\n";
+        }
+        sb.append("\n  },\n  \"indicatori\": {");
+        separatore = "\n";
+        for (Map.Entry<String, LongSupplier> e : new TreeMap<>(indicatori).entrySet()) {
+            sb.append(separatore).append("    ").append(stringaJson(e.getKey())).append(": ").append(leggi(e.getValue()));
+            separatore = ",\n";
+        }
+        sb.append("\n  }\n}\n");
+        return sb.toString();
+    }
+
+    /**
+     * Salva l'istantanea JSON su file, sostituendolo in modo atomico.
+     *
+     * @param file File di destinazione.
+     * @throws IOException se la scrittura non riesce.
+     * @since 1.0
+     */
+    public static void salvaJson(Path file) throws IOException {
+        Path assoluto = file.toAbsolutePath();
+        Path temporaneo = assoluto.resolveSibling(assoluto.getFileName() + ".tmp");
+        try (Writer w = Files.newBufferedWriter(temporaneo, StandardCharsets.UTF_8)) {
+            w.write(json());
+        }
+        try {
+            Files.move(temporaneo, assoluto, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaneo, assoluto, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Avvia la registrazione periodica se richiesta con
+     * {@code -Dtheknife.metriche=<secondi>}; altrimenti non fa nulla.
+     *
+     * @since 1.0
+     */
+    public static void avviaDaConfigurazione() {
+        long secondi = Long.getLong("theknife.metriche", 0L);
+        if (secondi > 0) {
+            avviaRegistrazione(secondi, Paths.get(System.getProperty("theknife.metriche.file", "metriche.json")));
+        }
+    }
+
+    /**
+     * Stampa la riga di riepilogo e salva l'istantanea JSON a intervalli
+     * regolari, e un'ultima volta alla chiusura della JVM.
+     *
+     * @param secondi Intervallo tra due registrazioni, must be > 0.
+     * @param file File JSON da aggiornare.
+     * @since 1.0
+     */
+    public static synchronized void avviaRegistrazione(long secondi, Path file) {
+        if (registrazione != null) {
+            return;
+        }
+        registrazione = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "theknife-metriche");
+            t.setDaemon(true);
+            return t;
+        });
+        Runnable registra = () -> {
+            System.out.println(riga());
+            try {
+                salvaJson(file);
+            } catch (IOException e) {
+                System.err.println("Errore nel salvataggio delle metriche: " + e.getMessage());
+            }
+        };
+        registrazione.scheduleAtFixedRate(registra, secondi, secondi, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(registra, "theknife-metriche-chiusura"));
+        System.out.println("Metriche registrate ogni " + secondi + " s in " + file.toAbsolutePath());
+    }
+
+    private static long leggi(LongSupplier indicatore) {
+        try {
+            return indicatore.getAsLong();
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static String stringaJson(String testo) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : testo.toCharArray()) {
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
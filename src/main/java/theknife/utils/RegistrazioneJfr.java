@@ -0,0 +1,123 @@
+package theknife.utils;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Registrazione JFR sempre attiva, a buffer circolare, da salvare su richiesta.
+ * <p>
+ * Si attiva con {@code -Dtheknife.jfr=true}: la registrazione usa la
+ * configurazione "default" del JDK (overhead intorno all'1%) più gli eventi
+ * di {@link EventiJfr}, e conserva solo gli ultimi minuti
+ * ({@code -Dtheknife.jfr.minuti}, 10 per impostazione predefinita) entro
+ * una dimensione massima ({@code -Dtheknife.jfr.mb}, 64). Quando un chiosco
+ * si blocca, {@link #salva()} (Ctrl+Maiusc+J nella finestra principale,
+ * oppure {@code jcmd <pid> JFR.dump name=theknife}) scrive su file ciò che è
+ * successo prima del blocco.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public final class RegistrazioneJfr {
+    private static final String NOME = "theknife";
+    private static final String[] EVENTI = {
+            "theknife.CatalogLoad", "theknife.CsvRewrite", "theknife.SearchQuery",
+            "theknife.BcryptVerify", "theknife.ViewLoad"
+    };
+
+    private static Recording registrazione;
+
+    private RegistrazioneJfr() {
+    }
+
+    /**
+     * Avvia la registrazione se richiesta con {@code -Dtheknife.jfr=true};
+     * altrimenti non fa nulla.
+     *
+     * @since 1.0
+     */
+    public static void avviaDaConfigurazione() {
+        if (Boolean.getBoolean("theknife.jfr")) {
+            avvia(Duration.ofMinutes(Long.getLong("theknife.jfr.minuti", 10L)),
+                    Long.getLong("theknife.jfr.mb", 64L) * 1024 * 1024);
+        }
+    }
+
+    /**
+     * Avvia la registrazione a buffer circolare. Non fa nulla se è già attiva.
+     *
+     * @param etaMassima Età massima degli eventi conservati.
+     * @param byteMassimi Dimensione massima dei dati conservati.
+     * @return true se la registrazione è attiva al termine della chiamata.
+     * @since 1.0
+     */
+    public static synchronized boolean avvia(Duration etaMassima, long byteMassimi) {
+        if (registrazione != null) {
+            return true;
+        }
+        try {
+            Recording r = new Recording(Configuration.getConfiguration("default"));
+            r.setName(NOME);
+            r.setToDisk(true);
+            r.setMaxAge(etaMassima);
+            r.setMaxSize(byteMassimi);
+            for (String evento : EVENTI) {
+                r.enable(evento).withThreshold(Duration.ZERO);
+            }
+            r.start();
+            registrazione = r;
+            System.out.println("Registrazione JFR attiva (ultimi " + etaMassima.toMinutes() + " minuti)");
+            return true;
+        } catch (IOException | ParseException | RuntimeException e) {
+            System.err.println("Impossibile avviare la registrazione JFR: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Indica se la registrazione a buffer circolare è attiva.
+     *
+     * @return true se attiva.
+     * @since 1.0
+     */
+    public static synchronized boolean isAttiva() {
+        return registrazione != null;
+    }
+
+    /**
+     * Salva il contenuto attuale del buffer in un file .jfr nella cartella
+     * {@code -Dtheknife.jfr.cartella} (la cartella corrente se non indicata).
+     * La registrazione continua.
+     *
+     * @return Percorso del file scritto; null se la registrazione non è attiva o il salvataggio non riesce.
+     * @since 1.0
+     */
+    public static synchronized Path salva() {
+        if (registrazione == null) {
+            System.err.println("Registrazione JFR non attiva: avviare con -Dtheknife.jfr=true");
+            return null;
+        }
+        try {
+            Path cartella = Paths.get(System.getProperty("theknife.jfr.cartella", "."));
+            Files.createDirectories(cartella);
+            Path file = cartella.resolve("theknife-"
+                    + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".jfr");
+            registrazione.dump(file);
+            System.out.println("Registrazione JFR salvata in " + file.toAbsolutePath());
+            return file;
+        } catch (IOException e) {
+            System.err.println("Errore nel salvataggio della registrazione JFR: " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package theknife.utils;
+
+import theknife.models.Utente;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gestisce le sessioni locali degli utenti autenticati.
+ * <p>
+ * Dopo un login riuscito viene emesso un token firmato con HMAC-SHA256 e
+ * con scadenza, salvato in un file locale. Al riavvio dell'applicazione il
+ * token viene verificato (firma e scadenza) e l'utente viene ripristinato
+ * senza ripetere la verifica BCrypt della password. I token già verificati
+ * sono mantenuti in una mappa in memoria token -> utente.
+ * </p>
+ * <p>
+ * I token revocati (logout) sono annotati anche nel file
+ * {@code data/sessione.revocati}, una riga "scadenza firma" per token, così
+ * restano invalidi dopo un riavvio fino alla loro scadenza. Le voci scadute
+ * vengono eliminate periodicamente dalla memoria e dal file.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public class SessionManager {
+    private static final String SESSIONE_FILE = "data/sessione.txt";
+    private static final String CHIAVE_FILE = "data/sessione.key";
+    private static final String ALGORITMO_HMAC = "HmacSHA256";
+    private static final String REVOCATI_FILE = "data/sessione.revocati";
+    private static final long DURATA_SESSIONE_MS = 7L * 24 * 60 * 60 * 1000; // 7 giorni
+    private static final long INTERVALLO_PULIZIA_MS = 60_000;
+    private static final int MAX_SESSIONI_IN_MEMORIA = 100_000;
+
+    private static final Map<String, Sessione> sessioniAttive = new ConcurrentHashMap<>(); // token -> sessione
+    private static final Map<String, Long> tokenRevocati = new ConcurrentHashMap<>(); // firma -> scadenza
+    private static final Object lockRevocati = new Object();
+    private static volatile boolean revocatiCaricati;
+    private static volatile long prossimaPulizia;
+    private static final SecureRandom random = new SecureRandom();
+    private static byte[] chiave;
+    private static volatile String tokenCorrente;
+
+    /**
+     * Sessione verificata: utente associato e istante di scadenza.
+     */
+    private static class Sessione {
+        private final Utente utente;
+        private final long scadenza;
+
+        Sessione(Utente utente, long scadenza) {
+            this.utente = utente;
+            this.scadenza = scadenza;
+        }
+    }
+
+    /**
+     * Crea una nuova sessione per l'utente, la registra in memoria e la salva
+     * nel file locale come sessione corrente.
+     *
+     * @param utente Utente appena autenticato, must be non-null.
+     * @return Token firmato della sessione; null se non è stato possibile firmarlo.
+     * @since 1.0
+     */
+    public static String creaSessione(Utente utente) {
+        String token = emettiToken(utente);
+        if (token == null) {
+            return null;
+        }
+        tokenCorrente = token;
+
+        try {
+            Path file = Paths.get(SESSIONE_FILE);
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, token);
+        } catch (IOException e) {
+            System.err.println("Errore nel salvataggio della sessione: " + e.getMessage());
+        }
+        return token;
+    }
+
+    /**
+     * Emette un token firmato per l'utente e lo registra in memoria, senza
+     * salvarlo come sessione corrente su file.
+     *
+     * @param utente Utente autenticato, must be non-null.
+     * @return Token firmato; null se non è stato possibile firmarlo.
+     * @since 1.0
+     */
+    public static String emettiToken(Utente utente) {
+        long scadenza = System.currentTimeMillis() + DURATA_SESSIONE_MS;
+        byte[] nonce = new byte[16];
+        random.nextBytes(nonce);
+
+        String payload = codifica(utente.getUsername().getBytes(StandardCharsets.UTF_8))
+                + "." + scadenza
+                + "." + codifica(nonce);
+        byte[] firma = firma(payload);
+        if (firma == null) {
+            return null;
+        }
+
+        String token = payload + "." + codifica(firma);
+        pulisciSeNecessario();
+        sessioniAttive.put(token, new Sessione(utente, scadenza));
+        return token;
+    }
+
+    /**
+     * Ripristina la sessione salvata nel file locale, se presente e valida.
+     *
+     * @return Utente della sessione salvata; null se assente, scaduta o non valida.
+     * @since 1.0
+     */
+    public static Utente ripristinaSessione() {
+        Path file = Paths.get(SESSIONE_FILE);
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        try {
+            String token = Files.readString(file).trim();
+            Utente utente = validaToken(token);
+            if (utente != null) {
+                tokenCorrente = token;
+            } else {
+                Files.deleteIfExists(file);
+            }
+            return utente;
+        } catch (IOException e) {
+            System.err.println("Errore nel ripristino della sessione: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Verifica un token di sessione e restituisce l'utente associato.
+     * <p>
+     * I token già noti vengono risolti dalla mappa in memoria; gli altri sono
+     * verificati tramite firma HMAC e scadenza, caricando l'utente dal CSV.
+     * </p>
+     *
+     * @param token Token da verificare, può essere null.
+     * @return Utente associato al token; null se il token non è valido, scaduto o revocato.
+     * @since 1.0
+     */
+    public static Utente validaToken(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        caricaRevocati();
+        if (tokenRevocati.containsKey(token.substring(token.lastIndexOf('.') + 1))) {
+            return null;
+        }
+
+        Sessione sessione = sessioniAttive.get(token);
+        if (sessione != null) {
+            if (sessione.scadenza < System.currentTimeMillis()) {
+                sessioniAttive.remove(token);
+                return null;
+            }
+            return sessione.utente;
+        }
+
+        String[] parti = token.split("\\.");
+        if (parti.length != 4) {
+            return null;
+        }
+
+        String payload = parti[0] + "." + parti[1] + "." + parti[2];
+        byte[] firmaAttesa = firma(payload);
+        byte[] firmaRicevuta;
+        long scadenza;
+        String username;
+        try {
+            firmaRicevuta = Base64.getUrlDecoder().decode(parti[3]);
+            scadenza = Long.parseLong(parti[1]);
+            username = new String(Base64.getUrlDecoder().decode(parti[0]), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        if (firmaAttesa == null || !MessageDigest.isEqual(firmaAttesa, firmaRicevuta)
+                || scadenza < System.currentTimeMillis()) {
+            return null;
+        }
+
+        List<Utente> utenti = FileManager.caricaUtenti();
+        for (Utente u : utenti) {
+            if (u.getUsername().equals(username)) {
+                pulisciSeNecessario();
+                sessioniAttive.put(token, new Sessione(u, scadenza));
+                return u;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Revoca un token: lo rimuove dalla mappa in memoria e ne impedisce il
+     * riuso, anche dopo un riavvio, fino alla sua scadenza.
+     *
+     * @param token Token da revocare, può essere null.
+     * @since 1.0
+     */
+    public static void revocaToken(String token) {
+        if (token == null) {
+            return;
+        }
+        sessioniAttive.remove(token);
+        String[] parti = token.split("\\.");
+        long scadenza;
+        try {
+            scadenza = parti.length == 4 ? Long.parseLong(parti[1]) : 0;
+        } catch (NumberFormatException e) {
+            scadenza = 0;
+        }
+        if (scadenza < System.currentTimeMillis()) {
+            // Token malformato o già scaduto: validaToken lo rifiuta comunque
+            return;
+        }
+
+        caricaRevocati();
+        synchronized (lockRevocati) {
+            if (tokenRevocati.putIfAbsent(parti[3], scadenza) != null) {
+                return;
+            }
+            try {
+                Path file = Paths.get(REVOCATI_FILE);
+                Files.createDirectories(file.getParent());
+                Files.writeString(file, scadenza + " " + parti[3] + "\n", StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                // La revoca resta valida fino al riavvio
+                System.err.println("Errore nel salvataggio della revoca: " + e.getMessage());
+            }
+        }
+        pulisciSeNecessario();
+    }
+
+    /**
+     * Carica dal file le revoche non ancora scadute, al primo utilizzo.
+     * Il file viene riscritto senza le voci scadute.
+     */
+    private static void caricaRevocati() {
+        if (revocatiCaricati) {
+            return;
+        }
+        synchronized (lockRevocati) {
+            if (revocatiCaricati) {
+                return;
+            }
+            revocatiCaricati = true;
+            Path file = Paths.get(REVOCATI_FILE);
+            if (!Files.exists(file)) {
+                return;
+            }
+            long adesso = System.currentTimeMillis();
+            int scartate = 0;
+            try {
+                for (String riga : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    String[] campi = riga.trim().split(" ");
+                    try {
+                        long scadenza = Long.parseLong(campi[0]);
+                        if (campi.length == 2 && scadenza >= adesso) {
+                            tokenRevocati.put(campi[1], scadenza);
+                            continue;
+                        }
+                    } catch (NumberFormatException e) {
+                        // Riga non valida: viene scartata
+                    }
+                    scartate++;
+                }
+            } catch (IOException e) {
+                System.err.println("Errore nel caricamento delle revoche: " + e.getMessage());
+                return;
+            }
+            if (scartate > 0) {
+                riscriviRevocati();
+            }
+        }
+    }
+
+    /**
+     * Riscrive il file delle revoche con le voci in memoria. Va chiamato con
+     * il lock delle revoche.
+     */
+    private static void riscriviRevocati() {
+        StringBuilder testo = new StringBuilder();
+        tokenRevocati.forEach((firma, scadenza) -> testo.append(scadenza).append(' ').append(firma).append('\n'));
+        try {
+            Path file = Paths.get(REVOCATI_FILE);
+            Path temporaneo = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.createDirectories(file.getParent());
+            Files.writeString(temporaneo, testo, StandardCharsets.UTF_8);
+            Files.move(temporaneo, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Errore nella riscrittura delle revoche: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Elimina al più una volta al minuto le sessioni e le revoche scadute.
+     * Se le sessioni in memoria restano troppe la mappa viene svuotata: è solo
+     * una cache, i token validi vengono verificati di nuovo con la firma.
+     */
+    private static void pulisciSeNecessario() {
+        long adesso = System.currentTimeMillis();
+        if (adesso < prossimaPulizia && sessioniAttive.size() < MAX_SESSIONI_IN_MEMORIA) {
+            return;
+        }
+        prossimaPulizia = adesso + INTERVALLO_PULIZIA_MS;
+        sessioniAttive.values().removeIf(sessione -> sessione.scadenza < adesso);
+        if (sessioniAttive.size() >= MAX_SESSIONI_IN_MEMORIA) {
+            sessioniAttive.clear();
+        }
+        synchronized (lockRevocati) {
+            if (tokenRevocati.values().removeIf(scadenza -> scadenza < adesso)) {
+                riscriviRevocati();
+            }
+        }
+    }
+
+    /**
+     * Revoca la sessione corrente (logout) ed elimina il file di sessione.
+     *
+     * @since 1.0
+     */
+    public static void revocaSessioneCorrente() {
+        revocaToken(tokenCorrente);
+        tokenCorrente = null;
+
+        try {
+            Files.deleteIfExists(Paths.get(SESSIONE_FILE));
+        } catch (IOException e) {
+            System.err.println("Errore nella rimozione della sessione: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Calcola la firma HMAC-SHA256 del payload con la chiave locale.
+     *
+     * @param payload Testo da firmare.
+     * @return Firma in byte; null in caso di errore crittografico.
+     * @since 1.0
+     */
+    private static byte[] firma(String payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITMO_HMAC);
+            mac.init(new SecretKeySpec(getChiave(), ALGORITMO_HMAC));
+            return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            System.err.println("Errore nella firma della sessione: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Restituisce la chiave HMAC locale, generandola e salvandola al primo utilizzo.
+     *
+     * @return Chiave segreta di 32 byte.
+     * @since 1.0
+     */
+    private static synchronized byte[] getChiave() {
+        if (chiave != null) {
+            return chiave;
+        }
+
+        Path file = Paths.get(CHIAVE_FILE);
+        try {
+            if (Files.exists(file)) {
+                chiave = Files.readAllBytes(file);
+            }
+            if (chiave == null || chiave.length < 32) {
+                chiave = new byte[32];
+                random.nextBytes(chiave);
+                Files.createDirectories(file.getParent());
+                Files.write(file, chiave);
+            }
+        } catch (IOException e) {
+            // Senza file la chiave vale solo per questa esecuzione
+            System.err.println("Errore nella gestione della chiave di sessione: " + e.getMessage());
+            if (chiave == null || chiave.length < 32) {
+                chiave = new byte[32];
+                random.nextBytes(chiave);
+            }
+        }
+        return chiave;
+    }
+
+    private static String codifica(byte[] dati) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(dati);
+    }
+}
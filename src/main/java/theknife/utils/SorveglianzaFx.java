@@ -0,0 +1,225 @@
+package theknife.utils;
+
+import javafx.animation.AnimationTimer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorveglianza del JavaFX Application Thread: misura la durata dei frame e
+ * individua i blocchi dell'interfaccia.
+ * <p>
+ * Un {@link AnimationTimer} annota l'istante di ogni impulso (pulse) di
+ * JavaFX; l'intervallo tra due impulsi è il tempo del frame, registrato in
+ * {@link Metriche} come {@code "fx.frame"}. Un thread di campionamento
+ * controlla a intervalli brevi da quanto tempo non arriva un impulso: oltre
+ * la soglia il thread FX è bloccato, e ne viene letto lo stack a ogni
+ * controllo. Alla fine del blocco i campioni vengono attribuiti al metodo
+ * del controller (package {@code theknife.controllers}) più interno nello
+ * stack, cioè all'handler che ha causato il blocco, e al punto più interno
+ * fuori dal JDK (ad esempio {@code BCrypt.crypt_raw} o {@code Archivio.scriviCsv}).
+ * </p>
+ * <p>
+ * Si attiva con {@code -Dtheknife.fx.sorveglianza=<soglia in ms>}; il
+ * riepilogo (p50/p99 dei frame e handler più lenti) viene stampato alla
+ * chiusura. Il timer sempre attivo tiene JavaFX a 60 impulsi al secondo,
+ * quindi è una modalità diagnostica, non da lasciare attiva in produzione.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public final class SorveglianzaFx {
+    private static final long CAMPIONAMENTO_MS = 10;
+    private static final String PACKAGE_CONTROLLER = "theknife.controllers.";
+    private static final String[] PACKAGE_JDK = {"java.", "javax.", "jdk.", "sun.", "com.sun.", "javafx."};
+
+    /** Blocchi attribuiti a un handler. */
+    private static final class Blocchi {
+        long conteggio;
+        long totaleMs;
+        long massimoMs;
+        final Map<String, Integer> puntiInterni = new HashMap<>();
+    }
+
+    private static volatile Thread threadFx;
+    private static volatile long ultimoImpulso;
+    private static long sogliaNanos;
+    private static boolean avviata;
+
+    // Stato del campionatore, usato solo dal suo thread
+    private static final Map<String, Integer> campioniHandler = new HashMap<>();
+    private static final Map<String, Integer> campioniInterni = new HashMap<>();
+    private static long impulsoBloccato = -1;
+
+    // Blocchi per handler, letti anche dal riepilogo
+    private static final Map<String, Blocchi> perHandler = new HashMap<>();
+
+    private SorveglianzaFx() {
+    }
+
+    /**
+     * Avvia la sorveglianza se richiesta con {@code -Dtheknife.fx.sorveglianza=<ms>};
+     * altrimenti non fa nulla. Va chiamato sul JavaFX Application Thread.
+     *
+     * @since 1.0
+     */
+    public static void avviaDaConfigurazione() {
+        long soglia = Long.getLong("theknife.fx.sorveglianza", 0L);
+        if (soglia > 0) {
+            avvia(soglia);
+        }
+    }
+
+    /**
+     * Avvia la sorveglianza. Va chiamato sul JavaFX Application Thread; le
+     * chiamate successive alla prima non hanno effetto.
+     *
+     * @param sogliaMs Durata oltre la quale un frame è considerato un blocco, must be > 0.
+     * @since 1.0
+     */
+    public static synchronized void avvia(long sogliaMs) {
+        if (avviata) {
+            return;
+        }
+        avviata = true;
+        sogliaNanos = TimeUnit.MILLISECONDS.toNanos(sogliaMs);
+        threadFx = Thread.currentThread();
+        ultimoImpulso = System.nanoTime();
+
+        IstogrammaLatenze frame = Metriche.tempo("fx.frame");
+        new AnimationTimer() {
+            @Override
+            public void handle(long adesso) {
+                long istante = System.nanoTime();
+                frame.registra(istante - ultimoImpulso);
+                ultimoImpulso = istante;
+            }
+        }.start();
+
+        Thread campionatore = new Thread(SorveglianzaFx::campiona, "theknife-fx-sorveglianza");
+        campionatore.setDaemon(true);
+        campionatore.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println(riepilogo()),
+                "theknife-fx-sorveglianza-chiusura"));
+        System.out.println("Sorveglianza del thread FX attiva (soglia " + sogliaMs + " ms)");
+    }
+
+    private static void campiona() {
+        while (true) {
+            try {
+                Thread.sleep(CAMPIONAMENTO_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long impulso = ultimoImpulso;
+            if (impulsoBloccato >= 0 && impulso != impulsoBloccato) {
+                // È arrivato un nuovo impulso: il blocco è finito
+                chiudiBlocco(impulso - impulsoBloccato);
+            }
+            if (System.nanoTime() - impulso > sogliaNanos) {
+                impulsoBloccato = impulso;
+                registraCampione(threadFx.getStackTrace());
+            }
+        }
+    }
+
+    private static void registraCampione(StackTraceElement[] stack) {
+        String handler = null;
+        String interno = null;
+        for (StackTraceElement e : stack) {
+            if (interno == null && !isJdk(e.getClassName())) {
+                interno = nomeBreve(e);
+            }
+            if (e.getClassName().startsWith(PACKAGE_CONTROLLER)) {
+                handler = nomeBreve(e);
+                break;
+            }
+        }
+        if (handler == null) {
+            // Blocco fuori dai controller (layout, CSS, rendering): conta il punto più in alto dello stack
+            handler = stack.length > 0 ? "(JavaFX) " + nomeBreve(stack[0]) : "(sconosciuto)";
+        }
+        campioniHandler.merge(handler, 1, Integer::sum);
+        if (interno != null) {
+            campioniInterni.merge(interno, 1, Integer::sum);
+        }
+    }
+
+    private static void chiudiBlocco(long durataNanos) {
+        String handler = piuFrequente(campioniHandler);
+        String interno = piuFrequente(campioniInterni);
+        long durataMs = TimeUnit.NANOSECONDS.toMillis(durataNanos);
+        synchronized (perHandler) {
+            Blocchi b = perHandler.computeIfAbsent(handler, h -> new Blocchi());
+            b.conteggio++;
+            b.totaleMs += durataMs;
+            b.massimoMs = Math.max(b.massimoMs, durataMs);
+            if (interno != null) {
+                b.puntiInterni.merge(interno, 1, Integer::sum);
+            }
+        }
+        Metriche.incrementa("fx.blocchi");
+        System.err.println("Thread FX bloccato per " + durataMs + " ms in " + handler
+                + (interno != null && !interno.equals(handler) ? " (in " + interno + ")" : ""));
+        campioniHandler.clear();
+        campioniInterni.clear();
+        impulsoBloccato = -1;
+    }
+
+    /**
+     * Riepilogo della sorveglianza: percentili dei frame e handler
+     * responsabili dei blocchi, ordinati per tempo totale.
+     *
+     * @return Testo su più righe.
+     * @since 1.0
+     */
+    public static String riepilogo() {
+        IstogrammaLatenze frame = Metriche.tempo("fx.frame");
+        StringBuilder sb = new StringBuilder(String.format(Locale.ROOT,
+                "Frame JavaFX: n=%d p50=%.1fms p99=%.1fms max=%.1fms",
+                frame.getConteggio(), frame.getPercentile(50) / 1e6, frame.getPercentile(99) / 1e6,
+                frame.getMassimo() / 1e6));
+        List<Map.Entry<String, Blocchi>> voci;
+        synchronized (perHandler) {
+            voci = new ArrayList<>(perHandler.entrySet());
+            voci.sort(Comparator.comparingLong((Map.Entry<String, Blocchi> e) -> e.getValue().totaleMs).reversed());
+            for (Map.Entry<String, Blocchi> e : voci) {
+                Blocchi b = e.getValue();
+                sb.append(String.format(Locale.ROOT, "%n  %-60s blocchi=%d totale=%dms max=%dms",
+                        e.getKey(), b.conteggio, b.totaleMs, b.massimoMs));
+                String interno = piuFrequente(b.puntiInterni);
+                if (interno != null && !interno.equals(e.getKey())) {
+                    sb.append(" in ").append(interno);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String piuFrequente(Map<String, Integer> campioni) {
+        return campioni.entrySet().stream()
+                .max(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .orElse(null);
+    }
+
+    private static boolean isJdk(String classe) {
+        for (String prefisso : PACKAGE_JDK) {
+            if (classe.startsWith(prefisso)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String nomeBreve(StackTraceElement e) {
+        String classe = e.getClassName();
+        return classe.substring(classe.lastIndexOf('.') + 1) + "." + e.getMethodName();
+    }
+}
@@ -0,0 +1,81 @@
+package theknife.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket senza lock per limitare la frequenza di un'operazione.
+ * <p>
+ * Lo stato è un singolo AtomicLong che contiene l'istante teorico (in nanosecondi)
+ * in cui il secchio tornerà pieno: consumare un gettone sposta l'istante in avanti
+ * di un intervallo di ricarica, e la richiesta viene rifiutata se l'istante supera
+ * "adesso" di più della capacità del secchio. Gli aggiornamenti usano compareAndSet,
+ * quindi più thread possono consumare in parallelo senza bloccarsi.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public class TokenBucket {
+    private final long intervalloNanos; // tempo necessario a rigenerare un gettone
+    private final long tolleranzaNanos; // anticipo massimo consentito (capacità - 1 gettoni)
+    private final AtomicLong prossimoPieno;
+
+    /**
+     * Crea un secchio pieno.
+     *
+     * @param capacita Numero massimo di gettoni consumabili in raffica, must be > 0.
+     * @param intervalloRicarica Tempo per rigenerare un gettone, must be > 0.
+     * @param unita Unità di misura dell'intervallo.
+     * @since 1.0
+     */
+    public TokenBucket(int capacita, long intervalloRicarica, TimeUnit unita) {
+        if (capacita <= 0 || intervalloRicarica <= 0) {
+            throw new IllegalArgumentException("Capacità e intervallo devono essere positivi");
+        }
+        this.intervalloNanos = unita.toNanos(intervalloRicarica);
+        this.tolleranzaNanos = (capacita - 1) * intervalloNanos;
+        this.prossimoPieno = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Tenta di consumare un gettone.
+     *
+     * @return true se il gettone è stato consumato, false se il secchio è vuoto.
+     * @since 1.0
+     */
+    public boolean tryConsume() {
+        long adesso = System.nanoTime();
+        while (true) {
+            long corrente = prossimoPieno.get();
+            long base = corrente - adesso > 0 ? corrente : adesso;
+            if (base - adesso > tolleranzaNanos) {
+                return false;
+            }
+            if (prossimoPieno.compareAndSet(corrente, base + intervalloNanos)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Indica se il prossimo tentativo verrebbe rifiutato, senza consumare gettoni.
+     *
+     * @return true se il secchio è vuoto.
+     * @since 1.0
+     */
+    public boolean isEsaurito() {
+        long adesso = System.nanoTime();
+        return prossimoPieno.get() - adesso > tolleranzaNanos;
+    }
+
+    /**
+     * Indica se il secchio è tornato alla capacità massima.
+     *
+     * @return true se non ci sono consumi ancora da recuperare.
+     * @since 1.0
+     */
+    public boolean isPieno() {
+        return prossimoPieno.get() - System.nanoTime() <= 0;
+    }
+}
@@ -0,0 +1,278 @@
+package theknife.utils;
+
+import javafx.application.Platform;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Group;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.stage.WindowEvent;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fabbrica delle viste FXML aperte più spesso in finestre separate.
+ * <p>
+ * Le viste vengono caricate in anticipo su un thread in background (il parsing
+ * dell'XML e la costruzione riflessiva del grafo della scena avvengono quindi
+ * fuori dal JavaFX Application Thread) e mantenute in un pool di coppie
+ * root + controller già pronte. Quando la finestra che usa una vista viene
+ * chiusa, la coppia viene resettata e rimessa nel pool per essere riutilizzata.
+ * </p>
+ * <p>
+ * Per questo l'{@code initialize()} dei controller gestiti deve limitarsi a
+ * configurare i propri nodi: tutto ciò che legge dati condivisi o si collega
+ * al resto dell'applicazione (catalogo, iscrizioni all'{@link EventBus},
+ * finestre in sovrimpressione) va in {@link Preparabile#prepara()}, che la
+ * fabbrica chiama sul JavaFX Application Thread alla prima acquisizione.
+ * </p>
+ *
+ * @author Philip Jon Ji Ciuca
+ * @version 1.0
+ */
+public class ViewFactory {
+
+    /**
+     * Viste gestite dalla fabbrica.
+     */
+    public enum Vista {
+        DETTAGLIO_RISTORANTE("/views/dettaglioRistorante.fxml"),
+        MAPPA("/views/mapDialog.fxml"),
+        AGGIUNGI_RECENSIONE("/views/aggiungiRecensione.fxml"),
+        ESPLORA_RISTORANTI("/views/esploraRistoranti.fxml");
+
+        private final String percorso;
+
+        Vista(String percorso) {
+            this.percorso = percorso;
+        }
+
+        public String getPercorso() {
+            return percorso;
+        }
+    }
+
+    /**
+     * Controller che possono essere riportati allo stato iniziale e riutilizzati.
+     */
+    public interface Riutilizzabile {
+        /**
+         * Riporta il controller e i suoi nodi allo stato di una vista appena caricata.
+         */
+        void reset();
+    }
+
+    /**
+     * Controller con una parte di inizializzazione che deve girare sul
+     * JavaFX Application Thread.
+     */
+    public interface Preparabile {
+        /**
+         * Collega il controller ai dati e agli eventi dell'applicazione.
+         * Chiamato una sola volta, sul JavaFX Application Thread, alla prima
+         * acquisizione della vista; le acquisizioni successive dal pool
+         * passano solo da {@link Riutilizzabile#reset()}.
+         */
+        void prepara();
+    }
+
+    /**
+     * Coppia root + controller di una vista caricata.
+     *
+     * @param <C> Tipo del controller.
+     */
+    public static final class VistaCaricata<C> {
+        private final Vista vista;
+        private final Parent root;
+        private final C controller;
+        private final AtomicBoolean inUso = new AtomicBoolean(false);
+        private boolean preparata; // letto e scritto solo sul JavaFX Application Thread
+
+        private VistaCaricata(Vista vista, Parent root, C controller) {
+            this.vista = vista;
+            this.root = root;
+            this.controller = controller;
+        }
+
+        public Parent getRoot() {
+            return root;
+        }
+
+        public C getController() {
+            return controller;
+        }
+
+        /**
+         * Crea la scena per la vista applicando il foglio di stile principale.
+         * <p>
+         * Alla chiusura della finestra che mostra la scena la vista viene
+         * restituita automaticamente al pool.
+         * </p>
+         *
+         * @param larghezza Larghezza iniziale della scena.
+         * @param altezza Altezza iniziale della scena.
+         * @return Nuova Scene con root la vista caricata.
+         * @since 1.0
+         */
+        public Scene creaScena(double larghezza, double altezza) {
+            Scene scene = new Scene(root, larghezza, altezza);
+            scene.getStylesheets().add(ViewFactory.class.getResource("/styles/main.css").toExternalForm());
+            scene.windowProperty().addListener((observable, oldWindow, window) -> {
+                if (window != null) {
+                    window.addEventHandler(WindowEvent.WINDOW_HIDDEN, event -> rilascia(this, scene));
+                }
+            });
+            return scene;
+        }
+    }
+
+    private static final int VISTE_PRONTE = 1; // istanze precaricate per vista
+    private static final int MAX_POOL = 3; // istanze massime conservate per vista
+
+    private static final Map<Vista, Queue<VistaCaricata<?>>> pool = new EnumMap<>(Vista.class);
+    private static final ExecutorService caricatore = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "theknife-view-preloader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        for (Vista vista : Vista.values()) {
+            pool.put(vista, new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /**
+     * Avvia in background il precaricamento di tutte le viste gestite.
+     * Da chiamare all'avvio, dopo il caricamento del catalogo ristoranti.
+     *
+     * @since 1.0
+     */
+    public static void precarica() {
+        for (Vista vista : Vista.values()) {
+            rifornisci(vista);
+        }
+    }
+
+    /**
+     * Restituisce una vista pronta all'uso, prendendola dal pool se disponibile
+     * o caricandola sul momento altrimenti. Da chiamare sul JavaFX
+     * Application Thread.
+     *
+     * @param vista Vista richiesta, must be non-null.
+     * @param <C> Tipo del controller atteso.
+     * @return Coppia root + controller non ancora mostrata.
+     * @throws IOException se il caricamento sincrono dell'FXML fallisce.
+     * @since 1.0
+     */
+    @SuppressWarnings("unchecked")
+    public static <C> VistaCaricata<C> acquisisci(Vista vista) throws IOException {
+        VistaCaricata<?> pronta = pool.get(vista).poll();
+        rifornisci(vista);
+        if (pronta == null) {
+            pronta = carica(vista);
+        }
+        if (!pronta.preparata && pronta.controller instanceof Preparabile) {
+            ((Preparabile) pronta.controller).prepara();
+        }
+        pronta.preparata = true;
+        pronta.inUso.set(true);
+        return (VistaCaricata<C>) pronta;
+    }
+
+    /**
+     * Restituisce al pool una vista non più mostrata, dopo averla staccata
+     * dalla scena e resettato il controller.
+     *
+     * @param vistaCaricata Vista da restituire.
+     * @param scene Scena che la conteneva.
+     * @since 1.0
+     */
+    private static void rilascia(VistaCaricata<?> vistaCaricata, Scene scene) {
+        if (!vistaCaricata.inUso.compareAndSet(true, false)) {
+            return;
+        }
+        // Una Parent può essere root di una sola Scene
+        scene.setRoot(new Group());
+
+        if (!(vistaCaricata.controller instanceof Riutilizzabile)) {
+            return;
+        }
+        try {
+            ((Riutilizzabile) vistaCaricata.controller).reset();
+        } catch (RuntimeException e) {
+            System.err.println("Errore nel reset della vista " + vistaCaricata.vista + ": " + e.getMessage());
+            return;
+        }
+
+        Queue<VistaCaricata<?>> coda = pool.get(vistaCaricata.vista);
+        if (coda.size() < MAX_POOL) {
+            coda.offer(vistaCaricata);
+        }
+    }
+
+    /**
+     * Pianifica in background il caricamento di una nuova istanza della vista
+     * se il pool ne contiene meno di quelle previste.
+     *
+     * @param vista Vista da rifornire.
+     * @since 1.0
+     */
+    private static void rifornisci(Vista vista) {
+        caricatore.execute(() -> {
+            Queue<VistaCaricata<?>> coda = pool.get(vista);
+            if (coda.size() >= VISTE_PRONTE) {
+                return;
+            }
+            try {
+                coda.offer(carica(vista));
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Errore nel precaricamento della vista " + vista + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Carica la vista dall'FXML.
+     *
+     * @param vista Vista da caricare.
+     * @return Nuova coppia root + controller.
+     * @throws IOException se l'FXML non può essere caricato.
+     * @since 1.0
+     */
+    private static VistaCaricata<?> carica(Vista vista) throws IOException {
+        FXMLLoader loader = new FXMLLoader(ViewFactory.class.getResource(vista.getPercorso()));
+        loader.setClassLoader(ViewFactory.class.getClassLoader());
+        Parent root = caricaFxml(loader);
+        return new VistaCaricata<>(vista, root, loader.getController());
+    }
+
+    /**
+     * Carica un FXML con il loader indicato, registrando un evento JFR
+     * {@link EventiJfr.CaricamentoVista}. Da usare al posto di
+     * {@code loader.load()} anche per le viste non gestite dalla fabbrica.
+     *
+     * @param loader Loader con la posizione dell'FXML già impostata.
+     * @param <T> Tipo del nodo radice.
+     * @return Nodo radice della vista.
+     * @throws IOException se l'FXML non può essere caricato.
+     * @since 1.0
+     */
+    public static <T> T caricaFxml(FXMLLoader loader) throws IOException {
+        EventiJfr.CaricamentoVista evento = new EventiJfr.CaricamentoVista();
+        evento.begin();
+        T root = loader.load();
+        if (evento.shouldCommit()) {
+            evento.vista = String.valueOf(loader.getLocation());
+            evento.precaricata = !Platform.isFxApplicationThread();
+            evento.commit();
+        }
+        return root;
+    }
+}